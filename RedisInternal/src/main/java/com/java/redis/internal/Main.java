@@ -5,12 +5,18 @@ import com.java.redis.internal.config.Config;
 import com.java.redis.internal.config.ConfigLoader;
 import com.java.redis.internal.config.RedisConfig;
 import com.java.redis.internal.datastore.DataStore;
+import com.java.redis.internal.datastore.MaxMemoryPolicy;
+import com.java.redis.internal.datastore.value.EncodingThresholds;
 import com.java.redis.internal.network.BasicSocketServer;
 import com.java.redis.internal.network.NetworkServer;
+import com.java.redis.internal.persistence.AppendOnlyFile;
+import com.java.redis.internal.persistence.FsyncPolicy;
 import com.java.redis.internal.persistence.NoOpPersistence;
 import com.java.redis.internal.persistence.PersistenceHandler;
 import com.java.redis.internal.persistence.RDBPersistenceManager;
+import com.java.redis.internal.server.ExecutionMode;
 import com.java.redis.internal.server.NettyServer;
+import com.java.redis.internal.stats.ServerStats;
 
 import java.nio.file.Path;
 import java.util.concurrent.Executors;
@@ -24,14 +30,30 @@ public class Main {
         System.out.println("[DEBUG] Configuration loaded: " + config);
 
         System.out.println("[DEBUG] Initializing DataStore...");
-        DataStore store = new DataStore();
+        // Sharded execution splits the keyspace into one shard per worker event loop
+        boolean sharded = ExecutionMode.fromConfig(config.getCommandExecutionMode()) == ExecutionMode.SHARDED;
+        DataStore store = sharded ? new DataStore(config.getNettyWorkerThreads()) : new DataStore();
+        store.setMaxMemory(config.getMaxMemoryBytes(),
+                MaxMemoryPolicy.fromConfig(config.getMaxMemoryPolicy()), config.getMaxMemorySamples());
+        store.setEncodingThresholds(new EncodingThresholds(
+                config.getHashMaxListpackEntries(), config.getHashMaxListpackValue(),
+                config.getSetMaxListpackEntries(), config.getSetMaxListpackValue(),
+                config.getZsetMaxListpackEntries(), config.getZsetMaxListpackValue()));
 
         // PersistenceManager selection
         PersistenceHandler persistence;
         if ("rdb".equalsIgnoreCase(config.getPersistenceMode())) {
             Path p = config.getRdbFilePath();
             System.out.println("[DEBUG] Using RDBPersistenceManager with file: " + p);
-            persistence = new RDBPersistenceManager(p);
+            persistence = new RDBPersistenceManager(p, config.getRdbLoadThreads(), config.isRdbLazyLoad(),
+                    config.getRdbCompressionLevel(), config.getRdbSaveThreads(),
+                    config.isRdbDeltaSnapshots(), config.getRdbDeltaCompactPercentage());
+        } else if ("aof".equalsIgnoreCase(config.getPersistenceMode())) {
+            Path p = config.getAofFilePath();
+            FsyncPolicy fsync = FsyncPolicy.fromConfig(config.getAppendFsync());
+            System.out.println("[DEBUG] Using AppendOnlyFile " + p + " with appendfsync " + fsync);
+            persistence = new AppendOnlyFile(p, fsync,
+                    config.getAofRewritePercentage(), config.getAofRewriteMinSize());
         } else {
             System.out.println("[DEBUG] Using NoOpPersistence (no persistence)");
             persistence = new NoOpPersistence();
@@ -66,6 +88,7 @@ public class Main {
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             System.out.println("[DEBUG] Shutdown initiated: saving final snapshot...");
             persistence.saveSnapshot(store);
+            persistence.close();
             if (scheduler != null) {
                 scheduler.shutdown();
                 System.out.println("[DEBUG] Scheduler shutdown.");
@@ -73,17 +96,20 @@ public class Main {
             System.out.println("[DEBUG] Shutdown hook complete.");
         }));
 
-        // Create CommandExecutor with store (handlers may call persistence.appendCommand if desired)
+        // Create CommandExecutor with store; it appends write commands when persistence logs them
         System.out.println("[DEBUG] Creating CommandExecutor...");
-        CommandExecutor executor = new CommandExecutor(store);
+        ServerStats stats = new ServerStats();
+        CommandExecutor executor = new CommandExecutor(store, stats, persistence);
+        if (persistence instanceof AppendOnlyFile) {
+            // Rewrites cut the log between two commands by briefly holding the executor's key locks
+            ((AppendOnlyFile) persistence).setWriteBarrier(executor::pauseLoggedWrites);
+        }
 
-        // Start Netty server
-        NettyServer server = new NettyServer(
-                config.getPort(),
-                executor,
-                config.getNettyBossThreads(),
-                config.getNettyWorkerThreads()
-        );
+        // Start Netty server; with appendfsync always replies wait for the fsync of their writes
+        AppendOnlyFile syncLog = persistence instanceof AppendOnlyFile
+                && ((AppendOnlyFile) persistence).getPolicy() == FsyncPolicy.ALWAYS
+                ? (AppendOnlyFile) persistence : null;
+        NettyServer server = new NettyServer(config, store, executor, stats, syncLog);
         try {
             System.out.println("[DEBUG] Starting Netty server on port " + config.getPort() + "...");
             server.start();
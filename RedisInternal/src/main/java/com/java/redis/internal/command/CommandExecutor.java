@@ -1,47 +1,346 @@
 package com.java.redis.internal.command;
 
 import com.java.redis.internal.command.handlers.*;
+import com.java.redis.internal.constants.DataType;
+import com.java.redis.internal.datastore.BigKeysScan;
+import com.java.redis.internal.datastore.ByteString;
 import com.java.redis.internal.datastore.DataStore;
+import com.java.redis.internal.persistence.NoOpPersistence;
+import com.java.redis.internal.persistence.PersistenceHandler;
 import com.java.redis.internal.protocol.Command;
+import com.java.redis.internal.protocol.DeferredReply;
 import com.java.redis.internal.protocol.RedisReply;
+import com.java.redis.internal.stats.ServerStats;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
 
+/**
+ * Dispatches commands to their handlers.
+ *
+ * When the persistence handler logs commands (the append-only file), every write that
+ * succeeds is appended to it. Relative expiries are logged as the absolute time they
+ * resolved to (EXPIRE as PEXPIREAT, SET EX as SET PXAT), so a replay sets the same
+ * deadline, a blocking pop is logged as the LPOP/RPOP it turned into, and a key evicted
+ * for maxmemory as a DEL. A write and its append (an eviction and its DEL too) run under
+ * locks on its keys' stripes, so the log holds the writes to any one key in the order
+ * they were applied.
+ */
 public class CommandExecutor {
-    private final Map<String, CommandHandler> registry = new HashMap<>();
+    private static final RedisReply OOM_ERROR =
+            RedisReply.error("OOM command not allowed when used memory > 'maxmemory'.");
+    private static final int LOCK_STRIPES = 1024;
+    private static final byte[] PXAT = "PXAT".getBytes(StandardCharsets.US_ASCII);
 
-    public CommandExecutor(DataStore store) {
+    private final DataStore store;
+    private final PersistenceHandler persistence;
+    // Indexed by CommandSpec.id(): dispatch is an array load, no hashing of the name
+    private final CommandHandler[] handlers = new CommandHandler[CommandTable.size()];
+    // Only used when commands are logged
+    private final ReentrantLock[] keyLocks;
+    private final ThreadLocal<LogContext> logContext = ThreadLocal.withInitial(LogContext::new);
+
+    public CommandExecutor(DataStore store, ServerStats stats) {
+        this(store, stats, new NoOpPersistence());
+    }
+
+    public CommandExecutor(DataStore store, ServerStats stats, PersistenceHandler persistence) {
+        this.store = store;
+        this.persistence = persistence;
+        this.keyLocks = persistence.logsCommands() ? new ReentrantLock[LOCK_STRIPES] : null;
+        if (keyLocks != null) {
+            for (int i = 0; i < LOCK_STRIPES; i++) {
+                keyLocks[i] = new ReentrantLock();
+            }
+            store.setEvictionHook(this::evictLogged);
+        }
         // Strings
-        registry.put("GET",    new GetCommand(store));
-        registry.put("SET",    new SetCommand(store));
-        registry.put("INCR",   new IncrCommand(store));
+        register(CommandTable.GET,    new GetCommand(store));
+        register(CommandTable.SET,    new SetCommand(store));
+        register(CommandTable.GETSET, new GetSetCommand(store));
+        register(CommandTable.INCR,   new IncrCommand(store));
+        register(CommandTable.INCRBY, new IncrByCommand(store));
+        register(CommandTable.INCRBYFLOAT, new IncrByFloatCommand(store));
+        register(CommandTable.DECR,   new DecrCommand(store));
+        register(CommandTable.DECRBY, new DecrByCommand(store));
+        register(CommandTable.MGET,   new MGetCommand(store));
+        register(CommandTable.MSET,   new MSetCommand(store));
         // Hashes
-        registry.put("HSET",   new HSetCommand(store));
-        registry.put("HGET",   new HGetCommand(store));
+        register(CommandTable.HSET,   new HSetCommand(store));
+        register(CommandTable.HGET,   new HGetCommand(store));
         // Lists
-        registry.put("LPUSH",  new LPushCommand(store));
+        register(CommandTable.LPUSH,  new LPushCommand(store));
+        register(CommandTable.RPUSH,  new RPushCommand(store));
+        register(CommandTable.LPOP,   new LPopCommand(store));
+        register(CommandTable.RPOP,   new LPopCommand(store, true));
+        register(CommandTable.LLEN,   new LLenCommand(store));
+        register(CommandTable.LINDEX, new LIndexCommand(store));
+        register(CommandTable.LRANGE, new LRangeCommand(store));
+        register(CommandTable.LTRIM,  new LTrimCommand(store));
+        register(CommandTable.BLPOP,  new BLPopCommand(store));
+        register(CommandTable.BRPOP,  new BLPopCommand(store, true));
         // Sets
-        registry.put("SADD",   new SAddCommand(store));
-        registry.put("SREM",   new SRemCommand(store));
-        registry.put("SMEMBERS", new SMembersCommand(store));
+        register(CommandTable.SADD,   new SAddCommand(store));
+        register(CommandTable.SREM,   new SRemCommand(store));
+        register(CommandTable.SMEMBERS, new SMembersCommand(store));
         // Sorted Sets
-        registry.put("ZADD",   new ZAddCommand(store));
-        registry.put("ZRANGE", new ZRangeCommand(store));
+        register(CommandTable.ZADD,   new ZAddCommand(store));
+        register(CommandTable.ZINCRBY, new ZIncrByCommand(store));
+        register(CommandTable.ZREM,   new ZRemCommand(store));
+        register(CommandTable.ZCARD,  new ZCardCommand(store));
+        register(CommandTable.ZRANK,  new ZRankCommand(store));
+        register(CommandTable.ZREVRANK, new ZRankCommand(store, true));
+        register(CommandTable.ZRANGE, new ZRangeCommand(store));
+        register(CommandTable.ZREVRANGE, new ZRangeCommand(store, true));
+        register(CommandTable.ZRANGEBYSCORE, new ZRangeByScoreCommand(store));
+        // Keys
+        register(CommandTable.DEL,    new DelCommand(store));
+        register(CommandTable.EXISTS, new ExistsCommand(store));
         //TTL
-        registry.put("EXPIRE", new ExpireCommand(store));
-        registry.put("TTL",    new TTLCommand(store));
+        register(CommandTable.EXPIRE, new ExpireCommand(store));
+        register(CommandTable.PEXPIREAT, new ExpireCommand(store, true));
+        register(CommandTable.TTL,    new TTLCommand(store));
+        // Server
+        BigKeysScan bigKeys = new BigKeysScan(store);
+        register(CommandTable.INFO,   new InfoCommand(store, stats, bigKeys, persistence));
+        register(CommandTable.SCAN,   new ScanCommand(store));
+        register(CommandTable.HSCAN,  new ScanCommand(store, DataType.HASH));
+        register(CommandTable.SSCAN,  new ScanCommand(store, DataType.SET));
+        register(CommandTable.ZSCAN,  new ScanCommand(store, DataType.ZSET));
+        register(CommandTable.MEMORY, new MemoryCommand(store, bigKeys));
+        register(CommandTable.OBJECT, new ObjectCommand(store));
+    }
+
+    private void register(CommandSpec spec, CommandHandler handler) {
+        handlers[spec.id()] = handler;
     }
 
     public RedisReply execute(Command cmd) {
-        CommandHandler handler = registry.get(cmd.getName());
+        CommandSpec spec = cmd.getSpec();
+        CommandHandler handler = spec == null ? null : handlers[spec.id()];
         if (handler == null) {
             return RedisReply.error("ERR unknown command '" + cmd.getName() + "'");
         }
+        if (!spec.acceptsArgCount(cmd.getArgs().size() + 1)) {
+            return RedisReply.error("ERR wrong number of arguments for '"
+                    + spec.name().toLowerCase(Locale.ROOT) + "' command");
+        }
+        if (persistence.isLoading()) {
+            // The snapshot is still loading: bring in the keys this command touches first
+            for (byte[] key : spec.keys(cmd)) {
+                persistence.faultIn(key);
+            }
+        }
+        if (spec.isWrite()) {
+            // Evict on the write path, a bounded amount per command
+            if (!store.performEvictions(spec.keys(cmd)) && spec.isDenyOom()) {
+                return OOM_ERROR;
+            }
+        }
+        if (keyLocks != null && spec.isWrite()) {
+            return executeLogged(cmd);
+        }
+        return run(handler, cmd);
+    }
+
+    private static RedisReply run(CommandHandler handler, Command cmd) {
         try {
             return handler.handle(cmd);
         } catch (IllegalStateException e) {
             return RedisReply.error(e.getMessage());
         }
     }
+
+    private RedisReply executeLogged(Command cmd) {
+        int[] stripes = stripesOf(cmd.getSpec().keys(cmd));
+        for (int stripe : stripes) {
+            keyLocks[stripe].lock();
+        }
+        LogContext log = logContext.get();
+        log.executing = true;
+        try {
+            Command logged = withAbsoluteExpiry(cmd);
+            RedisReply reply = run(handlers[logged.getSpec().id()], logged);
+            if (!reply.isError() && !changedNothing(logged, reply)) {
+                if (logged.getSpec().isBlocking()) {
+                    logPop(logged.getSpec(), reply);
+                } else {
+                    persistence.appendCommand(logged);
+                }
+            }
+            // Pops this write served for blocked clients go after it
+            for (Command served : log.after) {
+                persistence.appendCommand(served);
+            }
+            return reply;
+        } finally {
+            log.executing = false;
+            log.after.clear();
+            for (int i = stripes.length - 1; i >= 0; i--) {
+                keyLocks[stripes[i]].unlock();
+            }
+        }
+    }
+
+    /** An EXPIRE of a missing key is not logged: a replay has nothing to apply. */
+    private static boolean changedNothing(Command cmd, RedisReply reply) {
+        CommandSpec spec = cmd.getSpec();
+        return (spec == CommandTable.PEXPIREAT || spec == CommandTable.EXPIRE) && reply == RedisReply.integer(0);
+    }
+
+    /**
+     * Run the action while no logged write is in progress, holding every key stripe. The
+     * append-only file rewrite opens its snapshot under this, so each write is either in
+     * the snapshot or appended after it.
+     */
+    public void pauseLoggedWrites(Runnable action) {
+        if (keyLocks == null) {
+            action.run();
+            return;
+        }
+        for (ReentrantLock lock : keyLocks) {
+            lock.lock();
+        }
+        try {
+            action.run();
+        } finally {
+            for (int i = keyLocks.length - 1; i >= 0; i--) {
+                keyLocks[i].unlock();
+            }
+        }
+    }
+
+    /** Distinct lock stripes of the keys, ascending, so multi-key commands lock in one order. */
+    private static int[] stripesOf(List<byte[]> keys) {
+        if (keys.size() <= 1) {
+            return new int[] {keys.isEmpty() ? 0 : stripeOf(keys.get(0))};
+        }
+        int[] stripes = new int[keys.size()];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = stripeOf(keys.get(i));
+        }
+        Arrays.sort(stripes);
+        int n = 1;
+        for (int i = 1; i < stripes.length; i++) {
+            if (stripes[i] != stripes[n - 1]) {
+                stripes[n++] = stripes[i];
+            }
+        }
+        return n == stripes.length ? stripes : Arrays.copyOf(stripes, n);
+    }
+
+    private static int stripeOf(byte[] key) {
+        return DataStore.slotOf(ByteString.wrap(key)) & (LOCK_STRIPES - 1);
+    }
+
+    /**
+     * EXPIRE key s becomes PEXPIREAT key ms, and an EX, PX or EXAT option of SET, wherever
+     * it is among the options, becomes PXAT ms; every other argument is kept as it is.
+     */
+    private static Command withAbsoluteExpiry(Command cmd) {
+        CommandSpec spec = cmd.getSpec();
+        List<byte[]> args = cmd.getArgs();
+        if (spec == CommandTable.EXPIRE) {
+            long at = expiresAt(args.get(1), 1000, true);
+            if (at >= 0) {
+                return new Command(CommandTable.PEXPIREAT, List.of(args.get(0), ByteString.fromLong(at)));
+            }
+        } else if (spec == CommandTable.SET) {
+            List<byte[]> rewritten = null;
+            // Options are scanned as SetCommand does: each is followed by its value
+            for (int i = 2; i + 1 < args.size(); i += 2) {
+                String opt = new String(args.get(i), StandardCharsets.US_ASCII).toUpperCase(Locale.ROOT);
+                long at = switch (opt) {
+                    case "EX" -> expiresAt(args.get(i + 1), 1000, true);
+                    case "PX" -> expiresAt(args.get(i + 1), 1, true);
+                    case "EXAT" -> expiresAt(args.get(i + 1), 1000, false);
+                    default -> -1;
+                };
+                if (at >= 0) {
+                    if (rewritten == null) {
+                        rewritten = new ArrayList<>(args);
+                    }
+                    rewritten.set(i, PXAT);
+                    rewritten.set(i + 1, ByteString.fromLong(at));
+                }
+            }
+            if (rewritten != null) {
+                return new Command(CommandTable.SET, rewritten);
+            }
+        }
+        return cmd;
+    }
+
+    /**
+     * @param unitMillis milliseconds per unit of the value
+     * @param relative whether the value counts from now
+     * @return the deadline in unix milliseconds, or -1 to leave an invalid value to the handler
+     */
+    private static long expiresAt(byte[] value, long unitMillis, boolean relative) {
+        long base = relative ? System.currentTimeMillis() : 0;
+        try {
+            long n = ByteString.parseLong(value);
+            return n < 0 || n > (Long.MAX_VALUE - base) / unitMillis ? -1 : base + n * unitMillis;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Log the pop a BLPOP/BRPOP performed. A deferred one is logged when a push serves it,
+     * which happens inside that push's executeLogged, so it lands right after the push.
+     */
+    private void logPop(CommandSpec blocking, RedisReply reply) {
+        CommandSpec pop = blocking == CommandTable.BLPOP ? CommandTable.LPOP : CommandTable.RPOP;
+        if (reply instanceof DeferredReply) {
+            ((DeferredReply) reply).future().thenAccept(served -> logPopped(pop, served));
+        } else {
+            logPopped(pop, reply);
+        }
+    }
+
+    private void logPopped(CommandSpec pop, RedisReply reply) {
+        if (reply == null || reply.getChildren() == null) {
+            return; // timed out or cancelled: nothing was popped
+        }
+        log(new Command(pop, List.of(reply.getChildren().get(0).getBulk())));
+    }
+
+    /**
+     * Evict a key under its stripe and log it as a DEL, so a replay drops it too and its
+     * later writes stay after the deletion.
+     */
+    private boolean evictLogged(byte[] key, BooleanSupplier removal) {
+        ReentrantLock lock = keyLocks[stripeOf(key)];
+        lock.lock();
+        try {
+            if (!removal.getAsBoolean()) {
+                return false;
+            }
+            log(new Command(CommandTable.DEL, List.of(key)));
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Append a write made on the side: after the running write, if there is one. */
+    private void log(Command cmd) {
+        LogContext log = logContext.get();
+        if (log.executing) {
+            log.after.add(cmd);
+        } else {
+            persistence.appendCommand(cmd);
+        }
+    }
+
+    private static final class LogContext {
+        boolean executing;
+        final List<Command> after = new ArrayList<>();
+    }
 }
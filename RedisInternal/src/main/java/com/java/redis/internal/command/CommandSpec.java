@@ -0,0 +1,114 @@
+package com.java.redis.internal.command;
+
+import com.java.redis.internal.protocol.Command;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Static metadata of one command, in the shape of a Redis command table entry.
+ *
+ * Arity counts the command name: a positive arity is exact, a negative one is a minimum
+ * (SET is -3: "SET key value" plus options). Key positions are also counted from the name,
+ * so firstKey 1 is the first argument; firstKey 0 means the command takes no keys and a
+ * negative lastKey counts back from the last argument.
+ */
+public final class CommandSpec {
+    /** Modifies the keyspace; replicated, persisted to the AOF, refused when out of memory. */
+    public static final int WRITE = 1;
+    /** Only reads the keyspace. */
+    public static final int READONLY = 1 << 1;
+    /** May grow the dataset: refused when over maxmemory and nothing can be evicted. */
+    public static final int DENYOOM = 1 << 2;
+    /** May park the client; the connection holds its later commands until it is answered. */
+    public static final int BLOCKING = 1 << 3;
+
+    private final int id;
+    private final String name;
+    private final byte[] nameBytes; // upper case ASCII
+    private final int arity;
+    private final int flags;
+    private final int firstKey;
+    private final int lastKey;
+    private final int keyStep;
+
+    CommandSpec(int id, String name, int arity, int flags, int firstKey, int lastKey, int keyStep) {
+        this.id = id;
+        this.name = name;
+        this.nameBytes = name.getBytes(StandardCharsets.US_ASCII);
+        this.arity = arity;
+        this.flags = flags;
+        this.firstKey = firstKey;
+        this.lastKey = lastKey;
+        this.keyStep = keyStep;
+    }
+
+    /** Dense index of this spec in the command table; executors key their handler arrays by it. */
+    public int id() {
+        return id;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    byte[] nameBytes() {
+        return nameBytes;
+    }
+
+    public int arity() {
+        return arity;
+    }
+
+    public boolean isWrite() {
+        return (flags & WRITE) != 0;
+    }
+
+    public boolean isReadOnly() {
+        return (flags & READONLY) != 0;
+    }
+
+    public boolean isDenyOom() {
+        return (flags & DENYOOM) != 0;
+    }
+
+    public boolean isBlocking() {
+        return (flags & BLOCKING) != 0;
+    }
+
+    public boolean hasKeys() {
+        return firstKey > 0;
+    }
+
+    /** @return whether a call with argc elements (name included) satisfies the arity */
+    public boolean acceptsArgCount(int argc) {
+        return arity >= 0 ? argc == arity : argc >= -arity;
+    }
+
+    /** @return the key arguments of a call to this command, in argument order */
+    public List<byte[]> keys(Command cmd) {
+        if (firstKey <= 0) {
+            return List.of();
+        }
+        List<byte[]> args = cmd.getArgs();
+        int argc = args.size() + 1;
+        int last = lastKey >= 0 ? lastKey : argc + lastKey;
+        if (last >= argc) {
+            last = argc - 1;
+        }
+        if (firstKey == last) {
+            return firstKey < argc ? args.subList(firstKey - 1, firstKey) : List.of();
+        }
+        List<byte[]> keys = new ArrayList<>();
+        for (int i = firstKey; i <= last; i += keyStep) {
+            keys.add(args.get(i - 1));
+        }
+        return keys;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,169 @@
+package com.java.redis.internal.command;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The table of every command the server knows, with its metadata.
+ *
+ * Lookup hashes the command name case-insensitively straight from the bytes it arrived
+ * in, including a region of the decoder's input ByteBuf, and probes an open-addressing
+ * array of specs. Dispatching a command therefore neither copies nor upper-cases its name.
+ */
+public final class CommandTable {
+    private static final int WRITE = CommandSpec.WRITE;
+    private static final int READONLY = CommandSpec.READONLY;
+    private static final int DENYOOM = CommandSpec.DENYOOM;
+    private static final int BLOCKING = CommandSpec.BLOCKING;
+
+    private static final List<CommandSpec> SPECS = new ArrayList<>();
+    private static final CommandSpec[] SLOTS = new CommandSpec[256]; // power of two, well under half full
+
+    // Strings
+    public static final CommandSpec GET      = define("GET",      2,  READONLY,        1, 1, 1);
+    public static final CommandSpec SET      = define("SET",      -3, WRITE | DENYOOM, 1, 1, 1);
+    public static final CommandSpec GETSET   = define("GETSET",   3,  WRITE | DENYOOM, 1, 1, 1);
+    public static final CommandSpec INCR     = define("INCR",     2,  WRITE | DENYOOM, 1, 1, 1);
+    public static final CommandSpec INCRBY   = define("INCRBY",   3,  WRITE | DENYOOM, 1, 1, 1);
+    public static final CommandSpec INCRBYFLOAT = define("INCRBYFLOAT", 3, WRITE | DENYOOM, 1, 1, 1);
+    public static final CommandSpec DECR     = define("DECR",     2,  WRITE | DENYOOM, 1, 1, 1);
+    public static final CommandSpec DECRBY   = define("DECRBY",   3,  WRITE | DENYOOM, 1, 1, 1);
+    public static final CommandSpec MGET     = define("MGET",     -2, READONLY,        1, -1, 1);
+    // MSET key value [key value ...]: every other argument is a key
+    public static final CommandSpec MSET     = define("MSET",     -3, WRITE | DENYOOM, 1, -1, 2);
+    // Hashes
+    public static final CommandSpec HSET     = define("HSET",     -4, WRITE | DENYOOM, 1, 1, 1);
+    public static final CommandSpec HGET     = define("HGET",     3,  READONLY,        1, 1, 1);
+    // Lists
+    public static final CommandSpec LPUSH    = define("LPUSH",    -3, WRITE | DENYOOM, 1, 1, 1);
+    public static final CommandSpec RPUSH    = define("RPUSH",    -3, WRITE | DENYOOM, 1, 1, 1);
+    public static final CommandSpec LPOP     = define("LPOP",     -2, WRITE,           1, 1, 1);
+    public static final CommandSpec RPOP     = define("RPOP",     -2, WRITE,           1, 1, 1);
+    public static final CommandSpec LLEN     = define("LLEN",     2,  READONLY,        1, 1, 1);
+    public static final CommandSpec LINDEX   = define("LINDEX",   3,  READONLY,        1, 1, 1);
+    public static final CommandSpec LRANGE   = define("LRANGE",   4,  READONLY,        1, 1, 1);
+    public static final CommandSpec LTRIM    = define("LTRIM",    4,  WRITE,           1, 1, 1);
+    // BLPOP key [key ...] timeout: every argument but the last is a key
+    public static final CommandSpec BLPOP    = define("BLPOP",    -3, WRITE | BLOCKING, 1, -2, 1);
+    public static final CommandSpec BRPOP    = define("BRPOP",    -3, WRITE | BLOCKING, 1, -2, 1);
+    // Sets
+    public static final CommandSpec SADD     = define("SADD",     -3, WRITE | DENYOOM, 1, 1, 1);
+    public static final CommandSpec SREM     = define("SREM",     -3, WRITE,           1, 1, 1);
+    public static final CommandSpec SMEMBERS = define("SMEMBERS", 2,  READONLY,        1, 1, 1);
+    // Sorted Sets
+    public static final CommandSpec ZADD     = define("ZADD",     -4, WRITE | DENYOOM, 1, 1, 1);
+    public static final CommandSpec ZINCRBY  = define("ZINCRBY",  4,  WRITE | DENYOOM, 1, 1, 1);
+    public static final CommandSpec ZREM     = define("ZREM",     -3, WRITE,           1, 1, 1);
+    public static final CommandSpec ZCARD    = define("ZCARD",    2,  READONLY,        1, 1, 1);
+    public static final CommandSpec ZRANK    = define("ZRANK",    3,  READONLY,        1, 1, 1);
+    public static final CommandSpec ZREVRANK = define("ZREVRANK", 3,  READONLY,        1, 1, 1);
+    public static final CommandSpec ZRANGE   = define("ZRANGE",   -4, READONLY,        1, 1, 1);
+    public static final CommandSpec ZREVRANGE = define("ZREVRANGE", -4, READONLY,      1, 1, 1);
+    public static final CommandSpec ZRANGEBYSCORE = define("ZRANGEBYSCORE", -4, READONLY, 1, 1, 1);
+    // Keys
+    public static final CommandSpec DEL      = define("DEL",      -2, WRITE,           1, -1, 1);
+    public static final CommandSpec EXISTS   = define("EXISTS",   -2, READONLY,        1, -1, 1);
+    // TTL
+    public static final CommandSpec EXPIRE   = define("EXPIRE",   3,  WRITE,           1, 1, 1);
+    public static final CommandSpec PEXPIREAT = define("PEXPIREAT", 3, WRITE,          1, 1, 1);
+    public static final CommandSpec TTL      = define("TTL",      2,  READONLY,        1, 1, 1);
+    // Server
+    public static final CommandSpec INFO     = define("INFO",     -1, 0,               0, 0, 0);
+    public static final CommandSpec SCAN     = define("SCAN",     -2, READONLY,        0, 0, 0);
+    public static final CommandSpec HSCAN    = define("HSCAN",    -3, READONLY,        1, 1, 1);
+    public static final CommandSpec SSCAN    = define("SSCAN",    -3, READONLY,        1, 1, 1);
+    public static final CommandSpec ZSCAN    = define("ZSCAN",    -3, READONLY,        1, 1, 1);
+    // MEMORY USAGE key: the key is the second argument (for BIGKEYS this picks an arbitrary shard)
+    public static final CommandSpec MEMORY   = define("MEMORY",   -2, READONLY,        2, 2, 1);
+    public static final CommandSpec OBJECT   = define("OBJECT",   -2, READONLY,        2, 2, 1);
+
+    private CommandTable() {
+    }
+
+    private static CommandSpec define(String name, int arity, int flags, int firstKey, int lastKey, int keyStep) {
+        CommandSpec spec = new CommandSpec(SPECS.size(), name, arity, flags, firstKey, lastKey, keyStep);
+        byte[] bytes = spec.nameBytes();
+        int mask = SLOTS.length - 1;
+        int i = hash(bytes, 0, bytes.length) & mask;
+        while (SLOTS[i] != null) {
+            if (SLOTS[i].name().equals(name)) {
+                throw new IllegalStateException("Duplicate command " + name);
+            }
+            i = (i + 1) & mask;
+        }
+        SLOTS[i] = spec;
+        SPECS.add(spec);
+        return spec;
+    }
+
+    /** @return every command, ordered by id */
+    public static List<CommandSpec> all() {
+        return Collections.unmodifiableList(SPECS);
+    }
+
+    /** @return the number of commands; ids run from 0 to size() - 1 */
+    public static int size() {
+        return SPECS.size();
+    }
+
+    /** @return the command named by length bytes of buf from index, ignoring case, or null */
+    public static CommandSpec lookup(ByteBuf buf, int index, int length) {
+        int h = 0;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + upper(buf.getByte(index + i));
+        }
+        int mask = SLOTS.length - 1;
+        for (int i = h & mask; SLOTS[i] != null; i = (i + 1) & mask) {
+            byte[] name = SLOTS[i].nameBytes();
+            if (name.length == length && matches(name, buf, index)) {
+                return SLOTS[i];
+            }
+        }
+        return null;
+    }
+
+    /** @return the command named by bytes, ignoring case, or null */
+    public static CommandSpec lookup(byte[] bytes) {
+        int mask = SLOTS.length - 1;
+        for (int i = hash(bytes, 0, bytes.length) & mask; SLOTS[i] != null; i = (i + 1) & mask) {
+            byte[] name = SLOTS[i].nameBytes();
+            if (name.length == bytes.length && matches(name, bytes)) {
+                return SLOTS[i];
+            }
+        }
+        return null;
+    }
+
+    private static int hash(byte[] bytes, int from, int length) {
+        int h = 0;
+        for (int i = from; i < from + length; i++) {
+            h = 31 * h + upper(bytes[i]);
+        }
+        return h;
+    }
+
+    private static boolean matches(byte[] name, ByteBuf buf, int index) {
+        for (int i = 0; i < name.length; i++) {
+            if (upper(buf.getByte(index + i)) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(byte[] name, byte[] bytes) {
+        for (int i = 0; i < name.length; i++) {
+            if (upper(bytes[i]) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int upper(byte b) {
+        return b >= 'a' && b <= 'z' ? b - ('a' - 'A') : b;
+    }
+}
@@ -0,0 +1,55 @@
+package com.java.redis.internal.command.handlers;
+
+import com.java.redis.internal.command.CommandHandler;
+import com.java.redis.internal.datastore.BlockedPop;
+import com.java.redis.internal.datastore.ByteString;
+import com.java.redis.internal.datastore.DataStore;
+import com.java.redis.internal.protocol.Command;
+import com.java.redis.internal.protocol.DeferredReply;
+import com.java.redis.internal.protocol.RedisReply;
+
+import java.util.List;
+
+/**
+ * BLPOP key [key ...] timeout, and BRPOP popping from the tail. The timeout is in seconds,
+ * fractions allowed, 0 waiting forever. When every list is empty the reply is deferred
+ * until a push serves the client or the timeout answers nil.
+ */
+public class BLPopCommand implements CommandHandler {
+    private final DataStore store;
+    private final boolean fromTail;
+
+    public BLPopCommand(DataStore store) { this(store, false); }
+
+    public BLPopCommand(DataStore store, boolean fromTail) {
+        this.store = store;
+        this.fromTail = fromTail;
+    }
+
+    @Override
+    public RedisReply handle(Command cmd) {
+        List<byte[]> args = cmd.getArgs();
+        double seconds;
+        try {
+            seconds = ByteString.parseDouble(args.get(args.size() - 1));
+        } catch (NumberFormatException e) {
+            return RedisReply.error("ERR timeout is not a float or out of range");
+        }
+        if (seconds < 0) {
+            return RedisReply.error("ERR timeout is negative");
+        }
+        long timeoutMillis = Double.isInfinite(seconds) ? 0 : (long) Math.ceil(seconds * 1000);
+        BlockedPop pop = store.blockingPop(args.subList(0, args.size() - 1), fromTail, timeoutMillis);
+        if (pop.future().isDone()) {
+            return toReply(pop.future().join());
+        }
+        return new DeferredReply(pop.future().thenApply(BLPopCommand::toReply), pop::cancel);
+    }
+
+    private static RedisReply toReply(byte[][] popped) {
+        if (popped == null) {
+            return RedisReply.nullArray();
+        }
+        return RedisReply.array(List.of(RedisReply.bulkString(popped[0]), RedisReply.bulkString(popped[1])));
+    }
+}
@@ -0,0 +1,31 @@
+package com.java.redis.internal.command.handlers;
+
+import com.java.redis.internal.command.CommandHandler;
+import com.java.redis.internal.datastore.ByteString;
+import com.java.redis.internal.datastore.DataStore;
+import com.java.redis.internal.protocol.Command;
+import com.java.redis.internal.protocol.RedisReply;
+
+/** DECRBY key decrement */
+public class DecrByCommand implements CommandHandler {
+    private final DataStore store;
+
+    public DecrByCommand(DataStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public RedisReply handle(Command cmd) {
+        try {
+            long delta = ByteString.parseLong(cmd.getArgs().get(1));
+            if (delta == Long.MIN_VALUE) {
+                return RedisReply.error("ERR decrement would overflow"); // cannot be negated
+            }
+            return RedisReply.integer(store.incrBy(cmd.getArgs().get(0), -delta));
+        } catch (NumberFormatException e) {
+            return RedisReply.error("ERR value is not an integer or out of range");
+        } catch (IllegalStateException e) {
+            return RedisReply.error(e.getMessage());
+        }
+    }
+}
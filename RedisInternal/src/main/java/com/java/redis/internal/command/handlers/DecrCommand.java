@@ -0,0 +1,26 @@
+package com.java.redis.internal.command.handlers;
+
+import com.java.redis.internal.command.CommandHandler;
+import com.java.redis.internal.datastore.DataStore;
+import com.java.redis.internal.protocol.Command;
+import com.java.redis.internal.protocol.RedisReply;
+
+/** DECR key */
+public class DecrCommand implements CommandHandler {
+    private final DataStore store;
+
+    public DecrCommand(DataStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public RedisReply handle(Command cmd) {
+        try {
+            return RedisReply.integer(store.incrBy(cmd.getArgs().get(0), -1));
+        } catch (NumberFormatException e) {
+            return RedisReply.error("ERR value is not an integer or out of range");
+        } catch (IllegalStateException e) {
+            return RedisReply.error(e.getMessage());
+        }
+    }
+}
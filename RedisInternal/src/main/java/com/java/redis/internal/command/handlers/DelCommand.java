@@ -0,0 +1,20 @@
+package com.java.redis.internal.command.handlers;
+
+import com.java.redis.internal.command.CommandHandler;
+import com.java.redis.internal.datastore.DataStore;
+import com.java.redis.internal.protocol.Command;
+import com.java.redis.internal.protocol.RedisReply;
+
+/** DEL key [key ...]: replies with the number of keys removed. */
+public class DelCommand implements CommandHandler {
+    private final DataStore store;
+    public DelCommand(DataStore store) { this.store = store; }
+
+    @Override
+    public RedisReply handle(Command cmd) {
+        if (cmd.getArgs().isEmpty()) {
+            return RedisReply.error("ERR wrong number of arguments for 'del' command");
+        }
+        return RedisReply.integer(store.del(cmd.getArgs()));
+    }
+}
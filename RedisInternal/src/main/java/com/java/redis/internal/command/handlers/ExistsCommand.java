@@ -0,0 +1,20 @@
+package com.java.redis.internal.command.handlers;
+
+import com.java.redis.internal.command.CommandHandler;
+import com.java.redis.internal.datastore.DataStore;
+import com.java.redis.internal.protocol.Command;
+import com.java.redis.internal.protocol.RedisReply;
+
+/** EXISTS key [key ...]: replies with the number of the keys that exist. */
+public class ExistsCommand implements CommandHandler {
+    private final DataStore store;
+    public ExistsCommand(DataStore store) { this.store = store; }
+
+    @Override
+    public RedisReply handle(Command cmd) {
+        if (cmd.getArgs().isEmpty()) {
+            return RedisReply.error("ERR wrong number of arguments for 'exists' command");
+        }
+        return RedisReply.integer(store.exists(cmd.getArgs()));
+    }
+}
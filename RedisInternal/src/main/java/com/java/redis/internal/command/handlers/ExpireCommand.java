@@ -1,31 +1,42 @@
 package com.java.redis.internal.command.handlers;
 
 import com.java.redis.internal.command.CommandHandler;
+import com.java.redis.internal.datastore.ByteString;
 import com.java.redis.internal.datastore.DataStore;
 import com.java.redis.internal.protocol.Command;
 import com.java.redis.internal.protocol.RedisReply;
 
+/**
+ * EXPIRE key seconds, and PEXPIREAT key unix-time-milliseconds, the absolute form the
+ * append-only file logs EXPIRE as.
+ */
 public class ExpireCommand implements CommandHandler {
     private final DataStore dataStore;
-    public ExpireCommand(DataStore dataStore) {
+    private final boolean absoluteMillis;
+
+    public ExpireCommand(DataStore dataStore) { this(dataStore, false); }
+
+    public ExpireCommand(DataStore dataStore, boolean absoluteMillis) {
         this.dataStore = dataStore;
+        this.absoluteMillis = absoluteMillis;
     }
     @Override
     public RedisReply handle(Command cmd) {
         if (cmd.getArgs().size() != 2) {
-            return RedisReply.error("ERR wrong number of arguments for 'expire' command");
+            return RedisReply.error("ERR wrong number of arguments for '"
+                    + (absoluteMillis ? "pexpireat" : "expire") + "' command");
         }
-        String key = cmd.getArgs().get(0);
-        long seconds;
+        byte[] key = cmd.getArgs().get(0);
+        long time;
         try{
-            seconds = Long.parseLong(cmd.getArgs().get(1));
-            if (seconds < 0) {
+            time = ByteString.parseLong(cmd.getArgs().get(1));
+            if (time < 0) {
                 return RedisReply.error("ERR value is not an integer or out of range");
             }
         } catch (NumberFormatException e) {
             return RedisReply.error("ERR value is not an integer or out of range");
         }
-        int res = dataStore.expire(key, seconds);
+        int res = absoluteMillis ? dataStore.expireAt(key, time) : dataStore.expire(key, time);
         return RedisReply.integer(res);
     }
 }
@@ -16,8 +16,8 @@ public class GetCommand implements CommandHandler{
         if(cmd.getArgs().size() != 1) {
             return RedisReply.error("ERR wrong number of arguments for 'set' command");
         }
-        String key = cmd.getArgs().get(0);
-        String value = dataStore.getString(key);
+        byte[] key = cmd.getArgs().get(0);
+        byte[] value = dataStore.getString(key);
         return (value == null)
                 ? RedisReply.nullBulk()
                 : RedisReply.bulkString(value);
@@ -0,0 +1,25 @@
+package com.java.redis.internal.command.handlers;
+
+import com.java.redis.internal.command.CommandHandler;
+import com.java.redis.internal.datastore.DataStore;
+import com.java.redis.internal.protocol.Command;
+import com.java.redis.internal.protocol.RedisReply;
+
+/** GETSET key value: set the string and reply with the one it replaced. */
+public class GetSetCommand implements CommandHandler {
+    private final DataStore store;
+
+    public GetSetCommand(DataStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public RedisReply handle(Command cmd) {
+        try {
+            byte[] old = store.getSet(cmd.getArgs().get(0), cmd.getArgs().get(1));
+            return old == null ? RedisReply.nullBulk() : RedisReply.bulkString(old);
+        } catch (IllegalStateException e) {
+            return RedisReply.error(e.getMessage());
+        }
+    }
+}
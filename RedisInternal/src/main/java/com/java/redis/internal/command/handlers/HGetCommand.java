@@ -18,7 +18,7 @@ public class HGetCommand implements CommandHandler {
         if (cmd.getArgs().size() != 2) {
             return RedisReply.error("ERR wrong number of arguments for 'hget' command");
         }
-        String val = store.hget(cmd.getArgs().get(0), cmd.getArgs().get(1));
+        byte[] val = store.hget(cmd.getArgs().get(0), cmd.getArgs().get(1));
         return (val == null)
                 ? RedisReply.nullBulk()
                 : RedisReply.bulkString(val);
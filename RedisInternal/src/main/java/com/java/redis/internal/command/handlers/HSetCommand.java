@@ -5,20 +5,18 @@ import com.java.redis.internal.datastore.DataStore;
 import com.java.redis.internal.protocol.Command;
 import com.java.redis.internal.protocol.RedisReply;
 
+/** HSET key field value [field value ...]: replies with the number of fields added. */
 public class HSetCommand implements CommandHandler {
     private final DataStore store;
     public HSetCommand(DataStore store) { this.store = store; }
 
     @Override
     public RedisReply handle(Command cmd) {
-        if (cmd.getArgs().size() != 3) {
+        int argc = cmd.getArgs().size();
+        if (argc < 3 || argc % 2 == 0) {
             return RedisReply.error("ERR wrong number of arguments for 'hset' command");
         }
-        int added = store.hset(
-                cmd.getArgs().get(0),
-                cmd.getArgs().get(1),
-                cmd.getArgs().get(2)
-        );
+        int added = store.hset(cmd.getArgs().get(0), cmd.getArgs().subList(1, argc));
         return RedisReply.integer(added);
     }
 }
@@ -0,0 +1,28 @@
+package com.java.redis.internal.command.handlers;
+
+import com.java.redis.internal.command.CommandHandler;
+import com.java.redis.internal.datastore.ByteString;
+import com.java.redis.internal.datastore.DataStore;
+import com.java.redis.internal.protocol.Command;
+import com.java.redis.internal.protocol.RedisReply;
+
+/** INCRBY key increment */
+public class IncrByCommand implements CommandHandler {
+    private final DataStore store;
+
+    public IncrByCommand(DataStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public RedisReply handle(Command cmd) {
+        try {
+            long delta = ByteString.parseLong(cmd.getArgs().get(1));
+            return RedisReply.integer(store.incrBy(cmd.getArgs().get(0), delta));
+        } catch (NumberFormatException e) {
+            return RedisReply.error("ERR value is not an integer or out of range");
+        } catch (IllegalStateException e) {
+            return RedisReply.error(e.getMessage());
+        }
+    }
+}
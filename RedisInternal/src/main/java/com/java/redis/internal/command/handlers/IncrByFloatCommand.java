@@ -0,0 +1,28 @@
+package com.java.redis.internal.command.handlers;
+
+import com.java.redis.internal.command.CommandHandler;
+import com.java.redis.internal.datastore.ByteString;
+import com.java.redis.internal.datastore.DataStore;
+import com.java.redis.internal.protocol.Command;
+import com.java.redis.internal.protocol.RedisReply;
+
+/** INCRBYFLOAT key increment: replies with the new value as a bulk string. */
+public class IncrByFloatCommand implements CommandHandler {
+    private final DataStore store;
+
+    public IncrByFloatCommand(DataStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public RedisReply handle(Command cmd) {
+        try {
+            double increment = ByteString.parseDouble(cmd.getArgs().get(1));
+            return RedisReply.bulkString(store.incrByFloat(cmd.getArgs().get(0), increment));
+        } catch (NumberFormatException e) {
+            return RedisReply.error("ERR value is not a valid float");
+        } catch (IllegalStateException e) {
+            return RedisReply.error(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.java.redis.internal.command.handlers;
+
+import com.java.redis.internal.command.CommandHandler;
+import com.java.redis.internal.constants.DataType;
+import com.java.redis.internal.datastore.BigKeysScan;
+import com.java.redis.internal.datastore.ByteString;
+import com.java.redis.internal.datastore.DataStore;
+import com.java.redis.internal.persistence.PersistenceHandler;
+import com.java.redis.internal.protocol.Command;
+import com.java.redis.internal.protocol.RedisReply;
+import com.java.redis.internal.stats.ServerStats;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * INFO [section]: server statistics in the Redis "field:value" text format.
+ */
+public class InfoCommand implements CommandHandler {
+    private final DataStore store;
+    private final ServerStats stats;
+    private final BigKeysScan bigKeys;
+    private final PersistenceHandler persistence;
+    public InfoCommand(DataStore store, ServerStats stats, BigKeysScan bigKeys, PersistenceHandler persistence) {
+        this.store = store;
+        this.stats = stats;
+        this.bigKeys = bigKeys;
+        this.persistence = persistence;
+    }
+
+    @Override
+    public RedisReply handle(Command cmd) {
+        if (cmd.getArgs().size() > 1) {
+            return RedisReply.error("ERR wrong number of arguments for 'info' command");
+        }
+        String section = cmd.getArgs().isEmpty()
+                ? "all"
+                : new String(cmd.getArgs().get(0), StandardCharsets.US_ASCII).toLowerCase(Locale.ROOT);
+        StringBuilder sb = new StringBuilder();
+        if (wants(section, "memory")) {
+            appendMemory(sb);
+        }
+        if (wants(section, "persistence")) {
+            appendPersistence(sb);
+        }
+        if (wants(section, "stats")) {
+            appendStats(sb);
+        }
+        if (wants(section, "bigkeys")) {
+            appendBigKeys(sb);
+        }
+        return RedisReply.bulkString(sb.toString());
+    }
+
+    private static boolean wants(String requested, String section) {
+        return requested.equals(section) || requested.equals("all") || requested.equals("default");
+    }
+
+    private void appendMemory(StringBuilder sb) {
+        sb.append("# Memory\r\n");
+        sb.append("used_memory:").append(store.getUsedMemory()).append("\r\n");
+        sb.append("used_memory_human:").append(humanBytes(store.getUsedMemory())).append("\r\n");
+        sb.append("maxmemory:").append(store.getMaxMemory()).append("\r\n");
+        sb.append("maxmemory_human:").append(humanBytes(store.getMaxMemory())).append("\r\n");
+        sb.append("maxmemory_policy:").append(store.getMaxMemoryPolicy().configName()).append("\r\n");
+        // Totals per type are maintained on every write, so this is O(types), not O(keys)
+        for (DataType type : DataType.values()) {
+            String name = type.name().toLowerCase(Locale.ROOT);
+            sb.append("used_memory_").append(name).append(':').append(store.getUsedMemory(type)).append("\r\n");
+            sb.append("keys_").append(name).append(':').append(store.getKeyCount(type)).append("\r\n");
+        }
+    }
+
+    private void appendBigKeys(StringBuilder sb) {
+        sb.append("# Bigkeys\r\n");
+        sb.append("bigkeys_scan_in_progress:").append(bigKeys.isRunning() ? 1 : 0).append("\r\n");
+        if (bigKeys.isRunning()) {
+            sb.append("bigkeys_scan_progress_perc:")
+                    .append(String.format(Locale.ROOT, "%.2f", bigKeys.getProgress() * 100)).append("\r\n");
+        }
+        BigKeysScan.Report report = bigKeys.getLastReport();
+        if (report == null) {
+            return;
+        }
+        sb.append("bigkeys_last_scan_keys:").append(report.getKeysScanned()).append("\r\n");
+        sb.append("bigkeys_last_scan_duration_ms:").append(report.getDurationMillis()).append("\r\n");
+        for (DataType type : DataType.values()) {
+            ByteString biggest = report.getBiggestKey(type);
+            if (biggest == null) {
+                continue;
+            }
+            sb.append("biggest_").append(type.name().toLowerCase(Locale.ROOT))
+                    .append(":key=").append(biggest)
+                    .append(",bytes=").append(report.getBiggestBytes(type))
+                    .append(",keys=").append(report.getKeys(type))
+                    .append(",total_bytes=").append(report.getBytes(type)).append("\r\n");
+        }
+    }
+
+    /** Format like Redis' *_human fields, e.g. 1.50M. */
+    private static String humanBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + "B";
+        }
+        String units = "KMGTP";
+        double value = bytes;
+        int unit = -1;
+        while (value >= 1024 && unit < units.length() - 1) {
+            value /= 1024;
+            unit++;
+        }
+        return String.format(Locale.ROOT, "%.2f%c", value, units.charAt(unit));
+    }
+
+    private void appendPersistence(StringBuilder sb) {
+        sb.append("# Persistence\r\n");
+        sb.append("loading:").append(persistence.isLoading() ? 1 : 0).append("\r\n");
+        sb.append("rdb_bgsave_in_progress:").append(store.isSnapshotInProgress() ? 1 : 0).append("\r\n");
+        // Keys whose pre-image the current (or last) snapshot kept because they were written meanwhile
+        sb.append("rdb_cow_keys_copied:").append(store.getSnapshotKeysCopied()).append("\r\n");
+        persistence.appendInfo(sb);
+    }
+
+    private void appendStats(StringBuilder sb) {
+        sb.append("# Stats\r\n");
+        sb.append("total_commands_processed:").append(stats.getCommandsProcessed()).append("\r\n");
+        sb.append("pipeline_batches:").append(stats.getPipelineBatches()).append("\r\n");
+        sb.append("pipeline_avg_depth:")
+                .append(String.format(Locale.ROOT, "%.2f", stats.getAveragePipelineDepth())).append("\r\n");
+        sb.append("pipeline_max_depth:").append(stats.getMaxPipelineDepth()).append("\r\n");
+        sb.append("expired_keys:").append(store.getExpiredKeys()).append("\r\n");
+        sb.append("expired_active_keys:").append(stats.getActiveExpiredKeys()).append("\r\n");
+        sb.append("expired_stale_perc:")
+                .append(String.format(Locale.ROOT, "%.2f", store.getExpiredStaleRatio() * 100)).append("\r\n");
+        sb.append("expired_time_cap_reached_count:").append(stats.getExpireCycleTimeCapReached()).append("\r\n");
+        sb.append("expire_cycle_cpu_milliseconds:").append(stats.getExpireCycleCpuMillis()).append("\r\n");
+        sb.append("evicted_keys:").append(store.getEvictedKeys()).append("\r\n");
+        sb.append("blocked_clients:").append(store.getBlockedClients()).append("\r\n");
+    }
+}
@@ -0,0 +1,24 @@
+package com.java.redis.internal.command.handlers;
+
+import com.java.redis.internal.command.CommandHandler;
+import com.java.redis.internal.datastore.ByteString;
+import com.java.redis.internal.datastore.DataStore;
+import com.java.redis.internal.protocol.Command;
+import com.java.redis.internal.protocol.RedisReply;
+
+/** LINDEX key index */
+public class LIndexCommand implements CommandHandler {
+    private final DataStore store;
+    public LIndexCommand(DataStore store) { this.store = store; }
+
+    @Override
+    public RedisReply handle(Command cmd) {
+        long index;
+        try {
+            index = ByteString.parseLong(cmd.getArgs().get(1));
+        } catch (NumberFormatException e) {
+            return RedisReply.error("ERR value is not an integer or out of range");
+        }
+        return RedisReply.bulkString(store.lindex(cmd.getArgs().get(0), index));
+    }
+}
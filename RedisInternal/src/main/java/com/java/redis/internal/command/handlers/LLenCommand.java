@@ -0,0 +1,17 @@
+package com.java.redis.internal.command.handlers;
+
+import com.java.redis.internal.command.CommandHandler;
+import com.java.redis.internal.datastore.DataStore;
+import com.java.redis.internal.protocol.Command;
+import com.java.redis.internal.protocol.RedisReply;
+
+/** LLEN key */
+public class LLenCommand implements CommandHandler {
+    private final DataStore store;
+    public LLenCommand(DataStore store) { this.store = store; }
+
+    @Override
+    public RedisReply handle(Command cmd) {
+        return RedisReply.integer(store.llen(cmd.getArgs().get(0)));
+    }
+}
@@ -0,0 +1,53 @@
+package com.java.redis.internal.command.handlers;
+
+import com.java.redis.internal.command.CommandHandler;
+import com.java.redis.internal.datastore.ByteString;
+import com.java.redis.internal.datastore.DataStore;
+import com.java.redis.internal.protocol.Command;
+import com.java.redis.internal.protocol.RedisReply;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * LPOP key [count], and RPOP popping from the tail. Without count the reply is one
+ * element (or nil); with count it is an array of up to count elements.
+ */
+public class LPopCommand implements CommandHandler {
+    private final DataStore store;
+    private final boolean fromTail;
+
+    public LPopCommand(DataStore store) { this(store, false); }
+
+    public LPopCommand(DataStore store, boolean fromTail) {
+        this.store = store;
+        this.fromTail = fromTail;
+    }
+
+    @Override
+    public RedisReply handle(Command cmd) {
+        List<byte[]> args = cmd.getArgs();
+        if (args.size() > 2) {
+            return RedisReply.error("ERR syntax error");
+        }
+        long count = 1;
+        if (args.size() == 2) {
+            try {
+                count = ByteString.parseLong(args.get(1));
+            } catch (NumberFormatException e) {
+                count = -1;
+            }
+            if (count < 0) {
+                return RedisReply.error("ERR value is out of range, must be positive");
+            }
+        }
+        List<byte[]> popped = store.pop(args.get(0), count, fromTail);
+        if (args.size() == 1) {
+            return popped == null || popped.isEmpty() ? RedisReply.nullBulk() : RedisReply.bulkString(popped.get(0));
+        }
+        if (popped == null) {
+            return RedisReply.nullArray();
+        }
+        return RedisReply.array(popped.stream().map(RedisReply::bulkString).collect(Collectors.toList()));
+    }
+}
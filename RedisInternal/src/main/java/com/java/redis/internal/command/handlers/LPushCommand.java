@@ -16,8 +16,8 @@ public class LPushCommand implements CommandHandler {
         if (cmd.getArgs().size() < 2) {
             return RedisReply.error("ERR wrong number of arguments for 'lpush' command");
         }
-        String key = cmd.getArgs().get(0);
-        List<String> vals = cmd.getArgs().subList(1, cmd.getArgs().size());
+        byte[] key = cmd.getArgs().get(0);
+        List<byte[]> vals = cmd.getArgs().subList(1, cmd.getArgs().size());
         int len = store.lpush(key, vals);
         return RedisReply.integer(len);
     }
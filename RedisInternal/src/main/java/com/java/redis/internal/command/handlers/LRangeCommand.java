@@ -0,0 +1,29 @@
+package com.java.redis.internal.command.handlers;
+
+import com.java.redis.internal.command.CommandHandler;
+import com.java.redis.internal.datastore.ByteString;
+import com.java.redis.internal.datastore.DataStore;
+import com.java.redis.internal.protocol.Command;
+import com.java.redis.internal.protocol.RedisReply;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/** LRANGE key start stop */
+public class LRangeCommand implements CommandHandler {
+    private final DataStore store;
+    public LRangeCommand(DataStore store) { this.store = store; }
+
+    @Override
+    public RedisReply handle(Command cmd) {
+        long start, stop;
+        try {
+            start = ByteString.parseLong(cmd.getArgs().get(1));
+            stop  = ByteString.parseLong(cmd.getArgs().get(2));
+        } catch (NumberFormatException e) {
+            return RedisReply.error("ERR value is not an integer or out of range");
+        }
+        List<byte[]> range = store.lrange(cmd.getArgs().get(0), start, stop);
+        return RedisReply.array(range.stream().map(RedisReply::bulkString).collect(Collectors.toList()));
+    }
+}
@@ -0,0 +1,26 @@
+package com.java.redis.internal.command.handlers;
+
+import com.java.redis.internal.command.CommandHandler;
+import com.java.redis.internal.datastore.ByteString;
+import com.java.redis.internal.datastore.DataStore;
+import com.java.redis.internal.protocol.Command;
+import com.java.redis.internal.protocol.RedisReply;
+
+/** LTRIM key start stop */
+public class LTrimCommand implements CommandHandler {
+    private final DataStore store;
+    public LTrimCommand(DataStore store) { this.store = store; }
+
+    @Override
+    public RedisReply handle(Command cmd) {
+        long start, stop;
+        try {
+            start = ByteString.parseLong(cmd.getArgs().get(1));
+            stop  = ByteString.parseLong(cmd.getArgs().get(2));
+        } catch (NumberFormatException e) {
+            return RedisReply.error("ERR value is not an integer or out of range");
+        }
+        store.ltrim(cmd.getArgs().get(0), start, stop);
+        return RedisReply.ok();
+    }
+}
@@ -0,0 +1,28 @@
+package com.java.redis.internal.command.handlers;
+
+import com.java.redis.internal.command.CommandHandler;
+import com.java.redis.internal.datastore.DataStore;
+import com.java.redis.internal.protocol.Command;
+import com.java.redis.internal.protocol.RedisReply;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** MGET key [key ...]: the value of each key, nil where it is missing or not a string. */
+public class MGetCommand implements CommandHandler {
+    private final DataStore store;
+    public MGetCommand(DataStore store) { this.store = store; }
+
+    @Override
+    public RedisReply handle(Command cmd) {
+        if (cmd.getArgs().isEmpty()) {
+            return RedisReply.error("ERR wrong number of arguments for 'mget' command");
+        }
+        List<byte[]> values = store.mget(cmd.getArgs());
+        List<RedisReply> replies = new ArrayList<>(values.size());
+        for (byte[] value : values) {
+            replies.add(RedisReply.bulkString(value));
+        }
+        return RedisReply.array(replies);
+    }
+}
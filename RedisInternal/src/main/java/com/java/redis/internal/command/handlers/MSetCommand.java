@@ -0,0 +1,22 @@
+package com.java.redis.internal.command.handlers;
+
+import com.java.redis.internal.command.CommandHandler;
+import com.java.redis.internal.datastore.DataStore;
+import com.java.redis.internal.protocol.Command;
+import com.java.redis.internal.protocol.RedisReply;
+
+/** MSET key value [key value ...] */
+public class MSetCommand implements CommandHandler {
+    private final DataStore store;
+    public MSetCommand(DataStore store) { this.store = store; }
+
+    @Override
+    public RedisReply handle(Command cmd) {
+        int argc = cmd.getArgs().size();
+        if (argc < 2 || argc % 2 != 0) {
+            return RedisReply.error("ERR wrong number of arguments for 'mset' command");
+        }
+        store.mset(cmd.getArgs());
+        return RedisReply.ok();
+    }
+}
@@ -0,0 +1,77 @@
+package com.java.redis.internal.command.handlers;
+
+import com.java.redis.internal.command.CommandHandler;
+import com.java.redis.internal.datastore.BigKeysScan;
+import com.java.redis.internal.datastore.ByteString;
+import com.java.redis.internal.datastore.DataStore;
+import com.java.redis.internal.protocol.Command;
+import com.java.redis.internal.protocol.RedisReply;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * MEMORY USAGE key [SAMPLES count]: estimated bytes of the key. The estimate is kept
+ * current on every write, so SAMPLES is accepted for compatibility and ignored.
+ *
+ * MEMORY BIGKEYS [SAMPLES count]: start a background scan for the biggest key of each
+ * type, inspecting up to count keys per hash slot (all keys by default). Progress and
+ * results are reported by INFO bigkeys.
+ */
+public class MemoryCommand implements CommandHandler {
+    private final DataStore store;
+    private final BigKeysScan bigKeys;
+
+    public MemoryCommand(DataStore store, BigKeysScan bigKeys) {
+        this.store = store;
+        this.bigKeys = bigKeys;
+    }
+
+    @Override
+    public RedisReply handle(Command cmd) {
+        List<byte[]> args = cmd.getArgs();
+        String sub = new String(args.get(0), StandardCharsets.US_ASCII).toUpperCase(Locale.ROOT);
+        switch (sub) {
+            case "USAGE":
+                if (args.size() != 2 && args.size() != 4) {
+                    return RedisReply.error("ERR wrong number of arguments for 'memory|usage' command");
+                }
+                if (args.size() == 4 && parseSamples(args.get(2), args.get(3)) < 0) {
+                    return RedisReply.error("ERR syntax error");
+                }
+                long bytes = store.memoryUsage(args.get(1));
+                return bytes < 0 ? RedisReply.nullBulk() : RedisReply.integer(bytes);
+            case "BIGKEYS":
+                int samples = 0;
+                if (args.size() == 3) {
+                    samples = parseSamples(args.get(1), args.get(2));
+                    if (samples < 0) {
+                        return RedisReply.error("ERR syntax error");
+                    }
+                } else if (args.size() != 1) {
+                    return RedisReply.error("ERR wrong number of arguments for 'memory|bigkeys' command");
+                }
+                if (!bigKeys.start(samples)) {
+                    return RedisReply.error("ERR bigkeys scan already in progress");
+                }
+                return RedisReply.simpleString("Background bigkeys scan started");
+            default:
+                return RedisReply.error("ERR unknown subcommand '" + sub.toLowerCase(Locale.ROOT)
+                        + "'. Try MEMORY USAGE or MEMORY BIGKEYS.");
+        }
+    }
+
+    /** @return the count of a "SAMPLES count" option, or -1 if malformed */
+    private static int parseSamples(byte[] option, byte[] count) {
+        if (!"SAMPLES".equalsIgnoreCase(new String(option, StandardCharsets.US_ASCII))) {
+            return -1;
+        }
+        try {
+            long n = ByteString.parseLong(count);
+            return n < 0 || n > Integer.MAX_VALUE ? -1 : (int) n;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
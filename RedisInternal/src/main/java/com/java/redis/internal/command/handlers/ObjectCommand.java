@@ -0,0 +1,37 @@
+package com.java.redis.internal.command.handlers;
+
+import com.java.redis.internal.command.CommandHandler;
+import com.java.redis.internal.datastore.DataStore;
+import com.java.redis.internal.protocol.Command;
+import com.java.redis.internal.protocol.RedisReply;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * OBJECT ENCODING key: the internal representation of the key's value, e.g. "listpack"
+ * for a small hash and "hashtable" once it has grown past the packed thresholds.
+ */
+public class ObjectCommand implements CommandHandler {
+    private final DataStore store;
+
+    public ObjectCommand(DataStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public RedisReply handle(Command cmd) {
+        List<byte[]> args = cmd.getArgs();
+        String sub = new String(args.get(0), StandardCharsets.US_ASCII).toUpperCase(Locale.ROOT);
+        if (!"ENCODING".equals(sub)) {
+            return RedisReply.error("ERR unknown subcommand '" + sub.toLowerCase(Locale.ROOT)
+                    + "'. Try OBJECT ENCODING.");
+        }
+        if (args.size() != 2) {
+            return RedisReply.error("ERR wrong number of arguments for 'object|encoding' command");
+        }
+        String encoding = store.objectEncoding(args.get(1));
+        return encoding == null ? RedisReply.nullBulk() : RedisReply.bulkString(encoding);
+    }
+}
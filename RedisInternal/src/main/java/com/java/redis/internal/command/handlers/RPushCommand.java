@@ -0,0 +1,20 @@
+package com.java.redis.internal.command.handlers;
+
+import com.java.redis.internal.command.CommandHandler;
+import com.java.redis.internal.datastore.DataStore;
+import com.java.redis.internal.protocol.Command;
+import com.java.redis.internal.protocol.RedisReply;
+
+import java.util.List;
+
+/** RPUSH key element [element ...]: replies with the new length. */
+public class RPushCommand implements CommandHandler {
+    private final DataStore store;
+    public RPushCommand(DataStore store) { this.store = store; }
+
+    @Override
+    public RedisReply handle(Command cmd) {
+        List<byte[]> vals = cmd.getArgs().subList(1, cmd.getArgs().size());
+        return RedisReply.integer(store.rpush(cmd.getArgs().get(0), vals));
+    }
+}
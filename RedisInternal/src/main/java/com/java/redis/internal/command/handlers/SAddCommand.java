@@ -16,8 +16,8 @@ public class SAddCommand implements CommandHandler {
         if (cmd.getArgs().size() < 2) {
             return RedisReply.error("ERR wrong number of arguments for 'sadd' command");
         }
-        String key = cmd.getArgs().get(0);
-        List<String> members = cmd.getArgs().subList(1, cmd.getArgs().size());
+        byte[] key = cmd.getArgs().get(0);
+        List<byte[]> members = cmd.getArgs().subList(1, cmd.getArgs().size());
         int added = store.sadd(key, members);
         return RedisReply.integer(added);
     }
@@ -6,7 +6,6 @@ import com.java.redis.internal.protocol.Command;
 import com.java.redis.internal.protocol.RedisReply;
 
 import java.util.List;
-import java.util.Set;
 import java.util.stream.Collectors;
 
 public class SMembersCommand implements CommandHandler {
@@ -18,7 +17,7 @@ public class SMembersCommand implements CommandHandler {
         if (cmd.getArgs().size() != 1) {
             return RedisReply.error("ERR wrong number of arguments for 'smembers' command");
         }
-        Set<String> members = store.smembers(cmd.getArgs().get(0));
+        List<byte[]> members = store.smembers(cmd.getArgs().get(0));
         List<RedisReply> replies = members.stream()
                 .map(RedisReply::bulkString)
                 .collect(Collectors.toList());
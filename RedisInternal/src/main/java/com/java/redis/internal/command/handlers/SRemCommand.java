@@ -16,8 +16,8 @@ public class SRemCommand implements CommandHandler {
         if (cmd.getArgs().size() < 2) {
             return RedisReply.error("ERR wrong number of arguments for 'srem' command");
         }
-        String key = cmd.getArgs().get(0);
-        List<String> members = cmd.getArgs().subList(1, cmd.getArgs().size());
+        byte[] key = cmd.getArgs().get(0);
+        List<byte[]> members = cmd.getArgs().subList(1, cmd.getArgs().size());
         int removed = store.srem(key, members);
         return RedisReply.integer(removed);
     }
@@ -0,0 +1,110 @@
+package com.java.redis.internal.command.handlers;
+
+import com.java.redis.internal.command.CommandHandler;
+import com.java.redis.internal.constants.DataType;
+import com.java.redis.internal.datastore.ByteString;
+import com.java.redis.internal.datastore.DataStore;
+import com.java.redis.internal.datastore.GlobPattern;
+import com.java.redis.internal.datastore.ScanResult;
+import com.java.redis.internal.protocol.Command;
+import com.java.redis.internal.protocol.RedisReply;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * SCAN cursor [MATCH pattern] [COUNT count] [TYPE type], and with a collection type
+ * HSCAN / SSCAN / ZSCAN key cursor [MATCH pattern] [COUNT count].
+ * Replies with the next cursor (0 when the iteration is complete) and the items found.
+ */
+public class ScanCommand implements CommandHandler {
+    private static final int DEFAULT_COUNT = 10;
+
+    private final DataStore store;
+    private final DataType collection; // null for SCAN over the keyspace
+
+    public ScanCommand(DataStore store) { this(store, null); }
+
+    public ScanCommand(DataStore store, DataType collection) {
+        this.store = store;
+        this.collection = collection;
+    }
+
+    @Override
+    public RedisReply handle(Command cmd) {
+        List<byte[]> args = cmd.getArgs();
+        int at = collection == null ? 0 : 1;
+        long cursor = parseCursor(args.get(at++));
+        if (cursor < 0) {
+            return RedisReply.error("ERR invalid cursor");
+        }
+        GlobPattern match = null;
+        int count = DEFAULT_COUNT;
+        DataType type = null;
+        boolean unknownType = false;
+        for (; at < args.size(); at += 2) {
+            String option = new String(args.get(at), StandardCharsets.US_ASCII).toUpperCase(Locale.ROOT);
+            if (at + 1 >= args.size()) {
+                return RedisReply.error("ERR syntax error");
+            }
+            byte[] value = args.get(at + 1);
+            if (option.equals("MATCH")) {
+                match = GlobPattern.compile(value);
+            } else if (option.equals("COUNT")) {
+                long n;
+                try {
+                    n = ByteString.parseLong(value);
+                } catch (NumberFormatException e) {
+                    return RedisReply.error("ERR value is not an integer or out of range");
+                }
+                if (n < 1) {
+                    return RedisReply.error("ERR syntax error");
+                }
+                count = (int) Math.min(n, Integer.MAX_VALUE - 8);
+            } else if (option.equals("TYPE") && collection == null) {
+                try {
+                    type = DataType.valueOf(new String(value, StandardCharsets.US_ASCII).toUpperCase(Locale.ROOT));
+                } catch (IllegalArgumentException e) {
+                    unknownType = true; // like Redis: an unknown type matches nothing
+                }
+            } else {
+                return RedisReply.error("ERR syntax error");
+            }
+        }
+
+        ScanResult result;
+        if (collection == null) {
+            result = store.scan(cursor, count, match, type);
+            if (unknownType) {
+                result = new ScanResult(result.getCursor(), List.of());
+            }
+        } else {
+            byte[] key = args.get(0);
+            switch (collection) {
+                case HASH: result = store.hscan(key, cursor, count, match); break;
+                case SET:  result = store.sscan(key, cursor, count, match); break;
+                case ZSET: result = store.zscan(key, cursor, count, match); break;
+                default: throw new IllegalArgumentException("no scan for " + collection);
+            }
+        }
+        List<RedisReply> items = new ArrayList<>(result.getItems().size());
+        for (byte[] item : result.getItems()) {
+            items.add(RedisReply.bulkString(item));
+        }
+        return RedisReply.array(List.of(
+                RedisReply.bulkString(ByteString.fromLong(result.getCursor())),
+                RedisReply.array(items)));
+    }
+
+    /** @return the cursor, or -1 if it is not an unsigned integer */
+    private static long parseCursor(byte[] b) {
+        try {
+            long c = ByteString.parseLong(b);
+            return c < 0 ? -1 : c;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -1,40 +1,64 @@
 package com.java.redis.internal.command.handlers;
 
 import com.java.redis.internal.command.CommandHandler;
+import com.java.redis.internal.datastore.ByteString;
 import com.java.redis.internal.datastore.DataStore;
 import com.java.redis.internal.protocol.Command;
 import com.java.redis.internal.protocol.RedisReply;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
 public class SetCommand implements CommandHandler {
+    private static final Set<String> EXPIRY_OPTIONS = Set.of("EX", "PX", "EXAT", "PXAT");
     private final DataStore dataStore;
     public SetCommand(DataStore dataStore) {
         this.dataStore = dataStore;
     }
+    /**
+     * SET key value [EX seconds | PX milliseconds | EXAT unix-time-seconds | PXAT unix-time-milliseconds].
+     * The append-only file logs every form as PXAT.
+     */
     @Override
     public RedisReply handle(Command cmd) {
         int argc = cmd.getArgs().size();
-        if(argc != 2 && argc != 4) {
+        if(argc < 2) {
             return RedisReply.error("ERR wrong number of arguments for 'set' command");
         }
-        String key = cmd.getArgs().get(0);
-        String value = cmd.getArgs().get(1);
+        byte[] key = cmd.getArgs().get(0);
+        byte[] value = cmd.getArgs().get(1);
         Long exSeconds = null;
-        if(argc==4){
-            String opt = cmd.getArgs().get(2).toUpperCase();
-            if(!"EX".equals(opt)) {
+        Long expireAtMillis = null;
+        for (int i = 2; i < argc; i += 2) {
+            String opt = new String(cmd.getArgs().get(i), StandardCharsets.US_ASCII).toUpperCase();
+            if(!EXPIRY_OPTIONS.contains(opt) || i + 1 == argc || exSeconds != null || expireAtMillis != null) {
                 return RedisReply.error("ERR syntax error");
             }
+            long n;
             try{
-                exSeconds = Long.parseLong(cmd.getArgs().get(3));
-                if(exSeconds <0){
+                n = ByteString.parseLong(cmd.getArgs().get(i + 1));
+                if(n <0){
                     return RedisReply.error("ERR value is not an integer or out of range");
                 }
             } catch (NumberFormatException e) {
-                e.printStackTrace();
                 return RedisReply.error("ERR value is not an integer or out of range");
             }
+            try {
+                switch (opt) {
+                    case "EX" -> exSeconds = n;
+                    case "PX" -> expireAtMillis = Math.addExact(System.currentTimeMillis(), n);
+                    case "EXAT" -> expireAtMillis = Math.multiplyExact(n, 1000L);
+                    default -> expireAtMillis = n;
+                }
+            } catch (ArithmeticException e) {
+                return RedisReply.error("ERR invalid expire time in 'set' command");
+            }
+        }
+        if (expireAtMillis != null) {
+            dataStore.setStringExpiringAt(key, value, expireAtMillis);
+        } else {
+            dataStore.setString(key, value, exSeconds);
         }
-        dataStore.setString(key, value, exSeconds);
         return RedisReply.ok();
     }
 }
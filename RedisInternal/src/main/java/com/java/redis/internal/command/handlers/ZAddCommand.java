@@ -1,28 +1,41 @@
 package com.java.redis.internal.command.handlers;
 
 import com.java.redis.internal.command.CommandHandler;
+import com.java.redis.internal.datastore.ByteString;
 import com.java.redis.internal.datastore.DataStore;
 import com.java.redis.internal.protocol.Command;
 import com.java.redis.internal.protocol.RedisReply;
 
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ZADD key score member [score member ...]: replies with the number of members added.
+ * Every score is parsed before anything is added, so a bad one changes nothing.
+ */
 public class ZAddCommand implements CommandHandler {
     private final DataStore store;
     public ZAddCommand(DataStore store) { this.store = store; }
 
     @Override
     public RedisReply handle(Command cmd) {
-        if (cmd.getArgs().size() != 3) {
+        List<byte[]> args = cmd.getArgs();
+        if (args.size() < 3 || args.size() % 2 == 0) {
             return RedisReply.error("ERR wrong number of arguments for 'zadd' command");
         }
-        String key = cmd.getArgs().get(0);
-        double score;
-        try {
-            score = Double.parseDouble(cmd.getArgs().get(1));
-        } catch (NumberFormatException e) {
-            return RedisReply.error("ERR value is not a valid float");
+        byte[] key = args.get(0);
+        int pairs = (args.size() - 1) / 2;
+        double[] scores = new double[pairs];
+        List<byte[]> members = new ArrayList<>(pairs);
+        for (int i = 0; i < pairs; i++) {
+            try {
+                scores[i] = ByteString.parseDouble(args.get(1 + 2 * i));
+            } catch (NumberFormatException e) {
+                return RedisReply.error("ERR value is not a valid float");
+            }
+            members.add(args.get(2 + 2 * i));
         }
-        String member = cmd.getArgs().get(2);
-        int added = store.zadd(key, score, member);
+        int added = store.zadd(key, scores, members);
         return RedisReply.integer(added);
     }
 }
@@ -0,0 +1,17 @@
+package com.java.redis.internal.command.handlers;
+
+import com.java.redis.internal.command.CommandHandler;
+import com.java.redis.internal.datastore.DataStore;
+import com.java.redis.internal.protocol.Command;
+import com.java.redis.internal.protocol.RedisReply;
+
+/** ZCARD key */
+public class ZCardCommand implements CommandHandler {
+    private final DataStore store;
+    public ZCardCommand(DataStore store) { this.store = store; }
+
+    @Override
+    public RedisReply handle(Command cmd) {
+        return RedisReply.integer(store.zcard(cmd.getArgs().get(0)));
+    }
+}
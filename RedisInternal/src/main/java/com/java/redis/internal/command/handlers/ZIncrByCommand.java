@@ -0,0 +1,25 @@
+package com.java.redis.internal.command.handlers;
+
+import com.java.redis.internal.command.CommandHandler;
+import com.java.redis.internal.datastore.ByteString;
+import com.java.redis.internal.datastore.DataStore;
+import com.java.redis.internal.protocol.Command;
+import com.java.redis.internal.protocol.RedisReply;
+
+/** ZINCRBY key increment member: replies with the new score. */
+public class ZIncrByCommand implements CommandHandler {
+    private final DataStore store;
+    public ZIncrByCommand(DataStore store) { this.store = store; }
+
+    @Override
+    public RedisReply handle(Command cmd) {
+        double increment;
+        try {
+            increment = ByteString.parseDouble(cmd.getArgs().get(1));
+        } catch (NumberFormatException e) {
+            return RedisReply.error("ERR value is not a valid float");
+        }
+        double score = store.zincrby(cmd.getArgs().get(0), increment, cmd.getArgs().get(2));
+        return RedisReply.bulkString(ByteString.fromDouble(score));
+    }
+}
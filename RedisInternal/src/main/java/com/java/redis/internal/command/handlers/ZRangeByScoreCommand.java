@@ -0,0 +1,53 @@
+package com.java.redis.internal.command.handlers;
+
+import com.java.redis.internal.command.CommandHandler;
+import com.java.redis.internal.datastore.ByteString;
+import com.java.redis.internal.datastore.DataStore;
+import com.java.redis.internal.datastore.value.ScoreRange;
+import com.java.redis.internal.protocol.Command;
+import com.java.redis.internal.protocol.RedisReply;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/** ZRANGEBYSCORE key min max [WITHSCORES] [LIMIT offset count] */
+public class ZRangeByScoreCommand implements CommandHandler {
+    private final DataStore store;
+    public ZRangeByScoreCommand(DataStore store) { this.store = store; }
+
+    @Override
+    public RedisReply handle(Command cmd) {
+        List<byte[]> args = cmd.getArgs();
+        ScoreRange range;
+        try {
+            range = ScoreRange.parse(args.get(1), args.get(2));
+        } catch (NumberFormatException e) {
+            return RedisReply.error("ERR min or max is not a float");
+        }
+        boolean withScores = false;
+        long offset = 0;
+        long count = -1;
+        for (int i = 3; i < args.size(); i++) {
+            String opt = new String(args.get(i), StandardCharsets.US_ASCII);
+            if ("WITHSCORES".equalsIgnoreCase(opt)) {
+                withScores = true;
+            } else if ("LIMIT".equalsIgnoreCase(opt) && i + 2 < args.size()) {
+                try {
+                    offset = ByteString.parseLong(args.get(i + 1));
+                    count = ByteString.parseLong(args.get(i + 2));
+                } catch (NumberFormatException e) {
+                    return RedisReply.error("ERR value is not an integer or out of range");
+                }
+                i += 2;
+            } else {
+                return RedisReply.error("ERR syntax error");
+            }
+        }
+        List<byte[]> members = store.zrangeByScore(args.get(0), range, offset, count, withScores);
+        List<RedisReply> replies = members.stream()
+                .map(RedisReply::bulkString)
+                .collect(Collectors.toList());
+        return RedisReply.array(replies);
+    }
+}
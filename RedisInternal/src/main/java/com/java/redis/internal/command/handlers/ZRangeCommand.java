@@ -1,31 +1,46 @@
 package com.java.redis.internal.command.handlers;
 
 import com.java.redis.internal.command.CommandHandler;
+import com.java.redis.internal.datastore.ByteString;
 import com.java.redis.internal.datastore.DataStore;
 import com.java.redis.internal.protocol.Command;
 import com.java.redis.internal.protocol.RedisReply;
 
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.stream.Collectors;
 
+/** ZRANGE key start stop [WITHSCORES], and ZREVRANGE with the same arguments. */
 public class ZRangeCommand implements CommandHandler {
     private final DataStore store;
-    public ZRangeCommand(DataStore store) { this.store = store; }
+    private final boolean reverse;
+
+    public ZRangeCommand(DataStore store) { this(store, false); }
+
+    public ZRangeCommand(DataStore store, boolean reverse) {
+        this.store = store;
+        this.reverse = reverse;
+    }
 
     @Override
     public RedisReply handle(Command cmd) {
-        if (cmd.getArgs().size() != 3) {
-            return RedisReply.error("ERR wrong number of arguments for 'zrange' command");
+        List<byte[]> args = cmd.getArgs();
+        if (args.size() != 3 && args.size() != 4) {
+            return RedisReply.error("ERR syntax error");
+        }
+        boolean withScores = args.size() == 4;
+        if (withScores && !"WITHSCORES".equalsIgnoreCase(new String(args.get(3), StandardCharsets.US_ASCII))) {
+            return RedisReply.error("ERR syntax error");
         }
-        String key = cmd.getArgs().get(0);
-        int start, stop;
+        byte[] key = args.get(0);
+        long start, stop;
         try {
-            start = Integer.parseInt(cmd.getArgs().get(1));
-            stop  = Integer.parseInt(cmd.getArgs().get(2));
+            start = ByteString.parseLong(args.get(1));
+            stop  = ByteString.parseLong(args.get(2));
         } catch (NumberFormatException e) {
             return RedisReply.error("ERR value is not an integer or out of range");
         }
-        List<String> members = store.zrange(key, start, stop);
+        List<byte[]> members = store.zrange(key, start, stop, reverse, withScores);
         List<RedisReply> replies = members.stream()
                 .map(RedisReply::bulkString)
                 .collect(Collectors.toList());
@@ -0,0 +1,25 @@
+package com.java.redis.internal.command.handlers;
+
+import com.java.redis.internal.command.CommandHandler;
+import com.java.redis.internal.datastore.DataStore;
+import com.java.redis.internal.protocol.Command;
+import com.java.redis.internal.protocol.RedisReply;
+
+/** ZRANK key member, and ZREVRANK counting from the highest score. */
+public class ZRankCommand implements CommandHandler {
+    private final DataStore store;
+    private final boolean reverse;
+
+    public ZRankCommand(DataStore store) { this(store, false); }
+
+    public ZRankCommand(DataStore store, boolean reverse) {
+        this.store = store;
+        this.reverse = reverse;
+    }
+
+    @Override
+    public RedisReply handle(Command cmd) {
+        long rank = store.zrank(cmd.getArgs().get(0), cmd.getArgs().get(1), reverse);
+        return rank < 0 ? RedisReply.nullBulk() : RedisReply.integer(rank);
+    }
+}
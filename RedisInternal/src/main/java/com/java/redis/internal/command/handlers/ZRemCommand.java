@@ -0,0 +1,20 @@
+package com.java.redis.internal.command.handlers;
+
+import com.java.redis.internal.command.CommandHandler;
+import com.java.redis.internal.datastore.DataStore;
+import com.java.redis.internal.protocol.Command;
+import com.java.redis.internal.protocol.RedisReply;
+
+import java.util.List;
+
+/** ZREM key member [member ...] */
+public class ZRemCommand implements CommandHandler {
+    private final DataStore store;
+    public ZRemCommand(DataStore store) { this.store = store; }
+
+    @Override
+    public RedisReply handle(Command cmd) {
+        List<byte[]> members = cmd.getArgs().subList(1, cmd.getArgs().size());
+        return RedisReply.integer(store.zrem(cmd.getArgs().get(0), members));
+    }
+}
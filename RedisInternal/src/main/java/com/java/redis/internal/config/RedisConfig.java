@@ -3,15 +3,45 @@ package com.java.redis.internal.config;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Locale;
 import java.util.Optional;
 
 public class RedisConfig {
     private final int port;
-    private final String persistenceMode; // "rdb" or "none"
+    private final String persistenceMode; // "rdb", "aof" or "none"
     private final Path rdbFilePath;
     private final int rdbSnapshotIntervalSeconds;
+    private final int rdbLoadThreads;     // threads decoding the snapshot at startup
+    private final boolean rdbLazyLoad;    // serve clients while the snapshot loads
+    private final int rdbCompressionLevel; // Deflater level of snapshot blocks; 0 = uncompressed
+    private final int rdbSaveThreads;      // threads compressing snapshot blocks
+    private final boolean rdbDeltaSnapshots; // save only the keys changed since the last save
+    private final int rdbDeltaCompactPercentage; // delta size, as a share of the base, that triggers a merge
+    private final Path aofFilePath;
+    private final String appendFsync;     // "always", "everysec" or "no"
+    private final int aofRewritePercentage; // growth since the last rewrite that triggers one; 0 = never
+    private final long aofRewriteMinSize;
     private final int nettyBossThreads;
     private final int nettyWorkerThreads;
+    private final String commandExecutionMode; // "inline", "offload" or "sharded"
+    private final String nettyTransport; // "auto", "nio", "epoll" or "io_uring"
+    private final int nettyAcceptors;   // > 1 binds that many SO_REUSEPORT listeners
+    private final boolean tcpNoDelay;
+    private final int socketSendBufferSize;    // 0 = OS default
+    private final int socketReceiveBufferSize; // 0 = OS default
+    private final int tcpBacklog;
+    private final int activeExpireHz;          // active expire cycles per second
+    private final int activeExpireCpuPercent;  // share of each cycle's period it may run for
+    private final long maxMemoryBytes;         // 0 = unlimited
+    private final String maxMemoryPolicy;      // "noeviction", "allkeys-lru", "allkeys-lfu" or "volatile-ttl"
+    private final int maxMemorySamples;
+    // Largest hashes, sets and sorted sets kept in the packed listpack encoding
+    private final int hashMaxListpackEntries;
+    private final int hashMaxListpackValue;
+    private final int setMaxListpackEntries;
+    private final int setMaxListpackValue;
+    private final int zsetMaxListpackEntries;
+    private final int zsetMaxListpackValue;
 
     // add getters...
 
@@ -27,22 +57,160 @@ public class RedisConfig {
         int interval = Optional.ofNullable(System.getenv("RDB_SNAPSHOT_INTERVAL"))
                 .map(Integer::parseInt)
                 .orElse(60);
+        int loadThreads = Optional.ofNullable(System.getenv("RDB_LOAD_THREADS"))
+                .map(Integer::parseInt)
+                .orElse(Runtime.getRuntime().availableProcessors());
+        boolean lazyLoad = Optional.ofNullable(System.getenv("RDB_LAZY_LOAD"))
+                .map(Boolean::parseBoolean)
+                .orElse(false);
+        int compressionLevel = Optional.ofNullable(System.getenv("RDB_COMPRESSION_LEVEL"))
+                .map(Integer::parseInt)
+                .orElse(0);
+        int saveThreads = Optional.ofNullable(System.getenv("RDB_SAVE_THREADS"))
+                .map(Integer::parseInt)
+                .orElse(Runtime.getRuntime().availableProcessors());
+        boolean deltaSnapshots = Optional.ofNullable(System.getenv("RDB_DELTA_SNAPSHOTS"))
+                .map(Boolean::parseBoolean)
+                .orElse(false);
+        int deltaCompactPercentage = Optional.ofNullable(System.getenv("RDB_DELTA_COMPACT_PERCENTAGE"))
+                .map(Integer::parseInt)
+                .orElse(100);
+        String aofPath = Optional.ofNullable(System.getenv("AOF_FILE_PATH"))
+                .orElse("appendonly.aof");
+        String appendFsync = Optional.ofNullable(System.getenv("APPENDFSYNC"))
+                .orElse("everysec");
+        int rewritePercentage = Optional.ofNullable(System.getenv("AUTO_AOF_REWRITE_PERCENTAGE"))
+                .map(Integer::parseInt)
+                .orElse(100);
+        long rewriteMinSize = Optional.ofNullable(System.getenv("AUTO_AOF_REWRITE_MIN_SIZE"))
+                .map(RedisConfig::parseMemory)
+                .orElse(64L * 1024 * 1024);
         int boss = Optional.ofNullable(System.getenv("NETTY_BOSS_THREADS"))
                 .map(Integer::parseInt)
                 .orElse(1);
         int worker = Optional.ofNullable(System.getenv("NETTY_WORKER_THREADS"))
                 .map(Integer::parseInt)
                 .orElse(Runtime.getRuntime().availableProcessors() * 2);
-        return new RedisConfig(port, pm, Paths.get(path), interval, boss, worker);
+        String execMode = Optional.ofNullable(System.getenv("COMMAND_EXECUTION_MODE"))
+                .orElse("inline");
+        String transport = Optional.ofNullable(System.getenv("NETTY_TRANSPORT"))
+                .orElse("auto");
+        int acceptors = Optional.ofNullable(System.getenv("NETTY_ACCEPTORS"))
+                .map(Integer::parseInt)
+                .orElse(1);
+        boolean noDelay = Optional.ofNullable(System.getenv("TCP_NODELAY"))
+                .map(Boolean::parseBoolean)
+                .orElse(true);
+        int sndBuf = Optional.ofNullable(System.getenv("SO_SNDBUF"))
+                .map(Integer::parseInt)
+                .orElse(0);
+        int rcvBuf = Optional.ofNullable(System.getenv("SO_RCVBUF"))
+                .map(Integer::parseInt)
+                .orElse(0);
+        int backlog = Optional.ofNullable(System.getenv("TCP_BACKLOG"))
+                .map(Integer::parseInt)
+                .orElse(511);
+        int expireHz = Optional.ofNullable(System.getenv("ACTIVE_EXPIRE_HZ"))
+                .map(Integer::parseInt)
+                .orElse(10);
+        int expireCpu = Optional.ofNullable(System.getenv("ACTIVE_EXPIRE_CPU_PERCENT"))
+                .map(Integer::parseInt)
+                .orElse(25);
+        long maxMemory = Optional.ofNullable(System.getenv("MAXMEMORY"))
+                .map(RedisConfig::parseMemory)
+                .orElse(0L);
+        String maxMemoryPolicy = Optional.ofNullable(System.getenv("MAXMEMORY_POLICY"))
+                .orElse("noeviction");
+        int maxMemorySamples = Optional.ofNullable(System.getenv("MAXMEMORY_SAMPLES"))
+                .map(Integer::parseInt)
+                .orElse(5);
+        int hashEntries = Optional.ofNullable(System.getenv("HASH_MAX_LISTPACK_ENTRIES"))
+                .map(Integer::parseInt)
+                .orElse(128);
+        int hashValue = Optional.ofNullable(System.getenv("HASH_MAX_LISTPACK_VALUE"))
+                .map(Integer::parseInt)
+                .orElse(64);
+        int setEntries = Optional.ofNullable(System.getenv("SET_MAX_LISTPACK_ENTRIES"))
+                .map(Integer::parseInt)
+                .orElse(128);
+        int setValue = Optional.ofNullable(System.getenv("SET_MAX_LISTPACK_VALUE"))
+                .map(Integer::parseInt)
+                .orElse(64);
+        int zsetEntries = Optional.ofNullable(System.getenv("ZSET_MAX_LISTPACK_ENTRIES"))
+                .map(Integer::parseInt)
+                .orElse(128);
+        int zsetValue = Optional.ofNullable(System.getenv("ZSET_MAX_LISTPACK_VALUE"))
+                .map(Integer::parseInt)
+                .orElse(64);
+        return new RedisConfig(port, pm, Paths.get(path), interval, loadThreads, lazyLoad,
+                compressionLevel, saveThreads, deltaSnapshots, deltaCompactPercentage, Paths.get(aofPath), appendFsync,
+                rewritePercentage, rewriteMinSize, boss, worker, execMode,
+                transport, acceptors, noDelay, sndBuf, rcvBuf, backlog, expireHz, expireCpu,
+                maxMemory, maxMemoryPolicy, maxMemorySamples,
+                hashEntries, hashValue, setEntries, setValue, zsetEntries, zsetValue);
     }
 
-    private RedisConfig(int port, String pm, Path rdbPath, int interval, int boss, int worker) {
+    /** Parse a size like redis.conf does: "1048576", "100kb", "64mb", "2gb". */
+    static long parseMemory(String value) {
+        String v = value.trim().toLowerCase(Locale.ROOT);
+        long unit = 1;
+        if (v.endsWith("kb")) {
+            unit = 1024;
+        } else if (v.endsWith("mb")) {
+            unit = 1024 * 1024;
+        } else if (v.endsWith("gb")) {
+            unit = 1024 * 1024 * 1024;
+        }
+        if (unit != 1) {
+            v = v.substring(0, v.length() - 2);
+        } else if (v.endsWith("b")) {
+            v = v.substring(0, v.length() - 1);
+        }
+        return Long.parseLong(v.trim()) * unit;
+    }
+
+    private RedisConfig(int port, String pm, Path rdbPath, int interval, int loadThreads, boolean lazyLoad,
+                        int compressionLevel, int saveThreads, boolean deltaSnapshots,
+                        int deltaCompactPercentage, Path aofPath, String appendFsync,
+                        int rewritePercentage, long rewriteMinSize, int boss, int worker, String execMode,
+                        String transport, int acceptors, boolean noDelay, int sndBuf, int rcvBuf, int backlog,
+                        int expireHz, int expireCpu, long maxMemory, String maxMemoryPolicy,
+                        int maxMemorySamples, int hashEntries, int hashValue, int setEntries,
+                        int setValue, int zsetEntries, int zsetValue) {
         this.port = port;
         this.persistenceMode = pm;
         this.rdbFilePath = rdbPath;
         this.rdbSnapshotIntervalSeconds = interval;
+        this.rdbLoadThreads = loadThreads;
+        this.rdbLazyLoad = lazyLoad;
+        this.rdbCompressionLevel = compressionLevel;
+        this.rdbSaveThreads = saveThreads;
+        this.rdbDeltaSnapshots = deltaSnapshots;
+        this.rdbDeltaCompactPercentage = deltaCompactPercentage;
+        this.aofFilePath = aofPath;
+        this.appendFsync = appendFsync;
+        this.aofRewritePercentage = rewritePercentage;
+        this.aofRewriteMinSize = rewriteMinSize;
         this.nettyBossThreads = boss;
         this.nettyWorkerThreads = worker;
+        this.commandExecutionMode = execMode;
+        this.nettyTransport = transport;
+        this.nettyAcceptors = acceptors;
+        this.tcpNoDelay = noDelay;
+        this.socketSendBufferSize = sndBuf;
+        this.socketReceiveBufferSize = rcvBuf;
+        this.tcpBacklog = backlog;
+        this.activeExpireHz = expireHz;
+        this.activeExpireCpuPercent = expireCpu;
+        this.maxMemoryBytes = maxMemory;
+        this.maxMemoryPolicy = maxMemoryPolicy;
+        this.maxMemorySamples = maxMemorySamples;
+        this.hashMaxListpackEntries = hashEntries;
+        this.hashMaxListpackValue = hashValue;
+        this.setMaxListpackEntries = setEntries;
+        this.setMaxListpackValue = setValue;
+        this.zsetMaxListpackEntries = zsetEntries;
+        this.zsetMaxListpackValue = zsetValue;
     }
 
     // getters...
@@ -63,6 +231,46 @@ public class RedisConfig {
         return rdbSnapshotIntervalSeconds;
     }
 
+    public int getRdbLoadThreads() {
+        return rdbLoadThreads;
+    }
+
+    public boolean isRdbLazyLoad() {
+        return rdbLazyLoad;
+    }
+
+    public int getRdbCompressionLevel() {
+        return rdbCompressionLevel;
+    }
+
+    public int getRdbSaveThreads() {
+        return rdbSaveThreads;
+    }
+
+    public boolean isRdbDeltaSnapshots() {
+        return rdbDeltaSnapshots;
+    }
+
+    public int getRdbDeltaCompactPercentage() {
+        return rdbDeltaCompactPercentage;
+    }
+
+    public Path getAofFilePath() {
+        return aofFilePath;
+    }
+
+    public String getAppendFsync() {
+        return appendFsync;
+    }
+
+    public int getAofRewritePercentage() {
+        return aofRewritePercentage;
+    }
+
+    public long getAofRewriteMinSize() {
+        return aofRewriteMinSize;
+    }
+
     public int getNettyBossThreads() {
         return nettyBossThreads;
     }
@@ -71,4 +279,76 @@ public class RedisConfig {
         return nettyWorkerThreads;
     }
 
+    public String getCommandExecutionMode() {
+        return commandExecutionMode;
+    }
+
+    public String getNettyTransport() {
+        return nettyTransport;
+    }
+
+    public int getNettyAcceptors() {
+        return nettyAcceptors;
+    }
+
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    public int getSocketSendBufferSize() {
+        return socketSendBufferSize;
+    }
+
+    public int getSocketReceiveBufferSize() {
+        return socketReceiveBufferSize;
+    }
+
+    public int getTcpBacklog() {
+        return tcpBacklog;
+    }
+
+    public int getActiveExpireHz() {
+        return activeExpireHz;
+    }
+
+    public int getActiveExpireCpuPercent() {
+        return activeExpireCpuPercent;
+    }
+
+    public long getMaxMemoryBytes() {
+        return maxMemoryBytes;
+    }
+
+    public String getMaxMemoryPolicy() {
+        return maxMemoryPolicy;
+    }
+
+    public int getMaxMemorySamples() {
+        return maxMemorySamples;
+    }
+
+    public int getHashMaxListpackEntries() {
+        return hashMaxListpackEntries;
+    }
+
+    public int getHashMaxListpackValue() {
+        return hashMaxListpackValue;
+    }
+
+    public int getSetMaxListpackEntries() {
+        return setMaxListpackEntries;
+    }
+
+    public int getSetMaxListpackValue() {
+        return setMaxListpackValue;
+    }
+
+    public int getZsetMaxListpackEntries() {
+        return zsetMaxListpackEntries;
+    }
+
+    public int getZsetMaxListpackValue() {
+        return zsetMaxListpackValue;
+    }
+
 }
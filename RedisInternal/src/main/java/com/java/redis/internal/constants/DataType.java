@@ -1,5 +1,5 @@
 package com.java.redis.internal.constants;
 
 public enum DataType {
-    STRING, LIST, SET, HASH, ZSET
+    STRING, LIST, SET, HASH, ZSET, BLOOM
 }
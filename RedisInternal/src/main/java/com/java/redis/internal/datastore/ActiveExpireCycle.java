@@ -0,0 +1,78 @@
+package com.java.redis.internal.datastore;
+
+import com.java.redis.internal.stats.ServerStats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ActiveExpireCycle reclaims keys whose TTL has passed even if no command touches them again.
+ *
+ * It runs hz times per second and each run stops after cpuPercent of its period, like
+ * Redis' slow expire cycle, so a burst of expiring keys is spread over several ticks
+ * instead of stalling the thread it runs on. A due key is reclaimed within one period
+ * plus one index bucket, as long as the budget keeps up with the expiry rate.
+ */
+public class ActiveExpireCycle {
+    private final DataStore store;
+    private final ServerStats stats;
+    private final long periodMicros;
+    private final long budgetNanos;
+
+    public ActiveExpireCycle(DataStore store, ServerStats stats, int hz, int cpuPercent) {
+        if (hz < 1 || hz > 500) {
+            throw new IllegalArgumentException("active expire hz must be between 1 and 500: " + hz);
+        }
+        if (cpuPercent < 1 || cpuPercent > 100) {
+            throw new IllegalArgumentException("active expire CPU percent must be between 1 and 100: " + cpuPercent);
+        }
+        this.store = store;
+        this.stats = stats;
+        this.periodMicros = 1_000_000L / hz;
+        this.budgetNanos = periodMicros * 1000 * cpuPercent / 100;
+    }
+
+    /**
+     * Schedule the cycle. With a single executor one task expires every shard; with one
+     * executor per shard (the owning event loops in SHARDED mode) executor i expires shard i.
+     */
+    public List<ScheduledFuture<?>> start(List<? extends ScheduledExecutorService> executors) {
+        int shards = store.getShardCount();
+        List<ScheduledFuture<?>> tasks = new ArrayList<>();
+        if (executors.size() == 1) {
+            tasks.add(executors.get(0).scheduleAtFixedRate(
+                    () -> runCycle(0, shards), periodMicros, periodMicros, TimeUnit.MICROSECONDS));
+            return tasks;
+        }
+        if (executors.size() != shards) {
+            throw new IllegalArgumentException("Need one executor, or one per shard: got "
+                    + executors.size() + " for " + shards + " shards");
+        }
+        for (int i = 0; i < shards; i++) {
+            int shard = i;
+            tasks.add(executors.get(i).scheduleAtFixedRate(
+                    () -> runCycle(shard, shard + 1), periodMicros, periodMicros, TimeUnit.MICROSECONDS));
+        }
+        return tasks;
+    }
+
+    /** Expire due keys of shards [from, to) within one tick's budget. */
+    void runCycle(int from, int to) {
+        long start = System.nanoTime();
+        long deadline = start + budgetNanos;
+        int expired = 0;
+        try {
+            for (int shard = from; shard < to; shard++) {
+                expired += store.expireDueKeys(shard, deadline);
+            }
+        } catch (RuntimeException e) {
+            // A failed tick must not cancel the schedule
+            System.err.println("[ERROR] Active expire cycle failed: " + e);
+        }
+        long end = System.nanoTime();
+        stats.recordExpireCycle(expired, end - start, end >= deadline);
+    }
+}
@@ -0,0 +1,150 @@
+package com.java.redis.internal.datastore;
+
+import com.java.redis.internal.constants.DataType;
+
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A background scan for the biggest key of each type, in the spirit of redis-cli --bigkeys.
+ *
+ * The scan runs on its own virtual thread and walks the hash slots one at a time,
+ * reading each slot map through its weakly consistent iterator: writers are never
+ * blocked, and no event loop spends time on it. It pauses briefly every PACE_SLOTS
+ * slots so a large keyspace is covered at a bounded rate. With a sample limit only the
+ * first keys of every slot are inspected, which makes the scan a uniform sample.
+ *
+ * Results are published when the scan completes and stay readable until the next one.
+ */
+public class BigKeysScan {
+    private static final int PACE_SLOTS = 128;
+    private static final long PACE_NANOS = 1_000_000;
+
+    private final DataStore store;
+    private volatile Thread running;
+    private volatile int slotsDone;
+    private volatile Report lastReport;
+
+    public BigKeysScan(DataStore store) {
+        this.store = store;
+    }
+
+    /** Result of a completed scan. */
+    public static final class Report {
+        private final long keysScanned;
+        private final long durationMillis;
+        // Indexed by DataType ordinal
+        private final long[] keys;
+        private final long[] bytes;
+        private final ByteString[] biggestKey;
+        private final long[] biggestBytes;
+
+        private Report(long keysScanned, long durationMillis, long[] keys, long[] bytes,
+                       ByteString[] biggestKey, long[] biggestBytes) {
+            this.keysScanned = keysScanned;
+            this.durationMillis = durationMillis;
+            this.keys = keys;
+            this.bytes = bytes;
+            this.biggestKey = biggestKey;
+            this.biggestBytes = biggestBytes;
+        }
+
+        public long getKeysScanned() {
+            return keysScanned;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        public long getKeys(DataType type) {
+            return keys[type.ordinal()];
+        }
+
+        public long getBytes(DataType type) {
+            return bytes[type.ordinal()];
+        }
+
+        /** @return the biggest key of the type, or null if none was seen */
+        public ByteString getBiggestKey(DataType type) {
+            return biggestKey[type.ordinal()];
+        }
+
+        public long getBiggestBytes(DataType type) {
+            return biggestBytes[type.ordinal()];
+        }
+    }
+
+    /**
+     * Start a scan.
+     * @param samplesPerSlot keys inspected per slot, 0 for all of them
+     * @return false if a scan is already running
+     */
+    public synchronized boolean start(int samplesPerSlot) {
+        if (running != null) {
+            return false;
+        }
+        slotsDone = 0;
+        running = Thread.ofVirtual().name("bigkeys-scan").start(() -> {
+            try {
+                lastReport = scan(samplesPerSlot);
+            } finally {
+                synchronized (this) {
+                    running = null;
+                }
+            }
+        });
+        return true;
+    }
+
+    public boolean isRunning() {
+        return running != null;
+    }
+
+    /** @return progress of the running scan, in [0, 1] */
+    public double getProgress() {
+        return (double) slotsDone / DataStore.SLOT_COUNT;
+    }
+
+    /** @return the last completed scan, or null if none has completed */
+    public Report getLastReport() {
+        return lastReport;
+    }
+
+    private Report scan(int samplesPerSlot) {
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        long[] keys = new long[DataType.values().length];
+        long[] bytes = new long[keys.length];
+        ByteString[] biggestKey = new ByteString[keys.length];
+        long[] biggestBytes = new long[keys.length];
+        long scanned = 0;
+        for (int slot = 0; slot < DataStore.SLOT_COUNT; slot++) {
+            int seen = 0;
+            for (Map.Entry<ByteString, ValueEntry> e : store.slotMap(slot).entries()) {
+                if (samplesPerSlot > 0 && seen++ >= samplesPerSlot) {
+                    break;
+                }
+                ValueEntry entry = e.getValue();
+                if (entry.isExpired(now)) {
+                    continue;
+                }
+                int type = entry.getValue().getType().ordinal();
+                long size = DataStore.entrySize(e.getKey(), entry);
+                scanned++;
+                keys[type]++;
+                bytes[type] += size;
+                if (size > biggestBytes[type]) {
+                    biggestBytes[type] = size;
+                    biggestKey[type] = e.getKey();
+                }
+            }
+            slotsDone = slot + 1;
+            if (slot % PACE_SLOTS == PACE_SLOTS - 1) {
+                LockSupport.parkNanos(PACE_NANOS);
+            }
+        }
+        return new Report(scanned, (System.nanoTime() - start) / 1_000_000,
+                keys, bytes, biggestKey, biggestBytes);
+    }
+}
@@ -0,0 +1,51 @@
+package com.java.redis.internal.datastore;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A client parked in BLPOP/BRPOP. It is a future, not a thread: the push that gives one
+ * of its keys an element pops on its behalf and completes it with {key, element}; a
+ * timeout completes it with null.
+ *
+ * Whoever ends the wait (a push, the timeout or a disconnect) first claims the waiter,
+ * so exactly one of them completes it and a popped element is never handed to a
+ * waiter that already gave up.
+ */
+public final class BlockedPop {
+    final List<ByteString> keys;
+    final boolean fromTail;
+    private final CompletableFuture<byte[][]> future = new CompletableFuture<>();
+    private final AtomicBoolean claimed = new AtomicBoolean();
+    private final BlockingPops registry;
+
+    BlockedPop(List<ByteString> keys, boolean fromTail, BlockingPops registry) {
+        this.keys = keys;
+        this.fromTail = fromTail;
+        this.registry = registry;
+    }
+
+    /** Completes with {key, element}, or null if the timeout expired first. */
+    public CompletableFuture<byte[][]> future() {
+        return future;
+    }
+
+    /** Stop waiting, e.g. because the client disconnected. */
+    public void cancel() {
+        if (claim()) {
+            registry.unregister(this);
+            future.complete(null);
+        }
+    }
+
+    boolean claim() {
+        return claimed.compareAndSet(false, true);
+    }
+
+    /** Deliver an element popped for this waiter, which must have been claimed. */
+    void serve(ByteString key, byte[] element) {
+        registry.unregister(this);
+        future.complete(new byte[][] {key.bytes(), element});
+    }
+}
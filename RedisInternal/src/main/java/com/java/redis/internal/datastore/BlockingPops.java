@@ -0,0 +1,74 @@
+package com.java.redis.internal.datastore;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The clients blocked on each key, oldest first, as Redis serves them.
+ * Every change to a key's queue happens inside a compute on the map, so a queue is never
+ * touched concurrently and an emptied one is removed atomically.
+ */
+final class BlockingPops {
+    private final ConcurrentHashMap<ByteString, ArrayDeque<BlockedPop>> waiters = new ConcurrentHashMap<>();
+    private final AtomicInteger blocked = new AtomicInteger();
+
+    /** Cheap check for the push path: false while nobody is blocked anywhere. */
+    boolean hasWaiters() {
+        return !waiters.isEmpty();
+    }
+
+    BlockedPop register(List<ByteString> keys, boolean fromTail, long timeoutMillis) {
+        BlockedPop waiter = new BlockedPop(keys, fromTail, this);
+        blocked.incrementAndGet();
+        for (ByteString key : keys) {
+            waiters.compute(key, (k, queue) -> {
+                if (queue == null) {
+                    queue = new ArrayDeque<>();
+                }
+                queue.add(waiter);
+                return queue;
+            });
+        }
+        if (timeoutMillis > 0) {
+            // One shared delay scheduler fires every timeout; no thread waits per client
+            CompletableFuture.delayedExecutor(timeoutMillis, TimeUnit.MILLISECONDS).execute(waiter::cancel);
+        }
+        return waiter;
+    }
+
+    /** @return the oldest waiter on key, claimed and dequeued, or null if there is none */
+    BlockedPop claimNext(ByteString key) {
+        BlockedPop[] claimed = new BlockedPop[1];
+        waiters.computeIfPresent(key, (k, queue) -> {
+            BlockedPop waiter;
+            while ((waiter = queue.poll()) != null) {
+                if (waiter.claim()) {
+                    claimed[0] = waiter;
+                    break;
+                }
+            }
+            return queue.isEmpty() ? null : queue;
+        });
+        return claimed[0];
+    }
+
+    /** Called once per waiter, by whoever claimed it. */
+    void unregister(BlockedPop waiter) {
+        blocked.decrementAndGet();
+        for (ByteString key : waiter.keys) {
+            waiters.computeIfPresent(key, (k, queue) -> {
+                queue.remove(waiter);
+                return queue.isEmpty() ? null : queue;
+            });
+        }
+    }
+
+    /** @return clients currently blocked */
+    int blockedClients() {
+        return blocked.get();
+    }
+}
@@ -1,5 +1,7 @@
 package com.java.redis.internal.datastore;
 
+import com.java.redis.internal.constants.DataType;
+
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
@@ -336,6 +338,16 @@ public class BloomFilterValue implements RedisValue {
 
     /** Optional: getters for introspection, metrics, or info commands **/
 
+    @Override
+    public DataType getType() {
+        return DataType.BLOOM;
+    }
+
+    @Override
+    public String getEncoding() {
+        return "raw";
+    }
+
     /**
      * @return the bitSize (m) of this Bloom filter.
      */
@@ -361,6 +373,16 @@ public class BloomFilterValue implements RedisValue {
     /**
      * @return approximate memory usage in bytes: bitArray.length() * 8 bytes.
      */
+    @Override
+    public BloomFilterValue copy() {
+        AtomicLongArray bits = new AtomicLongArray(bitArray.length());
+        for (int i = 0; i < bits.length(); i++) {
+            bits.set(i, bitArray.get(i));
+        }
+        return new BloomFilterValue(seed, bitSize, numHashFunctions, bits);
+    }
+
+    @Override
     public long getEstimatedMemoryUsageBytes() {
         return ((long) bitArray.length()) * Long.BYTES;
     }
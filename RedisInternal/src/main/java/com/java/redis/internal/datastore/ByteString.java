@@ -0,0 +1,159 @@
+package com.java.redis.internal.datastore;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * ByteString is an immutable, binary-safe string used for keys, hash fields and set members.
+ *
+ * It wraps the byte[] it is given without copying, so callers must not modify the
+ * array afterwards. Equality and ordering are byte-wise (unsigned, like memcmp);
+ * the hash code is computed once and cached.
+ */
+public final class ByteString implements Comparable<ByteString>, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final byte[] bytes;
+    private transient int hash; // 0 = not computed yet
+
+    private ByteString(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    /** Wrap the array without copying it. */
+    public static ByteString wrap(byte[] bytes) {
+        return new ByteString(bytes);
+    }
+
+    public static ByteString of(String s) {
+        return new ByteString(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** @return the backing array; callers must treat it as read-only */
+    public byte[] bytes() {
+        return bytes;
+    }
+
+    public int length() {
+        return bytes.length;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = Arrays.hashCode(bytes);
+            hash = h;
+        }
+        return h;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ByteString)) {
+            return false;
+        }
+        ByteString other = (ByteString) o;
+        return hashCode() == other.hashCode() && Arrays.equals(bytes, other.bytes);
+    }
+
+    @Override
+    public int compareTo(ByteString o) {
+        return Arrays.compareUnsigned(bytes, o.bytes);
+    }
+
+    /** Decodes as UTF-8; for logging and error messages only. */
+    @Override
+    public String toString() {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // ----- Number helpers: the only places where argument bytes are decoded -----
+
+    /**
+     * Parse a signed 64-bit decimal with the same strictness as Redis' string2ll:
+     * no sign other than a leading '-', no leading zeros, no whitespace.
+     * @throws NumberFormatException if the bytes are not such a number or overflow
+     */
+    public static long parseLong(byte[] b) {
+        int len = b.length;
+        if (len == 0 || len > 20) {
+            throw new NumberFormatException("value is not an integer or out of range");
+        }
+        if (len == 1 && b[0] == '0') {
+            return 0;
+        }
+        int i = 0;
+        boolean negative = b[0] == '-';
+        if (negative) {
+            i = 1;
+        }
+        if (i == len || b[i] == '0') {
+            throw new NumberFormatException("value is not an integer or out of range");
+        }
+        // Accumulate negatively so Long.MIN_VALUE is representable
+        long result = 0;
+        for (; i < len; i++) {
+            int d = b[i] - '0';
+            if (d < 0 || d > 9 || result < Long.MIN_VALUE / 10) {
+                throw new NumberFormatException("value is not an integer or out of range");
+            }
+            result *= 10;
+            if (result < Long.MIN_VALUE + d) {
+                throw new NumberFormatException("value is not an integer or out of range");
+            }
+            result -= d;
+        }
+        if (negative) {
+            return result;
+        }
+        if (result == Long.MIN_VALUE) {
+            throw new NumberFormatException("value is not an integer or out of range");
+        }
+        return -result;
+    }
+
+    /**
+     * Parse a double, accepting "inf", "+inf" and "-inf" like Redis.
+     * @throws NumberFormatException if the bytes are not a number or are NaN
+     */
+    public static double parseDouble(byte[] b) {
+        String s = new String(b, StandardCharsets.US_ASCII);
+        if (s.equalsIgnoreCase("inf") || s.equalsIgnoreCase("+inf")) {
+            return Double.POSITIVE_INFINITY;
+        }
+        if (s.equalsIgnoreCase("-inf")) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        if (s.isEmpty() || Character.isWhitespace(s.charAt(0)) || Character.isWhitespace(s.charAt(s.length() - 1))) {
+            throw new NumberFormatException("value is not a valid float");
+        }
+        double d = Double.parseDouble(s);
+        if (Double.isNaN(d)) {
+            throw new NumberFormatException("value is not a valid float");
+        }
+        return d;
+    }
+
+    /** @return the decimal ASCII form of v */
+    public static byte[] fromLong(long v) {
+        return Long.toString(v).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @return the shortest decimal form of v without exponent or trailing zeros, as
+     *         INCRBYFLOAT and sorted set scores are replied; infinities are "inf" and "-inf"
+     */
+    public static byte[] fromDouble(double v) {
+        if (Double.isInfinite(v)) {
+            return (v > 0 ? "inf" : "-inf").getBytes(StandardCharsets.US_ASCII);
+        }
+        String s = new BigDecimal(Double.toString(v)).stripTrailingZeros().toPlainString();
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
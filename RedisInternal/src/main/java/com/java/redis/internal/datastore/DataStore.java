@@ -1,37 +1,267 @@
 package com.java.redis.internal.datastore;
 
+import com.java.redis.internal.constants.DataType;
 import com.java.redis.internal.datastore.value.*;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.BiFunction;
+import java.util.function.BooleanSupplier;
 
+/**
+ * DataStore holds the keyspace, split into SLOT_COUNT hash slots. Each slot is a
+ * PartitionedTable, so it grows by adding partitions and SCAN can read it a partition at
+ * a time.
+ *
+ * Slots are grouped into shards: slot s belongs to shard s % shardCount. With a single
+ * shard (the default) any thread may run any command. In SHARDED execution mode the
+ * server routes each command to the event loop owning its key's shard, so every slot
+ * map has exactly one writer.
+ *
+ * Sharding only changes who writes, not the data structures: in every mode the slot maps
+ * are PartitionedTables of ConcurrentHashMaps and the values keep their own
+ * synchronisation, because snapshots, SCAN, INFO, the bigkeys scan and the lazy loader
+ * read them from other threads. A sharded write is uncontended, but still pays for both
+ * layers of synchronisation; ShardedStructuresBenchmark measures what that costs.
+ *
+ * Expired keys are removed lazily when a command touches them, and actively by
+ * {@link #expireDueKeys}, which walks the per-shard {@link ExpiryIndex} in time order.
+ *
+ * Every write keeps an estimate of the dataset size up to date (key, entry overhead and
+ * {@link RedisValue#getEstimatedMemoryUsageBytes}); {@link #performEvictions} uses it to
+ * enforce maxmemory through the {@link Evictor}.
+ */
 public class DataStore {
-    private final ConcurrentHashMap<String, ValueEntry> store = new ConcurrentHashMap<>();
+    private static final int SLOT_BITS = 14;
+    public static final int SLOT_COUNT = 1 << SLOT_BITS;
+
+    private final PartitionedTable<ValueEntry>[] slots;
+    private final int shardCount;
+    private final ExpiryIndex[] expiryIndexes; // one per shard
+    private final LongAdder expiredKeys = new LongAdder();
+    // Per key beyond the key bytes and the value: hash node, ByteString, byte[] header, ValueEntry
+    private static final long ENTRY_OVERHEAD = 120;
+    private final LongAdder usedMemory = new LongAdder();
+    private final LongAdder[] shardMemory; // the same total, per shard
+    // Per DataType ordinal: bytes and live keys, kept current by the same accounting
+    private final LongAdder[] memoryByType = newAdders(DataType.values().length);
+    private final LongAdder[] keysByType = newAdders(DataType.values().length);
+    private final LongAdder evictedKeys = new LongAdder();
+    private volatile Evictor evictor;
+    private volatile EvictionHook evictionHook = (key, removal) -> removal.getAsBoolean();
+    private volatile EncodingThresholds encodingThresholds = EncodingThresholds.DEFAULT;
+    private final BlockingPops blockingPops = new BlockingPops();
+    private final WriteGate writeGate = new WriteGate();
+    private volatile KeyspaceSnapshot snapshot; // open snapshot, or null
+    private volatile long lastSnapshotKeysCopied;
+    // Keys changed since the last snapshot was opened; null unless trackDirtyKeys was called
+    private volatile Set<ByteString> dirtyKeys;
+
+    public DataStore() {
+        this(1);
+    }
+
+    @SuppressWarnings("this-escape") // the Evictor reads only shardCount, set by then
+    public DataStore(int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("shardCount must be positive");
+        }
+        this.shardCount = shardCount;
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        PartitionedTable<ValueEntry>[] slots = new PartitionedTable[SLOT_COUNT];
+        for (int i = 0; i < SLOT_COUNT; i++) {
+            slots[i] = new PartitionedTable<>(0, SLOT_BITS); // slotOf used the low bits
+        }
+        this.slots = slots;
+        this.shardMemory = newAdders(shardCount);
+        this.expiryIndexes = new ExpiryIndex[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            expiryIndexes[i] = new ExpiryIndex();
+        }
+        this.evictor = new Evictor(this, 0, MaxMemoryPolicy.NOEVICTION, 5);
+    }
+
+    /**
+     * Bound the dataset to maxMemory bytes (0 = unlimited), evicting under the given policy.
+     * Call before the store starts serving: entries created earlier keep their access metadata.
+     */
+    public void setMaxMemory(long maxMemory, MaxMemoryPolicy policy, int samples) {
+        this.evictor = new Evictor(this, maxMemory, policy, samples);
+    }
+
+    /**
+     * Runs each eviction. The hook performs the removal under whatever orders writes to
+     * the key and records it if it happened; the command executor uses it to log evictions
+     * to the append-only file as DEL.
+     */
+    public interface EvictionHook {
+        /** @return the result of removal, which removes the key if it is still evictable */
+        boolean evict(byte[] key, BooleanSupplier removal);
+    }
+
+    public void setEvictionHook(EvictionHook hook) {
+        this.evictionHook = hook;
+    }
+
+    /** Size limits of the packed encodings; applies to hashes, sets and sorted sets created afterwards. */
+    public void setEncodingThresholds(EncodingThresholds thresholds) {
+        this.encodingThresholds = thresholds;
+    }
+
+    public EncodingThresholds getEncodingThresholds() {
+        return encodingThresholds;
+    }
+
+    /** Hash slot of a key; the hash is re-mixed so neighbouring keys spread across slots. */
+    public static int slotOf(ByteString key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h & (SLOT_COUNT - 1);
+    }
+
+    /** @return the shard that owns the key */
+    public int shardOf(byte[] key) {
+        return slotOf(ByteString.wrap(key)) % shardCount;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    private PartitionedTable<ValueEntry> mapFor(ByteString key) {
+        return slots[slotOf(key)];
+    }
+
+    /**
+     * Register a write to key with the write gate, letting an open snapshot keep the key's
+     * pre-image first. The caller passes the ticket to writeGate.exit when done.
+     */
+    private int beginWrite(ByteString key) {
+        int ticket = writeGate.enter();
+        preserve(key);
+        return ticket;
+    }
+
+    /**
+     * Inside the write gate: let an open snapshot keep key's pre-image before it changes,
+     * and mark the key dirty.
+     */
+    private void preserve(ByteString key) {
+        KeyspaceSnapshot s = snapshot; // read after entering the gate, see WriteGate
+        if (s != null) {
+            s.preserve(key, slotOf(key));
+        }
+        Set<ByteString> dirty = dirtyKeys;
+        if (dirty != null) {
+            dirty.add(key);
+        }
+    }
+
+    /**
+     * Record the key's new TTL in its shard's expiry index, unless the index already holds
+     * an entry for the key that comes due no later: the expire cycle moves that one on to
+     * the TTL's bucket when it gets there. A key refreshed on every access therefore keeps
+     * one index entry instead of one per write.
+     */
+    private void indexExpiry(ByteString key, ValueEntry entry, long expireAt) {
+        long bucket = ExpiryIndex.bucketOf(expireAt);
+        long pending = entry.getIndexedBucket();
+        if (pending != ValueEntry.NOT_INDEXED && pending <= bucket) {
+            return;
+        }
+        entry.setIndexedBucket(bucket);
+        expiryIndexes[slotOf(key) % shardCount].add(key, expireAt);
+    }
+
+    // ----- Memory accounting -----
+
+    /** @return estimated bytes of a stored entry, as used by the memory accounting */
+    static long entrySize(ByteString key, ValueEntry entry) {
+        return ENTRY_OVERHEAD + key.length() + entry.getValue().getEstimatedMemoryUsageBytes();
+    }
+
+    private static LongAdder[] newAdders(int n) {
+        LongAdder[] adders = new LongAdder[n];
+        for (int i = 0; i < n; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /** Account for an entry just stored under key, replacing old (null if the key was absent). */
+    private void stored(ByteString key, ValueEntry entry, ValueEntry old) {
+        entry.setAccess(old != null ? old.getAccess() : evictor.initialAccess());
+        if (old != null && old.hasExpiration()) {
+            entry.setIndexedBucket(old.getIndexedBucket()); // its index entry now stands for this one
+        }
+        resized(key, entry);
+        if (old != null) {
+            removed(key, old);
+        }
+    }
+
+    /**
+     * Re-account an entry whose value was modified in place. The entry's own accounted
+     * bytes change atomically, so racing updates and removals cannot make the totals drift.
+     */
+    private void resized(ByteString key, ValueEntry entry) {
+        long bytes = entrySize(key, entry);
+        long prev = entry.account(bytes);
+        if (prev == ValueEntry.RELEASED) {
+            return; // removed meanwhile
+        }
+        int type = entry.getValue().getType().ordinal();
+        usedMemory.add(bytes - prev);
+        shardMemory[slotOf(key) % shardCount].add(bytes - prev);
+        memoryByType[type].add(bytes - prev);
+        if (prev == 0) {
+            keysByType[type].increment();
+        }
+    }
+
+    /** Account for an entry that left the keyspace. */
+    private void removed(ByteString key, ValueEntry entry) {
+        long prev = entry.release();
+        if (prev == ValueEntry.RELEASED || prev == 0) {
+            return; // already released, or never accounted
+        }
+        int type = entry.getValue().getType().ordinal();
+        usedMemory.add(-prev);
+        shardMemory[slotOf(key) % shardCount].add(-prev);
+        memoryByType[type].add(-prev);
+        keysByType[type].decrement();
+    }
 
     /** Check expiration lazily: if expired, remove and return true; else false. */
-    private boolean removeIfExpired(String key, ValueEntry entry) {
-        Long exp = entry.getExpirationTime();
-        if(exp != null && System.currentTimeMillis() >= exp) {
-            store.remove(key, entry); // remove only if it matches the current entry
+    private boolean removeIfExpired(ByteString key, ValueEntry entry) {
+        if (entry.hasExpiration() && entry.isExpired(System.currentTimeMillis())) { // no clock read for persistent keys
+            // remove only if it matches the current entry
+            if (mapFor(key).remove(key, entry)) {
+                removed(key, entry);
+                expiredKeys.increment();
+            }
             return true; // expired
         }
         return false; // not expired
     }
 
-    private ValueEntry peekEntry(String key) {
-        ValueEntry entry = store.get(key);
+    private ValueEntry peekEntry(ByteString key) {
+        ValueEntry entry = mapFor(key).get(key);
         if (entry == null || removeIfExpired(key, entry)) {
             return null; // entry is missing or expired
         }
+        evictor.touch(entry);
         return entry; // valid entry
     }
 
     // ----- String Commands -----
 
     /** GET key: returns the string or null if missing */
-    public String getString(String key) {
-        ValueEntry entry = peekEntry(key);
+    public byte[] getString(byte[] key) {
+        ValueEntry entry = peekEntry(ByteString.wrap(key));
         if (entry == null) {
             return null;
         }
@@ -43,46 +273,180 @@ public class DataStore {
     }
 
     /** SET key value: always returns OK */
-    public void setString(String key, String value, Long exSeconds) {
+    public void setString(byte[] key, byte[] value, Long exSeconds) {
         Long expirationTime = null; // no expiration by default
         if(exSeconds != null) {
             expirationTime = System.currentTimeMillis() + exSeconds * 1000; // convert to milliseconds
         }
-        store.put(key, new ValueEntry(new StringValue(value), expirationTime));
+        setStringExpiringAt(key, value, expirationTime);
+    }
+
+    /** SET key value [PXAT unix-time-milliseconds]: expirationTime null for no expiry. */
+    public void setStringExpiringAt(byte[] key, byte[] value, Long expirationTime) {
+        ByteString k = ByteString.wrap(key);
+        int ticket = beginWrite(k);
+        try {
+            ValueEntry entry = new ValueEntry(StringValue.of(value), expirationTime);
+            stored(k, entry, mapFor(k).put(k, entry));
+            if (expirationTime != null) {
+                indexExpiry(k, entry, expirationTime);
+            }
+        } finally {
+            writeGate.exit(ticket);
+        }
+    }
+
+    /** MGET key...: the string at each key, null where it is missing or not a string */
+    public List<byte[]> mget(List<byte[]> keys) {
+        List<byte[]> values = new ArrayList<>(keys.size());
+        for (byte[] key : keys) {
+            ValueEntry entry = peekEntry(ByteString.wrap(key));
+            values.add(entry != null && entry.getValue() instanceof StringValue
+                    ? ((StringValue) entry.getValue()).getValue() : null);
+        }
+        return values;
+    }
+
+    /** MSET key value [key value...]: set each key to its string, dropping any TTL */
+    public void mset(List<byte[]> keyValues) {
+        for (int i = 0; i + 1 < keyValues.size(); i += 2) {
+            setStringExpiringAt(keyValues.get(i), keyValues.get(i + 1), null);
+        }
     }
 
     /** INCR key: atomically parse, increment, and store the new value */
-    public long incr(String key) {
-        while (true) {
-            ValueEntry oldEntry = peekEntry(key);
-            if (oldEntry == null) {
-                // absent or expired: create new entry with value "1", no expiration
-                ValueEntry newEntry = new ValueEntry(new StringValue("1"), null);
-                if (store.putIfAbsent(key, newEntry) == null) {
-                    return 1L;
-                }
-                // else race: someone else inserted; retry
-            } else {
+    public long incr(byte[] keyBytes) {
+        return incrBy(keyBytes, 1);
+    }
+
+    /**
+     * INCRBY key delta (INCR, DECR and DECRBY too): add delta to the integer at key.
+     * A counter is updated in place (see StringValue.addAndGet); a raw or shared value is
+     * first swapped for a private counter, so only the first increment of a key allocates.
+     */
+    public long incrBy(byte[] keyBytes, long delta) {
+        ByteString key = ByteString.wrap(keyBytes);
+        int ticket = beginWrite(key);
+        try {
+            while (true) {
+                ValueEntry oldEntry = peekEntry(key);
+                if (oldEntry == null) {
+                    // absent or expired: create a counter holding delta, no expiration
+                    ValueEntry newEntry = new ValueEntry(StringValue.counter(delta), null);
+                    if (mapFor(key).putIfAbsent(key, newEntry) == null) {
+                        stored(key, newEntry, null);
+                        return delta;
+                    }
+                    continue; // race: someone else inserted; retry
+                }
                 RedisValue oldVal = oldEntry.getValue();
                 if (!(oldVal instanceof StringValue)) {
                     throw new IllegalStateException("WRONGTYPE Operation against a key holding the wrong kind of value");
                 }
-                String s = ((StringValue) oldVal).getValue();
+                StringValue str = (StringValue) oldVal;
+                if (str.isCounter()) {
+                    try {
+                        return str.addAndGet(delta);
+                    } catch (ArithmeticException e) {
+                        throw new IllegalStateException("ERR increment or decrement would overflow");
+                    }
+                }
                 long curr;
                 try {
-                    curr = Long.parseLong(s);
+                    curr = str.longValue();
                 } catch (NumberFormatException e) {
                     throw new NumberFormatException("ERR value is not an integer or out of range");
                 }
-                long next = curr + 1;
-                ValueEntry newEntry = new ValueEntry(new StringValue(Long.toString(next)), oldEntry.getExpirationTime());
+                long next;
+                try {
+                    next = Math.addExact(curr, delta);
+                } catch (ArithmeticException e) {
+                    throw new IllegalStateException("ERR increment or decrement would overflow");
+                }
+                ValueEntry newEntry = new ValueEntry(StringValue.counter(next), oldEntry.getExpirationTime());
                 // Use replace to ensure atomic update
-                boolean replaced = store.replace(key, oldEntry, newEntry);
-                if (replaced) {
+                if (mapFor(key).replace(key, oldEntry, newEntry)) {
+                    stored(key, newEntry, oldEntry);
                     return next;
                 }
                 // else retry
             }
+        } finally {
+            writeGate.exit(ticket);
+        }
+    }
+
+    /**
+     * INCRBYFLOAT key increment: the result is stored as a string, keeping the key's TTL.
+     * @return the new value in its stored form
+     */
+    public byte[] incrByFloat(byte[] keyBytes, double increment) {
+        ByteString key = ByteString.wrap(keyBytes);
+        int ticket = beginWrite(key);
+        try {
+            while (true) {
+                ValueEntry oldEntry = peekEntry(key);
+                double curr = 0;
+                if (oldEntry != null) {
+                    RedisValue oldVal = oldEntry.getValue();
+                    if (!(oldVal instanceof StringValue)) {
+                        throw new IllegalStateException("WRONGTYPE Operation against a key holding the wrong kind of value");
+                    }
+                    StringValue str = (StringValue) oldVal;
+                    try {
+                        curr = str.isInteger() ? str.longValue() : ByteString.parseDouble(str.getValue());
+                    } catch (NumberFormatException e) {
+                        throw new NumberFormatException("ERR value is not a valid float");
+                    }
+                }
+                double next = curr + increment;
+                if (Double.isNaN(next) || Double.isInfinite(next)) {
+                    throw new IllegalStateException("ERR increment would produce NaN or Infinity");
+                }
+                byte[] bytes = ByteString.fromDouble(next);
+                if (oldEntry == null) {
+                    ValueEntry newEntry = new ValueEntry(StringValue.of(bytes), null);
+                    if (mapFor(key).putIfAbsent(key, newEntry) == null) {
+                        stored(key, newEntry, null);
+                        return bytes;
+                    }
+                } else {
+                    ValueEntry newEntry = new ValueEntry(StringValue.of(bytes), oldEntry.getExpirationTime());
+                    if (mapFor(key).replace(key, oldEntry, newEntry)) {
+                        stored(key, newEntry, oldEntry);
+                        return bytes;
+                    }
+                }
+            }
+        } finally {
+            writeGate.exit(ticket);
+        }
+    }
+
+    /**
+     * GETSET key value: set the string and drop any TTL.
+     * @return the previous string, or null if the key was missing
+     */
+    public byte[] getSet(byte[] keyBytes, byte[] value) {
+        ByteString key = ByteString.wrap(keyBytes);
+        int ticket = beginWrite(key);
+        try {
+            while (true) {
+                ValueEntry oldEntry = peekEntry(key);
+                if (oldEntry != null && !(oldEntry.getValue() instanceof StringValue)) {
+                    throw new IllegalStateException("WRONGTYPE Operation against a key holding the wrong kind of value");
+                }
+                ValueEntry newEntry = new ValueEntry(StringValue.of(value), null);
+                boolean swapped = oldEntry == null
+                        ? mapFor(key).putIfAbsent(key, newEntry) == null
+                        : mapFor(key).replace(key, oldEntry, newEntry);
+                if (swapped) {
+                    stored(key, newEntry, oldEntry);
+                    return oldEntry == null ? null : ((StringValue) oldEntry.getValue()).getValue();
+                }
+            }
+        } finally {
+            writeGate.exit(ticket);
         }
     }
 
@@ -91,31 +455,53 @@ public class DataStore {
     /**
      * HSET key field val: returns 1 if new field, 0 if updated existing
      */
-    public int hset(String key, String field, String val) {
-        while (true) {
-            ValueEntry entry = peekEntry(key);
-            if(entry == null){
-                HashValue map = new HashValue();
-                map.hset(field, val);
-                ValueEntry newEntry = new ValueEntry(map, null);// no expiration
-                if(store.putIfAbsent(key, newEntry)==null){
-                    return 1;
-                }
-            }else{
-                RedisValue v =entry.getValue();
-                if(!(v instanceof HashValue)) {
-                    throw new IllegalStateException("WRONGTYPE Operation against a key holding the wrong kind of value");
+    public int hset(byte[] keyBytes, byte[] field, byte[] val) {
+        return hset(keyBytes, List.of(field, val));
+    }
+
+    /**
+     * HSET key field value [field value...]: returns the number of fields that were new
+     */
+    public int hset(byte[] keyBytes, List<byte[]> fieldValues) {
+        ByteString key = ByteString.wrap(keyBytes);
+        int ticket = beginWrite(key);
+        try {
+            while (true) {
+                ValueEntry entry = peekEntry(key);
+                if(entry == null){
+                    HashValue map = new HashValue(encodingThresholds);
+                    int added = hsetAll(map, fieldValues);
+                    ValueEntry newEntry = new ValueEntry(map, null);// no expiration
+                    if(mapFor(key).putIfAbsent(key, newEntry)==null){
+                        stored(key, newEntry, null);
+                        return added;
+                    }
+                }else{
+                    RedisValue v =entry.getValue();
+                    if(!(v instanceof HashValue)) {
+                        throw new IllegalStateException("WRONGTYPE Operation against a key holding the wrong kind of value");
+                    }
+                    int added = hsetAll((HashValue) v, fieldValues);
+                    resized(key, entry);
+                    return added;
                 }
-                HashValue map = (HashValue) v;
-                int added = map.hset(field, val);
-                return added;
             }
+        } finally {
+            writeGate.exit(ticket);
+        }
+    }
+
+    private static int hsetAll(HashValue map, List<byte[]> fieldValues) {
+        int added = 0;
+        for (int i = 0; i + 1 < fieldValues.size(); i += 2) {
+            added += map.hset(fieldValues.get(i), fieldValues.get(i + 1));
         }
+        return added;
     }
 
     /** HGET key field: returns the value or null if missing */
-    public String hget(String key, String field) {
-        ValueEntry entry = peekEntry(key);
+    public byte[] hget(byte[] key, byte[] field) {
+        ValueEntry entry = peekEntry(ByteString.wrap(key));
         if (entry == null) {
             return null; // key is missing or expired
         }
@@ -132,77 +518,313 @@ public class DataStore {
      * LPUSH key values...
      * @return the new length of the list
      */
-    public int lpush(String key, List<String> values) {
-        while(true){
+    public int lpush(byte[] keyBytes, List<byte[]> values) {
+        return push(keyBytes, values, false);
+    }
+
+    /**
+     * RPUSH key values...
+     * @return the new length of the list
+     */
+    public int rpush(byte[] keyBytes, List<byte[]> values) {
+        return push(keyBytes, values, true);
+    }
+
+    private int push(byte[] keyBytes, List<byte[]> values, boolean toTail) {
+        ByteString key = ByteString.wrap(keyBytes);
+        int ticket = beginWrite(key);
+        try {
+            while(true){
+                ValueEntry entry = peekEntry(key);
+                if(entry == null){
+                    // key does not exist or expired, create a new list
+                    ListValue list = new ListValue();
+                    int length = toTail ? list.rpush(values) : list.lpush(values);
+                    ValueEntry newEntry = new ValueEntry(list, null); // no expiration
+                    if(mapFor(key).putIfAbsent(key, newEntry) == null) {
+                        stored(key, newEntry, null);
+                        serveBlockedPops(key, newEntry);
+                        return length; // successfully created
+                    }
+                } else {
+                    ListValue list = asList(entry);
+                    int length;
+                    synchronized (list) {
+                        if (mapFor(key).get(key) != entry) {
+                            continue; // emptied and deleted meanwhile: create it again
+                        }
+                        length = toTail ? list.rpush(values) : list.lpush(values); // push to existing list
+                    }
+                    resized(key, entry);
+                    serveBlockedPops(key, entry);
+                    return length;
+                }
+            }
+        } finally {
+            writeGate.exit(ticket);
+        }
+    }
+
+    /**
+     * LPOP / RPOP key [count]: remove up to count elements from the head or the tail.
+     * @return the popped elements, or null if the key is missing
+     */
+    public List<byte[]> pop(byte[] keyBytes, long count, boolean fromTail) {
+        ByteString key = ByteString.wrap(keyBytes);
+        int ticket = beginWrite(key);
+        try {
             ValueEntry entry = peekEntry(key);
-            if(entry == null){
-                // key does not exist or expired, create a new list
-                ListValue list = new ListValue();
-                list.lpush(values);
-                ValueEntry newEntry = new ValueEntry(list, null); // no expiration
-                if(store.putIfAbsent(key, newEntry) == null) {
-                    return  list.lpush(Collections.emptyList()) + values.size(); // successfully created
-                }
-            } else {
-                RedisValue v = entry.getValue();
-                if (!(v instanceof ListValue)) {
-                    throw new IllegalStateException("WRONGTYPE Operation against a key holding the wrong kind of value");
+            if (entry == null) {
+                return null; // key does not exist or expired
+            }
+            ListValue list = asList(entry);
+            List<byte[]> popped = new ArrayList<>((int) Math.min(count, 16));
+            synchronized (list) {
+                if (mapFor(key).get(key) != entry) {
+                    return null; // emptied and deleted meanwhile
+                }
+                for (long i = 0; i < count; i++) {
+                    byte[] v = fromTail ? list.rpop() : list.lpop();
+                    if (v == null) {
+                        break;
+                    }
+                    popped.add(v);
+                }
+                popped(key, entry, list);
+            }
+            return popped;
+        } finally {
+            writeGate.exit(ticket);
+        }
+    }
+
+    /**
+     * BLPOP / BRPOP key... timeout: pop from the first non-empty list, or park until a push
+     * serves this client. timeoutMillis 0 waits forever.
+     * @return a waiter whose future completes with {key, element}, or with null on timeout
+     */
+    public BlockedPop blockingPop(List<byte[]> keyBytes, boolean fromTail, long timeoutMillis) {
+        List<ByteString> keys = new ArrayList<>(keyBytes.size());
+        int ticket = writeGate.enter();
+        try {
+            for (byte[] k : keyBytes) {
+                ByteString key = ByteString.wrap(k);
+                keys.add(key);
+                ValueEntry entry = peekEntry(key);
+                if (entry == null || asList(entry).llen() == 0) {
+                    continue;
+                }
+                preserve(key);
+                ListValue list = asList(entry);
+                byte[] v;
+                synchronized (list) {
+                    v = fromTail ? list.rpop() : list.lpop();
+                    if (v != null) {
+                        popped(key, entry, list);
+                    }
+                }
+                if (v != null) {
+                    BlockedPop done = new BlockedPop(keys, fromTail, blockingPops);
+                    done.claim(); // never registered, so nothing may cancel it
+                    done.future().complete(new byte[][] {k, v});
+                    return done;
+                }
+            }
+            BlockedPop waiter = blockingPops.register(keys, fromTail, timeoutMillis);
+            // A push that landed between the attempt above and registering saw no waiter; serve it now
+            for (ByteString key : keys) {
+                ValueEntry entry = mapFor(key).get(key);
+                if (entry != null) {
+                    preserve(key);
+                    serveBlockedPops(key, entry);
+                }
+            }
+            return waiter;
+        } finally {
+            writeGate.exit(ticket);
+        }
+    }
+
+    /** Hand elements of a list that just grew to the clients blocked on it, oldest first. */
+    private void serveBlockedPops(ByteString key, ValueEntry entry) {
+        if (!blockingPops.hasWaiters() || !(entry.getValue() instanceof ListValue)) {
+            return;
+        }
+        ListValue list = (ListValue) entry.getValue();
+        boolean served = false;
+        while (true) {
+            BlockedPop waiter;
+            byte[] v;
+            synchronized (list) {
+                // Claim a waiter only when there is an element for it
+                if (list.llen() == 0 || (waiter = blockingPops.claimNext(key)) == null) {
+                    break;
+                }
+                v = waiter.fromTail ? list.rpop() : list.lpop();
+            }
+            waiter.serve(key, v);
+            served = true;
+        }
+        if (served) {
+            synchronized (list) {
+                popped(key, entry, list);
+            }
+        }
+    }
+
+    /** Re-account a list that elements were popped or trimmed from; see shrunk. */
+    private void popped(ByteString key, ValueEntry entry, ListValue list) {
+        shrunk(key, entry, list.llen() == 0);
+    }
+
+    /**
+     * Re-account a list, set or sorted set that members were removed from, deleting the key
+     * once it is empty, as Redis does. Call inside the write gate with the key preserved,
+     * holding the collection's monitor: an add racing in then either finds the collection
+     * still mapped, or the key gone and creates a new one.
+     */
+    private void shrunk(ByteString key, ValueEntry entry, boolean empty) {
+        if (!empty) {
+            resized(key, entry);
+        } else if (mapFor(key).remove(key, entry)) {
+            removed(key, entry);
+        }
+    }
+
+    /** LLEN key: returns the length, 0 if the key is missing */
+    public int llen(byte[] key) {
+        ListValue list = readList(key);
+        return list == null ? 0 : list.llen();
+    }
+
+    /** LINDEX key index: returns the element or null */
+    public byte[] lindex(byte[] key, long index) {
+        ListValue list = readList(key);
+        return list == null ? null : list.lindex(index);
+    }
+
+    /** LRANGE key start stop */
+    public List<byte[]> lrange(byte[] key, long start, long stop) {
+        ListValue list = readList(key);
+        return list == null ? Collections.emptyList() : list.lrange(start, stop);
+    }
+
+    /** LTRIM key start stop */
+    public void ltrim(byte[] keyBytes, long start, long stop) {
+        ByteString key = ByteString.wrap(keyBytes);
+        int ticket = beginWrite(key);
+        try {
+            ValueEntry entry = peekEntry(key);
+            if (entry == null) {
+                return;
+            }
+            ListValue list = asList(entry);
+            synchronized (list) {
+                if (mapFor(key).get(key) == entry) {
+                    list.ltrim(start, stop);
+                    popped(key, entry, list);
                 }
-                ListValue list = (ListValue) v;
-                return list.lpush(values); // push to existing list
             }
+        } finally {
+            writeGate.exit(ticket);
         }
     }
 
+    /** @return clients parked in BLPOP/BRPOP */
+    public int getBlockedClients() {
+        return blockingPops.blockedClients();
+    }
+
+    private ListValue readList(byte[] key) {
+        ValueEntry entry = peekEntry(ByteString.wrap(key));
+        return entry == null ? null : asList(entry);
+    }
+
+    private static ListValue asList(ValueEntry entry) {
+        RedisValue v = entry.getValue();
+        if (!(v instanceof ListValue)) {
+            throw new IllegalStateException("WRONGTYPE Operation against a key holding the wrong kind of value");
+        }
+        return (ListValue) v;
+    }
+
     // ----- Set Commands -----
 
     /**
      * SADD key member [member...]: returns number of elements added.
      */
-    public int sadd(String key, List<String> members) {
-        while(true){
-            ValueEntry entry = peekEntry(key);
-            if(entry == null){
-                // key does not exist or expired, create a new set
-                SetValue set = new SetValue();
-                int added = set.sadd(members);
-                ValueEntry newEntry = new ValueEntry(set, null); // no expiration
-                if(store.putIfAbsent(key, newEntry) == null) {
-                    return added; // successfully created
-                }
-            } else {
-                RedisValue v = entry.getValue();
-                if (!(v instanceof SetValue)) {
-                    throw new IllegalStateException("WRONGTYPE Operation against a key holding the wrong kind of value");
+    public int sadd(byte[] keyBytes, List<byte[]> members) {
+        ByteString key = ByteString.wrap(keyBytes);
+        int ticket = beginWrite(key);
+        try {
+            while(true){
+                ValueEntry entry = peekEntry(key);
+                if(entry == null){
+                    // key does not exist or expired, create a new set
+                    SetValue set = new SetValue(encodingThresholds);
+                    int added = set.sadd(members);
+                    ValueEntry newEntry = new ValueEntry(set, null); // no expiration
+                    if(mapFor(key).putIfAbsent(key, newEntry) == null) {
+                        stored(key, newEntry, null);
+                        return added; // successfully created
+                    }
+                } else {
+                    RedisValue v = entry.getValue();
+                    if (!(v instanceof SetValue)) {
+                        throw new IllegalStateException("WRONGTYPE Operation against a key holding the wrong kind of value");
+                    }
+                    SetValue set = (SetValue) v;
+                    int added;
+                    synchronized (set) {
+                        if (mapFor(key).get(key) != entry) {
+                            continue; // emptied and deleted meanwhile: create it again
+                        }
+                        added = set.sadd(members); // add to existing set
+                    }
+                    resized(key, entry);
+                    return added;
                 }
-                SetValue set = (SetValue) v;
-                return set.sadd(members); // add to existing set
             }
+        } finally {
+            writeGate.exit(ticket);
         }
     }
 
     /**
      * SREM key member [member...]: returns number of elements removed.
      */
-    public int srem(String key, List<String> members) {
-        ValueEntry entry = peekEntry(key);
-        if (entry == null) {
-            return 0; // key does not exist or expired
-        }
-        if(!(entry.getValue() instanceof SetValue)) {
-            throw new IllegalStateException("WRONGTYPE Operation against a key holding the wrong kind of value");
+    public int srem(byte[] keyBytes, List<byte[]> members) {
+        ByteString key = ByteString.wrap(keyBytes);
+        int ticket = beginWrite(key);
+        try {
+            ValueEntry entry = peekEntry(key);
+            if (entry == null) {
+                return 0; // key does not exist or expired
+            }
+            if(!(entry.getValue() instanceof SetValue)) {
+                throw new IllegalStateException("WRONGTYPE Operation against a key holding the wrong kind of value");
+            }
+            SetValue set = (SetValue) entry.getValue();
+            synchronized (set) {
+                if (mapFor(key).get(key) != entry) {
+                    return 0; // emptied and deleted meanwhile
+                }
+                int removed = set.srem(members); // remove from existing set
+                shrunk(key, entry, set.scard() == 0);
+                return removed;
+            }
+        } finally {
+            writeGate.exit(ticket);
         }
-        SetValue set = (SetValue) entry.getValue();
-        return set.srem(members); // remove from existing set
     }
 
     /**
-     * SMEMBERS key: returns Set<String> or empty set.
+     * SMEMBERS key: returns the members, or an empty list.
      */
-    public Set<String> smembers(String key) {
-        ValueEntry entry = peekEntry(key);
+    public List<byte[]> smembers(byte[] key) {
+        ValueEntry entry = peekEntry(ByteString.wrap(key));
         if (entry == null) {
-            return Collections.emptySet(); // key does not exist or expired
+            return Collections.emptyList(); // key does not exist or expired
         }
         RedisValue v = entry.getValue();
         if(!(v instanceof SetValue)) {
@@ -216,43 +838,216 @@ public class DataStore {
     /**
      * ZADD key score member: returns 1 if new, 0 if updated.
      */
-    public int zadd(String key, double score, String member) {
-        while (true){
+    public int zadd(byte[] keyBytes, double score, byte[] member) {
+        return zadd(keyBytes, new double[] {score}, List.of(member));
+    }
+
+    /**
+     * ZADD key score member [score member...]: returns the number of members that were new.
+     * scores[i] is the score of members.get(i).
+     */
+    public int zadd(byte[] keyBytes, double[] scores, List<byte[]> members) {
+        ByteString key = ByteString.wrap(keyBytes);
+        int ticket = beginWrite(key);
+        try {
+            while (true){
+                ValueEntry entry = peekEntry(key);
+                if (entry == null) {
+                    // key does not exist or expired, create a new sorted set
+                    ZSetValue zset = new ZSetValue(encodingThresholds);
+                    int added = zaddAll(zset, scores, members);
+                    ValueEntry newEntry = new ValueEntry(zset, null); // no expiration
+                    if (mapFor(key).putIfAbsent(key, newEntry) == null) {
+                        stored(key, newEntry, null);
+                        return added; // successfully created
+                    }
+                } else {
+                    ZSetValue zset = asZSet(entry);
+                    int added;
+                    synchronized (zset) {
+                        if (mapFor(key).get(key) != entry) {
+                            continue; // emptied and deleted meanwhile: create it again
+                        }
+                        added = zaddAll(zset, scores, members); // add to existing sorted set
+                    }
+                    resized(key, entry);
+                    return added;
+                }
+            }
+        } finally {
+            writeGate.exit(ticket);
+        }
+    }
+
+    private static int zaddAll(ZSetValue zset, double[] scores, List<byte[]> members) {
+        int added = 0;
+        for (int i = 0; i < scores.length; i++) {
+            added += zset.zadd(scores[i], members.get(i));
+        }
+        return added;
+    }
+
+    /**
+     * ZINCRBY key increment member: returns the member's new score.
+     */
+    public double zincrby(byte[] keyBytes, double increment, byte[] member) {
+        ByteString key = ByteString.wrap(keyBytes);
+        int ticket = beginWrite(key);
+        try {
+            while (true) {
+                ValueEntry entry = peekEntry(key);
+                if (entry == null) {
+                    ZSetValue zset = new ZSetValue(encodingThresholds);
+                    double score = zset.zincrby(increment, member);
+                    ValueEntry newEntry = new ValueEntry(zset, null); // no expiration
+                    if (mapFor(key).putIfAbsent(key, newEntry) == null) {
+                        stored(key, newEntry, null);
+                        return score;
+                    }
+                } else {
+                    ZSetValue zset = asZSet(entry);
+                    double score;
+                    synchronized (zset) {
+                        if (mapFor(key).get(key) != entry) {
+                            continue; // emptied and deleted meanwhile: create it again
+                        }
+                        score = zset.zincrby(increment, member);
+                    }
+                    resized(key, entry);
+                    return score;
+                }
+            }
+        } finally {
+            writeGate.exit(ticket);
+        }
+    }
+
+    /** ZREM key member...: returns how many members were removed */
+    public int zrem(byte[] keyBytes, List<byte[]> members) {
+        ByteString key = ByteString.wrap(keyBytes);
+        int ticket = beginWrite(key);
+        try {
             ValueEntry entry = peekEntry(key);
             if (entry == null) {
-                // key does not exist or expired, create a new sorted set
-                ZSetValue zset = new ZSetValue();
-                int added = zset.zadd(score, member);
-                ValueEntry newEntry = new ValueEntry(zset, null); // no expiration
-                if (store.putIfAbsent(key, newEntry) == null) {
-                    return added; // successfully created
-                }
-            } else {
-                RedisValue v = entry.getValue();
-                if (!(v instanceof ZSetValue)) {
-                    throw new IllegalStateException("WRONGTYPE Operation against a key holding the wrong kind of value");
+                return 0; // key does not exist or expired
+            }
+            ZSetValue zset = asZSet(entry);
+            synchronized (zset) {
+                if (mapFor(key).get(key) != entry) {
+                    return 0; // emptied and deleted meanwhile
                 }
-                ZSetValue zset = (ZSetValue) v;
-                return zset.zadd(score, member); // add to existing sorted set
+                int removed = zset.zrem(members);
+                shrunk(key, entry, zset.zcard() == 0);
+                return removed;
             }
+        } finally {
+            writeGate.exit(ticket);
         }
     }
 
+    /** ZCARD key: returns the number of members, 0 if the key is missing */
+    public int zcard(byte[] key) {
+        ZSetValue zset = readZSet(key);
+        return zset == null ? 0 : zset.zcard();
+    }
+
+    /** ZRANK / ZREVRANK key member: returns the rank, or -1 if the key or member is missing */
+    public long zrank(byte[] key, byte[] member, boolean reverse) {
+        ZSetValue zset = readZSet(key);
+        return zset == null ? -1 : zset.zrank(member, reverse);
+    }
+
     /**
      * ZRANGE key start stop: returns list of members in range.
      */
-    public List<String> zrange(String key, int start, int stop) {
-        ValueEntry entry = peekEntry(key);
-            if (entry == null) {
-                return Collections.emptyList(); // key does not exist or expired
+    public List<byte[]> zrange(byte[] key, int start, int stop) {
+        return zrange(key, start, stop, false, false);
+    }
+
+    /**
+     * ZRANGE / ZREVRANGE key start stop [WITHSCORES]: members in range, each followed by
+     * its score when withScores is set.
+     */
+    public List<byte[]> zrange(byte[] key, long start, long stop, boolean reverse, boolean withScores) {
+        ZSetValue zset = readZSet(key);
+        return zset == null ? Collections.emptyList() : zset.zrange(start, stop, reverse, withScores);
+    }
+
+    /** ZRANGEBYSCORE key min max [WITHSCORES] [LIMIT offset count] */
+    public List<byte[]> zrangeByScore(byte[] key, ScoreRange range, long offset, long count, boolean withScores) {
+        ZSetValue zset = readZSet(key);
+        return zset == null ? Collections.emptyList() : zset.zrangeByScore(range, offset, count, withScores);
+    }
+
+    /** @return the sorted set at key, or null if the key is missing */
+    private ZSetValue readZSet(byte[] key) {
+        ValueEntry entry = peekEntry(ByteString.wrap(key));
+        return entry == null ? null : asZSet(entry);
+    }
+
+    private static ZSetValue asZSet(ValueEntry entry) {
+        RedisValue v = entry.getValue();
+        if (!(v instanceof ZSetValue)) {
+            throw new IllegalStateException("WRONGTYPE Operation against a key holding the wrong kind of value");
+        }
+        return (ZSetValue) v;
+    }
+
+
+    // ----- Keyspace Commands -----
+
+    /** DEL key...: returns how many of the keys existed and were removed */
+    public int del(List<byte[]> keys) {
+        int deleted = 0;
+        for (byte[] k : keys) {
+            ByteString key = ByteString.wrap(k);
+            int ticket = beginWrite(key);
+            try {
+                ValueEntry entry = mapFor(key).get(key);
+                if (entry != null && !removeIfExpired(key, entry) && deleteEntry(key, entry)) {
+                    deleted++;
+                }
+            } finally {
+                writeGate.exit(ticket);
             }
-            RedisValue v = entry.getValue();
-            if (!(v instanceof ZSetValue)) {
-                throw new IllegalStateException("WRONGTYPE Operation against a key holding the wrong kind of value");
+        }
+        return deleted;
+    }
+
+    /**
+     * Remove a live entry; call inside the write gate with the key preserved. A list, set or
+     * sorted set is removed holding its monitor, so an add racing in either lands before the
+     * removal or finds the key gone and creates a new collection (see shrunk).
+     * @return false if the key was changed meanwhile
+     */
+    private boolean deleteEntry(ByteString key, ValueEntry entry) {
+        boolean removed;
+        RedisValue v = entry.getValue();
+        if (v instanceof ListValue || v instanceof SetValue || v instanceof ZSetValue) {
+            synchronized (v) {
+                removed = mapFor(key).remove(key, entry);
             }
-            return ((ZSetValue) v).zrange(start, stop); // return range of members
+        } else {
+            removed = mapFor(key).remove(key, entry);
+        }
+        if (removed) {
+            removed(key, entry);
+        }
+        return removed;
     }
 
+    /** EXISTS key...: returns how many of the keys exist, counting a repeated key each time */
+    public int exists(List<byte[]> keys) {
+        int found = 0;
+        for (byte[] k : keys) {
+            ByteString key = ByteString.wrap(k);
+            ValueEntry entry = mapFor(key).get(key); // no touch, as in Redis
+            if (entry != null && !removeIfExpired(key, entry)) {
+                found++;
+            }
+        }
+        return found;
+    }
 
     //TTL Commands
     /**
@@ -260,16 +1055,31 @@ public class DataStore {
      * - 1 if timeout set,
      * - 0 if key does not exist.
      */
-    public int expire(String key, long seconds) {
-        ValueEntry entry = peekEntry(key);
-        if (entry == null) {
-            return 0; // key does not exist or expired
-        }
-        Long expireAt = System.currentTimeMillis() + seconds * 1000; // convert to milliseconds
+    public int expire(byte[] keyBytes, long seconds) {
+        return expireAt(keyBytes, System.currentTimeMillis() + seconds * 1000); // convert to milliseconds
+    }
 
-        ValueEntry newEntry = new ValueEntry(entry.getValue(), expireAt);
-        store.replace(key, entry, newEntry);
-        return 1;
+    /** PEXPIREAT key unix-time-milliseconds: same replies as EXPIRE. */
+    public int expireAt(byte[] keyBytes, long expireAt) {
+        ByteString key = ByteString.wrap(keyBytes);
+        int ticket = beginWrite(key);
+        try {
+            while (true) {
+                ValueEntry entry = peekEntry(key);
+                if (entry == null) {
+                    return 0; // key does not exist or expired
+                }
+                ValueEntry newEntry = new ValueEntry(entry.getValue(), expireAt);
+                if (mapFor(key).replace(key, entry, newEntry)) {
+                    stored(key, newEntry, entry);
+                    indexExpiry(key, newEntry, expireAt);
+                    return 1;
+                }
+                // race: the key was rewritten meanwhile; retry on its new entry
+            }
+        } finally {
+            writeGate.exit(ticket);
+        }
     }
 
     /**
@@ -278,33 +1088,459 @@ public class DataStore {
      * - if key exists but no expire: -1
      * - else remaining seconds (rounded down)
      */
-    public  long ttl(String key) {
-        ValueEntry entry = peekEntry(key);
+    public  long ttl(byte[] key) {
+        ValueEntry entry = peekEntry(ByteString.wrap(key));
         if (entry == null) {
             return -2; // key does not exist or expired
         }
-        Long exp = entry.getExpirationTime();
-        if (exp == null) {
+        if (!entry.hasExpiration()) {
             return -1; // no expiration set
         }
-        long remaining = (exp - System.currentTimeMillis()) / 1000; // convert to seconds
+        long remaining = (entry.getExpirationTime() - System.currentTimeMillis()) / 1000; // convert to seconds
         return Math.max(0, remaining); // ensure non-negative
     }
 
+    // ----- Scan Commands -----
+
+    /**
+     * SCAN cursor [MATCH pattern] [COUNT count] [TYPE type].
+     *
+     * The cursor holds a hash slot in its low SLOT_BITS bits and a position among that
+     * slot's partitions above them. Each call reads whole partitions from there, slot after
+     * slot, through their weakly consistent iterators, until about count keys have been
+     * visited; a partition holds some 64 keys (see PartitionedTable), so a call's work stays
+     * bounded by count however large the keyspace. Partitions are walked in the slot
+     * table's reverse-binary order, so a slot that grows mid-scan is still covered. A key
+     * present for the whole scan is therefore returned at least once, writers are never
+     * blocked and nothing is copied.
+     * Empty slots are cheap but still bounded, so a sparse keyspace may return no keys with
+     * a non-zero cursor, as Redis does.
+     *
+     * @param match pattern keys must match, or null
+     * @param type type keys must have, or null
+     */
+    public ScanResult scan(long cursor, int count, GlobPattern match, DataType type) {
+        if (cursor < 0) {
+            return new ScanResult(0, Collections.emptyList());
+        }
+        List<byte[]> keys = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        long emptyBudget = count * 10L;
+        int[] visited = new int[1];
+        int slot = (int) (cursor & (SLOT_COUNT - 1));
+        long partition = cursor >>> SLOT_BITS;
+        while (slot < SLOT_COUNT && visited[0] < count) {
+            PartitionedTable<ValueEntry> table = slots[slot];
+            if (table.isEmpty()) {
+                slot++;
+                partition = 0;
+                if (--emptyBudget == 0) {
+                    break;
+                }
+                continue;
+            }
+            partition = table.scan(partition, count - visited[0], (key, entry) -> {
+                visited[0]++;
+                if (entry.isExpired(now)
+                        || (type != null && entry.getValue().getType() != type)
+                        || (match != null && !match.matches(key.bytes()))) {
+                    return;
+                }
+                keys.add(key.bytes());
+            });
+            if (partition == 0) {
+                slot++; // every partition of the slot read
+            }
+        }
+        return new ScanResult(slot == SLOT_COUNT ? 0 : (partition << SLOT_BITS) | slot, keys);
+    }
+
+    /** HSCAN key cursor [MATCH pattern] [COUNT count]: field, value pairs; MATCH applies to fields */
+    public ScanResult hscan(byte[] key, long cursor, int count, GlobPattern match) {
+        ValueEntry entry = peekEntry(ByteString.wrap(key));
+        if (entry == null) {
+            return new ScanResult(0, Collections.emptyList());
+        }
+        RedisValue v = entry.getValue();
+        if (!(v instanceof HashValue)) {
+            throw new IllegalStateException("WRONGTYPE Operation against a key holding the wrong kind of value");
+        }
+        List<byte[]> items = new ArrayList<>();
+        long next = ((HashValue) v).hscan(cursor, count, items);
+        return new ScanResult(next, filterGroups(items, 2, match));
+    }
+
+    /** SSCAN key cursor [MATCH pattern] [COUNT count] */
+    public ScanResult sscan(byte[] key, long cursor, int count, GlobPattern match) {
+        ValueEntry entry = peekEntry(ByteString.wrap(key));
+        if (entry == null) {
+            return new ScanResult(0, Collections.emptyList());
+        }
+        RedisValue v = entry.getValue();
+        if (!(v instanceof SetValue)) {
+            throw new IllegalStateException("WRONGTYPE Operation against a key holding the wrong kind of value");
+        }
+        List<byte[]> items = new ArrayList<>();
+        long next = ((SetValue) v).sscan(cursor, count, items);
+        return new ScanResult(next, filterGroups(items, 1, match));
+    }
+
+    /** ZSCAN key cursor [MATCH pattern] [COUNT count]: member, score pairs; MATCH applies to members */
+    public ScanResult zscan(byte[] key, long cursor, int count, GlobPattern match) {
+        ZSetValue zset = readZSet(key);
+        if (zset == null) {
+            return new ScanResult(0, Collections.emptyList());
+        }
+        List<byte[]> items = new ArrayList<>();
+        long next = zset.zscan(cursor, count, items);
+        return new ScanResult(next, filterGroups(items, 2, match));
+    }
+
+    /** Keep the groups of items (a member and what follows it) whose first item matches. */
+    private static List<byte[]> filterGroups(List<byte[]> items, int group, GlobPattern match) {
+        if (match == null) {
+            return items;
+        }
+        List<byte[]> kept = new ArrayList<>();
+        for (int i = 0; i < items.size(); i += group) {
+            if (match.matches(items.get(i))) {
+                kept.addAll(items.subList(i, i + group));
+            }
+        }
+        return kept;
+    }
+
     //For Persistence
-    /** Expose the internal map for serialization. */
-    public Map<String, ValueEntry> getStore() {
-        // Return a shallow copy to avoid concurrency issues during serialization
-        return new HashMap<>(store);
+
+    /**
+     * Open a point-in-time snapshot of the keyspace; see KeyspaceSnapshot. Returns once
+     * every write in flight has finished, so the image starts at a command boundary.
+     * The caller writes it out from any thread and closes it.
+     */
+    public synchronized KeyspaceSnapshot openSnapshot() {
+        if (snapshot != null) {
+            throw new IllegalStateException("a snapshot is already in progress");
+        }
+        // Writes that enter after the drain mark the new set; the ones it waits for may
+        // mark either, and are in the snapshot anyway
+        Set<ByteString> changed = dirtyKeys;
+        if (changed != null) {
+            dirtyKeys = ConcurrentHashMap.newKeySet();
+        }
+        KeyspaceSnapshot s = new KeyspaceSnapshot(this, changed);
+        snapshot = s;
+        writeGate.drain();
+        return s;
+    }
+
+    /**
+     * Start tracking the keys every write changes, so each snapshot opened from now on
+     * knows the keys changed since the previous one (see KeyspaceSnapshot.writeChanged).
+     */
+    public synchronized void trackDirtyKeys() {
+        if (dirtyKeys == null) {
+            dirtyKeys = ConcurrentHashMap.newKeySet();
+        }
+    }
+
+    /** Mark keys dirty again, e.g. after the delta that was to hold them failed. */
+    public void markDirty(Collection<ByteString> keys) {
+        Set<ByteString> dirty = dirtyKeys;
+        if (dirty != null) {
+            dirty.addAll(keys);
+        }
+    }
+
+    /** @return the number of keys changed since the last snapshot was opened, or 0 if not tracked */
+    public int getDirtyKeyCount() {
+        Set<ByteString> dirty = dirtyKeys;
+        return dirty != null ? dirty.size() : 0;
+    }
+
+    synchronized void snapshotClosed(KeyspaceSnapshot s) {
+        if (snapshot == s) {
+            snapshot = null;
+            lastSnapshotKeysCopied = s.getKeysCopied();
+        }
+    }
+
+    public boolean isSnapshotInProgress() {
+        return snapshot != null;
+    }
+
+    /** @return keys copied on write by the open snapshot, or by the last one if none is open */
+    public long getSnapshotKeysCopied() {
+        KeyspaceSnapshot s = snapshot;
+        return s != null ? s.getKeysCopied() : lastSnapshotKeysCopied;
     }
 
     /** Load state from a given map (during startup). */
-    public void loadSnapshot(Map<String, ValueEntry> snapshot) {
+    public void loadSnapshot(Map<ByteString, ValueEntry> snapshot) {
         if (snapshot == null) {
             throw new IllegalArgumentException("Snapshot cannot be null");
         }
-        store.clear(); // clear existing state
-        store.putAll(snapshot); // load new state
+        beginLoad();
+        for (Map.Entry<ByteString, ValueEntry> e : snapshot.entrySet()) {
+            loadEntry(e.getKey(), e.getValue());
+        }
+    }
+
+    /** Drop all state before a snapshot is loaded entry by entry with loadEntry. */
+    public void beginLoad() {
+        for (PartitionedTable<ValueEntry> slot : slots) {
+            slot.clear(); // clear existing state
+        }
+        for (ExpiryIndex index : expiryIndexes) {
+            index.clear();
+        }
+        usedMemory.reset();
+        for (LongAdder shard : shardMemory) {
+            shard.reset();
+        }
+        for (int i = 0; i < memoryByType.length; i++) {
+            memoryByType[i].reset();
+            keysByType[i].reset();
+        }
+    }
+
+    /** Remove a key a later delta file deleted (during startup). */
+    public void unloadEntry(ByteString key) {
+        ValueEntry old = mapFor(key).remove(key);
+        if (old != null) {
+            removed(key, old);
+        }
+    }
+
+    /** Add one key read from a snapshot (during startup). */
+    public void loadEntry(ByteString key, ValueEntry entry) {
+        stored(key, entry, mapFor(key).put(key, entry));
+        if (entry.hasExpiration()) {
+            indexExpiry(key, entry, entry.getExpirationTime());
+        }
+    }
+
+    // ----- Active expiration -----
+
+    /**
+     * Reclaim due keys of one shard, oldest bucket first, until none is due or the deadline passes.
+     * In SHARDED mode this must run on the shard's owning loop.
+     * @param deadlineNanos System.nanoTime() value at which to stop
+     * @return the number of keys expired
+     */
+    public int expireDueKeys(int shard, long deadlineNanos) {
+        ExpiryIndex index = expiryIndexes[shard];
+        long now = System.currentTimeMillis();
+        long currentBucket = ExpiryIndex.bucketOf(now);
+        int expired = 0;
+        Map.Entry<Long, List<ByteString>> due;
+        while (System.nanoTime() < deadlineNanos && (due = index.pollDue(now)) != null) {
+            long bucket = due.getKey();
+            List<ByteString> keys = due.getValue();
+            List<ByteString> keep = new ArrayList<>();
+            int i = 0;
+            for (; i < keys.size(); i++) {
+                if ((i & 15) == 15 && System.nanoTime() >= deadlineNanos) {
+                    break; // out of budget: the rest of the bucket waits for the next cycle
+                }
+                if (expireIndexed(index, keys.get(i), bucket, now, keep)) {
+                    expired++;
+                }
+            }
+            keep.addAll(keys.subList(i, keys.size()));
+            index.restore(bucket, keep);
+            if (bucket == currentBucket) {
+                break; // what is left of the current bucket is not due yet
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Settle the index entry of key taken from a due bucket: expire the key, keep the entry
+     * if the key is due later in the same bucket, or move it to the bucket of a TTL that was
+     * pushed back. It is dropped if the key is gone, has no TTL, or another index entry
+     * covers it.
+     * @return true if the key was expired
+     */
+    private boolean expireIndexed(ExpiryIndex index, ByteString key, long bucket, long now, List<ByteString> keep) {
+        while (true) {
+            ValueEntry entry = mapFor(key).get(key);
+            if (entry == null || !entry.hasExpiration()) {
+                return false; // deleted, or persisted: a later TTL is indexed afresh
+            }
+            if (entry.isExpired(now)) {
+                if (mapFor(key).remove(key, entry)) {
+                    removed(key, entry);
+                    expiredKeys.increment();
+                    return true;
+                }
+                continue; // replaced meanwhile: the new entry may rely on this index entry
+            }
+            long target = ExpiryIndex.bucketOf(entry.getExpirationTime());
+            if (target == bucket) {
+                keep.add(key); // later in the current bucket
+                return false;
+            }
+            long pending = entry.getIndexedBucket();
+            if (pending <= bucket || pending > target) {
+                // This was the entry standing for the key's TTL, which has moved later
+                entry.setIndexedBucket(target);
+                index.add(key, entry.getExpirationTime());
+            }
+            return false;
+        }
+    }
+
+    /** @return keys expired so far, lazily or actively */
+    public long getExpiredKeys() {
+        return expiredKeys.sum();
+    }
+
+    /**
+     * Estimated share of the keyspace that is logically expired but still in memory:
+     * index entries in elapsed buckets over the number of keys. It counts stale index
+     * entries too, so it is an upper bound.
+     */
+    public double getExpiredStaleRatio() {
+        long now = System.currentTimeMillis();
+        long due = 0;
+        for (ExpiryIndex index : expiryIndexes) {
+            due += index.dueBacklog(now);
+        }
+        long keys = size();
+        return keys == 0 ? 0.0 : Math.min(1.0, (double) due / keys);
+    }
+
+    // ----- Eviction -----
+
+    /**
+     * Make room before a write to keys: evict keys of each of their shards until the shard
+     * is under its share of maxmemory or the per-call time budget is spent. Only the shards
+     * of the keys are touched, so in SHARDED mode eviction stays on the loops that own them.
+     * @return false if a shard is over its share and nothing could be evicted from it, or,
+     *         for a keyless write, if the store is over maxmemory
+     */
+    public boolean performEvictions(List<byte[]> keys) {
+        Evictor ev = evictor;
+        if (ev.getMaxMemory() == 0) {
+            return true;
+        }
+        if (keys.isEmpty()) {
+            return getUsedMemory() <= ev.getMaxMemory();
+        }
+        boolean ok = true;
+        BitSet done = new BitSet(shardCount);
+        for (byte[] key : keys) {
+            int shard = shardOf(key);
+            if (!done.get(shard)) {
+                done.set(shard);
+                ok &= ev.performEvictions(shard);
+            }
+        }
+        return ok;
+    }
+
+    /**
+     * Remove a key chosen by the evictor, through the eviction hook; with volatileOnly,
+     * only if it still has a TTL.
+     */
+    boolean evict(ByteString key, boolean volatileOnly) {
+        return evictionHook.evict(key.bytes(), () -> removeEvicted(key, volatileOnly));
+    }
+
+    private boolean removeEvicted(ByteString key, boolean volatileOnly) {
+        int ticket = beginWrite(key);
+        try {
+            ValueEntry entry = mapFor(key).get(key);
+            if (entry == null || (volatileOnly && !entry.hasExpiration())) {
+                return false;
+            }
+            if (!mapFor(key).remove(key, entry)) {
+                return false;
+            }
+            removed(key, entry);
+            evictedKeys.increment();
+            return true;
+        } finally {
+            writeGate.exit(ticket);
+        }
+    }
+
+    /** @return the entry stored under key, expired or not, without touching it */
+    ValueEntry rawEntry(ByteString key) {
+        return mapFor(key).get(key);
+    }
+
+    PartitionedTable<ValueEntry> slotMap(int slot) {
+        return slots[slot];
+    }
+
+    ExpiryIndex expiryIndex(int shard) {
+        return expiryIndexes[shard];
+    }
+
+    /** @return estimated bytes held by the dataset */
+    public long getUsedMemory() {
+        return usedMemory.sum();
+    }
+
+    /** @return estimated bytes held by keys of the shard */
+    long getShardUsedMemory(int shard) {
+        return shardMemory[shard].sum();
+    }
+
+    /** @return estimated bytes held by keys of the type */
+    public long getUsedMemory(DataType type) {
+        return memoryByType[type.ordinal()].sum();
+    }
+
+    /** @return number of keys of the type */
+    public long getKeyCount(DataType type) {
+        return keysByType[type.ordinal()].sum();
+    }
+
+    /** @return the encoding of the key's value as OBJECT ENCODING reports it, or null if the key is missing */
+    public String objectEncoding(byte[] keyBytes) {
+        ByteString key = ByteString.wrap(keyBytes);
+        ValueEntry entry = mapFor(key).get(key); // no touch: inspecting is not an access
+        if (entry == null || removeIfExpired(key, entry)) {
+            return null;
+        }
+        return entry.getValue().getEncoding();
+    }
+
+    /**
+     * MEMORY USAGE key: estimated bytes of the key, its value and bookkeeping.
+     * @return the estimate, or -1 if the key does not exist
+     */
+    public long memoryUsage(byte[] keyBytes) {
+        ByteString key = ByteString.wrap(keyBytes);
+        ValueEntry entry = mapFor(key).get(key); // no touch: inspecting is not an access
+        if (entry == null || removeIfExpired(key, entry)) {
+            return -1;
+        }
+        return entrySize(key, entry);
+    }
+
+    public long getMaxMemory() {
+        return evictor.getMaxMemory();
+    }
+
+    public MaxMemoryPolicy getMaxMemoryPolicy() {
+        return evictor.getPolicy();
+    }
+
+    public long getEvictedKeys() {
+        return evictedKeys.sum();
+    }
+
+    /** @return the number of keys, including expired keys not reclaimed yet */
+    public long size() {
+        long n = 0;
+        for (PartitionedTable<ValueEntry> slot : slots) {
+            n += slot.size();
+        }
+        return n;
     }
 
 }
\ No newline at end of file
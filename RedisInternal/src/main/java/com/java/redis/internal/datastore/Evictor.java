@@ -0,0 +1,269 @@
+package com.java.redis.internal.datastore;
+
+import com.java.redis.internal.datastore.value.PartitionedTable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Evictor keeps a DataStore under maxmemory by evicting keys on the write path.
+ *
+ * Like Redis, it does not keep keys in LRU/LFU order. Each eviction samples a few keys,
+ * merges them into a small pool of the best candidates seen so far (the pool survives
+ * between evictions, which makes the approximation close to a true LRU), and evicts
+ * the best one. Evictions run before a write command and stop after a short time budget
+ * even if the store is still over the limit; the next write continues where it stopped,
+ * so there is never a long pause to catch up.
+ *
+ * The limit is split evenly between the shards, and a write evicts only from the shards of
+ * its keys until each is under its share (maxmemory / shardCount). In SHARDED mode each
+ * shard is written by its owning loop only, so a write never evicts keys another loop
+ * owns; keys hash evenly across shards, so the shares fill at about the same rate. With
+ * a single shard the share is the whole limit.
+ *
+ * Every entry carries 24 bits of access metadata (ValueEntry.access), as in Redis:
+ * for LRU a seconds clock, for LFU a 16-bit minutes timestamp and an 8-bit logarithmic
+ * access counter that decays with idle time.
+ */
+final class Evictor {
+    static final int POOL_SIZE = 16;
+    // Same as Redis' default eviction tenacity: give up after about half a millisecond
+    private static final long TIME_LIMIT_NANOS = 500_000;
+    // Random slots probed per sampling round before giving up on a sparse shard
+    private static final int MAX_SLOT_PROBES = 64;
+
+    private static final int LRU_CLOCK_MAX = (1 << 24) - 1;
+    private static final int LFU_INIT_VAL = 5;
+    private static final int LFU_LOG_FACTOR = 10;
+    private static final int LFU_DECAY_MINUTES = 1;
+
+    private final DataStore store;
+    private final long maxMemory;      // 0 = unlimited
+    private final long shardLimit;     // each shard's share of maxMemory
+    private final MaxMemoryPolicy policy;
+    private final int samples;
+    private final Pool[] pools;        // one per shard
+
+    Evictor(DataStore store, long maxMemory, MaxMemoryPolicy policy, int samples) {
+        if (maxMemory < 0) {
+            throw new IllegalArgumentException("maxmemory must not be negative: " + maxMemory);
+        }
+        if (samples < 1) {
+            throw new IllegalArgumentException("maxmemory samples must be positive: " + samples);
+        }
+        this.store = store;
+        this.maxMemory = maxMemory;
+        this.shardLimit = maxMemory / store.getShardCount();
+        this.policy = policy;
+        this.samples = samples;
+        this.pools = new Pool[store.getShardCount()];
+        for (int i = 0; i < pools.length; i++) {
+            pools[i] = new Pool();
+        }
+    }
+
+    long getMaxMemory() {
+        return maxMemory;
+    }
+
+    MaxMemoryPolicy getPolicy() {
+        return policy;
+    }
+
+    // ----- Access metadata -----
+
+    /** @return the access metadata of a newly created key */
+    int initialAccess() {
+        if (policy == MaxMemoryPolicy.ALLKEYS_LFU) {
+            return (lfuMinutes() << 8) | LFU_INIT_VAL;
+        }
+        return lruClock();
+    }
+
+    /** Record an access to the entry. */
+    void touch(ValueEntry entry) {
+        int access = entry.getAccess();
+        if (policy == MaxMemoryPolicy.ALLKEYS_LFU) {
+            int counter = lfuLogIncr(lfuDecayedCounter(access));
+            entry.setAccess((lfuMinutes() << 8) | counter);
+        } else {
+            int clock = lruClock();
+            if (access != clock) {
+                entry.setAccess(clock); // skip the store when it would not change anything
+            }
+        }
+    }
+
+    private static int lruClock() {
+        return (int) ((System.currentTimeMillis() / 1000) & LRU_CLOCK_MAX);
+    }
+
+    /** Seconds since the entry was last touched, allowing for one wrap of the 24-bit clock. */
+    private static long idleSeconds(int access) {
+        int clock = lruClock();
+        return clock >= access ? clock - access : clock + (LRU_CLOCK_MAX - access);
+    }
+
+    private static int lfuMinutes() {
+        return (int) ((System.currentTimeMillis() / 60_000) & 0xFFFF);
+    }
+
+    /** The access counter after decaying by one per LFU_DECAY_MINUTES of idle time. */
+    private static int lfuDecayedCounter(int access) {
+        int lastDecrement = access >>> 8;
+        int counter = access & 0xFF;
+        int now = lfuMinutes();
+        int elapsed = now >= lastDecrement ? now - lastDecrement : 0xFFFF - lastDecrement + now;
+        int periods = elapsed / LFU_DECAY_MINUTES;
+        return periods > counter ? 0 : counter - periods;
+    }
+
+    /** Logarithmic increment: the higher the counter, the less likely an access bumps it. */
+    private static int lfuLogIncr(int counter) {
+        if (counter == 255) {
+            return 255;
+        }
+        double base = Math.max(0, counter - LFU_INIT_VAL);
+        double p = 1.0 / (base * LFU_LOG_FACTOR + 1);
+        return ThreadLocalRandom.current().nextDouble() < p ? counter + 1 : counter;
+    }
+
+    /** @return how good a candidate the entry is; higher evicts first */
+    private long evictionScore(ValueEntry entry) {
+        switch (policy) {
+            case ALLKEYS_LRU:
+                return idleSeconds(entry.getAccess());
+            case ALLKEYS_LFU:
+                return 255 - lfuDecayedCounter(entry.getAccess());
+            case VOLATILE_TTL:
+                return Long.MAX_VALUE - entry.getExpirationTime();
+            default:
+                throw new IllegalStateException("No eviction under " + policy);
+        }
+    }
+
+    // ----- Eviction -----
+
+    /**
+     * Evict keys of the shard until it is under its share of the limit or the time budget
+     * is spent.
+     * @return false if the shard is over its share and nothing could be evicted
+     */
+    boolean performEvictions(int shard) {
+        if (maxMemory == 0 || store.getShardUsedMemory(shard) <= shardLimit) {
+            return true;
+        }
+        if (policy == MaxMemoryPolicy.NOEVICTION) {
+            return false;
+        }
+        long deadline = System.nanoTime() + TIME_LIMIT_NANOS;
+        int evicted = 0;
+        while (store.getShardUsedMemory(shard) > shardLimit) {
+            if (!evictOne(shard)) {
+                break;
+            }
+            evicted++;
+            if (System.nanoTime() >= deadline) {
+                break; // carry on with the next write
+            }
+        }
+        return evicted > 0 || store.getShardUsedMemory(shard) <= shardLimit;
+    }
+
+    private boolean evictOne(int shard) {
+        Pool pool = pools[shard];
+        synchronized (pool) {
+            // A pool of stale keys (deleted or rewritten since sampled) is refilled a few times
+            for (int round = 0; round < 4; round++) {
+                populate(shard, pool);
+                ByteString key;
+                while ((key = pool.pollBest()) != null) {
+                    if (store.evict(key, policy == MaxMemoryPolicy.VOLATILE_TTL)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Sample keys of the shard into the pool. */
+    private void populate(int shard, Pool pool) {
+        if (policy == MaxMemoryPolicy.VOLATILE_TTL) {
+            // The expiry index already orders keys by TTL: sample its head
+            List<ByteString> keys = new ArrayList<>(samples);
+            store.expiryIndex(shard).sampleEarliest(samples, store::rawEntry, keys);
+            for (ByteString key : keys) {
+                ValueEntry entry = store.rawEntry(key);
+                if (entry != null && entry.hasExpiration()) {
+                    pool.insert(key, evictionScore(entry));
+                }
+            }
+            return;
+        }
+        int shardCount = store.getShardCount();
+        int slotsInShard = (DataStore.SLOT_COUNT - shard + shardCount - 1) / shardCount;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int sampled = 0;
+        for (int probe = 0; probe < MAX_SLOT_PROBES && sampled < samples; probe++) {
+            PartitionedTable<ValueEntry> slot = store.slotMap(shard + shardCount * random.nextInt(slotsInShard));
+            if (slot.isEmpty()) {
+                continue;
+            }
+            for (Map.Entry<ByteString, ValueEntry> e : slot.entries()) {
+                pool.insert(e.getKey(), evictionScore(e.getValue()));
+                if (++sampled >= samples) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /** The best eviction candidates seen so far, ascending by score. */
+    private static final class Pool {
+        private final ByteString[] keys = new ByteString[POOL_SIZE];
+        private final long[] scores = new long[POOL_SIZE];
+        private int size;
+
+        void insert(ByteString key, long score) {
+            for (int i = 0; i < size; i++) {
+                if (keys[i].equals(key)) {
+                    remove(i); // re-sampled: its score may have changed
+                    break;
+                }
+            }
+            if (size == POOL_SIZE) {
+                if (score <= scores[0]) {
+                    return; // worse than everything we hold
+                }
+                remove(0);
+            }
+            int pos = size;
+            while (pos > 0 && scores[pos - 1] > score) {
+                keys[pos] = keys[pos - 1];
+                scores[pos] = scores[pos - 1];
+                pos--;
+            }
+            keys[pos] = key;
+            scores[pos] = score;
+            size++;
+        }
+
+        ByteString pollBest() {
+            if (size == 0) {
+                return null;
+            }
+            ByteString key = keys[--size];
+            keys[size] = null;
+            return key;
+        }
+
+        private void remove(int i) {
+            System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+            System.arraycopy(scores, i + 1, scores, i, size - i - 1);
+            keys[--size] = null;
+        }
+    }
+}
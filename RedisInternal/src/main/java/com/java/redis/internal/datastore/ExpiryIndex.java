@@ -0,0 +1,124 @@
+package com.java.redis.internal.datastore;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Keys with a TTL, sorted into coarse time buckets by expiration time.
+ *
+ * A bucket covers 2^BUCKET_SHIFT milliseconds; buckets are kept in time order, so the
+ * active expire cycle only ever looks at keys that are due. Entries are not removed when
+ * a key is overwritten, deleted or given a new TTL. Instead each ValueEntry records the
+ * bucket of the index entry that will reach it, and a new TTL only adds an entry when it
+ * is due before that one. When the cycle reaches an entry whose key's TTL has moved
+ * later, it moves the entry to the TTL's bucket; entries for keys that are gone or no
+ * longer expire are dropped. A key refreshed on every access, as in a session cache,
+ * thus keeps a single entry however often it is written.
+ *
+ * There is one index per shard. In SHARDED mode it is only touched by the owning loop, so
+ * the monitor is uncontended; otherwise it serialises the short add/poll sections.
+ */
+final class ExpiryIndex {
+    static final int BUCKET_SHIFT = 6; // 64 ms buckets
+
+    private final TreeMap<Long, List<ByteString>> buckets = new TreeMap<>();
+    private long size;
+
+    static long bucketOf(long expireAtMillis) {
+        return expireAtMillis >> BUCKET_SHIFT;
+    }
+
+    synchronized void add(ByteString key, long expireAtMillis) {
+        buckets.computeIfAbsent(bucketOf(expireAtMillis), b -> new ArrayList<>()).add(key);
+        size++;
+    }
+
+    /**
+     * Take the oldest bucket if it holds keys that may be due at nowMillis.
+     * The caller re-adds the keys that turn out not to be due yet.
+     */
+    synchronized Map.Entry<Long, List<ByteString>> pollDue(long nowMillis) {
+        Map.Entry<Long, List<ByteString>> first = buckets.firstEntry();
+        if (first == null || first.getKey() > bucketOf(nowMillis)) {
+            return null;
+        }
+        buckets.pollFirstEntry();
+        size -= first.getValue().size();
+        return first;
+    }
+
+    /** Put back keys of a polled bucket, e.g. when the cycle ran out of time. */
+    synchronized void restore(long bucket, List<ByteString> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        buckets.computeIfAbsent(bucket, b -> new ArrayList<>()).addAll(keys);
+        size += keys.size();
+    }
+
+    /** @return entries in buckets that ended before nowMillis: expired keys not yet reclaimed, or stale entries */
+    synchronized long dueBacklog(long nowMillis) {
+        long due = 0;
+        for (List<ByteString> keys : buckets.headMap(bucketOf(nowMillis), false).values()) {
+            due += keys.size();
+        }
+        return due;
+    }
+
+    /**
+     * Collect up to n live keys from the earliest buckets, without removing them.
+     * Stale entries met on the way (the key is gone or no longer expires) are dropped, and
+     * entries whose key's TTL moved later are moved to its bucket, so repeated sampling
+     * does not rescan them.
+     */
+    synchronized void sampleEarliest(int n, Function<ByteString, ValueEntry> lookup, List<ByteString> out) {
+        List<ByteString> moved = new ArrayList<>();
+        List<Long> movedTo = new ArrayList<>();
+        Iterator<Map.Entry<Long, List<ByteString>>> it = buckets.entrySet().iterator();
+        while (it.hasNext() && out.size() < n) {
+            Map.Entry<Long, List<ByteString>> bucket = it.next();
+            List<ByteString> keys = bucket.getValue();
+            int i = 0;
+            while (i < keys.size() && out.size() < n) {
+                ValueEntry entry = lookup.apply(keys.get(i));
+                long target = entry != null && entry.hasExpiration() ? bucketOf(entry.getExpirationTime()) : -1;
+                if (target == bucket.getKey()) {
+                    out.add(keys.get(i++));
+                    continue;
+                }
+                if (target > bucket.getKey()) {
+                    long pending = entry.getIndexedBucket();
+                    if (pending <= bucket.getKey() || pending > target) {
+                        entry.setIndexedBucket(target); // it stands for the key: move it along
+                        moved.add(keys.get(i));
+                        movedTo.add(target);
+                    }
+                }
+                // Order inside a bucket does not matter: move the last entry into the hole
+                keys.set(i, keys.get(keys.size() - 1));
+                keys.remove(keys.size() - 1);
+                size--;
+            }
+            if (keys.isEmpty()) {
+                it.remove();
+            }
+        }
+        for (int i = 0; i < moved.size(); i++) {
+            buckets.computeIfAbsent(movedTo.get(i), b -> new ArrayList<>()).add(moved.get(i));
+            size++;
+        }
+    }
+
+    synchronized long size() {
+        return size;
+    }
+
+    synchronized void clear() {
+        buckets.clear();
+        size = 0;
+    }
+}
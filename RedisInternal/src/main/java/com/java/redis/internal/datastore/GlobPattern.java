@@ -0,0 +1,105 @@
+package com.java.redis.internal.datastore;
+
+/**
+ * A Redis-style glob pattern, as used by SCAN ... MATCH: '*' matches any run of bytes,
+ * '?' any single byte, "[abc]", "[^abc]" and "[a-z]" a byte class, and '\' escapes
+ * the next byte. Matching is done on raw bytes.
+ */
+public final class GlobPattern {
+    private final byte[] pattern;
+    private final boolean matchAll;
+
+    private GlobPattern(byte[] pattern) {
+        this.pattern = pattern;
+        this.matchAll = pattern.length == 1 && pattern[0] == '*';
+    }
+
+    public static GlobPattern compile(byte[] pattern) {
+        return new GlobPattern(pattern.clone());
+    }
+
+    public boolean matches(byte[] s) {
+        return matchAll || match(0, s, 0);
+    }
+
+    private boolean match(int p, byte[] s, int i) {
+        while (p < pattern.length) {
+            byte c = pattern[p];
+            if (c == '*') {
+                while (p + 1 < pattern.length && pattern[p + 1] == '*') {
+                    p++;
+                }
+                if (p + 1 == pattern.length) {
+                    return true; // trailing star matches the rest
+                }
+                for (int j = i; j <= s.length; j++) {
+                    if (match(p + 1, s, j)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            if (i == s.length) {
+                return false;
+            }
+            if (c == '?') {
+                p++;
+            } else if (c == '[') {
+                int end = classEnd(p);
+                if (!inClass(p + 1, end, s[i])) {
+                    return false;
+                }
+                p = end + 1;
+            } else {
+                if (c == '\\' && p + 1 < pattern.length) {
+                    c = pattern[++p];
+                }
+                if (c != s[i]) {
+                    return false;
+                }
+                p++;
+            }
+            i++;
+        }
+        return i == s.length;
+    }
+
+    /** @return index of the ']' closing the class opened at p, or the last index if unterminated */
+    private int classEnd(int p) {
+        int q = p + 1;
+        if (q < pattern.length && pattern[q] == '^') {
+            q++;
+        }
+        for (; q < pattern.length; q++) {
+            if (pattern[q] == '\\' && q + 1 < pattern.length) {
+                q++;
+            } else if (pattern[q] == ']') {
+                return q;
+            }
+        }
+        return pattern.length - 1;
+    }
+
+    private boolean inClass(int from, int end, byte b) {
+        boolean negate = from < end && pattern[from] == '^';
+        if (negate) {
+            from++;
+        }
+        boolean found = false;
+        for (int q = from; q < end && !found; q++) {
+            if (pattern[q] == '\\' && q + 1 < end) {
+                found = pattern[++q] == b;
+            } else if (q + 2 < end && pattern[q + 1] == '-') {
+                int lo = pattern[q] & 0xFF, hi = pattern[q + 2] & 0xFF;
+                if (lo > hi) {
+                    int t = lo; lo = hi; hi = t;
+                }
+                found = (b & 0xFF) >= lo && (b & 0xFF) <= hi;
+                q += 2;
+            } else {
+                found = pattern[q] == b;
+            }
+        }
+        return found != negate;
+    }
+}
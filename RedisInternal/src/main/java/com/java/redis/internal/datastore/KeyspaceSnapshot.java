@@ -0,0 +1,225 @@
+package com.java.redis.internal.datastore;
+
+import com.java.redis.internal.datastore.value.PartitionedTable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A point-in-time image of the keyspace, written out while writes continue.
+ *
+ * Nothing is copied up front. While the snapshot is open, the DataStore calls preserve
+ * before it changes a key, and the first change to a key whose slot has not been written
+ * yet keeps a copy of the key's state at the start (or a marker that it did not exist).
+ * The writer walks the slots in order and, for every key, emits that pre-image if there
+ * is one and the live value otherwise; it claims each key under the same lock preserve
+ * uses, so a write waits for the key to be emitted rather than changing it mid-way.
+ * Pre-images are dropped as soon as their slot is written, so the extra memory is the
+ * keys changed during the snapshot, in slots not written yet.
+ *
+ * Keys removed by expiry are not preserved: they were due anyway, and would be dropped
+ * when the image is loaded.
+ *
+ * When the DataStore tracks dirty keys, the snapshot also takes over the keys changed
+ * since the previous one, and writeChanged writes just those: a delta.
+ */
+public final class KeyspaceSnapshot implements AutoCloseable {
+    /** Receives the image, one key at a time. */
+    @FunctionalInterface
+    public interface EntryWriter {
+        void write(ByteString key, ValueEntry entry) throws IOException;
+    }
+
+    /** Receives a delta: changed keys, and the keys that no longer exist. */
+    public interface DeltaWriter extends EntryWriter {
+        void writeDeleted(ByteString key) throws IOException;
+    }
+
+    private static final Object ABSENT = new Object(); // the key did not exist at the start
+    private static final Object WRITTEN = new Object();
+
+    private final DataStore store;
+    private final long startedAt = System.currentTimeMillis();
+    // Per slot: key -> pre-image ValueEntry, ABSENT or WRITTEN; created on first use
+    private final AtomicReferenceArray<ConcurrentHashMap<ByteString, Object>> preserved =
+            new AtomicReferenceArray<>(DataStore.SLOT_COUNT);
+    private final AtomicIntegerArray slotWritten = new AtomicIntegerArray(DataStore.SLOT_COUNT);
+    private final LongAdder keysCopied = new LongAdder();
+    private final Set<ByteString> changedKeys; // null unless dirty keys are tracked
+    private volatile boolean closed;
+
+    KeyspaceSnapshot(DataStore store, Set<ByteString> changedKeys) {
+        this.store = store;
+        this.changedKeys = changedKeys;
+    }
+
+    /** Called by the DataStore before the key at slot is changed. */
+    void preserve(ByteString key, int slot) {
+        if (slotWritten.get(slot) != 0) {
+            return;
+        }
+        ConcurrentHashMap<ByteString, Object> p = preservedFor(slot);
+        if (p.containsKey(key)) {
+            return;
+        }
+        p.computeIfAbsent(key, k -> {
+            ValueEntry e = store.slotMap(slot).get(k);
+            if (e == null) {
+                return ABSENT;
+            }
+            keysCopied.increment();
+            return new ValueEntry(e.getValue().copy(), e.getExpirationTime());
+        });
+    }
+
+    private ConcurrentHashMap<ByteString, Object> preservedFor(int slot) {
+        ConcurrentHashMap<ByteString, Object> p = preserved.get(slot);
+        if (p == null) {
+            ConcurrentHashMap<ByteString, Object> created = new ConcurrentHashMap<>();
+            p = preserved.compareAndExchange(slot, null, created);
+            if (p == null) {
+                p = created;
+            }
+        }
+        return p;
+    }
+
+    /**
+     * Write the image: every key that existed when the snapshot started, with its value
+     * and expiry at that moment, except keys already expired. Runs on the caller's thread.
+     */
+    public void writeTo(EntryWriter writer) throws IOException {
+        try {
+            for (int slot = 0; slot < DataStore.SLOT_COUNT; slot++) {
+                ConcurrentHashMap<ByteString, Object> p = preservedFor(slot);
+                PartitionedTable<ValueEntry> live = store.slotMap(slot);
+                live.forEach((key, entry) -> emit(key, p, live, writer));
+                // Keys removed since the start are only left here
+                for (Map.Entry<ByteString, Object> e : p.entrySet()) {
+                    if (e.getValue() instanceof ValueEntry) {
+                        emit(e.getKey(), p, live, writer);
+                    }
+                }
+                slotDone(slot);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Write the delta: the state at the start of the snapshot of every key changed since
+     * the previous one, or its deletion if it did not exist then (or had expired). Keys go
+     * slot by slot, as in writeTo. Runs on the caller's thread.
+     * @throws IllegalStateException if the DataStore does not track dirty keys
+     */
+    public void writeChanged(DeltaWriter writer) throws IOException {
+        if (changedKeys == null) {
+            throw new IllegalStateException("dirty keys are not tracked");
+        }
+        ByteString[] keys = changedKeys.toArray(new ByteString[0]);
+        int[] slots = new int[keys.length];
+        Integer[] order = new Integer[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            slots[i] = DataStore.slotOf(keys[i]);
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> slots[i]));
+        try {
+            int slot = 0;
+            for (int i : order) {
+                for (; slot < slots[i]; slot++) {
+                    slotDone(slot);
+                }
+                emitChanged(keys[i], preservedFor(slot), store.slotMap(slot), writer);
+            }
+            for (; slot < DataStore.SLOT_COUNT; slot++) {
+                slotDone(slot);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void slotDone(int slot) {
+        slotWritten.set(slot, 1);
+        preserved.set(slot, null);
+    }
+
+    private void emitChanged(ByteString key, ConcurrentHashMap<ByteString, Object> p,
+                             PartitionedTable<ValueEntry> live, DeltaWriter writer) {
+        p.compute(key, (k, state) -> {
+            if (state == WRITTEN) {
+                return state;
+            }
+            ValueEntry entry = state == ABSENT ? null : state != null ? (ValueEntry) state : live.get(k);
+            try {
+                if (entry != null && !entry.isExpired(startedAt)) {
+                    writer.write(k, entry);
+                } else {
+                    writer.writeDeleted(k);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return WRITTEN;
+        });
+    }
+
+    /**
+     * @return the keys changed between the previous snapshot and this one (empty for the
+     *         first), or null if the DataStore does not track dirty keys
+     */
+    public Set<ByteString> getChangedKeys() {
+        return changedKeys;
+    }
+
+    private void emit(ByteString key, ConcurrentHashMap<ByteString, Object> p,
+                      PartitionedTable<ValueEntry> live, EntryWriter writer) {
+        p.compute(key, (k, state) -> {
+            if (state == WRITTEN || state == ABSENT) {
+                return state;
+            }
+            // No pre-image: the key has not changed since the start, and cannot while we hold it
+            ValueEntry entry = state != null ? (ValueEntry) state : live.get(k);
+            if (entry != null && !entry.isExpired(startedAt)) {
+                try {
+                    writer.write(k, entry);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return WRITTEN;
+        });
+    }
+
+    /** @return keys whose pre-image had to be copied because they changed during the snapshot */
+    public long getKeysCopied() {
+        return keysCopied.sum();
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    /** End the snapshot; the DataStore stops preserving pre-images. */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            store.snapshotClosed(this);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.java.redis.internal.datastore;
+
+import java.util.Locale;
+
+/**
+ * What the store does when a write arrives while used memory is above maxmemory.
+ */
+public enum MaxMemoryPolicy {
+    /** Refuse writes that would grow the dataset. */
+    NOEVICTION,
+    /** Evict the least recently used keys, approximated by sampling. */
+    ALLKEYS_LRU,
+    /** Evict the least frequently used keys, approximated by sampling. */
+    ALLKEYS_LFU,
+    /** Evict the keys with a TTL that expire soonest. */
+    VOLATILE_TTL;
+
+    /** Parse the Redis spelling, e.g. "allkeys-lru". */
+    public static MaxMemoryPolicy fromConfig(String value) {
+        try {
+            return valueOf(value.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown maxmemory policy: " + value
+                    + " (expected 'noeviction', 'allkeys-lru', 'allkeys-lfu' or 'volatile-ttl')");
+        }
+    }
+
+    /** @return the Redis spelling, as shown by INFO */
+    public String configName() {
+        return name().replace('_', '-').toLowerCase(Locale.ROOT);
+    }
+}
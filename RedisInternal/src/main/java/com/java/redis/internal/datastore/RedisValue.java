@@ -3,4 +3,21 @@ package com.java.redis.internal.datastore;
 import com.java.redis.internal.constants.DataType;
 
 public interface RedisValue {
+    DataType getType();
+
+    /** @return the internal representation, as reported by OBJECT ENCODING */
+    String getEncoding();
+
+    /**
+     * @return approximate heap footprint of the value in bytes, maintained incrementally
+     * so callers can ask after every write
+     */
+    long getEstimatedMemoryUsageBytes();
+
+    /**
+     * @return a copy that later writes to this value do not change, used to keep a key's
+     * pre-image while a snapshot is being written. Immutable parts (listpacks, string
+     * bytes) are shared rather than copied.
+     */
+    RedisValue copy();
 }
@@ -0,0 +1,23 @@
+package com.java.redis.internal.datastore;
+
+import java.util.List;
+
+/** One step of a SCAN-family iteration: the cursor to continue from (0 when done) and the items found. */
+public final class ScanResult {
+    private final long cursor;
+    private final List<byte[]> items;
+
+    public ScanResult(long cursor, List<byte[]> items) {
+        this.cursor = cursor;
+        this.items = items;
+    }
+
+    public long getCursor() {
+        return cursor;
+    }
+
+    /** Keys for SCAN, field/value pairs for HSCAN, members for SSCAN, member/score pairs for ZSCAN. */
+    public List<byte[]> getItems() {
+        return items;
+    }
+}
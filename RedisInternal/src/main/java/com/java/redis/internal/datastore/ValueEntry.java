@@ -1,14 +1,48 @@
 package com.java.redis.internal.datastore;
 
 import java.io.Serializable;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 
 public class ValueEntry implements Serializable{
     private static final long serialVersionUID = 1L;
 
+    /** Expiration time of a key that never expires. */
+    public static final long NO_EXPIRY = -1L;
+
+    /** indexedBucket of a key the expiry index has no entry for (bucket 0 is in 1970). */
+    static final long NOT_INDEXED = 0L;
+
+    /** accountedBytes of an entry that has left the keyspace. */
+    static final long RELEASED = -1L;
+    private static final VarHandle ACCOUNTED;
+    static {
+        try {
+            ACCOUNTED = MethodHandles.lookup().findVarHandle(ValueEntry.class, "accountedBytes", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // Every value type but BloomFilterValue is Serializable; the binary snapshot format,
+    // not Java serialization, is what persists entries
+    @SuppressWarnings("serial")
     private final RedisValue value;
-    private final long expirationTime;
+    private final long expirationTime; // epoch millis, or NO_EXPIRY
+    // Access metadata for eviction: LRU clock or LFU counter, see Evictor
+    private transient volatile int access;
+    // Bytes this entry currently contributes to the store's used memory
+    private transient volatile long accountedBytes;
+    // ExpiryIndex bucket of the index entry that will reach this key, or NOT_INDEXED
+    private transient volatile long indexedBucket;
     
+    /** @param expirationTime epoch millis, or null if the key does not expire */
     public ValueEntry(RedisValue value, Long expirationTime) {
+        this(value, expirationTime == null ? NO_EXPIRY : expirationTime.longValue());
+    }
+
+    /** @param expirationTime epoch millis, or NO_EXPIRY */
+    public ValueEntry(RedisValue value, long expirationTime) {
         this.value = value;
         this.expirationTime = expirationTime;
     }
@@ -16,8 +50,64 @@ public class ValueEntry implements Serializable{
         return value;
     }
 
+    public boolean hasExpiration() {
+        return expirationTime != NO_EXPIRY;
+    }
+
+    /** @return the expiration time in epoch millis, or NO_EXPIRY */
     public long getExpirationTime() {
         return expirationTime;
     }
+
+    public boolean isExpired(long nowMillis) {
+        return expirationTime != NO_EXPIRY && nowMillis >= expirationTime;
+    }
+
+    int getAccess() {
+        return access;
+    }
+
+    void setAccess(int access) {
+        this.access = access;
+    }
+
+    long getIndexedBucket() {
+        return indexedBucket;
+    }
+
+    void setIndexedBucket(long bucket) {
+        this.indexedBucket = bucket;
+    }
+
+    /**
+     * Set the bytes this entry accounts for.
+     * @return the bytes accounted before (0 for a new entry), or RELEASED if the entry
+     *         already left the keyspace and nothing changed
+     */
+    long account(long bytes) {
+        while (true) {
+            long prev = accountedBytes;
+            if (prev == RELEASED) {
+                return RELEASED;
+            }
+            if (ACCOUNTED.compareAndSet(this, prev, bytes)) {
+                return prev;
+            }
+        }
+    }
+
+    /**
+     * Stop accounting for this entry; later account() calls are no-ops.
+     * @return the bytes accounted before, or RELEASED if it was already released
+     */
+    long release() {
+        return (long) ACCOUNTED.getAndSet(this, RELEASED);
+    }
+
+    /** @return the bytes this entry accounts for */
+    long getAccountedBytes() {
+        long bytes = accountedBytes;
+        return bytes == RELEASED ? 0 : bytes;
+    }
     
 }
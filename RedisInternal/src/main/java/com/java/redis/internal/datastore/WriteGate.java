@@ -0,0 +1,49 @@
+package com.java.redis.internal.datastore;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Tracks the DataStore writes in flight, so a snapshot can start at a point where no
+ * write is half done.
+ *
+ * A writer registers on a counter striped by thread (padded to its own cache line) in
+ * one of two epochs, so entering and leaving cost one mostly uncontended atomic add each.
+ * drain() switches the epoch and waits only for the writers registered in the old one:
+ * writers that enter after the switch already see the new snapshot and keep pre-images.
+ */
+final class WriteGate {
+    private static final int STRIPES = 64;
+    private static final int PAD = 16; // longs between stripes: 128 bytes
+
+    private final AtomicLongArray[] inFlight = {
+            new AtomicLongArray(STRIPES * PAD), new AtomicLongArray(STRIPES * PAD)};
+    private volatile int epoch;
+
+    /** @return the ticket to pass to exit */
+    int enter() {
+        int e = epoch & 1;
+        int stripe = (int) (Thread.currentThread().threadId() & (STRIPES - 1));
+        inFlight[e].getAndIncrement(stripe * PAD);
+        return e * STRIPES + stripe;
+    }
+
+    void exit(int ticket) {
+        inFlight[ticket / STRIPES].getAndDecrement((ticket % STRIPES) * PAD);
+    }
+
+    /**
+     * Wait until every write that entered before this call has left. Anything the caller
+     * published before calling is seen by every write that is not waited for.
+     * Callers must not overlap.
+     */
+    void drain() {
+        int old = epoch & 1;
+        epoch = old + 1;
+        AtomicLongArray counters = inFlight[old];
+        for (int s = 0; s < STRIPES; s++) {
+            while (counters.get(s * PAD) != 0) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+}
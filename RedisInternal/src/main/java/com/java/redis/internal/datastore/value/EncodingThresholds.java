@@ -0,0 +1,68 @@
+package com.java.redis.internal.datastore.value;
+
+import java.io.Serializable;
+
+/**
+ * Size limits under which hashes, sets and sorted sets stay packed in a listpack,
+ * like Redis' *-max-listpack-entries and *-max-listpack-value settings. A collection
+ * converts to its hash table / skip list representation as soon as it holds more
+ * entries than maxEntries or receives an element longer than maxValue bytes; it never
+ * converts back.
+ */
+public final class EncodingThresholds implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** Redis 7.2 defaults. */
+    public static final EncodingThresholds DEFAULT = new EncodingThresholds(128, 64, 128, 64, 128, 64);
+
+    private final int hashMaxEntries;
+    private final int hashMaxValue;
+    private final int setMaxEntries;
+    private final int setMaxValue;
+    private final int zsetMaxEntries;
+    private final int zsetMaxValue;
+
+    public EncodingThresholds(int hashMaxEntries, int hashMaxValue, int setMaxEntries, int setMaxValue,
+                              int zsetMaxEntries, int zsetMaxValue) {
+        // A hash entry is two listpack entries (field and value)
+        checkEntries(hashMaxEntries * 2L);
+        checkEntries(setMaxEntries);
+        checkEntries(zsetMaxEntries * 2L);
+        this.hashMaxEntries = hashMaxEntries;
+        this.hashMaxValue = hashMaxValue;
+        this.setMaxEntries = setMaxEntries;
+        this.setMaxValue = setMaxValue;
+        this.zsetMaxEntries = zsetMaxEntries;
+        this.zsetMaxValue = zsetMaxValue;
+    }
+
+    private static void checkEntries(long entries) {
+        if (entries < 0 || entries > Listpack.MAX_ENTRIES) {
+            throw new IllegalArgumentException("listpack entry limit out of range: " + entries);
+        }
+    }
+
+    public int getHashMaxEntries() {
+        return hashMaxEntries;
+    }
+
+    public int getHashMaxValue() {
+        return hashMaxValue;
+    }
+
+    public int getSetMaxEntries() {
+        return setMaxEntries;
+    }
+
+    public int getSetMaxValue() {
+        return setMaxValue;
+    }
+
+    public int getZsetMaxEntries() {
+        return zsetMaxEntries;
+    }
+
+    public int getZsetMaxValue() {
+        return zsetMaxValue;
+    }
+}
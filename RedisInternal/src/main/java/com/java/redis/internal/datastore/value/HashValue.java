@@ -1,27 +1,208 @@
 package com.java.redis.internal.datastore.value;
 
 import com.java.redis.internal.constants.DataType;
+import com.java.redis.internal.datastore.ByteString;
 import com.java.redis.internal.datastore.RedisValue;
 
 import java.io.Serializable;
-import java.util.concurrent.ConcurrentHashMap;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 /*
     * HashValue represents a Redis hash data structure.
-    * * This implementation uses a ConcurrentHashMap to ensure thread-safety
-    * and allows concurrent access to the hash.
+    * * Small hashes are packed in a listpack of field, value pairs that is replaced
+    * copy-on-write; past the EncodingThresholds the hash converts to a
+    * PartitionedTable, which allows concurrent access and bounded HSCAN steps.
  */
 public class HashValue implements RedisValue, Serializable {
-    private final ConcurrentHashMap<String, String> map = new ConcurrentHashMap<>();
+    private static final long serialVersionUID = 8421575848349480431L;
+
+    // Value object and the listpack's array header
+    private static final long PACKED_OVERHEAD = 48;
+    // Empty ConcurrentHashMap with its table; per field: node, ByteString and two byte[] headers
+    private static final long OVERHEAD = 128;
+    private static final long FIELD_OVERHEAD = 112;
+    private static final VarHandle REPR;
+    static {
+        try {
+            REPR = MethodHandles.lookup().findVarHandle(HashValue.class, "repr", Serializable.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final EncodingThresholds thresholds;
+    // listpack byte[] while small, PartitionedTable<byte[]> once converted
+    private volatile Serializable repr = Listpack.EMPTY;
+    private final AtomicLong estimatedBytes = new AtomicLong(); // hashtable encoding only
+
+    public HashValue() {
+        this(EncodingThresholds.DEFAULT);
+    }
+
+    public HashValue(EncodingThresholds thresholds) {
+        this.thresholds = thresholds;
+    }
 
     /**
      * @return 1 if field is new, 0 if replacing an existing field
      */
-    public int hset(String field, String val) {
-        return map.put(field, val) == null ? 1 : 0;
+    public int hset(byte[] field, byte[] val) {
+        while (true) {
+            Object r = repr;
+            if (!(r instanceof byte[])) {
+                return hsetTable(table(r), field, val);
+            }
+            byte[] lp = (byte[]) r;
+            int limit = thresholds.getHashMaxValue();
+            int at = Listpack.find(lp, field, 2);
+            if (val.length > limit || (at < 0 && (field.length > limit
+                    || Listpack.count(lp) / 2 >= thresholds.getHashMaxEntries()))) {
+                convert(lp);
+                continue;
+            }
+            byte[] next = at >= 0
+                    ? Listpack.replace(lp, Listpack.next(lp, at), val)
+                    : Listpack.insert(lp, lp.length, field, val);
+            if (REPR.compareAndSet(this, lp, next)) {
+                return at >= 0 ? 0 : 1;
+            }
+        }
+    }
+
+    private int hsetTable(PartitionedTable<byte[]> map, byte[] field, byte[] val) {
+        byte[] old = map.put(ByteString.wrap(field), val);
+        if (old == null) {
+            estimatedBytes.addAndGet(FIELD_OVERHEAD + field.length + val.length);
+            return 1;
+        }
+        estimatedBytes.addAndGet(val.length - old.length);
+        return 0;
+    }
+
+    /**
+     * Fill an empty hash with distinct field, value pairs (flattened), as read from a
+     * snapshot: the encoding is chosen once instead of converting part way.
+     */
+    public void load(List<byte[]> pairs) {
+        boolean packed = pairs.size() / 2 <= thresholds.getHashMaxEntries();
+        for (int i = 0; packed && i < pairs.size(); i++) {
+            packed = pairs.get(i).length <= thresholds.getHashMaxValue();
+        }
+        if (packed) {
+            repr = Listpack.insert(Listpack.EMPTY, Listpack.EMPTY.length, pairs.toArray(new byte[0][]));
+            return;
+        }
+        PartitionedTable<byte[]> map = new PartitionedTable<>(pairs.size() / 2);
+        long bytes = OVERHEAD;
+        for (int i = 0; i + 1 < pairs.size(); i += 2) {
+            byte[] field = pairs.get(i);
+            byte[] val = pairs.get(i + 1);
+            map.put(ByteString.wrap(field), val);
+            bytes += FIELD_OVERHEAD + field.length + val.length;
+        }
+        repr = map;
+        estimatedBytes.set(bytes);
     }
 
     /** @return the value for the field, or null if absent */
-    public String hget(String field) {
-        return map.get(field);
+    public byte[] hget(byte[] field) {
+        Object r = repr;
+        if (r instanceof byte[]) {
+            byte[] lp = (byte[]) r;
+            int at = Listpack.find(lp, field, 2);
+            return at < 0 ? null : Listpack.get(lp, Listpack.next(lp, at));
+        }
+        return table(r).get(ByteString.wrap(field));
+    }
+
+    /** HLEN: number of fields. */
+    public int hlen() {
+        Object r = repr;
+        return r instanceof byte[] ? Listpack.count((byte[]) r) / 2 : table(r).size();
+    }
+
+    /** Visit every field, value pair; weakly consistent for the hash table encoding. */
+    public void forEach(BiConsumer<byte[], byte[]> action) {
+        Object r = repr;
+        if (r instanceof byte[]) {
+            byte[] lp = (byte[]) r;
+            for (int at = Listpack.first(); !Listpack.isEnd(lp, at); ) {
+                int valAt = Listpack.next(lp, at);
+                action.accept(Listpack.get(lp, at), Listpack.get(lp, valAt));
+                at = Listpack.next(lp, valAt);
+            }
+            return;
+        }
+        table(r).forEach((field, val) -> action.accept(field.bytes(), val));
+    }
+
+    /**
+     * HSCAN step: append field, value pairs to out. A listpack is returned whole;
+     * a hash table a few partitions at a time (see PartitionedTable).
+     * @return the next cursor, 0 when done
+     */
+    public long hscan(long cursor, int count, List<byte[]> out) {
+        Object r = repr;
+        if (r instanceof byte[]) {
+            byte[] lp = (byte[]) r;
+            for (int at = Listpack.first(); !Listpack.isEnd(lp, at); at = Listpack.next(lp, at)) {
+                out.add(Listpack.get(lp, at));
+            }
+            return 0;
+        }
+        return table(r).scan(cursor, count, (field, val) -> {
+            out.add(field.bytes());
+            out.add(val);
+        });
+    }
+
+    /** Replace the listpack with a hash table holding the same fields. */
+    private void convert(byte[] lp) {
+        PartitionedTable<byte[]> map = new PartitionedTable<>();
+        long bytes = OVERHEAD;
+        for (int at = Listpack.first(); !Listpack.isEnd(lp, at); ) {
+            byte[] field = Listpack.get(lp, at);
+            at = Listpack.next(lp, at);
+            byte[] val = Listpack.get(lp, at);
+            at = Listpack.next(lp, at);
+            map.put(ByteString.wrap(field), val);
+            bytes += FIELD_OVERHEAD + field.length + val.length;
+        }
+        if (REPR.compareAndSet(this, lp, map)) {
+            estimatedBytes.addAndGet(bytes); // additive: updates racing in after the swap are kept
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static PartitionedTable<byte[]> table(Object r) {
+        return (PartitionedTable<byte[]>) r;
+    }
+
+    @Override
+    public HashValue copy() {
+        HashValue c = new HashValue(thresholds);
+        Serializable r = repr;
+        c.repr = r instanceof byte[] ? r : table(r).copy(); // field values are never changed in place
+        c.estimatedBytes.set(estimatedBytes.get());
+        return c;
+    }
+
+    @Override
+    public DataType getType() {
+        return DataType.HASH;
+    }
+
+    @Override
+    public String getEncoding() {
+        return repr instanceof byte[] ? "listpack" : "hashtable";
+    }
+
+    @Override
+    public long getEstimatedMemoryUsageBytes() {
+        Object r = repr;
+        return r instanceof byte[] ? PACKED_OVERHEAD + ((byte[]) r).length : estimatedBytes.get();
     }
 }
@@ -3,32 +3,423 @@ package com.java.redis.internal.datastore.value;
 import com.java.redis.internal.constants.DataType;
 import com.java.redis.internal.datastore.RedisValue;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.lang.reflect.Array;
-import java.util.ArrayDeque;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * ListValue represents a Redis list data structure.
- * This implementation uses a LinkedList to allow efficient push operations.
+ *
+ * Like Redis' quicklist it is a doubly linked list of segments, each a byte[] holding up to
+ * SEGMENT_MAX_BYTES of packed elements. An element is stored as a varint length, its bytes
+ * and the length again encoded backwards, so a segment can be walked from either end.
+ * Every segment keeps free space at both ends; pushes and pops at the head or the tail
+ * touch only the end segment, and index lookups skip whole segments by their counts.
+ *
+ * All operations synchronize on the list. DataStore also holds that lock while it hands
+ * pushed elements to blocked poppers.
  */
-
 public class ListValue implements RedisValue, Serializable {
-    private final LinkedList<String> list = new LinkedList<>();
+    private static final long serialVersionUID = 1177170778374655000L;
+
+    // Same segment size as Redis' default list-max-listpack-size of -2 (8 kb)
+    static final int SEGMENT_MAX_BYTES = 8 * 1024;
+    private static final int SEGMENT_MIN_CAPACITY = 64;
+    // ListValue object; per segment: segment object and its byte[] header
+    private static final long OVERHEAD = 48;
+    private static final long SEGMENT_OVERHEAD = 56;
+
+    private static final class Segment {
+        byte[] buf = new byte[SEGMENT_MIN_CAPACITY];
+        int start = SEGMENT_MIN_CAPACITY / 2; // elements occupy buf[start, end)
+        int end = SEGMENT_MIN_CAPACITY / 2;
+        int count;
+        Segment prev;
+        Segment next;
+
+        boolean fits(int need) {
+            return count == 0 || end - start + need <= SEGMENT_MAX_BYTES;
+        }
+
+        /**
+         * Make room for need bytes at the front or the back, growing the buffer up to the
+         * segment limit and re-centering the elements so both ends keep some slack.
+         * @return the change in buffer size
+         */
+        int makeRoom(boolean front, int need) {
+            if (front ? start >= need : buf.length - end >= need) {
+                return 0;
+            }
+            int used = end - start;
+            int cap = buf.length;
+            if (used + need > cap) {
+                cap = Math.max(used + need, Math.min(SEGMENT_MAX_BYTES, cap * 2));
+            }
+            int free = cap - used - need;
+            int newStart = front ? need + free / 2 : free / 2;
+            byte[] target = cap == buf.length ? buf : new byte[cap];
+            System.arraycopy(buf, start, target, newStart, used);
+            int grown = cap - buf.length;
+            buf = target;
+            start = newStart;
+            end = newStart + used;
+            return grown;
+        }
+
+        /** @return offset of the element after the one at offset */
+        int skip(int offset) {
+            int len = readLength(buf, offset);
+            return offset + entrySize(len);
+        }
+
+        /** @return offset of the element that ends at offset */
+        int back(int offset) {
+            int len = 0;
+            int shift = 0;
+            int p = offset - 1;
+            while (true) {
+                byte b = buf[p--];
+                len |= (b & 0x7F) << shift;
+                shift += 7;
+                if ((b & 0x80) == 0) {
+                    break;
+                }
+            }
+            return offset - entrySize(len);
+        }
+
+        byte[] get(int offset) {
+            int len = readLength(buf, offset);
+            int data = offset + varintSize(len);
+            return Arrays.copyOfRange(buf, data, data + len);
+        }
+    }
+
+    private transient Segment head;
+    private transient Segment tail;
+    private transient int size;
+    private transient volatile long estimatedBytes = OVERHEAD;
 
     /**
      * LPUSH semantics: pushes all values to the head in order.
      * @return new length of the list
      */
-    public int lpush(List<String> values) {
+    public synchronized int lpush(List<byte[]> values) {
         // values are in the order they appear in the command,
         // but LPUSH pushes them one by one so the first in that list
         // becomes the headmost.
-        for (String v : values) {
-            list.addFirst(v);
+        for (byte[] v : values) {
+            int need = entrySize(v.length);
+            if (head == null || !head.fits(need)) {
+                linkFirst(new Segment());
+            }
+            long grown = head.makeRoom(true, need);
+            head.start -= need;
+            writeEntry(head.buf, head.start, v);
+            head.count++;
+            size++;
+            estimatedBytes += grown;
+        }
+        return size;
+    }
+
+    /**
+     * RPUSH semantics: appends all values to the tail in order.
+     * @return new length of the list
+     */
+    public synchronized int rpush(List<byte[]> values) {
+        for (byte[] v : values) {
+            int need = entrySize(v.length);
+            if (tail == null || !tail.fits(need)) {
+                linkLast(new Segment());
+            }
+            long grown = tail.makeRoom(false, need);
+            writeEntry(tail.buf, tail.end, v);
+            tail.end += need;
+            tail.count++;
+            size++;
+            estimatedBytes += grown;
+        }
+        return size;
+    }
+
+    /** @return the head element, removed, or null if the list is empty */
+    public synchronized byte[] lpop() {
+        if (head == null) {
+            return null;
+        }
+        Segment s = head;
+        byte[] v = s.get(s.start);
+        s.start = s.skip(s.start);
+        removed(s);
+        return v;
+    }
+
+    /** @return the tail element, removed, or null if the list is empty */
+    public synchronized byte[] rpop() {
+        if (tail == null) {
+            return null;
         }
-        return list.size();
+        Segment s = tail;
+        int at = s.back(s.end);
+        byte[] v = s.get(at);
+        s.end = at;
+        removed(s);
+        return v;
+    }
+
+    public synchronized int llen() {
+        return size;
     }
 
+    /** @return the element at index (negative counts from the tail), or null if out of range */
+    public synchronized byte[] lindex(long index) {
+        if (index < 0) {
+            index += size;
+        }
+        if (index < 0 || index >= size) {
+            return null;
+        }
+        if (index < size / 2) {
+            Segment s = head;
+            while (index >= s.count) {
+                index -= s.count;
+                s = s.next;
+            }
+            int at = s.start;
+            for (; index > 0; index--) {
+                at = s.skip(at);
+            }
+            return s.get(at);
+        }
+        long fromTail = size - 1 - index;
+        Segment s = tail;
+        while (fromTail >= s.count) {
+            fromTail -= s.count;
+            s = s.prev;
+        }
+        int at = s.back(s.end);
+        for (; fromTail > 0; fromTail--) {
+            at = s.back(at);
+        }
+        return s.get(at);
+    }
+
+    /** LRANGE start..stop (inclusive, negative indices count from the tail). */
+    public synchronized List<byte[]> lrange(long start, long stop) {
+        if (start < 0) start = size + start;
+        if (stop < 0) stop = size + stop;
+        start = Math.max(0, start);
+        stop = Math.min(size - 1, stop);
+        if (start > stop || start >= size) {
+            return Collections.emptyList();
+        }
+        List<byte[]> range = new ArrayList<>((int) (stop - start + 1));
+        Segment s = head;
+        while (start >= s.count) {
+            start -= s.count;
+            stop -= s.count;
+            s = s.next;
+        }
+        int at = s.start;
+        for (; start > 0; start--, stop--) {
+            at = s.skip(at);
+        }
+        for (long n = stop + 1; n > 0; n--) {
+            if (at == s.end) {
+                s = s.next;
+                at = s.start;
+            }
+            range.add(s.get(at));
+            at = s.skip(at);
+        }
+        return range;
+    }
+
+    /** LTRIM: keep only start..stop (inclusive, negative indices count from the tail). */
+    public synchronized void ltrim(long start, long stop) {
+        if (start < 0) start = size + start;
+        if (stop < 0) stop = size + stop;
+        start = Math.max(0, start);
+        stop = Math.min(size - 1, stop);
+        if (start > stop || start >= size) {
+            clear();
+            return;
+        }
+        long fromTail = size - 1 - stop;
+        // Whole segments go first, then single elements from the new end segments
+        while (start > 0 && head.count <= start) {
+            start -= head.count;
+            size -= head.count;
+            unlink(head);
+        }
+        for (; start > 0; start--) {
+            head.start = head.skip(head.start);
+            head.count--;
+            size--;
+        }
+        while (fromTail > 0 && tail.count <= fromTail) {
+            fromTail -= tail.count;
+            size -= tail.count;
+            unlink(tail);
+        }
+        for (; fromTail > 0; fromTail--) {
+            tail.end = tail.back(tail.end);
+            tail.count--;
+            size--;
+        }
+    }
+
+    private void clear() {
+        head = null;
+        tail = null;
+        size = 0;
+        estimatedBytes = OVERHEAD;
+    }
+
+    /** Bookkeeping after one element left segment s. */
+    private void removed(Segment s) {
+        s.count--;
+        size--;
+        if (s.count == 0) {
+            unlink(s);
+        }
+    }
+
+    private void linkFirst(Segment s) {
+        s.next = head;
+        if (head != null) {
+            head.prev = s;
+        } else {
+            tail = s;
+        }
+        head = s;
+        estimatedBytes += SEGMENT_OVERHEAD + s.buf.length;
+    }
+
+    private void linkLast(Segment s) {
+        s.prev = tail;
+        if (tail != null) {
+            tail.next = s;
+        } else {
+            head = s;
+        }
+        tail = s;
+        estimatedBytes += SEGMENT_OVERHEAD + s.buf.length;
+    }
+
+    private void unlink(Segment s) {
+        if (s.prev != null) {
+            s.prev.next = s.next;
+        } else {
+            head = s.next;
+        }
+        if (s.next != null) {
+            s.next.prev = s.prev;
+        } else {
+            tail = s.prev;
+        }
+        estimatedBytes -= SEGMENT_OVERHEAD + s.buf.length;
+    }
+
+    // ----- Element encoding: varint length, bytes, backwards varint length -----
+
+    private static int varintSize(int len) {
+        int n = 1;
+        while ((len >>>= 7) != 0) {
+            n++;
+        }
+        return n;
+    }
+
+    private static int entrySize(int len) {
+        return 2 * varintSize(len) + len;
+    }
+
+    private static int readLength(byte[] buf, int offset) {
+        int len = 0;
+        int shift = 0;
+        while (true) {
+            byte b = buf[offset++];
+            len |= (b & 0x7F) << shift;
+            shift += 7;
+            if ((b & 0x80) == 0) {
+                return len;
+            }
+        }
+    }
+
+    private static void writeEntry(byte[] buf, int offset, byte[] v) {
+        int len = v.length;
+        int n = varintSize(len);
+        for (int i = 0, rest = len; i < n; i++, rest >>>= 7) {
+            byte group = (byte) ((rest & 0x7F) | (i < n - 1 ? 0x80 : 0));
+            buf[offset + i] = group;             // forwards: lowest group first
+            buf[offset + 2 * n + len - 1 - i] = group; // backwards: lowest group last
+        }
+        System.arraycopy(v, 0, buf, offset + n, len);
+    }
+
+    @Override
+    public DataType getType() {
+        return DataType.LIST;
+    }
+
+    @Override
+    public String getEncoding() {
+        return "quicklist";
+    }
+
+    @Override
+    public long getEstimatedMemoryUsageBytes() {
+        return estimatedBytes;
+    }
+
+    @Override
+    public synchronized ListValue copy() {
+        ListValue c = new ListValue();
+        for (Segment s = head; s != null; s = s.next) {
+            Segment t = new Segment();
+            t.buf = s.buf.clone();
+            t.start = s.start;
+            t.end = s.end;
+            t.count = s.count;
+            c.linkLast(t);
+        }
+        c.size = size;
+        c.estimatedBytes = estimatedBytes;
+        return c;
+    }
+
+    // Serialized as the element count and the elements, head first
+
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size);
+        for (Segment s = head; s != null; s = s.next) {
+            for (int at = s.start; at < s.end; at = s.skip(at)) {
+                byte[] v = s.get(at);
+                out.writeInt(v.length);
+                out.write(v);
+            }
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        estimatedBytes = OVERHEAD;
+        List<byte[]> batch = new ArrayList<>(1);
+        batch.add(null);
+        for (int n = in.readInt(); n > 0; n--) {
+            byte[] v = new byte[in.readInt()];
+            in.readFully(v);
+            batch.set(0, v);
+            rpush(batch);
+        }
+    }
 }
@@ -0,0 +1,186 @@
+package com.java.redis.internal.datastore.value;
+
+import java.util.Arrays;
+
+/**
+ * Listpack: a small collection packed into one byte[], after Redis' listpack encoding.
+ *
+ * Layout: a 2-byte big-endian entry count, then the entries back to back, each a
+ * varint byte length followed by the bytes. A collection of n short entries costs one
+ * array header plus about n * (length + 1) bytes, instead of a hash table with a node,
+ * a wrapper and an array per entry.
+ *
+ * Arrays are never modified once built: every update returns a new array, so readers
+ * may walk a listpack without locking while a writer swaps in the next version.
+ * Lookups are linear scans, which is why collections only stay packed while small.
+ */
+final class Listpack {
+    static final byte[] EMPTY = {0, 0};
+    static final int MAX_ENTRIES = 0xFFFF;
+    private static final int HEADER = 2;
+
+    private Listpack() {
+    }
+
+    static int count(byte[] lp) {
+        return ((lp[0] & 0xFF) << 8) | (lp[1] & 0xFF);
+    }
+
+    /** @return offset of the first entry */
+    static int first() {
+        return HEADER;
+    }
+
+    /** @return whether offset is past the last entry */
+    static boolean isEnd(byte[] lp, int offset) {
+        return offset >= lp.length;
+    }
+
+    /** @return offset of the entry after the one at offset */
+    static int next(byte[] lp, int offset) {
+        return dataStart(lp, offset) + length(lp, offset);
+    }
+
+    /** @return a copy of the entry's bytes */
+    static byte[] get(byte[] lp, int offset) {
+        int start = dataStart(lp, offset);
+        return Arrays.copyOfRange(lp, start, start + length(lp, offset));
+    }
+
+    /** @return whether the entry at offset equals item */
+    static boolean matches(byte[] lp, int offset, byte[] item) {
+        int len = length(lp, offset);
+        int start = dataStart(lp, offset);
+        return len == item.length && Arrays.equals(lp, start, start + len, item, 0, len);
+    }
+
+    /** Compare the entry at offset with item, byte-wise unsigned like ByteString. */
+    static int compare(byte[] lp, int offset, byte[] item) {
+        int start = dataStart(lp, offset);
+        return Arrays.compareUnsigned(lp, start, start + length(lp, offset), item, 0, item.length);
+    }
+
+    /** @return the entry at offset read as a big-endian long; the entry must be 8 bytes */
+    static long getLong(byte[] lp, int offset) {
+        int pos = dataStart(lp, offset);
+        long v = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            v = (v << 8) | (lp[pos + i] & 0xFF);
+        }
+        return v;
+    }
+
+    /** @return v as an 8-byte big-endian entry */
+    static byte[] longEntry(long v) {
+        byte[] b = new byte[Long.BYTES];
+        for (int i = Long.BYTES - 1; i >= 0; i--) {
+            b[i] = (byte) v;
+            v >>>= 8;
+        }
+        return b;
+    }
+
+    /** Byte length of the entry at offset (its varint prefix). */
+    private static int length(byte[] lp, int offset) {
+        int len = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = lp[offset++];
+            len |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return len;
+    }
+
+    /** Offset of the entry's bytes, past its varint prefix. */
+    private static int dataStart(byte[] lp, int offset) {
+        while (lp[offset++] < 0) {
+            // continuation bit set: the prefix goes on
+        }
+        return offset;
+    }
+
+    /**
+     * Find an entry among every step-th entry (step 2 finds hash fields, not values).
+     * @return its offset, or -1
+     */
+    static int find(byte[] lp, byte[] item, int step) {
+        int offset = HEADER;
+        while (offset < lp.length) {
+            if (matches(lp, offset, item)) {
+                return offset;
+            }
+            for (int i = 0; i < step; i++) {
+                offset = next(lp, offset);
+            }
+        }
+        return -1;
+    }
+
+    /** @return a copy of lp with items inserted at offset (lp.length appends) */
+    static byte[] insert(byte[] lp, int offset, byte[]... items) {
+        int added = 0;
+        for (byte[] item : items) {
+            added += varintSize(item.length) + item.length;
+        }
+        byte[] out = new byte[lp.length + added];
+        System.arraycopy(lp, 0, out, 0, offset);
+        int pos = offset;
+        for (byte[] item : items) {
+            pos = writeEntry(out, pos, item);
+        }
+        System.arraycopy(lp, offset, out, pos, lp.length - offset);
+        setCount(out, count(lp) + items.length);
+        return out;
+    }
+
+    /** @return a copy of lp without the n entries starting at offset */
+    static byte[] delete(byte[] lp, int offset, int n) {
+        int end = offset;
+        for (int i = 0; i < n; i++) {
+            end = next(lp, end);
+        }
+        byte[] out = new byte[lp.length - (end - offset)];
+        System.arraycopy(lp, 0, out, 0, offset);
+        System.arraycopy(lp, end, out, offset, lp.length - end);
+        setCount(out, count(lp) - n);
+        return out;
+    }
+
+    /** @return a copy of lp with the entry at offset replaced by item */
+    static byte[] replace(byte[] lp, int offset, byte[] item) {
+        int end = next(lp, offset);
+        int size = varintSize(item.length) + item.length;
+        byte[] out = new byte[lp.length - (end - offset) + size];
+        System.arraycopy(lp, 0, out, 0, offset);
+        int pos = writeEntry(out, offset, item);
+        System.arraycopy(lp, end, out, pos, lp.length - end);
+        return out;
+    }
+
+    private static int writeEntry(byte[] out, int pos, byte[] item) {
+        int len = item.length;
+        while (len >= 0x80) {
+            out[pos++] = (byte) (len | 0x80);
+            len >>>= 7;
+        }
+        out[pos++] = (byte) len;
+        System.arraycopy(item, 0, out, pos, item.length);
+        return pos + item.length;
+    }
+
+    private static int varintSize(int len) {
+        int size = 1;
+        while (len >= 0x80) {
+            len >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static void setCount(byte[] lp, int count) {
+        lp[0] = (byte) (count >>> 8);
+        lp[1] = (byte) count;
+    }
+}
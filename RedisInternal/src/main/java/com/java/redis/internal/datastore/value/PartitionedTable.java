@@ -0,0 +1,254 @@
+package com.java.redis.internal.datastore.value;
+
+import com.java.redis.internal.datastore.ByteString;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+/**
+ * The hash table encoding of hashes, sets and sorted sets, and the map of each keyspace
+ * slot: a power-of-two array of ConcurrentHashMap partitions, chosen by the low bits of
+ * the (re-mixed) hash code.
+ *
+ * Partitioning is what makes SCAN and HSCAN/SSCAN/ZSCAN cheap: a scan step reads whole
+ * partitions, so its work is bounded by count plus one partition, not by the size of the
+ * collection.
+ * The table doubles when partitions average more than PARTITION_TARGET entries; each
+ * partition then splits into itself and its twin at index + old length, and the cursor
+ * walks partition indexes with their bits reversed (as Redis' dictScan does), so a scan
+ * that spans a resize still returns every element present throughout, possibly twice.
+ *
+ * Reads are lock-free. Writers share the read side of resizeLock and a resize takes the
+ * write side, so the partitions being copied never change under it; the new array is
+ * published whole, and readers still holding the old one see its complete contents.
+ */
+public final class PartitionedTable<V> implements Serializable {
+    private static final long serialVersionUID = 9147433943603276926L;
+
+    private static final int PARTITION_TARGET = 64;
+
+    private final ReentrantReadWriteLock resizeLock = new ReentrantReadWriteLock();
+    private final AtomicInteger size = new AtomicInteger();
+    private volatile ConcurrentHashMap<ByteString, V>[] parts;
+    // Low bits of the mixed hash the caller already used to pick this table (a keyspace
+    // slot), which are the same for every key in it; partitions are chosen above them
+    private final int hashShift;
+
+    public PartitionedTable() {
+        this(0, 0);
+    }
+
+    /** A table sized for expected entries, so filling it does not resize on the way. */
+    public PartitionedTable(int expected) {
+        this(expected, 0);
+    }
+
+    /**
+     * A table for keys that share the low hashShift bits of their mixed hash, as the keys
+     * of one keyspace slot do (see DataStore.slotOf).
+     */
+    public PartitionedTable(int expected, int hashShift) {
+        this.hashShift = hashShift;
+        int n = 1;
+        while (n < maxParts() && (long) n * PARTITION_TARGET < expected) {
+            n <<= 1;
+        }
+        parts = newParts(n);
+    }
+
+    /** Partitions are picked by the hash bits above hashShift, so there can be no more than this. */
+    private int maxParts() {
+        return 1 << Math.min(29, 31 - hashShift);
+    }
+
+    private static <V> ConcurrentHashMap<ByteString, V>[] newParts(int n) {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        ConcurrentHashMap<ByteString, V>[] p = new ConcurrentHashMap[n];
+        for (int i = 0; i < n; i++) {
+            p[i] = new ConcurrentHashMap<>();
+        }
+        return p;
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    private ConcurrentHashMap<ByteString, V> partFor(ConcurrentHashMap<ByteString, V>[] p, ByteString key) {
+        return p[(mix(key.hashCode()) >>> hashShift) & (p.length - 1)];
+    }
+
+    public V get(ByteString key) {
+        return partFor(parts, key).get(key);
+    }
+
+    public boolean containsKey(ByteString key) {
+        return partFor(parts, key).containsKey(key);
+    }
+
+    /** @return the previous value, or null if the key is new */
+    public V put(ByteString key, V value) {
+        V old;
+        resizeLock.readLock().lock();
+        try {
+            old = partFor(parts, key).put(key, value);
+        } finally {
+            resizeLock.readLock().unlock();
+        }
+        if (old == null) {
+            grown();
+        }
+        return old;
+    }
+
+    /** @return the current value, or null if the value was added */
+    public V putIfAbsent(ByteString key, V value) {
+        V old;
+        resizeLock.readLock().lock();
+        try {
+            old = partFor(parts, key).putIfAbsent(key, value);
+        } finally {
+            resizeLock.readLock().unlock();
+        }
+        if (old == null) {
+            grown();
+        }
+        return old;
+    }
+
+    /** @return the removed value, or null if the key was absent */
+    public V remove(ByteString key) {
+        resizeLock.readLock().lock();
+        try {
+            V old = partFor(parts, key).remove(key);
+            if (old != null) {
+                size.decrementAndGet();
+            }
+            return old;
+        } finally {
+            resizeLock.readLock().unlock();
+        }
+    }
+
+    /** Remove key only if it maps to value, as ConcurrentMap.remove(key, value). */
+    public boolean remove(ByteString key, V value) {
+        resizeLock.readLock().lock();
+        try {
+            if (partFor(parts, key).remove(key, value)) {
+                size.decrementAndGet();
+                return true;
+            }
+            return false;
+        } finally {
+            resizeLock.readLock().unlock();
+        }
+    }
+
+    /** Replace key's value only if it is oldValue, as ConcurrentMap.replace(key, oldValue, newValue). */
+    public boolean replace(ByteString key, V oldValue, V newValue) {
+        resizeLock.readLock().lock();
+        try {
+            return partFor(parts, key).replace(key, oldValue, newValue);
+        } finally {
+            resizeLock.readLock().unlock();
+        }
+    }
+
+    /** Remove every entry and shrink back to a single partition. */
+    public void clear() {
+        resizeLock.writeLock().lock();
+        try {
+            parts = newParts(1);
+            size.set(0);
+        } finally {
+            resizeLock.writeLock().unlock();
+        }
+    }
+
+    /** @return a table with the same entries; the values themselves are shared */
+    public PartitionedTable<V> copy() {
+        PartitionedTable<V> c = new PartitionedTable<>(size(), hashShift);
+        forEach(c::put);
+        return c;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public boolean isEmpty() {
+        return size.get() == 0;
+    }
+
+    /** Visit every entry; weakly consistent, like iterating a ConcurrentHashMap. */
+    public void forEach(BiConsumer<ByteString, V> action) {
+        for (ConcurrentHashMap<ByteString, V> part : parts) {
+            part.forEach(action);
+        }
+    }
+
+    /** The entries, partition by partition and weakly consistent, for callers that stop early. */
+    public Iterable<Map.Entry<ByteString, V>> entries() {
+        ConcurrentHashMap<ByteString, V>[] p = parts;
+        return () -> Arrays.stream(p).flatMap(part -> part.entrySet().stream()).iterator();
+    }
+
+    /**
+     * One scan step: visit whole partitions from the cursor until about count entries
+     * have been seen (or 10 * count empty partitions skipped).
+     * @return the next cursor, 0 once every partition has been visited
+     */
+    public long scan(long cursor, int count, BiConsumer<ByteString, V> action) {
+        ConcurrentHashMap<ByteString, V>[] p = parts;
+        long mask = p.length - 1;
+        long v = cursor;
+        long visited = 0;
+        long emptyBudget = count * 10L;
+        do {
+            ConcurrentHashMap<ByteString, V> part = p[(int) (v & mask)];
+            if (part.isEmpty()) {
+                emptyBudget--;
+            } else {
+                for (Map.Entry<ByteString, V> e : part.entrySet()) {
+                    action.accept(e.getKey(), e.getValue());
+                    visited++;
+                }
+            }
+            // Increment the reversed cursor: high bits first, so finished partitions stay finished after a resize
+            v |= ~mask;
+            v = Long.reverse(Long.reverse(v) + 1);
+        } while (v != 0 && visited < count && emptyBudget > 0);
+        return v;
+    }
+
+    private void grown() {
+        if (size.incrementAndGet() > parts.length * PARTITION_TARGET && parts.length < maxParts()) {
+            resize();
+        }
+    }
+
+    private void resize() {
+        resizeLock.writeLock().lock();
+        try {
+            ConcurrentHashMap<ByteString, V>[] old = parts;
+            if (size.get() <= old.length * PARTITION_TARGET || old.length >= maxParts()) {
+                return; // another writer resized first
+            }
+            ConcurrentHashMap<ByteString, V>[] next = newParts(old.length * 2);
+            for (ConcurrentHashMap<ByteString, V> part : old) {
+                part.forEach((k, val) -> partFor(next, k).put(k, val));
+            }
+            parts = next;
+        } finally {
+            resizeLock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.java.redis.internal.datastore.value;
+
+import com.java.redis.internal.datastore.ByteString;
+
+import java.util.Arrays;
+
+/**
+ * A score interval as ZRANGEBYSCORE takes it: each bound is a float, "-inf"/"+inf",
+ * or a float prefixed with "(" to exclude it.
+ */
+public final class ScoreRange {
+    private final double min;
+    private final double max;
+    private final boolean minExclusive;
+    private final boolean maxExclusive;
+
+    public ScoreRange(double min, boolean minExclusive, double max, boolean maxExclusive) {
+        this.min = min;
+        this.minExclusive = minExclusive;
+        this.max = max;
+        this.maxExclusive = maxExclusive;
+    }
+
+    /** @throws NumberFormatException if a bound is not a float */
+    public static ScoreRange parse(byte[] min, byte[] max) {
+        boolean minEx = min.length > 0 && min[0] == '(';
+        boolean maxEx = max.length > 0 && max[0] == '(';
+        return new ScoreRange(parseBound(min, minEx), minEx, parseBound(max, maxEx), maxEx);
+    }
+
+    private static double parseBound(byte[] bound, boolean exclusive) {
+        return ByteString.parseDouble(exclusive ? Arrays.copyOfRange(bound, 1, bound.length) : bound);
+    }
+
+    public boolean aboveMin(double score) {
+        return minExclusive ? score > min : score >= min;
+    }
+
+    public boolean belowMax(double score) {
+        return maxExclusive ? score < max : score <= max;
+    }
+
+    /** @return true if no score can be in range */
+    public boolean isEmpty() {
+        return min > max || (min == max && (minExclusive || maxExclusive));
+    }
+}
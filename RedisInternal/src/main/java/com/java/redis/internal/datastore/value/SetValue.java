@@ -1,52 +1,221 @@
 package com.java.redis.internal.datastore.value;
 
 import com.java.redis.internal.constants.DataType;
+import com.java.redis.internal.datastore.ByteString;
 import com.java.redis.internal.datastore.RedisValue;
 
 import java.io.Serializable;
-import java.util.Collections;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class SetValue implements RedisValue, Serializable {
-    /** Using ConcurrentHashMap’s keySet for thread-safe set
-     *
-     */
-    private final Set<String> set = ConcurrentHashMap.newKeySet();
+    private static final long serialVersionUID = -8854179545097534021L;
+
+    // Value object and the listpack's array header
+    private static final long PACKED_OVERHEAD = 48;
+    // Empty key set with its table; per member: node, ByteString and byte[] header
+    private static final long OVERHEAD = 144;
+    private static final long MEMBER_OVERHEAD = 88;
+    private static final VarHandle REPR;
+    static {
+        try {
+            REPR = MethodHandles.lookup().findVarHandle(SetValue.class, "repr", Serializable.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final EncodingThresholds thresholds;
+    // listpack byte[] while small, PartitionedTable<Boolean> once converted
+    private volatile Serializable repr = Listpack.EMPTY;
+    private final AtomicLong estimatedBytes = new AtomicLong(); // hashtable encoding only
+
+    public SetValue() {
+        this(EncodingThresholds.DEFAULT);
+    }
+
+    public SetValue(EncodingThresholds thresholds) {
+        this.thresholds = thresholds;
+    }
 
     /**
      * SADD: add each member; returns count of new elements added.
      */
-    public int sadd(Iterable<String> members) {
+    public int sadd(Iterable<byte[]> members) {
         int added = 0;
-        for (String m : members) {
-            if (set.add(m)) {
+        for (byte[] m : members) {
+            if (add(m)) {
                 added++;
             }
         }
         return added;
     }
 
+    private boolean add(byte[] m) {
+        while (true) {
+            Object r = repr;
+            if (!(r instanceof byte[])) {
+                if (table(r).putIfAbsent(ByteString.wrap(m), Boolean.TRUE) == null) {
+                    estimatedBytes.addAndGet(MEMBER_OVERHEAD + m.length);
+                    return true;
+                }
+                return false;
+            }
+            byte[] lp = (byte[]) r;
+            if (Listpack.find(lp, m, 1) >= 0) {
+                return false;
+            }
+            if (m.length > thresholds.getSetMaxValue() || Listpack.count(lp) >= thresholds.getSetMaxEntries()) {
+                convert(lp);
+                continue;
+            }
+            if (REPR.compareAndSet(this, lp, Listpack.insert(lp, lp.length, m))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Fill an empty set with distinct members, as read from a snapshot: the encoding
+     * is chosen once instead of converting part way.
+     */
+    public void load(List<byte[]> members) {
+        boolean packed = members.size() <= thresholds.getSetMaxEntries();
+        for (int i = 0; packed && i < members.size(); i++) {
+            packed = members.get(i).length <= thresholds.getSetMaxValue();
+        }
+        if (packed) {
+            repr = Listpack.insert(Listpack.EMPTY, Listpack.EMPTY.length, members.toArray(new byte[0][]));
+            return;
+        }
+        PartitionedTable<Boolean> set = new PartitionedTable<>(members.size());
+        long bytes = OVERHEAD;
+        for (byte[] m : members) {
+            set.put(ByteString.wrap(m), Boolean.TRUE);
+            bytes += MEMBER_OVERHEAD + m.length;
+        }
+        repr = set;
+        estimatedBytes.set(bytes);
+    }
+
     /**
      * SREM: remove each member; returns count of removed elements.
      */
-    public int srem(Iterable<String> members) {
+    public int srem(Iterable<byte[]> members) {
         int removed = 0;
-        for (String m : members) {
-            if (set.remove(m)) {
+        for (byte[] m : members) {
+            if (remove(m)) {
                 removed++;
             }
         }
         return removed;
     }
 
+    private boolean remove(byte[] m) {
+        while (true) {
+            Object r = repr;
+            if (!(r instanceof byte[])) {
+                if (table(r).remove(ByteString.wrap(m)) != null) {
+                    estimatedBytes.addAndGet(-(MEMBER_OVERHEAD + m.length));
+                    return true;
+                }
+                return false;
+            }
+            byte[] lp = (byte[]) r;
+            int at = Listpack.find(lp, m, 1);
+            if (at < 0) {
+                return false;
+            }
+            if (REPR.compareAndSet(this, lp, Listpack.delete(lp, at, 1))) {
+                return true;
+            }
+        }
+    }
+
+    /** @return the number of members */
+    public int scard() {
+        Object r = repr;
+        return r instanceof byte[] ? Listpack.count((byte[]) r) : table(r).size();
+    }
+
     /**
      * SMEMBERS: returns a snapshot of all members.
      */
-    public Set<String> smembers() {
-        // Return an immutable copy to avoid concurrent modification surprises
-        return Collections.unmodifiableSet(Set.copyOf(set));
+    public List<byte[]> smembers() {
+        Object r = repr;
+        if (r instanceof byte[]) {
+            byte[] lp = (byte[]) r;
+            List<byte[]> members = new ArrayList<>(Listpack.count(lp));
+            for (int at = Listpack.first(); !Listpack.isEnd(lp, at); at = Listpack.next(lp, at)) {
+                members.add(Listpack.get(lp, at));
+            }
+            return members;
+        }
+        // Return a copy to avoid concurrent modification surprises
+        PartitionedTable<Boolean> set = table(r);
+        List<byte[]> members = new ArrayList<>(set.size());
+        set.forEach((m, present) -> members.add(m.bytes()));
+        return members;
     }
 
+    /**
+     * SSCAN step: append members to out. A listpack is returned whole;
+     * a hash set a few partitions at a time (see PartitionedTable).
+     * @return the next cursor, 0 when done
+     */
+    public long sscan(long cursor, int count, List<byte[]> out) {
+        Object r = repr;
+        if (r instanceof byte[]) {
+            out.addAll(smembers());
+            return 0;
+        }
+        return table(r).scan(cursor, count, (m, present) -> out.add(m.bytes()));
+    }
+
+    /** Replace the listpack with a hash set holding the same members. */
+    private void convert(byte[] lp) {
+        PartitionedTable<Boolean> set = new PartitionedTable<>();
+        long bytes = OVERHEAD;
+        for (int at = Listpack.first(); !Listpack.isEnd(lp, at); at = Listpack.next(lp, at)) {
+            byte[] m = Listpack.get(lp, at);
+            set.put(ByteString.wrap(m), Boolean.TRUE);
+            bytes += MEMBER_OVERHEAD + m.length;
+        }
+        if (REPR.compareAndSet(this, lp, set)) {
+            estimatedBytes.addAndGet(bytes); // additive: updates racing in after the swap are kept
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static PartitionedTable<Boolean> table(Object r) {
+        return (PartitionedTable<Boolean>) r;
+    }
+
+    @Override
+    public SetValue copy() {
+        SetValue c = new SetValue(thresholds);
+        Serializable r = repr;
+        c.repr = r instanceof byte[] ? r : table(r).copy();
+        c.estimatedBytes.set(estimatedBytes.get());
+        return c;
+    }
+
+    @Override
+    public DataType getType() {
+        return DataType.SET;
+    }
+
+    @Override
+    public String getEncoding() {
+        return repr instanceof byte[] ? "listpack" : "hashtable";
+    }
+
+    @Override
+    public long getEstimatedMemoryUsageBytes() {
+        Object r = repr;
+        return r instanceof byte[] ? PACKED_OVERHEAD + ((byte[]) r).length : estimatedBytes.get();
+    }
 }
@@ -1,19 +1,316 @@
 package com.java.redis.internal.datastore.value;
 
 import com.java.redis.internal.constants.DataType;
+import com.java.redis.internal.datastore.ByteString;
 import com.java.redis.internal.datastore.RedisValue;
 
 import java.io.Serializable;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 
+/**
+ * StringValue holds a string either as raw bytes or, when the bytes are a canonical
+ * 64-bit decimal, integer-encoded as a long.
+ *
+ * Integers in [0, SHARED_INTEGERS) come from a pool of immutable shared instances, like
+ * Redis' shared integers, so a SET of a small number allocates no value at all. A counter
+ * created by INCR and friends is a private integer instance that is updated in place;
+ * DataStore swaps a shared or raw value for one on first increment.
+ *
+ * A counter starts out updating its long with a CAS. The first failed CAS marks it
+ * contended and gives it a small array of cells, LongAdder-style, picked by thread. From
+ * then on increments with enough headroom combine in their cell: the first thread to
+ * reach an idle cell opens a batch, the threads arriving meanwhile add their deltas to
+ * it, and the opener applies the whole batch to the long with one fetch-and-add. Each
+ * member's result is the value before the batch plus its offset within it, so every
+ * increment still gets the exact value it produced, and the long, which reads use as is,
+ * is only touched once per batch instead of once per increment. On a single core a
+ * contended counter just uses one fetch-and-add per increment.
+ */
 public class StringValue implements RedisValue, Serializable {
-    private final String value;
+    private static final long serialVersionUID = -1203459023059582178L;
 
-    public StringValue(String value) {
+    // Object header and reference, plus the byte[] header
+    private static final long OVERHEAD = 32;
+    // Object header, the long and the contention flag of a private integer
+    private static final long INTEGER_OVERHEAD = 24;
+    // Fetch-and-add bounds: with |number| < 2^62 and |delta| <= 2^32, overflowing would take
+    // more than 2^30 adds in flight between reading number and adding, far beyond any thread count
+    private static final long FETCH_ADD_MAX_VALUE = 1L << 62;
+    private static final long FETCH_ADD_MAX_DELTA = 1L << 32;
+    // Cells of a contended counter: one per core, at most 64. On a single core there is
+    // no cache line to fight over and waiting for a batch only wastes the core, so a
+    // contended counter uses a plain fetch-and-add there
+    private static final int NCPU = Runtime.getRuntime().availableProcessors();
+    private static final boolean COMBINE = NCPU > 1;
+    private static final int CELLS = Math.min(64, Integer.highestOneBit(Math.max(1, NCPU - 1)) << 1);
+    // How long a batch stays open for other increments to join
+    private static final int COMBINE_SPINS = 32;
+    /** Integers below this (and not negative) are backed by shared instances. */
+    public static final int SHARED_INTEGERS = 10000;
+    private static final StringValue[] SHARED = new StringValue[SHARED_INTEGERS];
+    private static final VarHandle NUMBER;
+    static {
+        try {
+            NUMBER = MethodHandles.lookup().findVarHandle(StringValue.class, "number", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+        for (int i = 0; i < SHARED_INTEGERS; i++) {
+            SHARED[i] = new StringValue(i, true);
+        }
+    }
+
+    private final byte[] value;     // raw bytes, or the cached digits of a shared integer
+    private final boolean integer;  // integer-encoded: the string is number's decimal form
+    private final boolean shared;   // one of the pooled instances, never mutated
+    private volatile long number;
+    private volatile boolean contended; // counters only: a CAS has failed, switch to combining
+    private transient volatile Cell[] cells; // created once contended, again after a snapshot load
+
+    /** A raw-encoded string; see {@link #of(byte[])} for the encoding-aware factory. */
+    public StringValue(byte[] value) {
         this.value = value;
+        this.integer = false;
+        this.shared = false;
+    }
+
+    private StringValue(long number, boolean shared) {
+        this.value = shared ? ByteString.fromLong(number) : null;
+        this.integer = true;
+        this.shared = shared;
+        this.number = number;
+    }
+
+    /** @return the value for bytes, integer-encoded (and shared if small) when they are a canonical integer */
+    public static StringValue of(byte[] bytes) {
+        if (bytes.length > 0 && bytes.length <= 20) {
+            byte first = bytes[0];
+            if ((first >= '0' && first <= '9') || first == '-') {
+                try {
+                    return ofLong(ByteString.parseLong(bytes));
+                } catch (NumberFormatException e) {
+                    // not a canonical integer: keep the bytes
+                }
+            }
+        }
+        return new StringValue(bytes);
+    }
+
+    /** @return the shared instance for n if there is one, else a new integer-encoded value */
+    public static StringValue ofLong(long n) {
+        return n >= 0 && n < SHARED_INTEGERS ? SHARED[(int) n] : new StringValue(n, false);
+    }
+
+    /** @return a private integer value that can be updated in place */
+    public static StringValue counter(long n) {
+        return new StringValue(n, false);
+    }
+
+    /** Retrieve the stored bytes (shared, do not modify). */
+    public byte[] getValue() {
+        return value != null ? value : ByteString.fromLong(number);
+    }
+
+    public boolean isInteger() {
+        return integer;
+    }
+
+    /** @return true for a private integer value, which {@link #addAndGet} updates in place */
+    public boolean isCounter() {
+        return integer && !shared;
+    }
+
+    /**
+     * @return the value as a 64-bit integer
+     * @throws NumberFormatException if the string is not a canonical integer
+     */
+    public long longValue() {
+        return integer ? number : ByteString.parseLong(value);
+    }
+
+    /**
+     * Add delta to a counter.
+     * @return the value this add produced
+     * @throws ArithmeticException if the result would overflow; the counter is left unchanged
+     */
+    public long addAndGet(long delta) {
+        if (!isCounter()) {
+            throw new IllegalStateException("not a counter");
+        }
+        while (true) {
+            long curr = number;
+            if (contended && curr > -FETCH_ADD_MAX_VALUE && curr < FETCH_ADD_MAX_VALUE
+                    && delta >= -FETCH_ADD_MAX_DELTA && delta <= FETCH_ADD_MAX_DELTA) {
+                return COMBINE ? combine(delta) : (long) NUMBER.getAndAdd(this, delta) + delta;
+            }
+            long next = Math.addExact(curr, delta);
+            if (NUMBER.compareAndSet(this, curr, next)) {
+                return next;
+            }
+            if (!contended) {
+                if (COMBINE) {
+                    cells = newCells();
+                }
+                contended = true;
+            }
+        }
+    }
+
+    /** Add delta through this thread's cell, as the opener or a member of its batch. */
+    private long combine(long delta) {
+        Cell[] cs = cells;
+        if (cs == null) {
+            cs = cells = newCells(); // deserialized while contended
+        }
+        long id = Thread.currentThread().threadId();
+        Cell cell = cs[(int) (id ^ (id >>> 16)) & (cs.length - 1)];
+        while (true) {
+            Batch open = cell.batch;
+            if (open != null) {
+                long offset = open.join(delta);
+                if (offset != Batch.CLOSED) {
+                    return open.await() + offset + delta;
+                }
+            }
+            Batch mine = new Batch(delta);
+            if (cell.compareAndSetBatch(open, mine)) {
+                for (int i = 0; i < COMBINE_SPINS; i++) {
+                    Thread.onSpinWait(); // let the other threads of this cell join
+                }
+                long before = (long) NUMBER.getAndAdd(this, mine.close());
+                mine.complete(before);
+                cell.compareAndSetBatch(mine, null);
+                return before + delta;
+            }
+        }
+    }
+
+    private static Cell[] newCells() {
+        Cell[] cs = new Cell[CELLS];
+        for (int i = 0; i < cs.length; i++) {
+            cs[i] = new Cell();
+        }
+        return cs;
+    }
+
+    /** @return true once increments of this counter have collided */
+    public boolean isContended() {
+        return contended;
+    }
+
+    @Override
+    public DataType getType() {
+        return DataType.STRING;
+    }
+
+    /** Same cut-off as Redis between embedded and separately allocated strings. */
+    @Override
+    public String getEncoding() {
+        if (integer) {
+            return "int";
+        }
+        return value.length <= 44 ? "embstr" : "raw";
+    }
+
+    @Override
+    public StringValue copy() {
+        return isCounter() ? new StringValue(number, false) : this; // only counters change in place
+    }
+
+    @Override
+    public long getEstimatedMemoryUsageBytes() {
+        if (integer) {
+            // The pool is not charged to any key. Nor are a contended counter's cells: an
+            // increment does not report a size change, so the estimate must stay fixed
+            return shared ? 0 : INTEGER_OVERHEAD;
+        }
+        return OVERHEAD + value.length;
+    }
+
+    /** A stripe of a contended counter: the batch open on it, if any. */
+    @SuppressWarnings("unused") // the p fields pad the cell to its own cache line
+    private static final class Cell {
+        private static final VarHandle BATCH;
+        static {
+            try {
+                BATCH = MethodHandles.lookup().findVarHandle(Cell.class, "batch", Batch.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private long p0, p1, p2, p3, p4, p5, p6;
+        volatile Batch batch;
+        private long q0, q1, q2, q3, q4, q5, q6;
+
+        boolean compareAndSetBatch(Batch expected, Batch next) {
+            return BATCH.compareAndSet(this, expected, next);
+        }
+    }
+
+    /**
+     * Increments combined in one cell. state holds the sum of the deltas joined so far,
+     * shifted left by one, and in its low bit whether the batch is closed to new members.
+     */
+    private static final class Batch {
+        static final long CLOSED = Long.MIN_VALUE;
+        private static final int YIELD_AFTER_SPINS = 64;
+        private static final VarHandle STATE;
+        static {
+            try {
+                STATE = MethodHandles.lookup().findVarHandle(Batch.class, "state", long.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private volatile long state;
+        private long before;           // the counter before the batch, published by done
+        private volatile boolean done;
+
+        Batch(long openerDelta) {
+            this.state = openerDelta << 1;
+        }
+
+        /** @return the sum of the deltas joined before this one, or CLOSED if too late */
+        long join(long delta) {
+            while (true) {
+                long s = state;
+                if ((s & 1) != 0) {
+                    return CLOSED;
+                }
+                if (STATE.compareAndSet(this, s, s + (delta << 1))) {
+                    return s >> 1;
+                }
+            }
+        }
+
+        /** Close the batch; only its opener does, once. @return the sum of its deltas */
+        long close() {
+            return (long) STATE.getAndAdd(this, 1L) >> 1;
+        }
+
+        void complete(long counterBefore) {
+            before = counterBefore;
+            done = true;
+        }
+
+        /** @return the counter before the batch, once its opener has applied it */
+        long await() {
+            for (int spins = 0; !done; spins++) {
+                if (spins < YIELD_AFTER_SPINS) {
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield(); // the opener may be descheduled
+                }
+            }
+            return before;
+        }
     }
 
-    /** Retrieve the stored string. */
-    public String getValue() {
-        return value;
+    /** Loading a snapshot maps shared integers back onto the pool. */
+    private Object readResolve() {
+        return shared ? SHARED[(int) number] : this;
     }
 }
@@ -1,62 +1,543 @@
 package com.java.redis.internal.datastore.value;
 
 import com.java.redis.internal.constants.DataType;
+import com.java.redis.internal.datastore.ByteString;
 import com.java.redis.internal.datastore.RedisValue;
 
 import java.io.Serializable;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ObjDoubleConsumer;
 
 /**
- * ZSetValue represents a Redis sorted set data structure.
- * This implementation uses a ConcurrentHashMap for O(1) lookups
- * and a ConcurrentSkipListMap to maintain sorted order
+ * ZSetValue represents a Redis sorted set data structure, ordered by (score, member)
+ * with members of equal score in byte-wise order.
+ *
+ * Small sorted sets are packed in a listpack of member, score pairs kept in that order
+ * and replaced copy-on-write. Past the EncodingThresholds they convert to a hash map
+ * for O(1) score lookups plus a rank-indexed {@link ZSkipList}, so rank and range
+ * queries take O(log n) plus the size of the reply; a read-write lock guards the pair.
  */
 public class ZSetValue implements RedisValue, Serializable {
-    // Map member → score for O(1) lookups
-    private final ConcurrentHashMap<String, Double> scoreMap = new ConcurrentHashMap<>();
-    // Sorted map score → set of members with that score, for range queries
-    private final ConcurrentSkipListMap<Double, Set<String>> sorted = new ConcurrentSkipListMap<>();
+    private static final long serialVersionUID = 2213870216832258343L;
+
+    // Value object and the listpack's array header
+    private static final long PACKED_OVERHEAD = 48;
+    // Empty map, skip list header and lock; per member: hash node, boxed score, ByteString,
+    // byte[] header and a skip list node with 1.33 levels on average
+    private static final long OVERHEAD = 800;
+    private static final long MEMBER_OVERHEAD = 160;
+    private static final VarHandle REPR;
+    static {
+        try {
+            REPR = MethodHandles.lookup().findVarHandle(ZSetValue.class, "repr", Serializable.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /** The converted representation. */
+    private static final class Table implements Serializable {
+        private static final long serialVersionUID = -8690729591960440277L;
+
+        final PartitionedTable<Double> scores;
+        final ZSkipList list = new ZSkipList();
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        Table() {
+            scores = new PartitionedTable<>();
+        }
+
+        Table(int expected) {
+            scores = new PartitionedTable<>(expected);
+        }
+    }
+
+    private final EncodingThresholds thresholds;
+    // listpack byte[] while small (scores as 8-byte entries), Table once converted
+    private volatile Serializable repr = Listpack.EMPTY;
+    private final AtomicLong estimatedBytes = new AtomicLong(); // skiplist encoding only
+
+    public ZSetValue() {
+        this(EncodingThresholds.DEFAULT);
+    }
+
+    public ZSetValue(EncodingThresholds thresholds) {
+        this.thresholds = thresholds;
+    }
 
     /**
      * ZADD: add or update member with score; returns 1 if new, 0 if updated existing.
      */
-    public int zadd(double score, String member) {
-        Double oldScore = scoreMap.put(member, score);
-        if (oldScore != null) {
-            // remove member from old score bucket
-            sorted.computeIfPresent(oldScore, (s, members) -> {
-                members.remove(member);
-                return members.isEmpty() ? null : members;
-            });
+    public int zadd(double score, byte[] memberBytes) {
+        return upsert(memberBytes, score, false, new double[1]);
+    }
+
+    /**
+     * ZINCRBY: add increment to the member's score, adding the member at 0 if missing.
+     * @return the new score
+     * @throws IllegalStateException if the result is not a number
+     */
+    public double zincrby(double increment, byte[] memberBytes) {
+        double[] score = new double[1];
+        upsert(memberBytes, increment, true, score);
+        return score[0];
+    }
+
+    /** @return 1 if the member was added; its resulting score goes to scoreOut[0] */
+    private int upsert(byte[] member, double value, boolean increment, double[] scoreOut) {
+        while (true) {
+            Object r = repr;
+            if (r instanceof Table) {
+                return upsertTable((Table) r, member, value, increment, scoreOut);
+            }
+            byte[] lp = (byte[]) r;
+            int at = Listpack.find(lp, member, 2);
+            if (at < 0 && (member.length > thresholds.getZsetMaxValue()
+                    || Listpack.count(lp) / 2 >= thresholds.getZsetMaxEntries())) {
+                convert(lp);
+                continue;
+            }
+            double score = value;
+            byte[] next = lp;
+            if (at >= 0) {
+                double old = scoreAt(lp, Listpack.next(lp, at));
+                score = newScore(old, value, increment);
+                if (Double.compare(old, score) == 0) {
+                    scoreOut[0] = score;
+                    return 0; // unchanged
+                }
+                next = Listpack.delete(lp, at, 2);
+            }
+            next = Listpack.insert(next, insertionPoint(next, score, member),
+                    member, Listpack.longEntry(Double.doubleToLongBits(score)));
+            if (REPR.compareAndSet(this, lp, next)) {
+                scoreOut[0] = score;
+                return at >= 0 ? 0 : 1;
+            }
+        }
+    }
+
+    private int upsertTable(Table t, byte[] member, double value, boolean increment, double[] scoreOut) {
+        ByteString key = ByteString.wrap(member);
+        t.lock.writeLock().lock();
+        try {
+            Double old = t.scores.get(key);
+            if (old == null) {
+                t.scores.put(key, value);
+                t.list.insert(value, member);
+                estimatedBytes.addAndGet(MEMBER_OVERHEAD + member.length);
+                scoreOut[0] = value;
+                return 1;
+            }
+            double score = newScore(old, value, increment);
+            if (Double.compare(old, score) != 0) {
+                t.scores.put(key, score);
+                t.list.updateScore(old, member, score);
+            }
+            scoreOut[0] = score;
+            return 0;
+        } finally {
+            t.lock.writeLock().unlock();
+        }
+    }
+
+    private static double newScore(double old, double value, boolean increment) {
+        if (!increment) {
+            return value;
+        }
+        double score = old + value;
+        if (Double.isNaN(score)) {
+            throw new IllegalStateException("ERR resulting score is not a number (NaN)");
+        }
+        return score;
+    }
+
+    /**
+     * ZREM: remove the given members.
+     * @return how many were present
+     */
+    public int zrem(List<byte[]> members) {
+        while (true) {
+            Object r = repr;
+            if (r instanceof Table) {
+                return zremTable((Table) r, members);
+            }
+            byte[] lp = (byte[]) r;
+            byte[] next = lp;
+            int removed = 0;
+            for (byte[] m : members) {
+                int at = Listpack.find(next, m, 2);
+                if (at >= 0) {
+                    next = Listpack.delete(next, at, 2);
+                    removed++;
+                }
+            }
+            if (removed == 0 || REPR.compareAndSet(this, lp, next)) {
+                return removed;
+            }
+        }
+    }
+
+    private int zremTable(Table t, List<byte[]> members) {
+        t.lock.writeLock().lock();
+        try {
+            int removed = 0;
+            for (byte[] m : members) {
+                Double score = t.scores.remove(ByteString.wrap(m));
+                if (score != null) {
+                    t.list.delete(score, m);
+                    estimatedBytes.addAndGet(-(MEMBER_OVERHEAD + m.length));
+                    removed++;
+                }
+            }
+            return removed;
+        } finally {
+            t.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * ZSCAN step: append member, score pairs to out. A listpack is returned whole;
+     * the skiplist encoding's member table a few partitions at a time (see PartitionedTable).
+     * @return the next cursor, 0 when done
+     */
+    public long zscan(long cursor, int count, List<byte[]> out) {
+        Object r = repr;
+        if (r instanceof byte[]) {
+            byte[] lp = (byte[]) r;
+            for (int at = Listpack.first(); !Listpack.isEnd(lp, at); ) {
+                int scoreAt = Listpack.next(lp, at);
+                addMember(out, Listpack.get(lp, at), scoreAt(lp, scoreAt), true);
+                at = Listpack.next(lp, scoreAt);
+            }
+            return 0;
+        }
+        Table t = (Table) r;
+        t.lock.readLock().lock();
+        try {
+            return t.scores.scan(cursor, count, (member, score) -> addMember(out, member.bytes(), score, true));
+        } finally {
+            t.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Fill an empty sorted set with distinct members already in (score, member) order,
+     * as read from a snapshot: the encoding is chosen once and nothing is searched.
+     */
+    public void load(List<byte[]> members, double[] scores) {
+        int n = members.size();
+        boolean packed = n <= thresholds.getZsetMaxEntries();
+        for (int i = 0; packed && i < n; i++) {
+            packed = members.get(i).length <= thresholds.getZsetMaxValue();
+        }
+        if (packed) {
+            byte[][] items = new byte[n * 2][];
+            for (int i = 0; i < n; i++) {
+                items[2 * i] = members.get(i);
+                items[2 * i + 1] = Listpack.longEntry(Double.doubleToLongBits(scores[i]));
+            }
+            repr = Listpack.insert(Listpack.EMPTY, Listpack.EMPTY.length, items);
+            return;
+        }
+        Table t = new Table(n);
+        long bytes = OVERHEAD;
+        for (int i = 0; i < n; i++) {
+            byte[] member = members.get(i);
+            t.scores.put(ByteString.wrap(member), scores[i]);
+            t.list.insert(scores[i], member);
+            bytes += MEMBER_OVERHEAD + member.length;
+        }
+        repr = t;
+        estimatedBytes.set(bytes);
+    }
+
+    /** Visit every member with its score, lowest score first. */
+    public void forEach(ObjDoubleConsumer<byte[]> action) {
+        Object r = repr;
+        if (r instanceof byte[]) {
+            byte[] lp = (byte[]) r;
+            for (int at = Listpack.first(); !Listpack.isEnd(lp, at); ) {
+                int scoreAt = Listpack.next(lp, at);
+                action.accept(Listpack.get(lp, at), scoreAt(lp, scoreAt));
+                at = Listpack.next(lp, scoreAt);
+            }
+            return;
+        }
+        Table t = (Table) r;
+        t.lock.readLock().lock();
+        try {
+            for (ZSkipList.Node n = t.list.first(); n != null; n = n.next()) {
+                action.accept(n.member, n.score);
+            }
+        } finally {
+            t.lock.readLock().unlock();
+        }
+    }
+
+    /** ZCARD: number of members. */
+    public int zcard() {
+        Object r = repr;
+        if (r instanceof byte[]) {
+            return Listpack.count((byte[]) r) / 2;
+        }
+        Table t = (Table) r;
+        t.lock.readLock().lock();
+        try {
+            return (int) t.list.length();
+        } finally {
+            t.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * ZRANK / ZREVRANK: 0-based position of the member, counted from the lowest score
+     * or, if reverse, from the highest.
+     * @return the rank, or -1 if the member is missing
+     */
+    public long zrank(byte[] member, boolean reverse) {
+        Object r = repr;
+        if (r instanceof byte[]) {
+            byte[] lp = (byte[]) r;
+            long rank = 0;
+            for (int at = Listpack.first(); !Listpack.isEnd(lp, at); at = Listpack.next(lp, Listpack.next(lp, at))) {
+                if (Listpack.matches(lp, at, member)) {
+                    return reverse ? Listpack.count(lp) / 2 - 1 - rank : rank;
+                }
+                rank++;
+            }
+            return -1;
+        }
+        Table t = (Table) r;
+        t.lock.readLock().lock();
+        try {
+            Double score = t.scores.get(ByteString.wrap(member));
+            if (score == null) {
+                return -1;
+            }
+            long rank = t.list.rank(score, member); // 1-based
+            return reverse ? t.list.length() - rank : rank - 1;
+        } finally {
+            t.lock.readLock().unlock();
         }
-        // add to new score bucket
-        sorted.compute(score, (s, members) -> {
-            if (members == null) members = ConcurrentHashMap.newKeySet();
-            members.add(member);
-            return members;
-        });
-        return (oldScore == null) ? 1 : 0;
     }
 
     /**
      * ZRANGE start..stop (inclusive, 0-based). Negative indices count from end.
      * Returns list of members in order.
      */
-    public List<String> zrange(int start, int stop) {
-        // flatten sorted map into a single list
-        List<String> all = new ArrayList<>();
-        for (Map.Entry<Double, Set<String>> e : sorted.entrySet()) {
-            all.addAll(e.getValue());
+    public List<byte[]> zrange(int start, int stop) {
+        return zrange(start, stop, false, false);
+    }
+
+    /**
+     * ZRANGE / ZREVRANGE start..stop (inclusive, 0-based, negative counting from the end).
+     * @return the members in order; with scores, each member is followed by its score
+     */
+    public List<byte[]> zrange(long start, long stop, boolean reverse, boolean withScores) {
+        Object r = repr;
+        if (r instanceof byte[]) {
+            byte[] lp = (byte[]) r;
+            long size = Listpack.count(lp) / 2;
+            long[] window = window(start, stop, size);
+            if (window == null) {
+                return Collections.emptyList();
+            }
+            // Forward positions of the window; a reverse range reads them back to front
+            long from = reverse ? size - 1 - window[1] : window[0];
+            long to = reverse ? size - 1 - window[0] : window[1];
+            List<byte[]> range = collectPacked(lp, from, to, withScores);
+            if (reverse) {
+                reversePairs(range, withScores ? 2 : 1);
+            }
+            return range;
+        }
+        Table t = (Table) r;
+        t.lock.readLock().lock();
+        try {
+            long[] window = window(start, stop, t.list.length());
+            if (window == null) {
+                return Collections.emptyList();
+            }
+            long n = window[1] - window[0] + 1;
+            List<byte[]> range = new ArrayList<>((int) (withScores ? 2 * n : n));
+            ZSkipList.Node node = t.list.byRank(reverse ? t.list.length() - window[0] : window[0] + 1);
+            for (; n > 0 && node != null; n--) {
+                addMember(range, node.member, node.score, withScores);
+                node = reverse ? node.previous() : node.next();
+            }
+            return range;
+        } finally {
+            t.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * ZRANGEBYSCORE with LIMIT offset count (count < 0: no limit).
+     * @return the members in range, in order; with scores, each followed by its score
+     */
+    public List<byte[]> zrangeByScore(ScoreRange range, long offset, long count, boolean withScores) {
+        if (offset < 0 || count == 0 || range.isEmpty()) {
+            return Collections.emptyList();
         }
-        int size = all.size();
-        // handle negative indices
+        List<byte[]> out = new ArrayList<>();
+        Object r = repr;
+        if (r instanceof byte[]) {
+            byte[] lp = (byte[]) r;
+            for (int at = Listpack.first(); !Listpack.isEnd(lp, at); ) {
+                int scoreAt = Listpack.next(lp, at);
+                double score = scoreAt(lp, scoreAt);
+                if (!range.belowMax(score)) {
+                    break;
+                }
+                if (range.aboveMin(score) && offset-- <= 0) {
+                    addMember(out, Listpack.get(lp, at), score, withScores);
+                    if (--count == 0) {
+                        break;
+                    }
+                }
+                at = Listpack.next(lp, scoreAt);
+            }
+            return out;
+        }
+        Table t = (Table) r;
+        t.lock.readLock().lock();
+        try {
+            ZSkipList.Node node = t.list.firstInRange(range);
+            if (node != null && offset > 0) {
+                // Jump straight to the offset through the spans instead of walking to it
+                node = t.list.byRank(t.list.rank(node.score, node.member) + offset);
+            }
+            for (; node != null && range.belowMax(node.score) && count != 0; node = node.next(), count--) {
+                addMember(out, node.member, node.score, withScores);
+            }
+            return out;
+        } finally {
+            t.lock.readLock().unlock();
+        }
+    }
+
+    /** @return [start, stop] clamped to a set of the given size, or null if empty */
+    private static long[] window(long start, long stop, long size) {
         if (start < 0) start = size + start;
         if (stop < 0) stop = size + stop;
         start = Math.max(0, start);
         stop = Math.min(size - 1, stop);
-        if (start > stop || start >= size) return Collections.emptyList();
-        return all.subList(start, stop + 1);
+        if (start > stop || start >= size) return null;
+        return new long[] {start, stop};
+    }
+
+    private static List<byte[]> collectPacked(byte[] lp, long from, long to, boolean withScores) {
+        List<byte[]> range = new ArrayList<>((int) ((to - from + 1) * (withScores ? 2 : 1)));
+        int at = Listpack.first();
+        for (long rank = 0; rank <= to; rank++) {
+            int scoreAt = Listpack.next(lp, at);
+            if (rank >= from) {
+                addMember(range, Listpack.get(lp, at), scoreAt(lp, scoreAt), withScores);
+            }
+            at = Listpack.next(lp, scoreAt);
+        }
+        return range;
+    }
+
+    /** Reverse a list made of groups of the given size, keeping each group's own order. */
+    private static void reversePairs(List<byte[]> list, int group) {
+        if (group == 1) {
+            Collections.reverse(list);
+            return;
+        }
+        int groups = list.size() / group;
+        for (int i = 0, j = groups - 1; i < j; i++, j--) {
+            for (int k = 0; k < group; k++) {
+                Collections.swap(list, i * group + k, j * group + k);
+            }
+        }
+    }
+
+    private static void addMember(List<byte[]> out, byte[] member, double score, boolean withScores) {
+        out.add(member);
+        if (withScores) {
+            out.add(ByteString.fromDouble(score));
+        }
+    }
+
+    private static double scoreAt(byte[] lp, int offset) {
+        return Double.longBitsToDouble(Listpack.getLong(lp, offset));
+    }
+
+    /** @return offset of the first pair ordered after (score, member), or lp.length */
+    private static int insertionPoint(byte[] lp, double score, byte[] member) {
+        int at = Listpack.first();
+        while (!Listpack.isEnd(lp, at)) {
+            int scoreAt = Listpack.next(lp, at);
+            int cmp = Double.compare(scoreAt(lp, scoreAt), score);
+            if (cmp > 0 || (cmp == 0 && Listpack.compare(lp, at, member) > 0)) {
+                return at;
+            }
+            at = Listpack.next(lp, scoreAt);
+        }
+        return at;
+    }
+
+    /** Replace the listpack with the hash map and skip list holding the same members. */
+    private void convert(byte[] lp) {
+        Table t = new Table();
+        long bytes = OVERHEAD;
+        for (int at = Listpack.first(); !Listpack.isEnd(lp, at); ) {
+            byte[] member = Listpack.get(lp, at);
+            at = Listpack.next(lp, at);
+            double score = scoreAt(lp, at);
+            at = Listpack.next(lp, at);
+            t.scores.put(ByteString.wrap(member), score);
+            t.list.insert(score, member);
+            bytes += MEMBER_OVERHEAD + member.length;
+        }
+        if (REPR.compareAndSet(this, lp, t)) {
+            estimatedBytes.addAndGet(bytes); // additive: updates racing in after the swap are kept
+        }
+    }
+
+    @Override
+    public ZSetValue copy() {
+        ZSetValue c = new ZSetValue(thresholds);
+        Serializable r = repr;
+        if (r instanceof byte[]) {
+            c.repr = r;
+        } else {
+            Table t = (Table) r;
+            Table copy = new Table();
+            t.lock.readLock().lock();
+            try {
+                for (ZSkipList.Node n = t.list.first(); n != null; n = n.next()) {
+                    copy.scores.put(ByteString.wrap(n.member), n.score);
+                    copy.list.insert(n.score, n.member);
+                }
+            } finally {
+                t.lock.readLock().unlock();
+            }
+            c.repr = copy;
+        }
+        c.estimatedBytes.set(estimatedBytes.get());
+        return c;
+    }
+
+    @Override
+    public DataType getType() {
+        return DataType.ZSET;
+    }
+
+    @Override
+    public String getEncoding() {
+        return repr instanceof byte[] ? "listpack" : "skiplist";
+    }
+
+    @Override
+    public long getEstimatedMemoryUsageBytes() {
+        Object r = repr;
+        return r instanceof byte[] ? PACKED_OVERHEAD + ((byte[]) r).length : estimatedBytes.get();
     }
 }
@@ -0,0 +1,247 @@
+package com.java.redis.internal.datastore.value;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * An indexable skip list ordered by (score, member), after Redis' zskiplist.
+ *
+ * Every forward link records its span, the number of level-0 steps it jumps, so the rank
+ * of a node and the node at a rank are found in O(log n) along the same search path that
+ * finds a score. Members with equal scores are ordered byte-wise (unsigned).
+ *
+ * Not thread-safe: ZSetValue guards it with its lock. Serialized as a flat run of
+ * (score, member) pairs, since default serialization would recurse once per node.
+ */
+final class ZSkipList implements Serializable {
+    private static final long serialVersionUID = 4968336286756689267L;
+
+    static final int MAX_LEVEL = 32;
+
+    static final class Node {
+        final byte[] member;
+        double score;
+        Node backward;
+        final Node[] forward;
+        final long[] span; // span[i]: level-0 steps covered by forward[i]
+
+        Node(int level, double score, byte[] member) {
+            this.member = member;
+            this.score = score;
+            this.forward = new Node[level];
+            this.span = new long[level];
+        }
+
+        Node next() {
+            return forward[0];
+        }
+
+        Node previous() {
+            return backward;
+        }
+    }
+
+    private transient Node header = new Node(MAX_LEVEL, 0, null);
+    private transient Node tail;
+    private transient long length;
+    private transient int level = 1;
+
+    long length() {
+        return length;
+    }
+
+    Node first() {
+        return header.forward[0];
+    }
+
+    Node last() {
+        return tail;
+    }
+
+    static int compare(double s1, byte[] m1, double s2, byte[] m2) {
+        int c = Double.compare(s1, s2);
+        return c != 0 ? c : Arrays.compareUnsigned(m1, m2);
+    }
+
+    /** Level of a new node: each further level with probability 1/4. */
+    private static int randomLevel() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int lvl = 1;
+        while (lvl < MAX_LEVEL && random.nextInt(4) == 0) {
+            lvl++;
+        }
+        return lvl;
+    }
+
+    /** Insert a member that is not in the list yet. */
+    Node insert(double score, byte[] member) {
+        Node[] update = new Node[MAX_LEVEL];
+        long[] rank = new long[MAX_LEVEL];
+        Node x = header;
+        for (int i = level - 1; i >= 0; i--) {
+            rank[i] = i == level - 1 ? 0 : rank[i + 1];
+            while (x.forward[i] != null && compare(x.forward[i].score, x.forward[i].member, score, member) < 0) {
+                rank[i] += x.span[i];
+                x = x.forward[i];
+            }
+            update[i] = x;
+        }
+        int lvl = randomLevel();
+        if (lvl > level) {
+            for (int i = level; i < lvl; i++) {
+                rank[i] = 0;
+                update[i] = header;
+                header.span[i] = length;
+            }
+            level = lvl;
+        }
+        x = new Node(lvl, score, member);
+        for (int i = 0; i < lvl; i++) {
+            x.forward[i] = update[i].forward[i];
+            update[i].forward[i] = x;
+            x.span[i] = update[i].span[i] - (rank[0] - rank[i]);
+            update[i].span[i] = (rank[0] - rank[i]) + 1;
+        }
+        // Levels above the new node now jump over one more node
+        for (int i = lvl; i < level; i++) {
+            update[i].span[i]++;
+        }
+        x.backward = update[0] == header ? null : update[0];
+        if (x.forward[0] != null) {
+            x.forward[0].backward = x;
+        } else {
+            tail = x;
+        }
+        length++;
+        return x;
+    }
+
+    /** @return true if the member was found with that score and removed */
+    boolean delete(double score, byte[] member) {
+        Node[] update = new Node[MAX_LEVEL];
+        Node x = findPredecessors(score, member, update).forward[0];
+        if (x != null && Double.compare(x.score, score) == 0 && Arrays.equals(x.member, member)) {
+            unlink(x, update);
+            return true;
+        }
+        return false;
+    }
+
+    /** Move a member to a new score, in place when its position does not change. */
+    Node updateScore(double score, byte[] member, double newScore) {
+        Node[] update = new Node[MAX_LEVEL];
+        Node x = findPredecessors(score, member, update).forward[0];
+        if ((x.backward == null || compare(x.backward.score, x.backward.member, newScore, member) < 0)
+                && (x.forward[0] == null || compare(x.forward[0].score, x.forward[0].member, newScore, member) > 0)) {
+            x.score = newScore;
+            return x;
+        }
+        unlink(x, update);
+        return insert(newScore, member);
+    }
+
+    /** @return 1-based rank of the member, or 0 if it is not in the list with that score */
+    long rank(double score, byte[] member) {
+        long rank = 0;
+        Node x = header;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.forward[i] != null && compare(x.forward[i].score, x.forward[i].member, score, member) <= 0) {
+                rank += x.span[i];
+                x = x.forward[i];
+            }
+            if (x != header && Double.compare(x.score, score) == 0 && Arrays.equals(x.member, member)) {
+                return rank;
+            }
+        }
+        return 0;
+    }
+
+    /** @return the node at a 1-based rank, or null if out of range */
+    Node byRank(long rank) {
+        long traversed = 0;
+        Node x = header;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.forward[i] != null && traversed + x.span[i] <= rank) {
+                traversed += x.span[i];
+                x = x.forward[i];
+            }
+            if (traversed == rank) {
+                return x == header ? null : x;
+            }
+        }
+        return null;
+    }
+
+    /** @return the first node whose score is in range, or null */
+    Node firstInRange(ScoreRange range) {
+        if (range.isEmpty() || tail == null || !range.aboveMin(tail.score)) {
+            return null;
+        }
+        Node x = header;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.forward[i] != null && !range.aboveMin(x.forward[i].score)) {
+                x = x.forward[i];
+            }
+        }
+        x = x.forward[0];
+        return x != null && range.belowMax(x.score) ? x : null;
+    }
+
+    /** Fill update[i] with the last node before (score, member) on each level; returns update[0]. */
+    private Node findPredecessors(double score, byte[] member, Node[] update) {
+        Node x = header;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.forward[i] != null && compare(x.forward[i].score, x.forward[i].member, score, member) < 0) {
+                x = x.forward[i];
+            }
+            update[i] = x;
+        }
+        return x;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeLong(length);
+        for (Node x = first(); x != null; x = x.next()) {
+            out.writeDouble(x.score);
+            out.writeInt(x.member.length);
+            out.write(x.member);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        header = new Node(MAX_LEVEL, 0, null);
+        level = 1;
+        for (long n = in.readLong(); n > 0; n--) {
+            double score = in.readDouble();
+            byte[] member = new byte[in.readInt()];
+            in.readFully(member);
+            insert(score, member);
+        }
+    }
+
+    private void unlink(Node x, Node[] update) {
+        for (int i = 0; i < level; i++) {
+            if (update[i].forward[i] == x) {
+                update[i].span[i] += x.span[i] - 1;
+                update[i].forward[i] = x.forward[i];
+            } else {
+                update[i].span[i]--;
+            }
+        }
+        if (x.forward[0] != null) {
+            x.forward[0].backward = x.backward;
+        } else {
+            tail = x.backward;
+        }
+        while (level > 1 && header.forward[level - 1] == null) {
+            level--;
+        }
+        length--;
+    }
+}
@@ -0,0 +1,169 @@
+package com.java.redis.internal.persistence;
+
+import com.java.redis.internal.constants.DataType;
+import com.java.redis.internal.datastore.ByteString;
+import com.java.redis.internal.datastore.KeyspaceSnapshot;
+import com.java.redis.internal.datastore.RedisValue;
+import com.java.redis.internal.datastore.ValueEntry;
+import com.java.redis.internal.datastore.value.HashValue;
+import com.java.redis.internal.datastore.value.ListValue;
+import com.java.redis.internal.datastore.value.SetValue;
+import com.java.redis.internal.datastore.value.StringValue;
+import com.java.redis.internal.datastore.value.ZSetValue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes a keyspace snapshot as the shortest command log that rebuilds it: a SET per
+ * string, collections as RPUSH, SADD, HSET or ZADD commands of up to ITEMS_PER_COMMAND
+ * elements (field/value or score/member pairs) each, and a PEXPIREAT for a collection
+ * with a TTL. Keys already expired are left out.
+ */
+final class AofRewriter implements KeyspaceSnapshot.EntryWriter {
+    // As Redis: bounds the size of a single command for a huge collection
+    private static final int ITEMS_PER_COMMAND = 64;
+    private static final int FLUSH_BYTES = 256 * 1024;
+    private static final byte[] SET = ascii("SET");
+    private static final byte[] PXAT = ascii("PXAT");
+    private static final byte[] PEXPIREAT = ascii("PEXPIREAT");
+    private static final byte[] RPUSH = ascii("RPUSH");
+    private static final byte[] SADD = ascii("SADD");
+    private static final byte[] HSET = ascii("HSET");
+    private static final byte[] ZADD = ascii("ZADD");
+
+    private final FileChannel out;
+    private final BlockOutput buf = new BlockOutput(FLUSH_BYTES + 64 * 1024);
+    private final long now = System.currentTimeMillis();
+    private long keys;
+    private long bytesWritten;
+    // The chunked command being written: name, key, elements per command, elements left
+    // in all and in this command
+    private byte[] itemsCommand;
+    private byte[] itemsKey;
+    private int perCommand;
+    private long itemsLeft;
+    private int inCommand;
+
+    AofRewriter(FileChannel out) {
+        this.out = out;
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public void write(ByteString key, ValueEntry entry) throws IOException {
+        if (entry.isExpired(now)) {
+            return;
+        }
+        byte[] k = key.bytes();
+        RedisValue value = entry.getValue();
+        switch (value.getType()) {
+            case STRING:
+                byte[] v = ((StringValue) value).getValue();
+                if (entry.hasExpiration()) {
+                    command(SET, k, v, PXAT, ByteString.fromLong(entry.getExpirationTime()));
+                } else {
+                    command(SET, k, v);
+                }
+                break;
+            case LIST:
+                items(RPUSH, k, ((ListValue) value).lrange(0, -1));
+                break;
+            case SET:
+                items(SADD, k, ((SetValue) value).smembers());
+                break;
+            case HASH:
+                HashValue hash = (HashValue) value;
+                beginItems(HSET, k, hash.hlen(), ITEMS_PER_COMMAND);
+                hash.forEach((field, val) -> {
+                    nextItem(2);
+                    AppendOnlyFile.writeBulk(buf, field);
+                    AppendOnlyFile.writeBulk(buf, val);
+                });
+                break;
+            case ZSET:
+                ZSetValue zset = (ZSetValue) value;
+                beginItems(ZADD, k, zset.zcard(), ITEMS_PER_COMMAND);
+                zset.forEach((member, score) -> {
+                    nextItem(2);
+                    AppendOnlyFile.writeBulk(buf, Double.isInfinite(score)
+                            ? ByteString.fromDouble(score) : ascii(Double.toString(score)));
+                    AppendOnlyFile.writeBulk(buf, member);
+                });
+                break;
+            default:
+                // No command creates a bloom filter, so the log cannot hold one
+                return;
+        }
+        if (value.getType() != DataType.STRING && entry.hasExpiration()) {
+            command(PEXPIREAT, k, ByteString.fromLong(entry.getExpirationTime()));
+        }
+        keys++;
+        if (buf.size() >= FLUSH_BYTES) {
+            flush();
+        }
+    }
+
+    private void command(byte[]... parts) {
+        AppendOnlyFile.writeArrayHeader(buf, parts.length);
+        for (byte[] part : parts) {
+            AppendOnlyFile.writeBulk(buf, part);
+        }
+    }
+
+    private void items(byte[] name, byte[] key, List<byte[]> items) {
+        beginItems(name, key, items.size(), ITEMS_PER_COMMAND);
+        for (byte[] item : items) {
+            nextItem(1);
+            AppendOnlyFile.writeBulk(buf, item);
+        }
+    }
+
+    private void beginItems(byte[] name, byte[] key, long count, int perCommand) {
+        itemsCommand = name;
+        itemsKey = key;
+        this.perCommand = perCommand;
+        itemsLeft = count;
+        inCommand = 0;
+    }
+
+    /** Start the next command of the chunked collection if the current one is full. */
+    private void nextItem(int width) {
+        if (inCommand == 0) {
+            inCommand = (int) Math.min(itemsLeft, perCommand);
+            AppendOnlyFile.writeArrayHeader(buf, 2 + inCommand * width);
+            AppendOnlyFile.writeBulk(buf, itemsCommand);
+            AppendOnlyFile.writeBulk(buf, itemsKey);
+        }
+        inCommand--;
+        itemsLeft--;
+    }
+
+    /** Write out what is buffered; the channel is left open. */
+    void finish() throws IOException {
+        flush();
+    }
+
+    private void flush() throws IOException {
+        ByteBuffer src = ByteBuffer.wrap(buf.array(), 0, buf.size());
+        while (src.hasRemaining()) {
+            out.write(src);
+        }
+        bytesWritten += buf.size();
+        buf.reset();
+    }
+
+    long getKeysWritten() {
+        return keys;
+    }
+
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+}
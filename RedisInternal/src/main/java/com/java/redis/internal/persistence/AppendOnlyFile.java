@@ -0,0 +1,681 @@
+package com.java.redis.internal.persistence;
+
+import com.java.redis.internal.command.CommandExecutor;
+import com.java.redis.internal.datastore.DataStore;
+import com.java.redis.internal.datastore.KeyspaceSnapshot;
+import com.java.redis.internal.protocol.Command;
+import com.java.redis.internal.protocol.DeferredReply;
+import com.java.redis.internal.protocol.RedisReply;
+import com.java.redis.internal.protocol.RespDecoder;
+import com.java.redis.internal.stats.ServerStats;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.CorruptedFrameException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Append-only file: every write command, in RESP, in the order it was applied.
+ *
+ * Commands are encoded into an in-memory buffer by the threads that execute them. A
+ * single writer thread swaps that buffer for an empty one and writes it to the file
+ * with one call, so however many commands arrived since the last write go out together.
+ * With appendfsync always the writer fsyncs after every such batch: a burst of
+ * concurrent writes shares one fsync (group commit), and the connections only flush
+ * their replies once whenDurable says their commands are on disk.
+ *
+ * On startup the file is replayed through the same RespDecoder the server reads clients
+ * with, executing each command against the store. A command cut short by a crash at the
+ * end of the file is dropped, and the file truncated to the last complete one.
+ *
+ * Once the file has grown by the rewrite percentage since the last rewrite, a background
+ * thread rewrites it: it opens a keyspace snapshot, streams it to a temporary file as
+ * the fewest commands that rebuild it (see AofRewriter), and meanwhile commands keep
+ * being appended to the current file and are also kept in a rewrite buffer. Between
+ * keys the rewrite thread spills that buffer to a side file (the incremental segment)
+ * whenever it passes SPILL_BYTES, so the heap holds little of it however long the
+ * snapshot takes. After the snapshot the segment, then the rest of the buffer, are
+ * copied onto the new file; the writer thread appends its last few commands and renames
+ * the new file over the old one. Only a rewrite stuck on one key while the buffer
+ * outgrows MAX_REWRITE_BUFFER_BYTES is abandoned: the stream stops at the next key, the
+ * current file is kept, and later attempts back off. Clients only wait for the instant
+ * the snapshot is opened, which pauses logged writes so it falls between two commands.
+ */
+public class AppendOnlyFile implements PersistenceHandler {
+    private static final int BUFFER_BYTES = 1 << 20;
+    private static final int READ_CHUNK_BYTES = 1 << 20;
+    // Appending blocks once this much waits for the writer, so a slow disk slows
+    // clients down instead of filling the heap
+    private static final int MAX_PENDING_BYTES = 64 << 20;
+    private static final long EVERYSEC_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long RETRY_MILLIS = 1000;
+    // A finished rewrite hands the buffered commands left over to the writer thread once
+    // they are below this; the writer appends them before renaming the file
+    private static final int HANDOVER_BYTES = 256 * 1024;
+    // While the snapshot is streamed the rewrite buffer is spilled to the incremental
+    // segment once it holds this much
+    private static final int SPILL_BYTES = 4 << 20;
+    // Spilling happens between keys; a rewrite is abandoned if this much piles up while
+    // one key is written, rather than growing the heap with the write rate
+    private static final int MAX_REWRITE_BUFFER_BYTES = 64 << 20;
+    // After a failed rewrite the next waits this long, doubling with each failure in a row
+    private static final long REWRITE_RETRY_MILLIS = 60_000;
+    private static final long MAX_REWRITE_RETRY_MILLIS = 3_600_000;
+
+    private final Path filePath;
+    private final Path rewritePath;
+    private final Path incrementalPath; // commands appended during a rewrite, spilled
+    private final FsyncPolicy policy;
+    private final int rewritePercentage; // 0 disables automatic rewrites
+    private final long rewriteMinSize;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition hasData = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    // Guarded by lock
+    private BlockOutput buffer = new BlockOutput(BUFFER_BYTES);
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<>();
+    private boolean closing;
+    // Commands appended while a rewrite runs (null once it overflows MAX_REWRITE_BUFFER_BYTES),
+    // and the rewritten file once it is ready to swap in
+    private BlockOutput rewriteBuffer;
+    private FileChannel rewritten;
+    private volatile boolean spillDue;
+    // File offsets: end of the last command appended, written to the file, and fsynced
+    private volatile long appended;
+    private volatile long written;
+    private volatile long durable;
+    private volatile long commandsLogged;
+    private volatile long writeBatches;
+    private volatile long fsyncs;
+    // Size of the file, and what it was after the last rewrite (or at startup)
+    private volatile long fileSize;
+    private volatile long baseSize;
+    private volatile boolean rewriting;
+    private volatile long rewrites;
+    private volatile long lastRewriteMillis = -1;
+    private volatile int rewriteFailures; // in a row
+    private volatile long nextRewriteMillis; // no rewrite starts before this
+    private DataStore store;
+    private Consumer<Runnable> writeBarrier = Runnable::run;
+    private FileChannel channel; // the writer thread's once it runs
+    private Thread writer;
+
+    public AppendOnlyFile(Path filePath, FsyncPolicy policy, int rewritePercentage, long rewriteMinSize) {
+        this.filePath = filePath;
+        this.rewritePath = filePath.resolveSibling(filePath.getFileName() + ".tmp");
+        this.incrementalPath = filePath.resolveSibling(filePath.getFileName() + ".incr.tmp");
+        this.policy = policy;
+        this.rewritePercentage = rewritePercentage;
+        this.rewriteMinSize = rewriteMinSize;
+    }
+
+    /**
+     * Set how a rewrite holds off logged writes while it opens its snapshot: the barrier
+     * runs the action with no write applied-but-unlogged or logged-but-unapplied.
+     */
+    public void setWriteBarrier(Consumer<Runnable> writeBarrier) {
+        this.writeBarrier = writeBarrier;
+    }
+
+    public FsyncPolicy getPolicy() {
+        return policy;
+    }
+
+    /** Replay the file into the store, then open it for appending and start the writer. */
+    @Override
+    public void load(DataStore store) {
+        this.store = store;
+        try {
+            Files.deleteIfExists(rewritePath); // left by a rewrite the last run did not finish
+            Files.deleteIfExists(incrementalPath);
+            if (Files.exists(filePath)) {
+                replay(store);
+            } else {
+                System.out.println("No append-only file found at startup: " + filePath);
+            }
+            channel = FileChannel.open(filePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            long size = channel.size();
+            channel.position(size);
+            appended = written = durable = size;
+            fileSize = baseSize = size;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open the append-only file " + filePath, e);
+        }
+        writer = new Thread(this::writeLoop, "aof-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private void replay(DataStore store) throws IOException {
+        long start = System.nanoTime();
+        // An executor without a log: replayed commands must not be appended again
+        CommandExecutor replayer = new CommandExecutor(store, new ServerStats());
+        RespDecoder decoder = new RespDecoder();
+        ByteBuf buf = Unpooled.buffer(READ_CHUNK_BYTES * 2);
+        long read = 0;
+        long complete = 0; // offset just past the last whole command
+        long commands = 0;
+        long failed = 0;
+        try (FileChannel in = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            while (true) {
+                buf.discardReadBytes();
+                buf.ensureWritable(READ_CHUNK_BYTES);
+                int n = buf.writeBytes(in, READ_CHUNK_BYTES);
+                if (n < 0) {
+                    break;
+                }
+                read += n;
+                Command cmd;
+                while ((cmd = decoder.decodeCommand(buf)) != null) {
+                    complete = read - buf.readableBytes();
+                    RedisReply reply = replayer.execute(cmd);
+                    if (reply instanceof DeferredReply) {
+                        ((DeferredReply) reply).cancel(); // never logged, but never wait on one
+                    } else if (reply.isError()) {
+                        failed++;
+                    }
+                    commands++;
+                }
+            }
+        } catch (CorruptedFrameException e) {
+            throw new IllegalStateException("Bad file format reading the append-only file " + filePath
+                    + " at offset " + complete + ": " + e.getMessage(), e);
+        } finally {
+            buf.release();
+        }
+        if (complete < read) {
+            System.err.println("[WARN] Append-only file " + filePath + " ends in an incomplete command; truncating "
+                    + (read - complete) + " bytes at offset " + complete);
+            try (FileChannel out = FileChannel.open(filePath, StandardOpenOption.WRITE)) {
+                out.truncate(complete);
+            }
+        }
+        if (failed > 0) {
+            System.err.println("[WARN] " + failed + " commands in the append-only file replayed with an error");
+        }
+        long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        System.out.printf(Locale.ROOT, "Replayed %d commands (%d bytes) from %s in %d ms, %.1f MB/s%n",
+                commands, complete, filePath, millis, complete / 1048.576 / millis);
+    }
+
+    @Override
+    public boolean logsCommands() {
+        return true;
+    }
+
+    /** Queue a command for the writer; blocks only while the writer is far behind. */
+    @Override
+    public void appendCommand(Command cmd) {
+        lock.lock();
+        try {
+            while (buffer.size() >= MAX_PENDING_BYTES && !closing) {
+                notFull.awaitUninterruptibly();
+            }
+            int before = buffer.size();
+            encode(cmd, buffer);
+            appended += buffer.size() - before;
+            if (rewriteBuffer != null) {
+                int length = buffer.size() - before;
+                if (rewritten == null && rewriteBuffer.size() + length > MAX_REWRITE_BUFFER_BYTES) {
+                    rewriteBuffer = null; // the rewrite thread gives up before its next key
+                    spillDue = true;
+                } else {
+                    rewriteBuffer.write(buffer.array(), before, length);
+                    if (rewriteBuffer.size() >= SPILL_BYTES) {
+                        spillDue = true;
+                    }
+                }
+            }
+            commandsLogged++;
+            if (before == 0) {
+                hasData.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void encode(Command cmd, BlockOutput out) {
+        List<byte[]> args = cmd.getArgs();
+        writeArrayHeader(out, args.size() + 1);
+        writeBulk(out, cmd.getName().getBytes(StandardCharsets.US_ASCII));
+        for (byte[] arg : args) {
+            writeBulk(out, arg);
+        }
+    }
+
+    static void writeArrayHeader(BlockOutput out, int count) {
+        out.write('*');
+        writeDecimal(out, count);
+        writeCrlf(out);
+    }
+
+    static void writeBulk(BlockOutput out, byte[] b) {
+        out.write('$');
+        writeDecimal(out, b.length);
+        writeCrlf(out);
+        out.write(b, 0, b.length);
+        writeCrlf(out);
+    }
+
+    private static void writeCrlf(BlockOutput out) {
+        out.write('\r');
+        out.write('\n');
+    }
+
+    private static void writeDecimal(BlockOutput out, int n) {
+        if (n >= 10) {
+            writeDecimal(out, n / 10);
+        }
+        out.write('0' + n % 10);
+    }
+
+    /** @return the file offset just past the last command appended so far */
+    public long appendedOffset() {
+        return appended;
+    }
+
+    /** @return true once everything up to the offset is fsynced (written, with appendfsync no) */
+    public boolean isDurable(long offset) {
+        return durable >= offset;
+    }
+
+    /**
+     * Run the action once everything up to the offset is fsynced: right away if it already
+     * is, otherwise on the writer thread after the fsync, so it must not block.
+     */
+    public void whenDurable(long offset, Runnable action) {
+        lock.lock();
+        try {
+            if (durable < offset) {
+                waiters.add(new Waiter(offset, action));
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        action.run();
+    }
+
+    private void writeLoop() {
+        BlockOutput spare = new BlockOutput(BUFFER_BYTES);
+        long lastSync = System.nanoTime();
+        while (true) {
+            BlockOutput batch;
+            long end;
+            boolean last;
+            FileChannel next;
+            BlockOutput tail = null;
+            lock.lock();
+            try {
+                while (buffer.size() == 0 && !closing && rewritten == null) {
+                    if (policy == FsyncPolicy.EVERYSEC && durable < written) {
+                        // Nothing new, but what was written still needs its fsync within the second
+                        long wait = lastSync + EVERYSEC_NANOS - System.nanoTime();
+                        if (wait <= 0) {
+                            break;
+                        }
+                        hasData.awaitNanos(wait);
+                    } else {
+                        hasData.await();
+                    }
+                }
+                batch = buffer;
+                buffer = spare;
+                end = appended;
+                last = closing;
+                next = rewritten;
+                if (next != null) {
+                    tail = rewriteBuffer;
+                    rewriteBuffer = null;
+                    rewritten = null;
+                }
+                notFull.signalAll();
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+            if (batch.size() > 0) {
+                // Into the current file even when a rewrite is swapped in below: the tail
+                // holds these commands too, and the current file stays whole if the swap fails
+                writeFully(batch);
+                writeBatches++;
+                fileSize += batch.size();
+            }
+            boolean sync;
+            if (next != null && installRewrite(next, tail)) {
+                sync = true; // the new file was fsynced up to end
+                lastSync = System.nanoTime();
+            } else {
+                sync = policy == FsyncPolicy.ALWAYS || (policy == FsyncPolicy.EVERYSEC
+                        && (last || System.nanoTime() - lastSync >= EVERYSEC_NANOS));
+                if (sync && end > durable) {
+                    force();
+                    fsyncs++;
+                    lastSync = System.nanoTime();
+                }
+            }
+            finishBatch(end, sync || policy == FsyncPolicy.NO);
+            batch.reset();
+            spare = batch;
+            if (last) {
+                return;
+            }
+            if (!rewriting && rewriteDue()) {
+                rewriting = true;
+                Thread rewriter = new Thread(this::rewrite, "aof-rewrite");
+                rewriter.setDaemon(true);
+                rewriter.start();
+            }
+        }
+    }
+
+    private boolean rewriteDue() {
+        if (rewritePercentage <= 0 || fileSize < rewriteMinSize
+                || System.currentTimeMillis() < nextRewriteMillis) {
+            return false;
+        }
+        return fileSize - baseSize >= baseSize * rewritePercentage / 100;
+    }
+
+    /** Runs on its own thread: write the rewritten file, then hand it to the writer thread. */
+    private void rewrite() {
+        long start = System.nanoTime();
+        FileChannel out = null;
+        FileChannel incremental = null;
+        try {
+            out = FileChannel.open(rewritePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            incremental = FileChannel.open(incrementalPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            KeyspaceSnapshot[] opened = new KeyspaceSnapshot[1];
+            // Writes before the cut are in the snapshot, writes after it in the rewrite buffer
+            writeBarrier.accept(() -> {
+                lock.lock();
+                try {
+                    rewriteBuffer = new BlockOutput(BUFFER_BYTES);
+                    spillDue = false;
+                } finally {
+                    lock.unlock();
+                }
+                opened[0] = store.openSnapshot();
+            });
+            AofRewriter rewriter = new AofRewriter(out);
+            FileChannel segment = incremental;
+            try (KeyspaceSnapshot snapshot = opened[0]) {
+                snapshot.writeTo((key, entry) -> {
+                    if (spillDue) {
+                        drainRewriteBuffer(segment, 0);
+                    }
+                    rewriter.write(key, entry);
+                });
+                rewriter.finish();
+            }
+            // The segment holds the oldest commands appended meanwhile, the buffer the rest
+            long buffered = incremental.size();
+            for (long at = 0; at < buffered; ) {
+                at += incremental.transferTo(at, buffered - at, out);
+            }
+            incremental.close();
+            incremental = null;
+            Files.deleteIfExists(incrementalPath);
+            out.force(false);
+            buffered += drainRewriteBuffer(out, HANDOVER_BYTES);
+            rewriteFailures = 0;
+            System.out.println("Append-only file rewrite wrote " + rewriter.getKeysWritten() + " keys ("
+                    + rewriter.getBytesWritten() + " bytes) and " + buffered + " bytes of commands appended meanwhile in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } catch (Exception e) {
+            int failures = ++rewriteFailures;
+            long delay = Math.min(MAX_REWRITE_RETRY_MILLIS, REWRITE_RETRY_MILLIS << Math.min(failures - 1, 16));
+            nextRewriteMillis = System.currentTimeMillis() + delay;
+            System.err.println("[ERROR] Append-only file rewrite failed: " + e.getMessage()
+                    + "; next attempt in " + delay / 1000 + " s at the earliest");
+            lock.lock();
+            try {
+                rewriteBuffer = null;
+            } finally {
+                lock.unlock();
+            }
+            discardRewrite(out);
+            discardIncremental(incremental);
+            rewriting = false;
+        }
+    }
+
+    /**
+     * Move the rewrite buffer to the end of out, a chunk at a time. With a handover size,
+     * stop once less than that is left and hand out to the writer thread, which appends
+     * the rest; otherwise stop after one chunk.
+     * @return the bytes moved
+     * @throws IOException also if the rewrite was abandoned, or the server is shutting down
+     */
+    private long drainRewriteBuffer(FileChannel out, int handoverBytes) throws IOException {
+        long moved = 0;
+        while (true) {
+            BlockOutput chunk;
+            lock.lock();
+            try {
+                if (closing) {
+                    throw new IOException("shutting down");
+                }
+                if (rewriteBuffer == null) {
+                    throw new IOException("more than " + (MAX_REWRITE_BUFFER_BYTES >> 20)
+                            + " MB of commands were appended before it could write them out");
+                }
+                spillDue = false;
+                if (handoverBytes > 0 && rewriteBuffer.size() < handoverBytes) {
+                    rewritten = out;
+                    hasData.signal();
+                    return moved;
+                }
+                chunk = rewriteBuffer;
+                rewriteBuffer = new BlockOutput(BUFFER_BYTES);
+            } finally {
+                lock.unlock();
+            }
+            ByteBuffer src = ByteBuffer.wrap(chunk.array(), 0, chunk.size());
+            while (src.hasRemaining()) {
+                out.write(src);
+            }
+            moved += chunk.size();
+            if (handoverBytes == 0) {
+                return moved;
+            }
+        }
+    }
+
+    /**
+     * On the writer thread: append the rewrite's last commands, fsync it and rename it over
+     * the current file, which it then replaces as the file appended to.
+     * @return false if that failed, in which case the current file is kept
+     */
+    private boolean installRewrite(FileChannel next, BlockOutput tail) {
+        try {
+            ByteBuffer src = ByteBuffer.wrap(tail.array(), 0, tail.size());
+            while (src.hasRemaining()) {
+                next.write(src);
+            }
+            next.force(false);
+            fsyncs++;
+            Files.move(rewritePath, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            FileChannel old = channel;
+            channel = next;
+            fileSize = baseSize = next.size();
+            rewrites++;
+            lastRewriteMillis = System.currentTimeMillis();
+            try {
+                old.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close the replaced append-only file: " + e.getMessage());
+            }
+            System.out.println("Append-only file rewritten: " + filePath + " is now " + fileSize + " bytes");
+            return true;
+        } catch (IOException e) {
+            System.err.println("[ERROR] Installing the rewritten append-only file failed: " + e.getMessage());
+            discardRewrite(next);
+            return false;
+        } finally {
+            rewriting = false;
+        }
+    }
+
+    private void discardRewrite(FileChannel out) {
+        try {
+            if (out != null) {
+                out.close();
+            }
+            Files.deleteIfExists(rewritePath);
+        } catch (IOException e) {
+            System.err.println("Failed to delete " + rewritePath + ": " + e.getMessage());
+        }
+    }
+
+    private void discardIncremental(FileChannel incremental) {
+        try {
+            if (incremental != null) {
+                incremental.close();
+            }
+            Files.deleteIfExists(incrementalPath);
+        } catch (IOException e) {
+            System.err.println("Failed to delete " + incrementalPath + ": " + e.getMessage());
+        }
+    }
+
+    /** Write the whole batch. A failing disk is retried rather than losing the commands. */
+    private void writeFully(BlockOutput batch) {
+        ByteBuffer src = ByteBuffer.wrap(batch.array(), 0, batch.size());
+        while (src.hasRemaining()) {
+            try {
+                channel.write(src);
+            } catch (IOException e) {
+                System.err.println("[ERROR] Writing the append-only file failed, retrying: " + e.getMessage());
+                pause();
+            }
+        }
+    }
+
+    private void force() {
+        while (true) {
+            try {
+                channel.force(false);
+                return;
+            } catch (IOException e) {
+                System.err.println("[ERROR] Fsync of the append-only file failed, retrying: " + e.getMessage());
+                pause();
+            }
+        }
+    }
+
+    private static void pause() {
+        try {
+            Thread.sleep(RETRY_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void finishBatch(long end, boolean durableNow) {
+        List<Runnable> ready = null;
+        lock.lock();
+        try {
+            written = end;
+            if (durableNow) {
+                durable = end;
+            }
+            while (!waiters.isEmpty() && waiters.peek().offset <= durable) {
+                if (ready == null) {
+                    ready = new ArrayList<>();
+                }
+                ready.add(waiters.poll().action);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (ready != null) {
+            for (Runnable action : ready) {
+                action.run();
+            }
+        }
+    }
+
+    /** Snapshots are not taken in append-only mode; the file itself is the persistence. */
+    @Override
+    public void saveSnapshot(DataStore store) {
+    }
+
+    /** Write out (and, unless appendfsync is no, fsync) everything appended, then close the file. */
+    @Override
+    public void close() {
+        if (writer == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            closing = true;
+            hasData.signal();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join();
+            channel.close();
+            System.out.println("Append-only file closed: " + filePath + " (" + fileSize + " bytes)");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("Failed to close the append-only file " + filePath + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void appendInfo(StringBuilder sb) {
+        sb.append("aof_enabled:1\r\n");
+        sb.append("aof_fsync:").append(policy.name().toLowerCase(Locale.ROOT)).append("\r\n");
+        sb.append("aof_current_size:").append(fileSize).append("\r\n");
+        sb.append("aof_base_size:").append(baseSize).append("\r\n");
+        sb.append("aof_rewrite_in_progress:").append(rewriting ? 1 : 0).append("\r\n");
+        sb.append("aof_rewrites:").append(rewrites).append("\r\n");
+        sb.append("aof_last_rewrite_time:").append(lastRewriteMillis).append("\r\n");
+        sb.append("aof_rewrite_failures:").append(rewriteFailures).append("\r\n");
+        sb.append("aof_buffer_length:").append(appended - written).append("\r\n");
+        sb.append("aof_commands_logged:").append(commandsLogged).append("\r\n");
+        // Commands per write batch is commands_logged / write_batches; per fsync likewise
+        sb.append("aof_write_batches:").append(writeBatches).append("\r\n");
+        sb.append("aof_fsyncs:").append(fsyncs).append("\r\n");
+    }
+
+    private static final class Waiter implements Comparable<Waiter> {
+        final long offset;
+        final Runnable action;
+
+        Waiter(long offset, Runnable action) {
+            this.offset = offset;
+            this.action = action;
+        }
+
+        @Override
+        public int compareTo(Waiter other) {
+            return Long.compare(offset, other.offset);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.java.redis.internal.persistence;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the primitives of a snapshot block from a ByteBuffer, heap or mapped. An
+ * InputStream only so BloomFilterValue.deserialize can read through a DataInputStream.
+ */
+final class BlockInput extends InputStream {
+    private final ByteBuffer buf;
+
+    BlockInput(ByteBuffer buf) {
+        this.buf = buf;
+    }
+
+    boolean hasRemaining() {
+        return buf.hasRemaining();
+    }
+
+    @Override
+    public int read() {
+        return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (!buf.hasRemaining()) {
+            return -1;
+        }
+        int n = Math.min(len, buf.remaining());
+        buf.get(b, off, n);
+        return n;
+    }
+
+    int readByte() throws IOException {
+        need(1);
+        return buf.get() & 0xFF;
+    }
+
+    long readVarLong() throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return v;
+            }
+        }
+        throw new IOException("Snapshot corrupt: varint too long");
+    }
+
+    /** A varint that must fit a non-negative int, such as a length or count. */
+    int readLength() throws IOException {
+        long n = readVarLong();
+        if (n < 0 || n > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot corrupt: bad length " + n);
+        }
+        return (int) n;
+    }
+
+    long readLong() throws IOException {
+        need(8);
+        return buf.getLong();
+    }
+
+    double readDouble() throws IOException {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    /** Length-prefixed bytes. */
+    byte[] readBytes() throws IOException {
+        int n = readLength();
+        need(n);
+        byte[] b = new byte[n];
+        buf.get(b);
+        return b;
+    }
+
+    private void need(int n) throws EOFException {
+        if (buf.remaining() < n) {
+            throw new EOFException("Snapshot corrupt: record runs past the end of its block");
+        }
+    }
+}
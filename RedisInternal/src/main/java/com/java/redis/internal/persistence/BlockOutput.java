@@ -0,0 +1,82 @@
+package com.java.redis.internal.persistence;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Growable buffer a snapshot block is encoded into. Unsynchronized, unlike
+ * ByteArrayOutputStream; it is an OutputStream only so values that write themselves
+ * to a DataOutput (BloomFilterValue) can be wrapped in a DataOutputStream.
+ */
+final class BlockOutput extends OutputStream {
+    private byte[] buf;
+    private int size;
+
+    BlockOutput(int capacity) {
+        buf = new byte[capacity];
+    }
+
+    @Override
+    public void write(int b) {
+        ensure(1);
+        buf[size++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensure(len);
+        System.arraycopy(b, off, buf, size, len);
+        size += len;
+    }
+
+    void writeVarLong(long v) {
+        ensure(10);
+        while ((v & ~0x7FL) != 0) {
+            buf[size++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buf[size++] = (byte) v;
+    }
+
+    void writeInt(int v) {
+        ensure(4);
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            buf[size++] = (byte) (v >>> shift);
+        }
+    }
+
+    void writeLong(long v) {
+        ensure(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buf[size++] = (byte) (v >>> shift);
+        }
+    }
+
+    void writeDouble(double v) {
+        writeLong(Double.doubleToRawLongBits(v));
+    }
+
+    /** Length-prefixed bytes. */
+    void writeBytes(byte[] b) {
+        writeVarLong(b.length);
+        write(b, 0, b.length);
+    }
+
+    byte[] array() {
+        return buf;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void reset() {
+        size = 0;
+    }
+
+    private void ensure(int n) {
+        if (size + n > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(size + n, buf.length * 2));
+        }
+    }
+}
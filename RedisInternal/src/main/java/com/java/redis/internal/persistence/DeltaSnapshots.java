@@ -0,0 +1,357 @@
+package com.java.redis.internal.persistence;
+
+import com.java.redis.internal.datastore.ByteString;
+import com.java.redis.internal.datastore.DataStore;
+import com.java.redis.internal.datastore.KeyspaceSnapshot;
+import com.java.redis.internal.datastore.ValueEntry;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * Delta files on top of a base snapshot. Each save writes only the keys changed since
+ * the previous one, with the DataStore tracking dirty keys, to base + ".delta." + a
+ * sequence number (see KeyspaceSnapshot.writeChanged). A load applies the deltas after
+ * the base, in sequence order.
+ *
+ * Once the deltas add up to compactPercentage of the base (or there are MAX_DELTAS of
+ * them), a background thread merges them into a new base: it streams the old base, which
+ * is in slot order, and emits each changed key with the base keys of its slot, so the new
+ * base stays in slot order for a lazy load. Saves go on meanwhile, to deltas after the
+ * ones being merged. The new base records the last delta merged into it; deltas up to it
+ * are deleted, and one left over by a crash in between is skipped at load.
+ */
+final class DeltaSnapshots {
+    private static final String DELTA_INFIX = ".delta.";
+    // A load reads every delta, so their number is bounded as well as their size
+    private static final int MAX_DELTAS = 64;
+
+    private final Path base;
+    private final int compactPercentage;
+    private final int compressionLevel;
+    private final int saveThreads;
+    // Delta files not merged into the base yet: sequence number -> size
+    private final TreeMap<Long, Long> deltas = new TreeMap<>();
+    private long nextSeq = 1;
+    private long baseSize;
+    private long deltaBytes;
+    private long deltasWritten;
+    private long lastDeltaKeys;
+    private volatile boolean compacting;
+    private long compactions;
+    private long lastCompactionMillis;
+
+    DeltaSnapshots(Path base, int compactPercentage, int compressionLevel, int saveThreads) {
+        this.base = base;
+        this.compactPercentage = compactPercentage;
+        this.compressionLevel = compressionLevel;
+        this.saveThreads = saveThreads;
+    }
+
+    private Path deltaPath(long seq) {
+        return base.resolveSibling(base.getFileName() + DELTA_INFIX + seq);
+    }
+
+    private Path compactionTempPath() {
+        return base.resolveSibling(base.getFileName() + ".compact.tmp");
+    }
+
+    /**
+     * Find the delta files at startup. Deltas already merged into the base and temporary
+     * files of an interrupted save or compaction are deleted.
+     * @param baseLastDelta the last delta merged into the base, 0 if none
+     * @return the deltas to apply over the base, in order
+     */
+    synchronized List<Path> open(long baseLastDelta) throws IOException {
+        String prefix = base.getFileName() + DELTA_INFIX;
+        Files.deleteIfExists(compactionTempPath());
+        List<Path> stale = new ArrayList<>();
+        Path dir = base.toAbsolutePath().getParent();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(f -> {
+                String name = f.getFileName().toString();
+                if (!name.startsWith(prefix)) {
+                    return;
+                }
+                String suffix = name.substring(prefix.length());
+                if (suffix.endsWith(".tmp")) {
+                    stale.add(f);
+                } else if (!suffix.isEmpty() && suffix.chars().allMatch(Character::isDigit)) {
+                    long seq = Long.parseLong(suffix);
+                    if (seq <= baseLastDelta) {
+                        stale.add(f);
+                    } else {
+                        deltas.put(seq, 0L);
+                    }
+                }
+            });
+        }
+        for (Path f : stale) {
+            Files.deleteIfExists(f);
+        }
+        List<Path> pending = new ArrayList<>();
+        for (Map.Entry<Long, Long> e : deltas.entrySet()) {
+            Path f = deltaPath(e.getKey());
+            e.setValue(Files.size(f));
+            deltaBytes += e.getValue();
+            pending.add(f);
+        }
+        nextSeq = Math.max(baseLastDelta, deltas.isEmpty() ? 0 : deltas.lastKey()) + 1;
+        baseSize = Files.exists(base) ? Files.size(base) : 0;
+        return pending;
+    }
+
+    /**
+     * Read delta files in order into one change set.
+     * @return the latest entry of every key they hold, null for a deleted key
+     */
+    static Map<ByteString, ValueEntry> readAll(List<Path> files, SnapshotReader reader) throws IOException {
+        Map<ByteString, ValueEntry> changed = new LinkedHashMap<>();
+        for (Path f : files) {
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(f), 1 << 16)) {
+                reader.readDelta(in, changed::put);
+            } catch (IOException e) {
+                throw new IOException("Delta " + f + ": " + e.getMessage(), e);
+            }
+        }
+        return changed;
+    }
+
+    /** @return the sequence number of the last delta written, for a full save to record */
+    synchronized long lastSeq() {
+        return nextSeq - 1;
+    }
+
+    /** A full save wrote a base holding everything up to lastSeq: drop those deltas. */
+    void baseSaved(long lastDelta) throws IOException {
+        List<Long> merged;
+        synchronized (this) {
+            merged = new ArrayList<>(deltas.headMap(lastDelta, true).keySet());
+            dropDeltas(merged);
+            baseSize = Files.size(base);
+        }
+        deleteDeltas(merged);
+    }
+
+    private void dropDeltas(List<Long> seqs) {
+        for (long seq : seqs) {
+            deltaBytes -= deltas.remove(seq);
+        }
+    }
+
+    private void deleteDeltas(List<Long> seqs) throws IOException {
+        for (long seq : seqs) {
+            Files.deleteIfExists(deltaPath(seq));
+        }
+    }
+
+    /**
+     * Write the keys changed since the previous save to the next delta file; nothing if
+     * none changed. On failure the keys are marked dirty again, for the next delta.
+     */
+    void writeDelta(DataStore store) {
+        long seq;
+        synchronized (this) {
+            seq = nextSeq;
+        }
+        Path file = deltaPath(seq);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        long start = System.nanoTime();
+        Set<ByteString> changed = null;
+        ExecutorService pool = compressionLevel > 0 ? Executors.newFixedThreadPool(saveThreads) : null;
+        try (KeyspaceSnapshot snapshot = store.openSnapshot()) {
+            changed = snapshot.getChangedKeys();
+            if (changed.isEmpty()) {
+                return;
+            }
+            SnapshotWriter writer;
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                writer = SnapshotWriter.forDelta(out, compressionLevel, pool, saveThreads);
+                snapshot.writeChanged(writer);
+                writer.finish();
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            synchronized (this) {
+                deltas.put(seq, writer.getBytesWritten());
+                deltaBytes += writer.getBytesWritten();
+                nextSeq = seq + 1;
+                deltasWritten++;
+                lastDeltaKeys = writer.getKeysWritten();
+            }
+            System.out.println("Delta snapshot saved to: " + file + " (" + writer.getKeysWritten() + " keys, "
+                    + writer.getBytesWritten() + " bytes in " + (System.nanoTime() - start) / 1_000_000 + " ms)");
+        } catch (Exception e) {
+            System.err.println("Failed to save delta snapshot to " + file + ": " + e.getMessage());
+            if (changed != null) {
+                store.markDirty(changed);
+            }
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException deleteEx) {
+                System.err.println("Failed to delete temporary delta file: " + deleteEx.getMessage());
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    /** Start merging the deltas into a new base if they have grown enough. */
+    void maybeCompact(DataStore store) {
+        List<Long> merging;
+        synchronized (this) {
+            boolean due = !deltas.isEmpty() && (deltas.size() >= MAX_DELTAS
+                    || (compactPercentage > 0 && deltaBytes * 100 >= (long) compactPercentage * baseSize));
+            if (compacting || !due) {
+                return;
+            }
+            compacting = true;
+            merging = new ArrayList<>(deltas.keySet());
+        }
+        SnapshotReader reader = new SnapshotReader(store.getEncodingThresholds());
+        Thread compactor = new Thread(() -> compact(merging, reader), "rdb-compact");
+        compactor.setDaemon(true);
+        compactor.start();
+    }
+
+    private void compact(List<Long> merging, SnapshotReader reader) {
+        long start = System.nanoTime();
+        long upTo = merging.get(merging.size() - 1);
+        Path tmp = compactionTempPath();
+        ExecutorService pool = compressionLevel > 0 ? Executors.newFixedThreadPool(saveThreads) : null;
+        try {
+            List<Path> files = new ArrayList<>();
+            for (long seq : merging) {
+                files.add(deltaPath(seq));
+            }
+            Map<ByteString, ValueEntry> changed = readAll(files, reader);
+            SnapshotWriter writer;
+            try (OutputStream out = Files.newOutputStream(tmp);
+                 InputStream in = new BufferedInputStream(Files.newInputStream(base), 1 << 16)) {
+                writer = new SnapshotWriter(out, compressionLevel, pool, saveThreads);
+                SlotMerge merge = new SlotMerge(changed, writer);
+                reader.read(in, merge::base);
+                merge.finish();
+                writer.finish(upTo);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            Files.move(tmp, base, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            synchronized (this) {
+                dropDeltas(merging);
+                baseSize = writer.getBytesWritten();
+                compactions++;
+                lastCompactionMillis = (System.nanoTime() - start) / 1_000_000;
+            }
+            deleteDeltas(merging);
+            System.out.println("Merged " + merging.size() + " delta snapshots into " + base + " ("
+                    + writer.getKeysWritten() + " keys, " + writer.getBytesWritten() + " bytes in "
+                    + lastCompactionMillis + " ms)");
+        } catch (Exception e) {
+            System.err.println("Failed to merge delta snapshots into " + base + ": " + e.getMessage());
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException deleteEx) {
+                System.err.println("Failed to delete temporary snapshot file: " + deleteEx.getMessage());
+            }
+        } finally {
+            compacting = false;
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Merges a change set into a stream of base keys in slot order: before the first base
+     * key of a slot, the changed keys of the slots up to it are written, and base keys
+     * that changed are dropped. Expired keys are left out.
+     */
+    private static final class SlotMerge {
+        private final Map<ByteString, ValueEntry> changed;
+        private final SnapshotWriter writer;
+        private final ByteString[] keys;  // changed keys by slot
+        private final int[] slots;
+        private final long now = System.currentTimeMillis();
+        private int next;
+
+        SlotMerge(Map<ByteString, ValueEntry> changed, SnapshotWriter writer) {
+            this.changed = changed;
+            this.writer = writer;
+            ByteString[] unordered = changed.keySet().toArray(new ByteString[0]);
+            int[] slotOf = new int[unordered.length];
+            Integer[] order = new Integer[unordered.length];
+            for (int i = 0; i < unordered.length; i++) {
+                slotOf[i] = DataStore.slotOf(unordered[i]);
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparingInt(i -> slotOf[i]));
+            keys = new ByteString[order.length];
+            slots = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                keys[i] = unordered[order[i]];
+                slots[i] = slotOf[order[i]];
+            }
+        }
+
+        void base(ByteString key, ValueEntry entry) {
+            writeChanged(DataStore.slotOf(key));
+            if (!changed.containsKey(key)) {
+                write(key, entry);
+            }
+        }
+
+        void finish() {
+            writeChanged(DataStore.SLOT_COUNT);
+        }
+
+        private void writeChanged(int upToSlot) {
+            for (; next < keys.length && slots[next] <= upToSlot; next++) {
+                ValueEntry entry = changed.get(keys[next]);
+                if (entry != null) {
+                    write(keys[next], entry);
+                }
+            }
+        }
+
+        private void write(ByteString key, ValueEntry entry) {
+            if (entry.isExpired(now)) {
+                return;
+            }
+            try {
+                writer.write(key, entry);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    synchronized void appendInfo(StringBuilder sb) {
+        sb.append("rdb_base_size:").append(baseSize).append("\r\n");
+        sb.append("rdb_delta_files:").append(deltas.size()).append("\r\n");
+        sb.append("rdb_delta_bytes:").append(deltaBytes).append("\r\n");
+        sb.append("rdb_deltas_written:").append(deltasWritten).append("\r\n");
+        sb.append("rdb_last_delta_keys:").append(lastDeltaKeys).append("\r\n");
+        sb.append("rdb_compaction_in_progress:").append(compacting ? 1 : 0).append("\r\n");
+        sb.append("rdb_compactions:").append(compactions).append("\r\n");
+        sb.append("rdb_last_compaction_time:").append(lastCompactionMillis).append("\r\n");
+    }
+}
@@ -0,0 +1,22 @@
+package com.java.redis.internal.persistence;
+
+import java.util.Locale;
+
+/** When the append-only file is fsynced (appendfsync). */
+public enum FsyncPolicy {
+    /** After every write batch; a reply is only sent once its command is on disk. */
+    ALWAYS,
+    /** At most once a second: a crash loses about a second of writes. */
+    EVERYSEC,
+    /** Never explicitly; the OS flushes the page cache when it sees fit. */
+    NO;
+
+    public static FsyncPolicy fromConfig(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown appendfsync policy: " + value
+                    + " (expected 'always', 'everysec' or 'no')");
+        }
+    }
+}
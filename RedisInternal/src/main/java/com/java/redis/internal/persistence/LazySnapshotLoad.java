@@ -0,0 +1,309 @@
+package com.java.redis.internal.persistence;
+
+import com.java.redis.internal.datastore.ByteString;
+import com.java.redis.internal.datastore.DataStore;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static com.java.redis.internal.persistence.SnapshotFormat.*;
+
+/**
+ * Loads a binary snapshot in the background while the server already serves clients.
+ *
+ * A snapshot is written slot by slot (KeyspaceSnapshot walks the slots in order), so the
+ * data blocks are an index of the file by themselves: the slot of each block's first key
+ * bounds the slots the block holds. Opening the load reads only the block headers and
+ * first keys (inflating just the start of a compressed block). A background thread then loads the blocks in file order, and a command on
+ * a key whose block is not in yet loads that block first (faultIn), so it neither misses
+ * the key nor has its write overwritten by the snapshot later. Each block is loaded
+ * exactly once, by whichever thread claims it first; the others wait for it.
+ *
+ * Until the load is done, commands without keys (SCAN, DBSIZE, INFO keyspace) see only
+ * the keys loaded so far. A block that fails its check is skipped rather than stopping a
+ * server already serving; its keys are missing from the store (see getFailedBlocks).
+ */
+final class LazySnapshotLoad {
+    private static final int NOT_LOADED = 0;
+    private static final int LOADING = 1;
+    private static final int LOADED = 2;
+    // Enough for the record header and the first key of a block in almost every case
+    private static final int FIRST_KEY_PROBE = 64;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final DataStore store;
+    private final SnapshotReader reader;
+    private final Set<ByteString> skipped; // keys the deltas already loaded or deleted
+    private final long[][] blocks;   // {payload offset, payload length}
+    private final int[] firstSlots;  // slot of the first key of each block, never decreasing
+    private final long expectedKeys;
+    private final AtomicIntegerArray state;
+    private final CountDownLatch[] loaded;
+    private final long totalBytes;
+    private final long startMillis = System.currentTimeMillis();
+    private final AtomicLong loadedBytes = new AtomicLong();
+    private final LongAdder keys = new LongAdder();
+    private final LongAdder faults = new LongAdder();
+    private final LongAdder failedBlocks = new LongAdder();
+    private volatile boolean done;
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    private LazySnapshotLoad(Path file, FileChannel channel, DataStore store, Set<ByteString> skipped,
+                             List<long[]> blocks, int[] firstSlots, long expectedKeys) throws IOException {
+        this.file = file;
+        this.channel = channel;
+        this.store = store;
+        this.skipped = skipped;
+        this.reader = new SnapshotReader(store.getEncodingThresholds());
+        this.blocks = blocks.toArray(new long[0][]);
+        this.firstSlots = firstSlots;
+        this.expectedKeys = expectedKeys;
+        this.state = new AtomicIntegerArray(this.blocks.length);
+        this.loaded = new CountDownLatch[this.blocks.length];
+        for (int i = 0; i < loaded.length; i++) {
+            loaded[i] = new CountDownLatch(1);
+        }
+        this.totalBytes = channel.size();
+    }
+
+    /**
+     * Index a snapshot file for a lazy load.
+     * @param skipped keys not to load from the file
+     * @return the load, not started yet, or null if the blocks are not in slot order (a
+     *         file written by another tool), in which case it has to be loaded eagerly
+     * @throws IOException if the file is not a snapshot this version can read, or its
+     *         block headers are truncated or corrupt
+     */
+    static LazySnapshotLoad open(Path file, DataStore store, Set<ByteString> skipped) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            List<long[]> blocks = new ArrayList<>();
+            long expectedKeys = SnapshotReader.indexBlocks(channel, blocks)[0];
+            int[] firstSlots = new int[blocks.size()];
+            for (int i = 0; i < firstSlots.length; i++) {
+                firstSlots[i] = DataStore.slotOf(firstKey(channel, blocks.get(i)));
+                if (i > 0 && firstSlots[i] < firstSlots[i - 1]) {
+                    channel.close();
+                    return null;
+                }
+            }
+            return new LazySnapshotLoad(file, channel, store, skipped, blocks, firstSlots, expectedKeys);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /** Read the key of the first record of a block (unchecked: the CRC is verified on load). */
+    private static ByteString firstKey(FileChannel channel, long[] block) throws IOException {
+        ByteBuffer prefix = rawPrefix(channel, block, FIRST_KEY_PROBE);
+        BlockInput in = new BlockInput(prefix);
+        int tag = in.readByte();
+        if ((tag & EXPIRES) != 0) {
+            in.readLong();
+        }
+        int length = in.readLength();
+        int start = prefix.position();
+        if (start + length > prefix.limit()) {
+            prefix = rawPrefix(channel, block, start + length);
+            if (start + length > prefix.limit()) {
+                throw new IOException("Snapshot corrupt: bad key length in the block at offset " + block[0]);
+            }
+        }
+        byte[] key = new byte[length];
+        prefix.get(start, key);
+        return ByteString.wrap(key);
+    }
+
+    /** @return up to the first want bytes of a block's records, inflating only those if it is compressed */
+    private static ByteBuffer rawPrefix(FileChannel channel, long[] block, int want) throws IOException {
+        if (block[2] != BLOCK_COMPRESSED) {
+            ByteBuffer b = ByteBuffer.allocate((int) Math.min(want, block[1]));
+            readFully(channel, b, block[0]);
+            return b.flip();
+        }
+        // DEFLATE never takes much more input than it gives output, beyond a block header
+        // of a few hundred bytes at most
+        ByteBuffer input = ByteBuffer.allocate((int) Math.min(block[1], want + 1024L));
+        readFully(channel, input, block[0]);
+        input.flip();
+        int rawLength = new BlockInput(input).readLength();
+        byte[] raw = new byte[Math.min(want, rawLength)];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(input);
+            int n = 0;
+            while (n < raw.length) {
+                int inflated = inflater.inflate(raw, n, raw.length - n);
+                if (inflated == 0) {
+                    break;
+                }
+                n += inflated;
+            }
+            return ByteBuffer.wrap(raw, 0, n);
+        } catch (DataFormatException e) {
+            throw new IOException("Snapshot corrupt: bad compressed block at offset " + block[0]);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer b, long position) throws IOException {
+        while (b.hasRemaining()) {
+            if (channel.read(b, position + b.position()) < 0) {
+                throw new EOFException("Snapshot truncated in the block at offset " + position);
+            }
+        }
+    }
+
+    /** Start loading the remaining blocks on a background thread. */
+    void start() {
+        Thread loader = new Thread(this::loadAll, "snapshot-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    private void loadAll() {
+        try {
+            for (int i = 0; i < blocks.length; i++) {
+                load(i, false);
+            }
+        } finally {
+            done = true;
+            finished.countDown();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close snapshot " + file + ": " + e.getMessage());
+            }
+        }
+        long millis = Math.max(1, System.currentTimeMillis() - startMillis);
+        System.out.printf(Locale.ROOT, "Loaded %d keys (%.1f MB) from %s in the background in %d ms,"
+                        + " %d blocks on demand%n", keys.sum(), totalBytes / (double) (1 << 20), file, millis,
+                faults.sum());
+        if (failedBlocks.sum() > 0) {
+            System.err.println("Snapshot " + file + ": " + failedBlocks.sum()
+                    + " corrupt blocks were skipped; the file is moved aside before the next save");
+        } else if (keys.sum() != expectedKeys) {
+            System.err.println("Snapshot " + file + ": " + keys.sum() + " keys read, " + expectedKeys + " written");
+        }
+    }
+
+    /** Load the block that may hold this key now, unless the load is past it already. */
+    void faultIn(byte[] key) {
+        if (done) {
+            return;
+        }
+        int slot = DataStore.slotOf(ByteString.wrap(key));
+        // First block whose first slot is not below the key's; the one before may end with it
+        int lo = 0;
+        int hi = firstSlots.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (firstSlots[mid] < slot) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int i = Math.max(0, lo - 1); i < firstSlots.length && firstSlots[i] <= slot; i++) {
+            load(i, true);
+        }
+    }
+
+    private void load(int i, boolean onDemand) {
+        if (!state.compareAndSet(i, NOT_LOADED, LOADING)) {
+            if (state.get(i) != LOADED) {
+                awaitUninterruptibly(loaded[i]);
+            }
+            return;
+        }
+        Inflater inflater = new Inflater(true);
+        try {
+            long[] block = blocks[i];
+            ByteBuffer b = ByteBuffer.allocate((int) block[1] + 4);
+            readFully(channel, b, block[0]);
+            b.flip();
+            ByteBuffer records = SnapshotReader.payloadOf(block,
+                    SnapshotReader.checkedPayload(b, (int) block[1], block[0]), inflater);
+            long now = System.currentTimeMillis();
+            keys.add(reader.readBlock(records, (key, entry) -> {
+                if (!entry.isExpired(now) && !skipped.contains(key)) {
+                    store.loadEntry(key, entry);
+                }
+            }));
+            if (onDemand) {
+                faults.increment();
+            }
+        } catch (IOException | RuntimeException e) {
+            // Clients are served already, so the rest of the snapshot still loads
+            failedBlocks.increment();
+            System.err.println("Failed to load a block of snapshot " + file + ": " + e.getMessage());
+        } finally {
+            inflater.end();
+            loadedBytes.addAndGet(blocks[i][1]);
+            state.set(i, LOADED);
+            loaded[i].countDown();
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    boolean isDone() {
+        return done;
+    }
+
+    /** @return the blocks that failed their check and were skipped, so far */
+    long getFailedBlocks() {
+        return failedBlocks.sum();
+    }
+
+    /** Block until every block is loaded. */
+    void awaitDone() {
+        awaitUninterruptibly(finished);
+    }
+
+    void appendInfo(StringBuilder sb) {
+        long bytes = loadedBytes.get();
+        long elapsed = Math.max(1, System.currentTimeMillis() - startMillis);
+        double perc = done || totalBytes == 0 ? 100 : Math.min(100, bytes * 100.0 / totalBytes);
+        long eta = done || bytes == 0 ? 0 : (long) ((totalBytes - bytes) * (double) elapsed / bytes / 1000);
+        sb.append("loading_start_time:").append(startMillis / 1000).append("\r\n");
+        sb.append("loading_total_bytes:").append(totalBytes).append("\r\n");
+        sb.append("loading_loaded_bytes:").append(bytes).append("\r\n");
+        sb.append(String.format(Locale.ROOT, "loading_loaded_perc:%.2f\r\n", perc));
+        sb.append("loading_eta_seconds:").append(eta).append("\r\n");
+        sb.append("loading_loaded_keys:").append(keys.sum()).append("\r\n");
+        // Blocks a command loaded ahead of the background thread
+        sb.append("loading_blocks_on_demand:").append(faults.sum()).append("\r\n");
+        sb.append("loading_failed_blocks:").append(failedBlocks.sum()).append("\r\n");
+    }
+}
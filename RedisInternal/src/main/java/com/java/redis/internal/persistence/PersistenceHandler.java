@@ -1,11 +1,36 @@
 package com.java.redis.internal.persistence;
 
-import com.java.redis.internal.command.CommandExecutor;
 import com.java.redis.internal.datastore.DataStore;
 import com.java.redis.internal.protocol.Command;
 
 public interface PersistenceHandler {
     void load(DataStore store);
-    void appendCommand(String cmd);
+
+    /** Log a write command as it was applied; only called when logsCommands is true. */
+    void appendCommand(Command cmd);
+
     void saveSnapshot(DataStore store);
+
+    /** @return true if write commands must be passed to appendCommand */
+    default boolean logsCommands() {
+        return false;
+    }
+
+    /** Called once on shutdown, after the final saveSnapshot. */
+    default void close() {
+    }
+
+    /** @return true while a snapshot is still being loaded in the background */
+    default boolean isLoading() {
+        return false;
+    }
+
+    /** While loading in the background, load the part of the snapshot holding this key now. */
+    default void faultIn(byte[] key) {
+    }
+
+    /** Add this handler's fields to INFO persistence. */
+    default void appendInfo(StringBuilder sb) {
+        sb.append("aof_enabled:0\r\n");
+    }
 }
@@ -1,56 +1,276 @@
 package com.java.redis.internal.persistence;
 
+import com.java.redis.internal.datastore.ByteString;
 import com.java.redis.internal.datastore.DataStore;
+import com.java.redis.internal.datastore.KeyspaceSnapshot;
 import com.java.redis.internal.datastore.ValueEntry;
+import com.java.redis.internal.protocol.Command;
 
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+/**
+ * Saves the keyspace in the binary snapshot format (see {@link SnapshotFormat}), streamed
+ * from a KeyspaceSnapshot so a save neither copies the whole store up front nor stops
+ * writes while it runs. Loading maps the file and decodes its blocks on loadThreads
+ * threads, inserting keys straight into the store. With lazyLoad the server starts
+ * serving at once instead: the file is loaded in the background and a command faults in
+ * the part of it holding its keys (see {@link LazySnapshotLoad}). A save waits for such
+ * a load to finish, so it never writes a partial keyspace over the file; if the load
+ * skipped corrupt blocks, the file is first moved aside to .corrupt (the only copy of
+ * their keys) and the save is a full one, or refused if the file cannot be moved.
+ *
+ * With a compression level, a save deflates the blocks on a pool of saveThreads threads
+ * (created for the save) while the keyspace is still being encoded.
+ *
+ * With deltaSnapshots, once a binary base exists a save writes only the keys changed
+ * since the previous one to a delta file, and the deltas are merged into a new base in
+ * the background (see {@link DeltaSnapshots}). Deltas found at startup are applied over
+ * the base in either mode; a full save supersedes them.
+ *
+ * A binary snapshot (or delta) that is truncated or fails its CRC stops the server from
+ * starting, as a corrupt append-only file does: the keys are inserted as they are read,
+ * so the store would hold part of the file, and the next save would write that over it.
+ *
+ * Files written with Java serialization by earlier versions (a single Map, or a
+ * STREAM_HEADER record stream) still load; the next save rewrites them in binary.
+ */
 public class RDBPersistenceManager implements PersistenceHandler{
+    private static final String STREAM_HEADER = "RDB-STREAM-1";
+
     private final Path filePath;
+    private final int loadThreads;
+    private final boolean lazyLoad;
+    private final int compressionLevel;
+    private final int saveThreads;
+    private final boolean deltaSnapshots;
+    private final DeltaSnapshots deltas;
+    private volatile LazySnapshotLoad backgroundLoad;
+    // True once the file at filePath is a binary snapshot deltas can be written on top of
+    private volatile boolean binaryBase;
+    // Set once a lazily loaded file with corrupt blocks has been moved aside to corruptPath
+    private volatile boolean corruptKept;
+    private final Path corruptPath;
+
+    public RDBPersistenceManager(Path filePath, int loadThreads) {
+        this(filePath, loadThreads, false, 0, 1, false, 100);
+    }
 
-    public RDBPersistenceManager(Path filePath) {
+    public RDBPersistenceManager(Path filePath, int loadThreads, boolean lazyLoad, int compressionLevel,
+                                 int saveThreads, boolean deltaSnapshots, int deltaCompactPercentage) {
+        if (compressionLevel < 0 || compressionLevel > 9) {
+            throw new IllegalArgumentException("Snapshot compression level must be 0-9, not " + compressionLevel);
+        }
         this.filePath = filePath;
+        this.corruptPath = filePath.resolveSibling(filePath.getFileName() + ".corrupt");
+        this.loadThreads = loadThreads;
+        this.lazyLoad = lazyLoad;
+        this.compressionLevel = compressionLevel;
+        this.saveThreads = Math.max(1, saveThreads);
+        this.deltaSnapshots = deltaSnapshots;
+        this.deltas = new DeltaSnapshots(filePath, deltaCompactPercentage, compressionLevel, this.saveThreads);
     }
 
     @Override
     public void load(DataStore store) {
+        if (deltaSnapshots) {
+            store.trackDirtyKeys();
+        }
         if(Files.exists(filePath)){
-            try(ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(filePath)))) {
-                Object obj = ois.readObject();
-                if(obj instanceof Map) {
-                    @SuppressWarnings("unchecked")
-                    Map<String, ?> data = (Map<String,  ?>) obj;
-                    store.loadSnapshot((Map<String, ValueEntry>) data);
-                    System.out.println("Loaded snapshot from " + filePath);
+            boolean binary = false;
+            try {
+                try (InputStream in = Files.newInputStream(filePath)) {
+                    binary = SnapshotReader.hasMagic(in);
+                }
+                Map<ByteString, ValueEntry> changed = readDeltas(store, binary ? SnapshotReader.lastDeltaOf(filePath) : 0);
+                binaryBase = binary;
+                if (binary && lazyLoad && startBackgroundLoad(store, changed)) {
+                    System.out.println("Loading snapshot from " + filePath + " in the background");
+                    return;
+                }
+                if (binary) {
+                    loadBinary(store);
                 } else {
-                    System.err.println("Snapshot file has unexpected content: " + obj.getClass());
+                    loadSerialized(store);
                 }
+                applyDeltas(store, changed);
                 System.out.println("Snapshot loaded successfully from: " + filePath);
             } catch (Exception e) {
+                if (binary) {
+                    throw new IllegalStateException("Failed to load snapshot from " + filePath + ": " + e.getMessage()
+                            + "; repair the file or move it aside to start", e);
+                }
                 System.err.println("Failed to load snapshot from " + filePath + ": " + e.getMessage());
             }
         }else {
             System.out.println("No snapshot file found at startup: " + filePath);
+            try {
+                applyDeltas(store, readDeltas(store, 0));
+            } catch (Exception e) {
+                throw new IllegalStateException("Failed to load delta snapshots of " + filePath + ": "
+                        + e.getMessage() + "; repair the files or move them aside to start", e);
+            }
+        }
+    }
+
+    /** @return the changes of the delta files written after the base, merged in order */
+    private Map<ByteString, ValueEntry> readDeltas(DataStore store, long baseLastDelta) throws IOException {
+        List<Path> files = deltas.open(baseLastDelta);
+        if (files.isEmpty()) {
+            return Map.of();
+        }
+        Map<ByteString, ValueEntry> changed = DeltaSnapshots.readAll(files, new SnapshotReader(store.getEncodingThresholds()));
+        System.out.println("Read " + files.size() + " delta snapshots of " + filePath + " (" + changed.size() + " keys)");
+        return changed;
+    }
+
+    private static void applyDeltas(DataStore store, Map<ByteString, ValueEntry> changed) {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<ByteString, ValueEntry> e : changed.entrySet()) {
+            if (e.getValue() == null || e.getValue().isExpired(now)) {
+                store.unloadEntry(e.getKey());
+            } else {
+                store.loadEntry(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    private void loadBinary(DataStore store) throws IOException {
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        store.beginLoad();
+        long keys = new SnapshotReader(store.getEncodingThresholds()).readMapped(filePath, loadThreads, (key, entry) -> {
+            if (!entry.isExpired(now)) {
+                store.loadEntry(key, entry);
+            }
+        });
+        double seconds = Math.max(1, System.nanoTime() - start) / 1e9;
+        double megabytes = Files.size(filePath) / (double) (1 << 20);
+        System.out.printf(Locale.ROOT, "Loaded %d keys (%.1f MB) from %s in %d ms on %d threads: %.1f MB/s, %.0f keys/s%n",
+                keys, megabytes, filePath, (long) (seconds * 1000), loadThreads, megabytes / seconds, keys / seconds);
+    }
+
+    /** Apply the deltas, then load the base in the background, leaving out the keys they changed. */
+    private boolean startBackgroundLoad(DataStore store, Map<ByteString, ValueEntry> changed) throws IOException {
+        store.beginLoad();
+        LazySnapshotLoad load = LazySnapshotLoad.open(filePath, store, changed.keySet());
+        if (load == null) {
+            System.out.println("Snapshot " + filePath + " is not in slot order, loading it before serving");
+            return false;
         }
+        applyDeltas(store, changed);
+        backgroundLoad = load;
+        load.start();
+        return true;
     }
 
     @Override
-    public void appendCommand(String cmd) {
+    public boolean isLoading() {
+        LazySnapshotLoad load = backgroundLoad;
+        return load != null && !load.isDone();
+    }
+
+    @Override
+    public void faultIn(byte[] key) {
+        LazySnapshotLoad load = backgroundLoad;
+        if (load != null) {
+            load.faultIn(key);
+        }
+    }
+
+    @Override
+    public void appendInfo(StringBuilder sb) {
+        PersistenceHandler.super.appendInfo(sb);
+        LazySnapshotLoad load = backgroundLoad;
+        if (load != null) {
+            load.appendInfo(sb);
+            sb.append("rdb_corrupt_blocks_skipped:").append(load.getFailedBlocks()).append("\r\n");
+            sb.append("rdb_corrupt_file_kept:").append(corruptKept ? 1 : 0).append("\r\n");
+        }
+        sb.append("rdb_delta_snapshots:").append(deltaSnapshots ? 1 : 0).append("\r\n");
+        deltas.appendInfo(sb);
+    }
+
+    private void loadSerialized(DataStore store) throws IOException, ClassNotFoundException {
+        try(ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(filePath)))) {
+            Object obj = ois.readObject();
+            if (STREAM_HEADER.equals(obj)) {
+                store.loadSnapshot(readRecords(ois));
+            } else if(obj instanceof Map) {
+                @SuppressWarnings("unchecked")
+                Map<ByteString, ValueEntry> data = (Map<ByteString, ValueEntry>) obj;
+                store.loadSnapshot(data);
+                System.out.println("Loaded snapshot from " + filePath);
+            } else {
+                System.err.println("Snapshot file has unexpected content: " + obj.getClass());
+            }
+        }
+    }
+
+    private static Map<ByteString, ValueEntry> readRecords(ObjectInputStream ois)
+            throws IOException, ClassNotFoundException {
+        Map<ByteString, ValueEntry> data = new HashMap<>();
+        Object key;
+        while ((key = ois.readObject()) != null) {
+            data.put((ByteString) key, (ValueEntry) ois.readObject());
+        }
+        return data;
+    }
+
+    @Override
+    public void appendCommand(Command cmd) {
 
     }
 
     @Override
-    public void saveSnapshot(DataStore store) {
+    public synchronized void saveSnapshot(DataStore store) {
+        LazySnapshotLoad load = backgroundLoad;
+        if (load != null && !load.isDone()) {
+            System.out.println("Waiting for the background load of " + filePath + " before saving");
+            load.awaitDone();
+        }
+        if (load != null && load.getFailedBlocks() > 0 && !corruptKept) {
+            // The store lacks the keys of those blocks: keep the file before anything replaces it
+            try {
+                Files.move(filePath, corruptPath, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                System.err.println("Not saving: snapshot " + filePath + " had " + load.getFailedBlocks()
+                        + " corrupt blocks and could not be moved aside: " + e.getMessage());
+                return;
+            }
+            corruptKept = true;
+            binaryBase = false; // deltas need a whole base under them: save a full image
+            System.err.println("Snapshot " + filePath + " had " + load.getFailedBlocks()
+                    + " corrupt blocks; moved it to " + corruptPath);
+        }
+        if (deltaSnapshots && binaryBase) {
+            deltas.writeDelta(store);
+            deltas.maybeCompact(store);
+            return;
+        }
         Path tmpPath = filePath.resolveSibling(filePath.getFileName() + ".tmp");
-        try( ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpPath)))) {
-            Map<String, ValueEntry> map = store.getStore();
-            oos.writeObject(map);
-            oos.flush();
+        long start = System.nanoTime();
+        ExecutorService pool = compressionLevel > 0 ? Executors.newFixedThreadPool(saveThreads) : null;
+        try (OutputStream out = Files.newOutputStream(tmpPath);
+             KeyspaceSnapshot snapshot = store.openSnapshot()) {
+            SnapshotWriter writer = new SnapshotWriter(out, compressionLevel, pool, saveThreads);
+            snapshot.writeTo(writer);
+            // The image holds every change of the deltas so far, which can go once it is in place
+            long lastDelta = deltas.lastSeq();
+            writer.finish(lastDelta);
             Files.move(tmpPath, filePath, java.nio.file.StandardCopyOption.REPLACE_EXISTING, java.nio.file.StandardCopyOption.ATOMIC_MOVE);
-            System.out.println("Snapshot saved successfully to: " + filePath);
+            binaryBase = true;
+            deltas.baseSaved(lastDelta);
+            System.out.println("Snapshot saved successfully to: " + filePath + " (" + writer.getKeysWritten()
+                    + " keys, " + writer.getBytesWritten() + " bytes in " + (System.nanoTime() - start) / 1_000_000
+                    + " ms, " + snapshot.getKeysCopied() + " copied on write)");
         } catch (Exception e) {
             System.err.println("Failed to save snapshot to " + filePath + ": " + e.getMessage());
             try {
@@ -58,6 +278,10 @@ public class RDBPersistenceManager implements PersistenceHandler{
             } catch (IOException deleteEx) {
                 System.err.println("Failed to delete temporary snapshot file: " + deleteEx.getMessage());
             }
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
         }
     }
 }
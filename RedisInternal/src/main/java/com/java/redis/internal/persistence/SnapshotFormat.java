@@ -0,0 +1,61 @@
+package com.java.redis.internal.persistence;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Layout of the binary snapshot file written by {@link SnapshotWriter}.
+ *
+ * <pre>
+ * file    := MAGIC version:u8 block* endBlock
+ * block   := kind:u8 length:varint payload:length crc:u32   (CRC32C of the payload)
+ * 'D'     := record*                                         data block
+ * 'Z'     := rawLength:varint deflate(record*)               compressed data block (version 2)
+ * 'E'     := keyCount:varint [lastDelta:varint]              last block
+ * record  := tag:u8 [expireAt:i64] key:bytes value           expireAt present if tag has EXPIRES
+ * bytes   := length:varint data
+ * </pre>
+ *
+ * Values by tag: STRING bytes; INT zigzag varint; LIST, SET count:varint bytes*;
+ * HASH count:varint (field:bytes value:bytes)*; ZSET count:varint (member:bytes score:f64)*
+ * in score order; BLOOM as written by BloomFilterValue.serialize. Varints are unsigned
+ * LEB128, fixed-width numbers big-endian.
+ *
+ * A delta file (see {@link DeltaSnapshots}) has the same layout after DELTA_MAGIC, and
+ * may also hold a record tagged DELETED, with just the key, for a key removed since the
+ * previous save. lastDelta is only written in a base file the compactor merged deltas
+ * into: the sequence number of the last of them, so a delta left over by an interrupted
+ * compaction is not applied twice. Readers that predate it ignore it.
+ *
+ * Records never span blocks, so a block can be checked and decoded on its own. A
+ * compressed block holds the records of a data block as raw DEFLATE (no zlib header);
+ * its CRC covers the stored payload, so it is checked before it is inflated, and a block
+ * that would not shrink is written as a plain data block. A reader must reject versions
+ * it does not know; a new version is needed for any layout change. Version 2 added the
+ * compressed block; version 1 files are still read.
+ */
+final class SnapshotFormat {
+    static final byte[] MAGIC = "JRDB".getBytes(StandardCharsets.US_ASCII);
+    static final byte[] DELTA_MAGIC = "JRDD".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 2;
+    static final int MIN_VERSION = 1;
+
+    static final byte BLOCK_DATA = 'D';
+    static final byte BLOCK_COMPRESSED = 'Z';
+    static final byte BLOCK_END = 'E';
+    // A data block is closed once its payload passes this size
+    static final int BLOCK_TARGET_BYTES = 256 * 1024;
+
+    static final int TAG_STRING = 0;
+    static final int TAG_INT = 1;
+    static final int TAG_LIST = 2;
+    static final int TAG_SET = 3;
+    static final int TAG_HASH = 4;
+    static final int TAG_ZSET = 5;
+    static final int TAG_BLOOM = 6;
+    static final int TAG_DELETED = 7; // delta files only
+    static final int TAG_TYPE_MASK = 0x7F;
+    static final int EXPIRES = 0x80;
+
+    private SnapshotFormat() {
+    }
+}
@@ -0,0 +1,424 @@
+package com.java.redis.internal.persistence;
+
+import com.java.redis.internal.datastore.BloomFilterValue;
+import com.java.redis.internal.datastore.ByteString;
+import com.java.redis.internal.datastore.RedisValue;
+import com.java.redis.internal.datastore.ValueEntry;
+import com.java.redis.internal.datastore.value.EncodingThresholds;
+import com.java.redis.internal.datastore.value.HashValue;
+import com.java.redis.internal.datastore.value.ListValue;
+import com.java.redis.internal.datastore.value.SetValue;
+import com.java.redis.internal.datastore.value.StringValue;
+import com.java.redis.internal.datastore.value.ZSetValue;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static com.java.redis.internal.persistence.SnapshotFormat.*;
+
+/**
+ * Decodes the binary snapshot format (see {@link SnapshotFormat}) one block at a time,
+ * handing each key to a consumer as soon as its block is checked, so a load never holds
+ * more than one block besides the keyspace being built. Collections are bulk-loaded in
+ * the encoding the current thresholds call for.
+ *
+ * readMapped loads a file in parallel instead: since every block can be checked and
+ * decoded on its own, it walks the block headers, maps runs of blocks into memory and
+ * decodes them on several threads, each inserting its keys straight into the sink.
+ * Compressed blocks are inflated by the thread that decodes them, so they are
+ * decompressed in parallel too.
+ */
+public final class SnapshotReader {
+    // Blocks are mapped and handed to a thread in runs of about this many bytes
+    private static final int MAPPED_RUN_BYTES = 64 << 20;
+
+    private final EncodingThresholds thresholds;
+
+    public SnapshotReader(EncodingThresholds thresholds) {
+        this.thresholds = thresholds;
+    }
+
+    /** @return true if the stream starts like a binary snapshot; reads the magic bytes */
+    public static boolean hasMagic(InputStream in) throws IOException {
+        byte[] b = in.readNBytes(MAGIC.length);
+        return Arrays.equals(b, MAGIC);
+    }
+
+    /**
+     * Read a whole snapshot.
+     * @return the number of keys read
+     * @throws IOException if the stream is not a snapshot this version can read, or is
+     *         truncated or corrupt
+     */
+    public long read(InputStream in, BiConsumer<ByteString, ValueEntry> sink) throws IOException {
+        return read(in, sink, false);
+    }
+
+    /**
+     * Read a whole delta file (see {@link DeltaSnapshots}); a key deleted since the
+     * previous save is passed to the sink with a null entry.
+     * @return the number of keys read, deleted ones included
+     */
+    public long readDelta(InputStream in, BiConsumer<ByteString, ValueEntry> sink) throws IOException {
+        return read(in, sink, true);
+    }
+
+    private long read(InputStream in, BiConsumer<ByteString, ValueEntry> sink, boolean delta) throws IOException {
+        byte[] magic = in.readNBytes(MAGIC.length);
+        if (!Arrays.equals(magic, delta ? DELTA_MAGIC : MAGIC)) {
+            throw new IOException(delta ? "Not a delta snapshot" : "Not a binary snapshot");
+        }
+        int version = in.read();
+        if (version < MIN_VERSION || version > VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+        DataInputStream data = new DataInputStream(in);
+        CRC32C crc = new CRC32C();
+        Inflater inflater = new Inflater(true);
+        byte[] payload = new byte[BLOCK_TARGET_BYTES * 2];
+        long keys = 0;
+        long offset = MAGIC.length + 1;
+        try {
+            while (true) {
+                int kind = in.read();
+                if (kind < 0) {
+                    throw new EOFException("Snapshot truncated: no end block");
+                }
+                int length = readLength(in);
+                if (payload.length < length) {
+                    payload = new byte[length];
+                }
+                data.readFully(payload, 0, length);
+                int expected = data.readInt();
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != expected) {
+                    throw new IOException("Snapshot corrupt: checksum mismatch in the block at offset " + offset);
+                }
+                ByteBuffer block = ByteBuffer.wrap(payload, 0, length);
+                if (kind == BLOCK_END) {
+                    long count = new BlockInput(block).readVarLong();
+                    if (count != keys) {
+                        throw new IOException("Snapshot corrupt: " + keys + " keys read, " + count + " written");
+                    }
+                    return keys;
+                }
+                if (kind == BLOCK_COMPRESSED) {
+                    block = inflate(block, inflater, offset);
+                } else if (kind != BLOCK_DATA) {
+                    throw new IOException("Snapshot corrupt: unknown block kind " + kind);
+                }
+                keys += readBlock(block, sink, delta);
+                offset += 1 + varLongSize(length) + length + 4;
+            }
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Read a whole snapshot file, decoding its blocks on the given number of threads. The
+     * sink is called concurrently and in no particular key order.
+     * @return the number of keys read
+     * @throws IOException if the file is not a snapshot this version can read, or is
+     *         truncated or corrupt
+     */
+    public long readMapped(Path file, int threads, BiConsumer<ByteString, ValueEntry> sink) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            List<long[]> blocks = new ArrayList<>();
+            long expectedKeys = indexBlocks(channel, blocks)[0];
+            List<List<long[]>> runs = new ArrayList<>();
+            List<long[]> run = new ArrayList<>();
+            for (long[] block : blocks) {
+                if (!run.isEmpty() && block[0] + block[1] - run.get(0)[0] > MAPPED_RUN_BYTES) {
+                    runs.add(run);
+                    run = new ArrayList<>();
+                }
+                run.add(block);
+            }
+            if (!run.isEmpty()) {
+                runs.add(run);
+            }
+            ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, runs.size())));
+            try {
+                List<Future<Long>> results = new ArrayList<>();
+                for (List<long[]> r : runs) {
+                    results.add(pool.submit(() -> readRun(channel, r, sink)));
+                }
+                long keys = 0;
+                for (Future<Long> result : results) {
+                    keys += result.get();
+                }
+                if (keys != expectedKeys) {
+                    throw new IOException("Snapshot corrupt: " + keys + " keys read, " + expectedKeys + " written");
+                }
+                return keys;
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException("Snapshot load failed: " + cause, cause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Snapshot load interrupted");
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Walk the block headers, reading only the few bytes of each, and collect the
+     * {payload offset, payload length, kind} of every data or compressed block.
+     * @return the key count and the last delta merged (0 if none) of the end block
+     */
+    static long[] indexBlocks(FileChannel channel, List<long[]> blocks) throws IOException {
+        long size = channel.size();
+        ByteBuffer head = ByteBuffer.allocate(MAGIC.length + 1);
+        channel.read(head, 0);
+        if (head.position() < head.capacity()
+                || !Arrays.equals(Arrays.copyOf(head.array(), MAGIC.length), MAGIC)) {
+            throw new IOException("Not a binary snapshot");
+        }
+        int version = head.get(MAGIC.length);
+        if (version < MIN_VERSION || version > VERSION) {
+            throw new IOException("Unsupported snapshot version " + head.get(MAGIC.length));
+        }
+        ByteBuffer header = ByteBuffer.allocate(6); // kind and a length of up to 5 varint bytes
+        long pos = head.capacity();
+        while (true) {
+            header.clear();
+            if (pos >= size || channel.read(header, pos) < 2) {
+                throw new EOFException("Snapshot truncated: no end block");
+            }
+            int kind = header.get(0);
+            long length = 0;
+            int i = 1;
+            for (int shift = 0; ; shift += 7, i++) {
+                if (i >= header.position() || shift >= 35) {
+                    throw new IOException("Snapshot corrupt: bad block length at offset " + pos);
+                }
+                int b = header.get(i);
+                length |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    break;
+                }
+            }
+            long payload = pos + i + 1;
+            long next = payload + length + 4;
+            if (length > Integer.MAX_VALUE || next > size) {
+                throw new EOFException("Snapshot truncated in the block at offset " + pos);
+            }
+            if (kind == BLOCK_END) {
+                ByteBuffer end = ByteBuffer.allocate((int) length + 4);
+                channel.read(end, payload);
+                end.flip();
+                BlockInput body = new BlockInput(checkedPayload(end, (int) length, pos));
+                long keys = body.readVarLong();
+                return new long[] {keys, body.hasRemaining() ? body.readVarLong() : 0};
+            }
+            if (kind != BLOCK_DATA && kind != BLOCK_COMPRESSED) {
+                throw new IOException("Snapshot corrupt: unknown block kind " + kind);
+            }
+            blocks.add(new long[] {payload, length, kind});
+            pos = next;
+        }
+    }
+
+    /**
+     * @return the last delta file merged into a base snapshot file, 0 if none
+     * @throws IOException if the file is not a snapshot this version can read
+     */
+    public static long lastDeltaOf(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return indexBlocks(channel, new ArrayList<>())[1];
+        }
+    }
+
+    /** Map a run of consecutive data blocks, check and decode each. */
+    private long readRun(FileChannel channel, List<long[]> run, BiConsumer<ByteString, ValueEntry> sink)
+            throws IOException {
+        long from = run.get(0)[0];
+        long[] lastBlock = run.get(run.size() - 1);
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, from, lastBlock[0] + lastBlock[1] + 4 - from);
+        long keys = 0;
+        Inflater inflater = new Inflater(true);
+        try {
+            for (long[] block : run) {
+                ByteBuffer b = mapped.slice((int) (block[0] - from), (int) block[1] + 4);
+                keys += readBlock(payloadOf(block, checkedPayload(b, (int) block[1], block[0]), inflater), sink);
+            }
+        } finally {
+            inflater.end();
+        }
+        return keys;
+    }
+
+    /** @return the records of a checked block: its payload, or the payload inflated */
+    static ByteBuffer payloadOf(long[] block, ByteBuffer payload, Inflater inflater) throws IOException {
+        return block[2] == BLOCK_COMPRESSED ? inflate(payload, inflater, block[0]) : payload;
+    }
+
+    /** Inflate the payload of a compressed block (rawLength, then raw DEFLATE). */
+    static ByteBuffer inflate(ByteBuffer payload, Inflater inflater, long offset) throws IOException {
+        int rawLength = new BlockInput(payload).readLength();
+        byte[] raw = new byte[rawLength];
+        inflater.reset();
+        inflater.setInput(payload);
+        int n = 0;
+        try {
+            while (n < rawLength) {
+                int inflated = inflater.inflate(raw, n, rawLength - n);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary() || inflater.finished())) {
+                    break;
+                }
+                n += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Snapshot corrupt: bad compressed block at offset " + offset + ": " + e.getMessage());
+        }
+        if (n != rawLength) {
+            throw new IOException("Snapshot corrupt: compressed block at offset " + offset + " inflates to "
+                    + n + " bytes, not " + rawLength);
+        }
+        return ByteBuffer.wrap(raw);
+    }
+
+    private static int varLongSize(long v) {
+        int n = 1;
+        while ((v & ~0x7FL) != 0) {
+            v >>>= 7;
+            n++;
+        }
+        return n;
+    }
+
+    /** @return the payload of a buffer holding payload and CRC, once the CRC matches */
+    static ByteBuffer checkedPayload(ByteBuffer b, int length, long offset) throws IOException {
+        ByteBuffer payload = b.slice(b.position(), length);
+        CRC32C crc = new CRC32C();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != b.getInt(b.position() + length)) {
+            throw new IOException("Snapshot corrupt: checksum mismatch in the block at offset " + offset);
+        }
+        return payload;
+    }
+
+    private static int readLength(InputStream in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Snapshot truncated in a block header");
+            }
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (v > Integer.MAX_VALUE) {
+                    break;
+                }
+                return (int) v;
+            }
+        }
+        throw new IOException("Snapshot corrupt: bad block length");
+    }
+
+    /**
+     * Decode the records of one checked data block.
+     * @return the number of keys in it
+     */
+    long readBlock(ByteBuffer block, BiConsumer<ByteString, ValueEntry> sink) throws IOException {
+        return readBlock(block, sink, false);
+    }
+
+    private long readBlock(ByteBuffer block, BiConsumer<ByteString, ValueEntry> sink, boolean delta)
+            throws IOException {
+        BlockInput in = new BlockInput(block);
+        long keys = 0;
+        while (in.hasRemaining()) {
+            int tag = in.readByte();
+            if (delta && tag == TAG_DELETED) {
+                sink.accept(ByteString.wrap(in.readBytes()), null);
+                keys++;
+                continue;
+            }
+            long expireAt = (tag & EXPIRES) != 0 ? in.readLong() : ValueEntry.NO_EXPIRY;
+            ByteString key = ByteString.wrap(in.readBytes());
+            sink.accept(key, new ValueEntry(readValue(tag & TAG_TYPE_MASK, in), expireAt));
+            keys++;
+        }
+        return keys;
+    }
+
+    private RedisValue readValue(int type, BlockInput in) throws IOException {
+        switch (type) {
+            case TAG_STRING:
+                return new StringValue(in.readBytes());
+            case TAG_INT:
+                long z = in.readVarLong();
+                return StringValue.ofLong((z >>> 1) ^ -(z & 1));
+            case TAG_LIST:
+                ListValue list = new ListValue();
+                list.rpush(readAll(in, 1));
+                return list;
+            case TAG_SET:
+                SetValue set = new SetValue(thresholds);
+                set.load(readAll(in, 1));
+                return set;
+            case TAG_HASH:
+                HashValue hash = new HashValue(thresholds);
+                hash.load(readAll(in, 2));
+                return hash;
+            case TAG_ZSET:
+                int n = in.readLength();
+                List<byte[]> members = new ArrayList<>(Math.min(n, 1024));
+                double[] scores = new double[Math.min(n, 1024)];
+                for (int i = 0; i < n; i++) {
+                    members.add(in.readBytes());
+                    if (i == scores.length) {
+                        scores = Arrays.copyOf(scores, Math.min(n, scores.length * 2));
+                    }
+                    scores[i] = in.readDouble();
+                }
+                ZSetValue zset = new ZSetValue(thresholds);
+                zset.load(members, scores);
+                return zset;
+            case TAG_BLOOM:
+                return BloomFilterValue.deserialize(new DataInputStream(in));
+            default:
+                throw new IOException("Snapshot corrupt: unknown value type " + type);
+        }
+    }
+
+    /** Read a count, then count * group length-prefixed items. */
+    private static List<byte[]> readAll(BlockInput in, int group) throws IOException {
+        long n = (long) in.readLength() * group;
+        if (n > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot corrupt: bad count " + n);
+        }
+        // Capacity grows with what is actually read, so a corrupt count cannot allocate a huge list
+        List<byte[]> items = new ArrayList<>((int) Math.min(n, 1024));
+        for (long i = 0; i < n; i++) {
+            items.add(in.readBytes());
+        }
+        return items;
+    }
+}
@@ -0,0 +1,303 @@
+package com.java.redis.internal.persistence;
+
+import com.java.redis.internal.datastore.BloomFilterValue;
+import com.java.redis.internal.datastore.ByteString;
+import com.java.redis.internal.datastore.KeyspaceSnapshot;
+import com.java.redis.internal.datastore.RedisValue;
+import com.java.redis.internal.datastore.ValueEntry;
+import com.java.redis.internal.datastore.value.HashValue;
+import com.java.redis.internal.datastore.value.ListValue;
+import com.java.redis.internal.datastore.value.SetValue;
+import com.java.redis.internal.datastore.value.StringValue;
+import com.java.redis.internal.datastore.value.ZSetValue;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32C;
+import java.util.zip.Deflater;
+
+import static com.java.redis.internal.persistence.SnapshotFormat.*;
+
+/**
+ * Encodes keys into the binary snapshot format (see {@link SnapshotFormat}). Records are
+ * gathered into a block and each full block is written to the stream with one call,
+ * so the stream needs no buffering of its own. Call finish once every key is written.
+ *
+ * With a compression level, full blocks are deflated on the given pool instead, while
+ * this thread goes on encoding: up to two blocks per pool thread are in flight, and they
+ * are written in the order they were filled as each is done.
+ *
+ * A writer made by forDelta writes a delta file instead, which may also record deletions.
+ */
+public final class SnapshotWriter implements KeyspaceSnapshot.DeltaWriter {
+    private final OutputStream out;
+    private final BlockOutput block = new BlockOutput(BLOCK_TARGET_BYTES + 64 * 1024);
+    private final BlockOutput header = new BlockOutput(16);
+    private final CRC32C crc = new CRC32C();
+    private final boolean delta;
+    private final int compressionLevel;
+    private final ExecutorService pool;
+    private final int maxInFlight;
+    // Framed blocks being compressed, in file order
+    private final ArrayDeque<Future<BlockOutput>> inFlight = new ArrayDeque<>();
+    private final ConcurrentLinkedQueue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+    private long keys;
+    private long bytesWritten;
+
+    public SnapshotWriter(OutputStream out) throws IOException {
+        this(out, 0, null, 0);
+    }
+
+    /**
+     * @param compressionLevel Deflater level 1-9, or 0 to write uncompressed blocks
+     * @param pool where blocks are compressed; owned by the caller
+     * @param threads the pool's thread count
+     */
+    public SnapshotWriter(OutputStream out, int compressionLevel, ExecutorService pool, int threads)
+            throws IOException {
+        this(out, false, compressionLevel, pool, threads);
+    }
+
+    /** A writer of a delta file; arguments as for the constructor. */
+    public static SnapshotWriter forDelta(OutputStream out, int compressionLevel, ExecutorService pool, int threads)
+            throws IOException {
+        return new SnapshotWriter(out, true, compressionLevel, pool, threads);
+    }
+
+    private SnapshotWriter(OutputStream out, boolean delta, int compressionLevel, ExecutorService pool, int threads)
+            throws IOException {
+        this.out = out;
+        this.delta = delta;
+        this.compressionLevel = compressionLevel;
+        this.pool = pool;
+        this.maxInFlight = Math.max(1, threads) * 2;
+        out.write(delta ? DELTA_MAGIC : MAGIC);
+        out.write(VERSION);
+        bytesWritten = MAGIC.length + 1;
+    }
+
+    @Override
+    public void write(ByteString key, ValueEntry entry) throws IOException {
+        RedisValue value = entry.getValue();
+        int tag = tagOf(value) | (entry.hasExpiration() ? EXPIRES : 0);
+        block.write(tag);
+        if (entry.hasExpiration()) {
+            block.writeLong(entry.getExpirationTime());
+        }
+        block.writeBytes(key.bytes());
+        writeValue(tag & TAG_TYPE_MASK, value);
+        keys++;
+        if (block.size() >= BLOCK_TARGET_BYTES) {
+            flushDataBlock();
+        }
+    }
+
+    /** Record that the key no longer exists; delta files only. */
+    @Override
+    public void writeDeleted(ByteString key) throws IOException {
+        if (!delta) {
+            throw new IllegalStateException("Only a delta file records deletions");
+        }
+        block.write(TAG_DELETED);
+        block.writeBytes(key.bytes());
+        keys++;
+        if (block.size() >= BLOCK_TARGET_BYTES) {
+            flushDataBlock();
+        }
+    }
+
+    private static int tagOf(RedisValue value) {
+        switch (value.getType()) {
+            case STRING:
+                return ((StringValue) value).isInteger() ? TAG_INT : TAG_STRING;
+            case LIST:
+                return TAG_LIST;
+            case SET:
+                return TAG_SET;
+            case HASH:
+                return TAG_HASH;
+            case ZSET:
+                return TAG_ZSET;
+            case BLOOM:
+                return TAG_BLOOM;
+            default:
+                throw new IllegalArgumentException("No snapshot encoding for " + value.getType());
+        }
+    }
+
+    private void writeValue(int type, RedisValue value) throws IOException {
+        switch (type) {
+            case TAG_STRING:
+                block.writeBytes(((StringValue) value).getValue());
+                break;
+            case TAG_INT:
+                long n = ((StringValue) value).longValue();
+                block.writeVarLong((n << 1) ^ (n >> 63)); // zigzag: small negatives stay short
+                break;
+            case TAG_LIST:
+                writeAll(((ListValue) value).lrange(0, -1));
+                break;
+            case TAG_SET:
+                writeAll(((SetValue) value).smembers());
+                break;
+            case TAG_HASH:
+                HashValue hash = (HashValue) value;
+                block.writeVarLong(hash.hlen());
+                hash.forEach((field, val) -> {
+                    block.writeBytes(field);
+                    block.writeBytes(val);
+                });
+                break;
+            case TAG_ZSET:
+                ZSetValue zset = (ZSetValue) value;
+                block.writeVarLong(zset.zcard());
+                zset.forEach((member, score) -> {
+                    block.writeBytes(member);
+                    block.writeDouble(score);
+                });
+                break;
+            default:
+                ((BloomFilterValue) value).serialize(new DataOutputStream(block));
+        }
+    }
+
+    private void writeAll(List<byte[]> items) {
+        block.writeVarLong(items.size());
+        for (byte[] item : items) {
+            block.writeBytes(item);
+        }
+    }
+
+    /** Write the last data block and the end block; the stream is left open. */
+    public void finish() throws IOException {
+        finish(0);
+    }
+
+    /** As finish, for a base file that the delta files up to lastDelta were merged into. */
+    public void finish(long lastDelta) throws IOException {
+        if (block.size() > 0) {
+            flushDataBlock();
+        }
+        while (!inFlight.isEmpty()) {
+            writeCompressed();
+        }
+        block.writeVarLong(keys);
+        if (lastDelta > 0) {
+            block.writeVarLong(lastDelta);
+        }
+        flushBlock(BLOCK_END);
+        out.flush();
+    }
+
+    private void flushDataBlock() throws IOException {
+        if (compressionLevel == 0) {
+            flushBlock(BLOCK_DATA);
+            return;
+        }
+        if (inFlight.size() >= maxInFlight) {
+            writeCompressed();
+        }
+        byte[] raw = Arrays.copyOf(block.array(), block.size());
+        block.reset();
+        inFlight.add(pool.submit(() -> compress(raw)));
+    }
+
+    /** Wait for the oldest block in flight and write it. */
+    private void writeCompressed() throws IOException {
+        Future<BlockOutput> next = inFlight.poll();
+        try {
+            BlockOutput framed = next.get();
+            out.write(framed.array(), 0, framed.size());
+            bytesWritten += framed.size();
+        } catch (ExecutionException e) {
+            cancelInFlight();
+            throw new IOException("Snapshot block compression failed: " + e.getCause(), e.getCause());
+        } catch (InterruptedException e) {
+            cancelInFlight();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Snapshot save interrupted");
+        }
+    }
+
+    private void cancelInFlight() {
+        for (Future<BlockOutput> f : inFlight) {
+            f.cancel(true);
+        }
+        inFlight.clear();
+    }
+
+    /** @return the block framed as a compressed block, or as a data block if it did not shrink */
+    private BlockOutput compress(byte[] raw) {
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(compressionLevel, true);
+        }
+        byte[] deflated = new byte[raw.length];
+        int n = 0;
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            while (!deflater.finished() && n < deflated.length) {
+                n += deflater.deflate(deflated, n, deflated.length - n);
+            }
+            if (!deflater.finished()) {
+                n = -1; // no smaller than the block itself
+            }
+        } finally {
+            deflater.reset();
+            deflaters.add(deflater);
+        }
+        BlockOutput payload = new BlockOutput(n < 0 ? raw.length : n + 8);
+        byte kind = BLOCK_DATA;
+        if (n >= 0 && n + 5 < raw.length) {
+            kind = BLOCK_COMPRESSED;
+            payload.writeVarLong(raw.length);
+            payload.write(deflated, 0, n);
+        } else {
+            payload.write(raw, 0, raw.length);
+        }
+        BlockOutput framed = new BlockOutput(payload.size() + 16);
+        frame(framed, kind, payload, new CRC32C());
+        return framed;
+    }
+
+    private static void frame(BlockOutput to, byte kind, BlockOutput payload, CRC32C crc) {
+        crc.reset();
+        crc.update(payload.array(), 0, payload.size());
+        to.write(kind);
+        to.writeVarLong(payload.size());
+        to.write(payload.array(), 0, payload.size());
+        to.writeInt((int) crc.getValue());
+    }
+
+    private void flushBlock(byte kind) throws IOException {
+        crc.reset();
+        crc.update(block.array(), 0, block.size());
+        header.reset();
+        header.write(kind);
+        header.writeVarLong(block.size());
+        out.write(header.array(), 0, header.size());
+        out.write(block.array(), 0, block.size());
+        int c = (int) crc.getValue();
+        out.write(new byte[] {(byte) (c >>> 24), (byte) (c >>> 16), (byte) (c >>> 8), (byte) c});
+        bytesWritten += header.size() + block.size() + 4;
+        block.reset();
+    }
+
+    public long getKeysWritten() {
+        return keys;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+}
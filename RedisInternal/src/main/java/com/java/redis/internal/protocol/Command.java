@@ -1,28 +1,48 @@
 package com.java.redis.internal.protocol;
 
+import com.java.redis.internal.command.CommandSpec;
+import com.java.redis.internal.command.CommandTable;
+
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.stream.Collectors;
 
-//["SET","mykey","value"].
+//["SET","mykey","value"]. Arguments are the raw bulk-string bytes.
 public class Command {
+    private final CommandSpec spec; // null for a command the server does not know
     private final String name;
-    private final List<String> args;
+    private final List<byte[]> args;
+
+    public Command(CommandSpec spec, List<byte[]> args) {
+        this.spec = spec;
+        this.name = spec.name();
+        this.args = args;
+    }
 
-    public Command(String name, List<String> args) {
-        this.name = name;
+    public Command(String name, List<byte[]> args) {
+        this.spec = CommandTable.lookup(name.getBytes(StandardCharsets.US_ASCII));
+        this.name = spec != null ? spec.name() : name;
         this.args = args;
     }
 
+    /** @return the command table entry, or null if the command is unknown */
+    public CommandSpec getSpec() {
+        return spec;
+    }
+
     public String getName() {
         return name;
     }
 
-    public List<String> getArgs() {
+    public List<byte[]> getArgs() {
         return args;
     }
 
     @Override
     public String toString() {
-        return name + " " + args;
+        return name + " " + args.stream()
+                .map(a -> new String(a, StandardCharsets.UTF_8))
+                .collect(Collectors.toList());
     }
 
 }
@@ -0,0 +1,29 @@
+package com.java.redis.internal.protocol;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A reply that is not known yet, such as the answer to a BLPOP that found every list empty.
+ *
+ * The connection parks on it without tying up a thread: it writes whatever the future
+ * completes with and holds the client's later commands until then. If the client goes
+ * away first, the connection calls cancel so the command stops waiting.
+ */
+public final class DeferredReply extends RedisReply {
+    private final CompletableFuture<RedisReply> future;
+    private final Runnable cancel;
+
+    public DeferredReply(CompletableFuture<RedisReply> future, Runnable cancel) {
+        super(null, null, null, 0, null);
+        this.future = future;
+        this.cancel = cancel;
+    }
+
+    public CompletableFuture<RedisReply> future() {
+        return future;
+    }
+
+    public void cancel() {
+        cancel.run();
+    }
+}
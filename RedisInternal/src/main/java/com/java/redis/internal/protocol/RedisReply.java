@@ -7,47 +7,106 @@ import java.util.List;
 import com.java.redis.internal.constants.ReplyType;
 
 public class RedisReply {
+    // Replies without per-call state are shared; RespEncoder keeps their wire form pre-encoded
+    static final long SHARED_INTEGER_MIN = -2;
+    static final long SHARED_INTEGER_MAX = 9999;
+    private static final RedisReply OK = new RedisReply(ReplyType.SIMPLE_STRING, "OK", null, 0, null);
+    private static final RedisReply NULL_BULK = new RedisReply(ReplyType.BULK_STRING, null, null, 0, null);
+    private static final RedisReply EMPTY_ARRAY = new RedisReply(ReplyType.ARRAY, null, null, 0, List.of());
+    private static final RedisReply NULL_ARRAY = new RedisReply(ReplyType.ARRAY, null, null, 0, null);
+    private static final RedisReply[] SHARED_INTEGERS = new RedisReply[(int) (SHARED_INTEGER_MAX - SHARED_INTEGER_MIN + 1)];
+    static {
+        for (int i = 0; i < SHARED_INTEGERS.length; i++) {
+            SHARED_INTEGERS[i] = new RedisReply(ReplyType.INTEGER, null, null, i + SHARED_INTEGER_MIN, null);
+        }
+    }
+
     private final ReplyType type;
-    private final String string;             // for SIMPLE_STRING, ERROR, BULK_STRING
+    private final String string;             // for SIMPLE_STRING, ERROR
+    private final byte[] bulk;               // for BULK_STRING (null = nil)
     private final long integer;              // for INTEGER
     private final List<RedisReply> children; // for ARRAY
 
-    private RedisReply(ReplyType type, String string, long integer, List<RedisReply> children) {
+    RedisReply(ReplyType type, String string, byte[] bulk, long integer, List<RedisReply> children) {
         this.type = type;
         this.string = string;
+        this.bulk = bulk;
         this.integer = integer;
         this.children = children;
     }
 
     public static RedisReply simpleString(String msg) {
-        return new RedisReply(ReplyType.SIMPLE_STRING, msg, 0, null);
+        return new RedisReply(ReplyType.SIMPLE_STRING, msg, null, 0, null);
     }
 
     public static RedisReply ok() {
-        return simpleString("OK");
+        return OK;
     }
 
     public static RedisReply error(String msg) {
-        return new RedisReply(ReplyType.ERROR, msg, 0, null);
+        return new RedisReply(ReplyType.ERROR, msg, null, 0, null);
     }
 
     public static RedisReply integer(long val) {
-        return new RedisReply(ReplyType.INTEGER, null, val, null);
+        if (val >= SHARED_INTEGER_MIN && val <= SHARED_INTEGER_MAX) {
+            return SHARED_INTEGERS[(int) (val - SHARED_INTEGER_MIN)];
+        }
+        return new RedisReply(ReplyType.INTEGER, null, null, val, null);
     }
 
     public static RedisReply bulkString(String msg) {
         if (msg == null) {
-            return new RedisReply(ReplyType.BULK_STRING, null, 0, null);
+            return NULL_BULK;
         }
-        return new RedisReply(ReplyType.BULK_STRING, msg, 0, null);
+        return new RedisReply(ReplyType.BULK_STRING, null, msg.getBytes(StandardCharsets.UTF_8), 0, null);
+    }
+
+    /** Bulk reply carrying raw bytes; the array is sent as-is, not copied. */
+    public static RedisReply bulkString(byte[] data) {
+        if (data == null) {
+            return NULL_BULK;
+        }
+        return new RedisReply(ReplyType.BULK_STRING, null, data, 0, null);
     }
 
     public static RedisReply nullBulk() {
-        return new RedisReply(ReplyType.BULK_STRING, null, 0, null);
+        return NULL_BULK;
+    }
+
+    /** The nil array, "*-1", e.g. for a blocking pop that timed out. */
+    public static RedisReply nullArray() {
+        return NULL_ARRAY;
     }
 
     public static RedisReply array(List<RedisReply> elements) {
-        return new RedisReply(ReplyType.ARRAY, null, 0, elements);
+        if (elements != null && elements.isEmpty()) {
+            return EMPTY_ARRAY;
+        }
+        return new RedisReply(ReplyType.ARRAY, null, null, 0, elements);
+    }
+
+    ReplyType getType() {
+        return type;
+    }
+
+    public boolean isError() {
+        return type == ReplyType.ERROR;
+    }
+
+    String getString() {
+        return string;
+    }
+
+    public byte[] getBulk() {
+        return bulk;
+    }
+
+    long getInteger() {
+        return integer;
+    }
+
+    public List<RedisReply> getChildren() {
+        return children;
     }
 
     /** Encode this reply into RESP bytes */
@@ -60,10 +119,10 @@ public class RedisReply {
             case INTEGER:
                 return (":" + integer + "\r\n").getBytes(StandardCharsets.UTF_8);
             case BULK_STRING:
-                if (string == null) {
+                if (bulk == null) {
                     return "$-1\r\n".getBytes(StandardCharsets.UTF_8);
                 } else {
-                    byte[] data = string.getBytes(StandardCharsets.UTF_8);
+                    byte[] data = bulk;
                     String header = "$" + data.length + "\r\n";
                     byte[] headerB = header.getBytes(StandardCharsets.UTF_8);
                     byte[] crlf = "\r\n".getBytes(StandardCharsets.UTF_8);
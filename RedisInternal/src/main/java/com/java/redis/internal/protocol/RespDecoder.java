@@ -0,0 +1,155 @@
+package com.java.redis.internal.protocol;
+
+import com.java.redis.internal.command.CommandSpec;
+import com.java.redis.internal.command.CommandTable;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.util.ByteProcessor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RespDecoder turns the inbound byte stream into {@link Command}s.
+ *
+ * It parses RESP arrays of bulk strings straight from the cumulated ByteBuf,
+ * using the length prefixes to slice arguments out of the buffer as raw bytes
+ * (no character decoding, so arguments are binary-safe). The parse
+ * state (array elements left, pending bulk length, arguments read so far) is
+ * kept between reads, so a command split across TCP segments resumes where it
+ * stopped and a read carrying several commands emits every one of them.
+ *
+ * The command name is resolved against the {@link CommandTable} in place, so known
+ * commands are dispatched without copying or upper-casing their name.
+ */
+public class RespDecoder extends ByteToMessageDecoder {
+    // Same protocol limits as Redis (proto-max-bulk-len, multibulk length).
+    private static final int MAX_ARRAY_LENGTH = 1024 * 1024;
+    private static final int MAX_BULK_LENGTH = 512 * 1024 * 1024;
+    // Longest "*<n>\r\n" / "$<n>\r\n" header we accept before declaring the stream corrupt.
+    private static final int MAX_HEADER_LENGTH = 64;
+
+    private int remaining = -1;   // array elements still to read, -1 while waiting for "*<n>"
+    private int bulkLength = -1;  // length of the bulk string being read, -1 while waiting for "$<n>"
+    private CommandSpec spec;     // resolved command of the array being read
+    private String unknownName;   // name of an unknown command, kept for the error reply
+    private List<byte[]> parts;   // arguments after the name, null until the name is read
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+        Command cmd;
+        while ((cmd = decodeCommand(in)) != null) {
+            out.add(cmd);
+        }
+    }
+
+    /**
+     * Decode the next complete command from the buffer.
+     * @return the command, or null if more bytes are needed
+     * @throws CorruptedFrameException if the stream is not valid RESP
+     */
+    public Command decodeCommand(ByteBuf in) {
+        while (true) {
+            if (remaining < 0) {
+                long n = readHeader(in, (byte) '*');
+                if (n == Long.MIN_VALUE) {
+                    return null;
+                }
+                if (n > MAX_ARRAY_LENGTH) {
+                    throw new CorruptedFrameException("Protocol error: invalid multibulk length");
+                }
+                if (n <= 0) {
+                    continue; // empty or null array: nothing to execute
+                }
+                remaining = (int) n;
+            }
+
+            while (remaining > 0) {
+                if (bulkLength < 0) {
+                    long len = readHeader(in, (byte) '$');
+                    if (len == Long.MIN_VALUE) {
+                        return null;
+                    }
+                    if (len < 0 || len > MAX_BULK_LENGTH) {
+                        throw new CorruptedFrameException("Protocol error: invalid bulk length");
+                    }
+                    bulkLength = (int) len;
+                }
+                if (in.readableBytes() < bulkLength + 2) {
+                    return null; // wait for the rest of the payload and its CRLF
+                }
+                int start = in.readerIndex();
+                if (in.getByte(start + bulkLength) != '\r' || in.getByte(start + bulkLength + 1) != '\n') {
+                    throw new CorruptedFrameException("Protocol error: bulk string not terminated by CRLF");
+                }
+                if (parts == null) {
+                    spec = CommandTable.lookup(in, start, bulkLength);
+                    if (spec == null) {
+                        unknownName = in.toString(start, bulkLength, StandardCharsets.US_ASCII);
+                    }
+                    parts = new ArrayList<>(remaining - 1);
+                } else {
+                    parts.add(ByteBufUtil.getBytes(in, start, bulkLength));
+                }
+                in.skipBytes(bulkLength + 2);
+                bulkLength = -1;
+                remaining--;
+            }
+
+            Command cmd = spec != null ? new Command(spec, parts) : new Command(unknownName, parts);
+            spec = null;
+            unknownName = null;
+            parts = null;
+            remaining = -1;
+            return cmd;
+        }
+    }
+
+    /**
+     * Read a "<prefix><integer>\r\n" header without decoding it to a String.
+     * @return the integer, or Long.MIN_VALUE if the line is not complete yet
+     */
+    private static long readHeader(ByteBuf in, byte prefix) {
+        int start = in.readerIndex();
+        int scan = Math.min(in.readableBytes(), MAX_HEADER_LENGTH);
+        int lf = in.forEachByte(start, scan, ByteProcessor.FIND_LF);
+        if (lf < 0) {
+            if (scan == MAX_HEADER_LENGTH) {
+                throw new CorruptedFrameException("Protocol error: too big header");
+            }
+            return Long.MIN_VALUE;
+        }
+        byte got = in.getByte(start);
+        if (got != prefix) {
+            throw new CorruptedFrameException("Protocol error: expected '" + Character.toString(prefix)
+                    + "', got '" + Character.toString(got & 0xFF) + "'");
+        }
+        int end = lf - 1; // position of '\r'
+        if (end <= start + 1 || in.getByte(end) != '\r') {
+            throw new CorruptedFrameException("Protocol error: malformed length");
+        }
+        int pos = start + 1;
+        boolean negative = in.getByte(pos) == '-';
+        if (negative) {
+            pos++;
+        }
+        if (pos == end) {
+            throw new CorruptedFrameException("Protocol error: malformed length");
+        }
+        long value = 0;
+        for (; pos < end; pos++) {
+            byte b = in.getByte(pos);
+            if (b < '0' || b > '9' || value > Integer.MAX_VALUE) {
+                throw new CorruptedFrameException("Protocol error: malformed length");
+            }
+            value = value * 10 + (b - '0');
+        }
+        in.readerIndex(lf + 1);
+        return negative ? -value : value;
+    }
+}
@@ -0,0 +1,185 @@
+package com.java.redis.internal.protocol;
+
+import com.java.redis.internal.constants.ReplyType;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.MessageToByteEncoder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * RespEncoder writes {@link RedisReply}s as RESP straight into a pooled ByteBuf.
+ *
+ * Hot constant replies (+OK, $-1, the empty array and the shared small integers)
+ * are encoded once into an immutable direct buffer at class-load time; writing one
+ * of them only hands a duplicate of that buffer to the transport.
+ * The encoder keeps no per-channel state, so a single instance is shared by all channels.
+ */
+@ChannelHandler.Sharable
+public class RespEncoder extends MessageToByteEncoder<RedisReply> {
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private static final ByteBuf OK = constant("+OK\r\n");
+    private static final ByteBuf NULL_BULK = constant("$-1\r\n");
+    private static final ByteBuf EMPTY_ARRAY = constant("*0\r\n");
+    private static final ByteBuf[] SHARED_INTEGERS = encodeSharedIntegers();
+
+    public RespEncoder() {
+        super(RedisReply.class, true); // prefer direct buffers: they go to the socket without another copy
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof RedisReply) {
+            ByteBuf shared = sharedEncoding((RedisReply) msg);
+            if (shared != null) {
+                ctx.write(shared.duplicate(), promise);
+                return;
+            }
+        }
+        super.write(ctx, msg, promise);
+    }
+
+    @Override
+    protected ByteBuf allocateBuffer(ChannelHandlerContext ctx, RedisReply msg, boolean preferDirect) {
+        return ctx.alloc().ioBuffer(estimateSize(msg));
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, RedisReply msg, ByteBuf out) {
+        writeReply(msg, out);
+    }
+
+    private static void writeReply(RedisReply reply, ByteBuf out) {
+        switch (reply.getType()) {
+            case SIMPLE_STRING:
+                out.writeByte('+');
+                ByteBufUtil.writeUtf8(out, reply.getString());
+                out.writeBytes(CRLF);
+                break;
+            case ERROR:
+                out.writeByte('-');
+                ByteBufUtil.writeUtf8(out, reply.getString());
+                out.writeBytes(CRLF);
+                break;
+            case INTEGER:
+                out.writeByte(':');
+                writeDecimal(out, reply.getInteger());
+                out.writeBytes(CRLF);
+                break;
+            case BULK_STRING:
+                byte[] data = reply.getBulk();
+                if (data == null) {
+                    out.writeBytes(NULL_BULK, NULL_BULK.readerIndex(), NULL_BULK.readableBytes());
+                    break;
+                }
+                out.writeByte('$');
+                writeDecimal(out, data.length);
+                out.writeBytes(CRLF);
+                out.writeBytes(data);
+                out.writeBytes(CRLF);
+                break;
+            case ARRAY:
+                List<RedisReply> children = reply.getChildren();
+                out.writeByte('*');
+                writeDecimal(out, children == null ? -1 : children.size());
+                out.writeBytes(CRLF);
+                if (children != null) {
+                    for (RedisReply child : children) {
+                        writeReply(child, out);
+                    }
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown reply type: " + reply.getType());
+        }
+    }
+
+    /** @return the pre-encoded form of a shared reply, or null if the reply must be encoded */
+    private static ByteBuf sharedEncoding(RedisReply reply) {
+        if (reply == RedisReply.ok()) {
+            return OK;
+        }
+        if (reply == RedisReply.nullBulk()) {
+            return NULL_BULK;
+        }
+        if (reply == RedisReply.array(List.of())) {
+            return EMPTY_ARRAY;
+        }
+        if (reply.getType() == ReplyType.INTEGER) {
+            long v = reply.getInteger();
+            if (v >= RedisReply.SHARED_INTEGER_MIN && v <= RedisReply.SHARED_INTEGER_MAX) {
+                return SHARED_INTEGERS[(int) (v - RedisReply.SHARED_INTEGER_MIN)];
+            }
+        }
+        return null;
+    }
+
+    /** Rough size hint so most replies fit the first buffer we allocate. */
+    private static int estimateSize(RedisReply reply) {
+        switch (reply.getType()) {
+            case BULK_STRING:
+                byte[] data = reply.getBulk();
+                return data == null ? 5 : data.length + 16;
+            case ARRAY:
+                List<RedisReply> children = reply.getChildren();
+                return children == null ? 5 : 16 + children.size() * 32;
+            default:
+                return 32;
+        }
+    }
+
+    /** Write v in decimal ASCII without going through a String. */
+    static void writeDecimal(ByteBuf out, long v) {
+        if (v == Long.MIN_VALUE) {
+            out.writeCharSequence(Long.toString(v), StandardCharsets.US_ASCII);
+            return;
+        }
+        if (v < 0) {
+            out.writeByte('-');
+            v = -v;
+        }
+        int digits = 1;
+        for (long t = v; t >= 10; t /= 10) {
+            digits++;
+        }
+        out.ensureWritable(digits);
+        int start = out.writerIndex();
+        for (int i = start + digits - 1; i >= start; i--) {
+            out.setByte(i, (int) ('0' + v % 10));
+            v /= 10;
+        }
+        out.writerIndex(start + digits);
+    }
+
+    private static ByteBuf constant(String resp) {
+        byte[] bytes = resp.getBytes(StandardCharsets.US_ASCII);
+        return Unpooled.unreleasableBuffer(Unpooled.directBuffer(bytes.length).writeBytes(bytes).asReadOnly());
+    }
+
+    /** All shared integer replies live in one direct buffer; each entry is a read-only slice of it. */
+    private static ByteBuf[] encodeSharedIntegers() {
+        int count = (int) (RedisReply.SHARED_INTEGER_MAX - RedisReply.SHARED_INTEGER_MIN + 1);
+        ByteBuf all = Unpooled.directBuffer(count * 8);
+        int[] offsets = new int[count + 1];
+        for (int i = 0; i < count; i++) {
+            offsets[i] = all.writerIndex();
+            all.writeByte(':');
+            writeDecimal(all, i + RedisReply.SHARED_INTEGER_MIN);
+            all.writeBytes(CRLF);
+        }
+        offsets[count] = all.writerIndex();
+        ByteBuf readOnly = all.asReadOnly();
+        ByteBuf[] replies = new ByteBuf[count];
+        for (int i = 0; i < count; i++) {
+            replies[i] = Unpooled.unreleasableBuffer(readOnly.slice(offsets[i], offsets[i + 1] - offsets[i]));
+        }
+        return replies;
+    }
+}
@@ -1,20 +1,25 @@
 package com.java.redis.internal.protocol;
 
-import java.io.BufferedReader;
+import com.java.redis.internal.command.CommandSpec;
+import com.java.redis.internal.command.CommandTable;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
 public class RespParser {
-    final BufferedReader reader;
+    final DataInputStream in;
     public RespParser(InputStream in){
-        this.reader = new BufferedReader(new InputStreamReader(in));
+        this.in = new DataInputStream(new BufferedInputStream(in));
     }
 
     public Command parse() throws IOException{
-        String line = reader.readLine();
+        String line = readLine();
         if(line == null){
             throw new IOException("Client closed connection");
         }
@@ -28,10 +33,10 @@ public class RespParser {
             // TODO: handle exception
             throw new IOException("invalid Array length: "+ line + "\n"+e);
         }
-        List<String> parts = new ArrayList<>(numArgs);
+        List<byte[]> parts = new ArrayList<>(numArgs);
 
         for(int i=0; i<numArgs; i++){
-            String dollar = reader.readLine();
+            String dollar = readLine();
             if(dollar == null || !dollar.startsWith("$")){
                 throw new IOException("Expected bulk string length, got: " + dollar);
             }
@@ -42,20 +47,35 @@ public class RespParser {
                 throw new IOException("Invalid bulk string length: " + dollar);
             }
 
-            char[] buffer = new char[len];
-            int read = reader.read(buffer, 0, len);
-            if (read != len) {
-                throw new IOException("Incomplete bulk string: expected " + len + ", got " + read);
-            }
-            reader.readLine();
-            parts.add(new String(buffer));
+            // Bulk lengths count bytes, so read bytes: binary-safe for any payload
+            byte[] buffer = new byte[len];
+            in.readFully(buffer);
+            readLine();
+            parts.add(buffer);
         }
         if(parts.isEmpty()){
             throw new IOException("Empty command");
         }
         
-        String name = parts.get(0).toUpperCase();
-        List<String> args = parts.subList(1, parts.size());
-        return new Command(name, args);
+        CommandSpec spec = CommandTable.lookup(parts.get(0));
+        List<byte[]> args = parts.subList(1, parts.size());
+        return spec != null
+                ? new Command(spec, args)
+                : new Command(new String(parts.get(0), StandardCharsets.US_ASCII), args);
+    }
+
+    /** Read a CRLF-terminated header line; these are always ASCII. */
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(16);
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                byte[] bytes = line.toByteArray();
+                int len = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+                return new String(bytes, 0, len, StandardCharsets.US_ASCII);
+            }
+            line.write(b);
+        }
+        return line.size() == 0 ? null : line.toString(StandardCharsets.US_ASCII);
     }
 }
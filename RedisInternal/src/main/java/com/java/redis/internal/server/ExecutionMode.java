@@ -0,0 +1,29 @@
+package com.java.redis.internal.server;
+
+import java.util.Locale;
+
+/**
+ * Where a connection's commands are executed.
+ */
+public enum ExecutionMode {
+    /** On the channel's event loop, as soon as they are decoded. Best for O(1) commands. */
+    INLINE,
+    /** On a shared virtual-thread scheduler, one batch at a time per connection. */
+    OFFLOAD,
+    /**
+     * The keyspace is split into one shard per worker event loop and each command runs on
+     * the loop that owns its key. Only the writes are partitioned: the shards keep the
+     * concurrent maps and values of the other modes (see DataStore), so this removes
+     * contention but not the cost of the synchronisation itself.
+     */
+    SHARDED;
+
+    public static ExecutionMode fromConfig(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown command execution mode: " + value
+                    + " (expected 'inline', 'offload' or 'sharded')");
+        }
+    }
+}
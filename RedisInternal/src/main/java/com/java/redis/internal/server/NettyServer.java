@@ -1,52 +1,151 @@
 package com.java.redis.internal.server;
 
 import com.java.redis.internal.command.CommandExecutor;
+import com.java.redis.internal.config.RedisConfig;
+import com.java.redis.internal.datastore.ActiveExpireCycle;
+import com.java.redis.internal.datastore.DataStore;
+import com.java.redis.internal.persistence.AppendOnlyFile;
+import com.java.redis.internal.protocol.RespDecoder;
+import com.java.redis.internal.protocol.RespEncoder;
+import com.java.redis.internal.stats.ServerStats;
 
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 
 public class NettyServer {
     private final int port;
+    private final DataStore store;
     private final CommandExecutor commandExecutor;
+    private final AppendOnlyFile syncLog;
+    private final ServerStats stats;
+    private final RespEncoder encoder = new RespEncoder(); // stateless, shared by every channel
     private final int bossThreads;
     private final int workerThreads;
+    private final ExecutionMode executionMode;
+    private final String transportName;
+    private final int acceptors;
+    private final boolean tcpNoDelay;
+    private final int sendBufferSize;    // 0 = OS default
+    private final int receiveBufferSize; // 0 = OS default
+    private final int backlog;
+    private final int activeExpireHz;
+    private final int activeExpireCpuPercent;
+    // Shared by all connections in OFFLOAD mode; each connection serialises onto it
+    private ExecutorService offloadExecutor;
+    // SHARDED mode: maps keys to the worker loop that owns them
+    private ShardRouter shardRouter;
+    // Runs the active expire cycle when no shard loops own it
+    private ScheduledExecutorService expireScheduler;
+    private List<ScheduledFuture<?>> expireTasks = List.of();
     private EventLoopGroup bossGroup;
     private EventLoopGroup workerGroup;
-    private Channel serverChannel;
+    private final List<Channel> serverChannels = new ArrayList<>();
 
-    public NettyServer(int port, CommandExecutor commandExecutor, int bossThreads, int workerThreads) {
-        this.port = port;
+    /** @param syncLog the append-only file if replies must wait for its fsync (appendfsync always), else null */
+    public NettyServer(RedisConfig config, DataStore store, CommandExecutor commandExecutor, ServerStats stats,
+                       AppendOnlyFile syncLog) {
+        this.syncLog = syncLog;
+        this.port = config.getPort();
+        this.store = store;
         this.commandExecutor = commandExecutor;
-        this.bossThreads = bossThreads;
-        this.workerThreads = workerThreads;
+        this.stats = stats;
+        this.bossThreads = config.getNettyBossThreads();
+        this.workerThreads = config.getNettyWorkerThreads();
+        this.executionMode = ExecutionMode.fromConfig(config.getCommandExecutionMode());
+        this.transportName = config.getNettyTransport();
+        this.acceptors = config.getNettyAcceptors();
+        this.tcpNoDelay = config.isTcpNoDelay();
+        this.sendBufferSize = config.getSocketSendBufferSize();
+        this.receiveBufferSize = config.getSocketReceiveBufferSize();
+        this.backlog = config.getTcpBacklog();
+        this.activeExpireHz = config.getActiveExpireHz();
+        this.activeExpireCpuPercent = config.getActiveExpireCpuPercent();
     }
 
     public void start() throws InterruptedException {
-        bossGroup = new NioEventLoopGroup(bossThreads);
-        workerGroup = new NioEventLoopGroup(workerThreads);
+        Transport transport = Transport.select(transportName);
+        int acceptorCount = acceptors;
+        if (acceptorCount > 1 && transport.reusePortOption() == null) {
+            System.err.println("[WARN] SO_REUSEPORT needs a native transport; using a single acceptor on " + transport);
+            acceptorCount = 1;
+        }
+        // Every acceptor channel gets its own boss event loop
+        bossGroup = transport.newEventLoopGroup(Math.max(bossThreads, acceptorCount));
+        workerGroup = transport.newEventLoopGroup(workerThreads);
+        if (executionMode == ExecutionMode.OFFLOAD) {
+            offloadExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        } else if (executionMode == ExecutionMode.SHARDED) {
+            shardRouter = new ShardRouter(store, workerGroup);
+        }
+        startActiveExpire();
         ServerBootstrap bootstrap = new ServerBootstrap();
         bootstrap.group(bossGroup, workerGroup)
-                .channel(NioServerSocketChannel.class)
+                .channel(transport.serverChannelClass())
+                .option(ChannelOption.SO_BACKLOG, backlog)
                 .childHandler(new ChannelInitializer<Channel>() {
                     @Override
                     protected void initChannel(Channel ch) {
                         ChannelPipeline p = ch.pipeline();
-                        p.addLast(new RedisServerHandler(commandExecutor));
+                        p.addLast(new RespDecoder());
+                        p.addLast(encoder);
+                        p.addLast(new RedisServerHandler(commandExecutor, stats, executionMode,
+                                offloadExecutor, shardRouter, syncLog));
                     }
                 })
-                .childOption(ChannelOption.SO_KEEPALIVE, true);
+                .childOption(ChannelOption.SO_KEEPALIVE, true)
+                .childOption(ChannelOption.TCP_NODELAY, tcpNoDelay);
+        if (sendBufferSize > 0) {
+            bootstrap.childOption(ChannelOption.SO_SNDBUF, sendBufferSize);
+        }
+        if (receiveBufferSize > 0) {
+            bootstrap.childOption(ChannelOption.SO_RCVBUF, receiveBufferSize);
+        }
+        if (acceptorCount > 1) {
+            // The kernel load-balances incoming connections across the listening sockets
+            bootstrap.option(transport.reusePortOption(), true);
+        }
 
-        ChannelFuture future = bootstrap.bind(port).sync();
-        serverChannel = future.channel();
-        System.out.println("NettyServer listening on port " + port);
-        serverChannel.closeFuture().sync();
+        for (int i = 0; i < acceptorCount; i++) {
+            serverChannels.add(bootstrap.bind(port).sync().channel());
+        }
+        System.out.println("NettyServer listening on port " + port + " (transport: " + transport
+                + ", acceptors: " + acceptorCount + ", command execution: " + executionMode + ")");
+        for (Channel ch : serverChannels) {
+            ch.closeFuture().sync();
+        }
+    }
+
+    /** In SHARDED mode each loop expires its own shard; otherwise a dedicated thread does it all. */
+    private void startActiveExpire() {
+        ActiveExpireCycle cycle = new ActiveExpireCycle(store, stats, activeExpireHz, activeExpireCpuPercent);
+        if (shardRouter != null) {
+            expireTasks = cycle.start(shardRouter.owners());
+        } else {
+            expireScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "active-expire");
+                t.setDaemon(true);
+                return t;
+            });
+            expireTasks = cycle.start(List.of(expireScheduler));
+        }
     }
 
     public void stop() {
-        if (serverChannel != null) {
-            serverChannel.close();
+        for (ScheduledFuture<?> task : expireTasks) {
+            task.cancel(false);
+        }
+        if (expireScheduler != null) {
+            expireScheduler.shutdown();
+        }
+        for (Channel ch : serverChannels) {
+            ch.close();
         }
         if (workerGroup != null) {
             workerGroup.shutdownGracefully();
@@ -54,5 +153,11 @@ public class NettyServer {
         if (bossGroup != null) {
             bossGroup.shutdownGracefully();
         }
+        if (offloadExecutor != null) {
+            offloadExecutor.shutdown();
+        }
+        if (shardRouter != null) {
+            shardRouter.shutdown();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,22 @@
+package com.java.redis.internal.server;
+
+import com.java.redis.internal.protocol.Command;
+import com.java.redis.internal.protocol.RedisReply;
+
+/**
+ * A reply slot for a command that completes on another thread.
+ * Slots are queued per connection in command order and written once every earlier slot is done.
+ */
+class PendingReply {
+    final Command command;
+    // Set by the executing shard, read on the connection's event loop after the hand-back task
+    RedisReply reply;
+
+    PendingReply(Command command) {
+        this.command = command;
+    }
+
+    boolean isDone() {
+        return reply != null;
+    }
+}
@@ -1,39 +1,347 @@
 package com.java.redis.internal.server;
 
-import java.io.InputStream;
-import java.util.concurrent.Executors;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 import com.java.redis.internal.command.CommandExecutor;
+import com.java.redis.internal.persistence.AppendOnlyFile;
 import com.java.redis.internal.protocol.Command;
+import com.java.redis.internal.protocol.DeferredReply;
 import com.java.redis.internal.protocol.RedisReply;
-import com.java.redis.internal.protocol.RespParser;
+import com.java.redis.internal.stats.ServerStats;
 
-import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.EventLoop;
+import io.netty.handler.codec.DecoderException;
 
+/**
+ * Executes pipelined commands: everything RespDecoder emits for one read is
+ * executed in arrival order and answered with a single flush.
+ *
+ * In INLINE mode commands run on the event loop as they are decoded. In OFFLOAD mode
+ * the read batch is handed to this connection's SerialExecutor, so batches from the
+ * same client run one after another and replies keep their order.
+ *
+ * In SHARDED mode a command whose key is owned by this loop runs inline. Consecutive
+ * commands for the same other shard form a run, sent there as one task per read; a
+ * command with keys on several shards goes through ShardRouter.executeAcrossShards.
+ * Commands of one connection still run in the order they were sent: while earlier work
+ * is out on another thread, only a command for the run being collected can join it (its
+ * owning loop runs the run in order), and every other command waits in the waiting queue
+ * until that work is done. Replies come back to this loop and are written in command
+ * order through the pending queue.
+ *
+ * A blocking command (BLPOP) stops the connection reading. Commands already decoded behind
+ * it are held, and if its reply is deferred the connection parks on it; once the reply is
+ * written the held commands run and reading resumes.
+ *
+ * With appendfsync always, a flush that would send the reply to a write waits until the
+ * append-only file has fsynced that write; replies flushed after it wait with it.
+ */
 public class RedisServerHandler extends ChannelInboundHandlerAdapter{
     private final CommandExecutor commandExecutor;
-    public RedisServerHandler(CommandExecutor commandExecutor) {
+    private final ServerStats stats;
+    private final ExecutionMode mode;
+    private final SerialExecutor serialExecutor; // OFFLOAD mode only
+    private final ShardRouter router;            // SHARDED mode only
+    // Commands decoded from the current read
+    private List<Command> batch = new ArrayList<>();
+    private int batchDepth;
+    // SHARDED mode: replies not yet written, oldest first; the run being collected for
+    // one other shard (runShard is -1 without one); and commands that must wait for
+    // earlier work to finish before they may start
+    private final ArrayDeque<PendingReply> pending = new ArrayDeque<>();
+    private List<PendingReply> run;
+    private int runShard = -1;
+    private final ArrayDeque<Command> waiting = new ArrayDeque<>();
+    // Set while a blocking command is unanswered; commands decoded meanwhile wait in held
+    private boolean blocked;
+    private final ArrayDeque<Command> held = new ArrayDeque<>();
+    private DeferredReply parkedOn;
+    // appendfsync always only: the log, whether the current read ran a write, and the
+    // log offset every reply written so far must wait for
+    private final AppendOnlyFile syncLog;
+    private boolean wroteInRead;
+    private volatile long mustBeDurable;
+
+    public RedisServerHandler(CommandExecutor commandExecutor, ServerStats stats, ExecutionMode mode,
+                              Executor offloadExecutor, ShardRouter router, AppendOnlyFile syncLog) {
+        this.syncLog = syncLog;
         this.commandExecutor = commandExecutor;
+        this.stats = stats;
+        this.mode = mode;
+        this.serialExecutor = mode == ExecutionMode.OFFLOAD ? new SerialExecutor(offloadExecutor) : null;
+        this.router = router;
+    }
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        // RespDecoder runs ahead of us in the pipeline and emits one Command per request
+        Command cmd = (Command) msg;
+        if (blocked) {
+            held.add(cmd);
+            return;
+        }
+        batchDepth++;
+        dispatch(ctx, cmd);
+    }
+
+    private void dispatch(ChannelHandlerContext ctx, Command cmd) {
+        if (cmd.getSpec() != null && cmd.getSpec().isBlocking()) {
+            blocked = true;
+            ctx.channel().config().setAutoRead(false);
+        }
+        wroteInRead |= isWrite(cmd);
+        if (mode == ExecutionMode.INLINE) {
+            RedisReply reply = commandExecutor.execute(cmd);
+            if (blocked) {
+                answerBlocking(ctx, reply);
+            } else {
+                ctx.write(reply); // RespEncoder turns it into RESP
+            }
+        } else if (mode == ExecutionMode.SHARDED) {
+            routeToShard(ctx, cmd);
+        } else {
+            batch.add(cmd);
+        }
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) {
+        if (batchDepth == 0) {
+            return;
+        }
+        stats.recordPipelineBatch(batchDepth);
+        batchDepth = 0;
+        finishRead(ctx);
+    }
+
+    private void finishRead(ChannelHandlerContext ctx) {
+        boolean wrote = wroteInRead;
+        wroteInRead = false;
+        if (mode == ExecutionMode.INLINE) {
+            flush(ctx, wrote); // one syscall for the whole batch
+            return;
+        }
+        if (mode == ExecutionMode.SHARDED) {
+            dispatchRun(ctx);
+            flush(ctx, wrote);
+            return;
+        }
+        List<Command> cmds = batch;
+        batch = new ArrayList<>();
+        serialExecutor.execute(() -> {
+            for (Command cmd : cmds) {
+                // A failure becomes its reply: every command is answered and the flush still runs
+                RedisReply reply = executeOffLoop(cmd);
+                if (cmd.getSpec() != null && cmd.getSpec().isBlocking()) {
+                    // Always last in its batch; queued behind the writes above
+                    ctx.executor().execute(() -> answerBlocking(ctx, reply));
+                } else {
+                    ctx.write(reply);
+                }
+            }
+            flush(ctx, wrote);
+        });
+    }
+
+    private static boolean isWrite(Command cmd) {
+        return cmd.getSpec() != null && cmd.getSpec().isWrite();
+    }
+
+    /**
+     * Flush the written replies, or with appendfsync always, once the log is fsynced past
+     * every write they answer; the fsync covering them is shared with other connections.
+     */
+    private void flush(ChannelHandlerContext ctx, boolean wrote) {
+        if (syncLog == null) {
+            ctx.flush();
+            return;
+        }
+        if (wrote) {
+            mustBeDurable = syncLog.appendedOffset();
+        }
+        long offset = mustBeDurable;
+        if (syncLog.isDurable(offset)) {
+            ctx.flush();
+        } else {
+            syncLog.whenDurable(offset, () -> ctx.executor().execute(ctx::flush));
+        }
+    }
+
+    /**
+     * Answer the blocking command; runs on the connection's loop. A deferred reply parks the
+     * connection until it completes, any other reply is written and the client unblocked.
+     */
+    private void answerBlocking(ChannelHandlerContext ctx, RedisReply reply) {
+        if (!(reply instanceof DeferredReply)) {
+            ctx.write(reply);
+            flush(ctx, true); // the pop is logged as LPOP/RPOP
+            unblock(ctx);
+            return;
+        }
+        DeferredReply deferred = (DeferredReply) reply;
+        if (!ctx.channel().isActive()) {
+            deferred.cancel(); // the client left while the command ran
+            return;
+        }
+        parkedOn = deferred;
+        deferred.future().whenComplete((result, error) -> ctx.executor().execute(() -> {
+            parkedOn = null;
+            answerBlocking(ctx, error == null ? result : RedisReply.error("ERR " + error.getMessage()));
+        }));
+    }
+
+    /** Run the commands held behind the blocking one, then resume reading. */
+    private void unblock(ChannelHandlerContext ctx) {
+        blocked = false;
+        int ran = 0;
+        while (!blocked && !held.isEmpty()) {
+            dispatch(ctx, held.poll());
+            ran++;
+        }
+        if (ran > 0) {
+            stats.recordPipelineBatch(ran);
+            finishRead(ctx);
+        }
+        if (!blocked) {
+            ctx.channel().config().setAutoRead(true);
+        }
     }
+
     @Override
-    public void channelRead(io.netty.channel.ChannelHandlerContext ctx, Object msg) throws Exception {
-        var buffer = (io.netty.buffer.ByteBuf) msg;
-        InputStream in = new io.netty.buffer.ByteBufInputStream(buffer);
-        RespParser parser = new RespParser(in);
-        try{
-            Command cmd = parser.parse();
-            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().factory())
-                .execute(() -> {
-                    RedisReply reply = commandExecutor.execute(cmd);
-                    ctx.writeAndFlush(Unpooled.copiedBuffer(reply.toBytes()));
-                });
-        }catch(Exception e) {
-            ctx.writeAndFlush(Unpooled.copiedBuffer(RedisReply.error(e.getMessage()).toBytes()));
-        }finally{
-            buffer.release();
-        }
-    }
-    @Override public void exceptionCaught(ChannelHandlerContext ctx,Throwable t){ctx.close();}
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        if (parkedOn != null) {
+            parkedOn.cancel();
+            parkedOn = null;
+        }
+        super.channelInactive(ctx);
+    }
+
+    private void routeToShard(ChannelHandlerContext ctx, Command cmd) {
+        if (!waiting.isEmpty() || !tryRoute(ctx, cmd)) {
+            waiting.add(cmd);
+        }
+    }
+
+    /**
+     * Run, start or collect the command, unless it has to wait for earlier commands of
+     * the connection that are still out on another thread.
+     * @return false if the command must wait
+     */
+    private boolean tryRoute(ChannelHandlerContext ctx, Command cmd) {
+        int shard = router.route(cmd);
+        if (!pending.isEmpty()) {
+            // Earlier work is out: only the run being collected can take more, since its
+            // loop runs it in order; anything else would overtake that work
+            if (shard < 0 || shard != runShard) {
+                return false;
+            }
+            PendingReply slot = new PendingReply(cmd);
+            pending.add(slot);
+            run.add(slot);
+            return true;
+        }
+        if (shard == ShardRouter.MULTI_SHARD) {
+            PendingReply slot = new PendingReply(cmd);
+            pending.add(slot);
+            router.executeAcrossShards(cmd, () -> {
+                slot.reply = executeOffLoop(cmd);
+                ctx.executor().execute(() -> writeCompleted(ctx));
+            });
+            return true;
+        }
+        EventLoop owner = shard == ShardRouter.NO_KEYS ? null : router.owner(shard);
+        if (owner == null || owner.inEventLoop()) {
+            RedisReply reply = commandExecutor.execute(cmd);
+            if (cmd.getSpec() != null && cmd.getSpec().isBlocking()) {
+                answerBlocking(ctx, reply);
+            } else {
+                ctx.write(reply);
+            }
+            return true;
+        }
+        PendingReply slot = new PendingReply(cmd);
+        pending.add(slot);
+        run = new ArrayList<>();
+        run.add(slot);
+        runShard = shard;
+        return true;
+    }
+
+    /** Send the run collected for another shard there, as a single task. */
+    private void dispatchRun(ChannelHandlerContext ctx) {
+        if (run == null) {
+            return;
+        }
+        List<PendingReply> forShard = run;
+        EventLoop owner = router.owner(runShard);
+        run = null;
+        runShard = -1;
+        owner.execute(() -> {
+            for (PendingReply slot : forShard) {
+                slot.reply = executeOffLoop(slot.command);
+            }
+            ctx.executor().execute(() -> writeCompleted(ctx));
+        });
+    }
+
+    /**
+     * Execute on a thread other than the connection's loop. A failure there cannot reach
+     * exceptionCaught, so it becomes an error reply instead of leaving the slot unfinished.
+     */
+    private RedisReply executeOffLoop(Command cmd) {
+        try {
+            return commandExecutor.execute(cmd);
+        } catch (RuntimeException e) {
+            return RedisReply.error("ERR " + e.getMessage());
+        }
+    }
+
+    /** Write every finished reply at the head of the pending queue; runs on the connection's loop. */
+    private void writeCompleted(ChannelHandlerContext ctx) {
+        boolean wrote = false;
+        boolean anyWrite = false;
+        while (!pending.isEmpty() && pending.peek().isDone()) {
+            PendingReply slot = pending.poll();
+            if (slot.command.getSpec() != null && slot.command.getSpec().isBlocking()) {
+                // Nothing queues behind a blocking command, so it is the last slot
+                if (wrote) {
+                    flush(ctx, anyWrite);
+                }
+                answerBlocking(ctx, slot.reply);
+                return;
+            }
+            ctx.write(slot.reply);
+            wrote = true;
+            anyWrite |= isWrite(slot.command);
+        }
+        if (pending.isEmpty()) {
+            // Everything before the waiting commands has run: start them, in order
+            while (!waiting.isEmpty() && tryRoute(ctx, waiting.peek())) {
+                Command started = waiting.poll();
+                wrote = true;
+                anyWrite |= isWrite(started);
+            }
+            dispatchRun(ctx);
+        }
+        if (wrote) {
+            flush(ctx, anyWrite);
+        }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable t) {
+        if (t instanceof DecoderException) {
+            // The stream cannot be resynchronised after a protocol error: report it and hang up
+            String msg = t.getCause() != null ? t.getCause().getMessage() : t.getMessage();
+            ctx.writeAndFlush(RedisReply.error("ERR " + msg))
+                    .addListener(ChannelFutureListener.CLOSE);
+            return;
+        }
+        ctx.close();
+    }
 }
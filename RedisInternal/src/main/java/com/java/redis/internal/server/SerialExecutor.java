@@ -0,0 +1,49 @@
+package com.java.redis.internal.server;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+
+/**
+ * SerialExecutor runs its tasks one at a time, in submission order, on a shared executor.
+ * Each connection owns one, so its batches never overlap or finish out of order,
+ * while no thread is tied to the connection between batches.
+ */
+class SerialExecutor implements Executor {
+    private final Executor delegate;
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+    private boolean draining; // guarded by tasks
+
+    SerialExecutor(Executor delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        synchronized (tasks) {
+            tasks.add(task);
+            if (draining) {
+                return; // the running drain will pick it up
+            }
+            draining = true;
+        }
+        delegate.execute(this::drain);
+    }
+
+    private void drain() {
+        while (true) {
+            Runnable task;
+            synchronized (tasks) {
+                task = tasks.poll();
+                if (task == null) {
+                    draining = false;
+                    return;
+                }
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                System.err.println("[ERROR] Connection task failed: " + e.getMessage());
+            }
+        }
+    }
+}
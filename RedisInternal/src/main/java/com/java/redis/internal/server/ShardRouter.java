@@ -0,0 +1,126 @@
+package com.java.redis.internal.server;
+
+import com.java.redis.internal.datastore.DataStore;
+import com.java.redis.internal.protocol.Command;
+
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * ShardRouter maps commands to the worker event loop that owns their keys in SHARDED mode.
+ * Shard i of the DataStore is owned by worker loop i; nothing else writes to it.
+ */
+class ShardRouter {
+    /** Route for commands that touch no key: they may run on any loop. */
+    static final int NO_KEYS = -1;
+    /** Route for commands whose keys live on more than one shard. */
+    static final int MULTI_SHARD = -2;
+
+    private final DataStore store;
+    private final EventLoop[] owners;
+    // Coordinates cross-shard commands; never runs on an event loop so it may block
+    private final ExecutorService coordinator = Executors.newVirtualThreadPerTaskExecutor();
+
+    ShardRouter(DataStore store, EventLoopGroup workers) {
+        List<EventLoop> loops = new ArrayList<>();
+        for (EventExecutor e : workers) {
+            loops.add((EventLoop) e);
+        }
+        if (loops.size() != store.getShardCount()) {
+            throw new IllegalStateException("Sharded mode needs one worker loop per shard: "
+                    + loops.size() + " loops for " + store.getShardCount() + " shards");
+        }
+        this.store = store;
+        this.owners = loops.toArray(new EventLoop[0]);
+    }
+
+    /** @return the owning shard of every key the command touches, NO_KEYS or MULTI_SHARD */
+    int route(Command cmd) {
+        List<byte[]> keys = keysOf(cmd);
+        int shard = NO_KEYS;
+        for (byte[] key : keys) {
+            int s = store.shardOf(key);
+            if (shard == NO_KEYS) {
+                shard = s;
+            } else if (shard != s) {
+                return MULTI_SHARD;
+            }
+        }
+        return shard;
+    }
+
+    EventLoop owner(int shard) {
+        return owners[shard];
+    }
+
+    /** @return the owning loop of every shard, indexed by shard */
+    List<EventLoop> owners() {
+        return List.of(owners);
+    }
+
+    int shardCount() {
+        return owners.length;
+    }
+
+    /**
+     * Cross-shard path: park the owning loop of every involved shard, run the action while
+     * they are parked, then release them. Loops are parked in ascending shard order, so two
+     * multi-shard commands can never wait on each other in a cycle.
+     */
+    void executeAcrossShards(Command cmd, Runnable action) {
+        TreeSet<Integer> shards = new TreeSet<>();
+        for (byte[] key : keysOf(cmd)) {
+            shards.add(store.shardOf(key));
+        }
+        coordinator.execute(() -> {
+            CountDownLatch release = new CountDownLatch(1);
+            try {
+                for (int shard : shards) {
+                    CountDownLatch parked = new CountDownLatch(1);
+                    owners[shard].execute(() -> {
+                        parked.countDown();
+                        awaitUninterruptibly(release);
+                    });
+                    parked.await();
+                }
+                action.run();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                release.countDown();
+            }
+        });
+    }
+
+    void shutdown() {
+        coordinator.shutdown();
+    }
+
+    /** Keys of a command, from its key positions in the command table. */
+    private static List<byte[]> keysOf(Command cmd) {
+        return cmd.getSpec() == null ? List.of() : cmd.getSpec().keys(cmd);
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.java.redis.internal.server;
+
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.incubator.channel.uring.IOUring;
+import io.netty.incubator.channel.uring.IOUringChannelOption;
+import io.netty.incubator.channel.uring.IOUringEventLoopGroup;
+import io.netty.incubator.channel.uring.IOUringServerSocketChannel;
+
+import java.util.Locale;
+
+/**
+ * The Netty transports NettyServer can run on.
+ * The native ones only load on Linux x86_64 and aarch64, the platforms whose natives the
+ * build bundles; NIO works everywhere and is the fallback.
+ */
+public enum Transport {
+    NIO {
+        @Override public boolean isAvailable() { return true; }
+        @Override public Throwable unavailabilityCause() { return null; }
+        @Override public EventLoopGroup newEventLoopGroup(int threads) { return new NioEventLoopGroup(threads); }
+        @Override public Class<? extends ServerChannel> serverChannelClass() { return NioServerSocketChannel.class; }
+        @Override public ChannelOption<Boolean> reusePortOption() { return null; }
+    },
+    EPOLL {
+        @Override public boolean isAvailable() { return Epoll.isAvailable(); }
+        @Override public Throwable unavailabilityCause() { return Epoll.unavailabilityCause(); }
+        @Override public EventLoopGroup newEventLoopGroup(int threads) { return new EpollEventLoopGroup(threads); }
+        @Override public Class<? extends ServerChannel> serverChannelClass() { return EpollServerSocketChannel.class; }
+        @Override public ChannelOption<Boolean> reusePortOption() { return EpollChannelOption.SO_REUSEPORT; }
+    },
+    IO_URING {
+        @Override public boolean isAvailable() { return IOUring.isAvailable(); }
+        @Override public Throwable unavailabilityCause() { return IOUring.unavailabilityCause(); }
+        @Override public EventLoopGroup newEventLoopGroup(int threads) { return new IOUringEventLoopGroup(threads); }
+        @Override public Class<? extends ServerChannel> serverChannelClass() { return IOUringServerSocketChannel.class; }
+        @Override public ChannelOption<Boolean> reusePortOption() { return IOUringChannelOption.SO_REUSEPORT; }
+    };
+
+    public abstract boolean isAvailable();
+
+    public abstract Throwable unavailabilityCause();
+
+    public abstract EventLoopGroup newEventLoopGroup(int threads);
+
+    public abstract Class<? extends ServerChannel> serverChannelClass();
+
+    /** @return the SO_REUSEPORT option, or null if the transport cannot share a port between acceptors */
+    public abstract ChannelOption<Boolean> reusePortOption();
+
+    /**
+     * Resolve the configured transport: "auto" picks epoll when it loads, otherwise NIO.
+     * An explicitly requested native transport that cannot load also falls back to NIO.
+     */
+    public static Transport select(String configured) {
+        String name = configured.trim().toUpperCase(Locale.ROOT);
+        if (name.equals("AUTO")) {
+            return EPOLL.isAvailable() ? EPOLL : NIO;
+        }
+        Transport requested;
+        try {
+            requested = valueOf(name);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown Netty transport: " + configured
+                    + " (expected 'auto', 'nio', 'epoll' or 'io_uring')");
+        }
+        if (!requested.isAvailable()) {
+            Throwable cause = requested.unavailabilityCause();
+            System.err.println("[WARN] " + requested + " transport unavailable, falling back to NIO: "
+                    + (cause != null ? cause.getMessage() : "unknown reason"));
+            return NIO;
+        }
+        return requested;
+    }
+}
@@ -0,0 +1,63 @@
+package com.java.redis.internal.stats;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ServerStats collects server-wide counters reported by INFO.
+ * Counters are striped (LongAdder) so recording them from every event loop stays cheap.
+ */
+public class ServerStats {
+    private final LongAdder commandsProcessed = new LongAdder();
+    private final LongAdder pipelineBatches = new LongAdder();
+    private final LongAccumulator maxPipelineDepth = new LongAccumulator(Math::max, 0);
+    private final LongAdder activeExpiredKeys = new LongAdder();
+    private final LongAdder expireCycleNanos = new LongAdder();
+    private final LongAdder expireCycleTimeCapReached = new LongAdder();
+
+    /** Record one read batch: the number of commands decoded from a single channel read. */
+    public void recordPipelineBatch(int depth) {
+        commandsProcessed.add(depth);
+        pipelineBatches.increment();
+        maxPipelineDepth.accumulate(depth);
+    }
+
+    /** Record one active expire tick: keys it reclaimed, time spent, and whether it used its whole budget. */
+    public void recordExpireCycle(int expired, long elapsedNanos, boolean timeCapReached) {
+        activeExpiredKeys.add(expired);
+        expireCycleNanos.add(elapsedNanos);
+        if (timeCapReached) {
+            expireCycleTimeCapReached.increment();
+        }
+    }
+
+    public long getCommandsProcessed() {
+        return commandsProcessed.sum();
+    }
+
+    public long getPipelineBatches() {
+        return pipelineBatches.sum();
+    }
+
+    public long getMaxPipelineDepth() {
+        return maxPipelineDepth.get();
+    }
+
+    /** @return average commands per flushed batch, i.e. the achieved batching factor */
+    public double getAveragePipelineDepth() {
+        long batches = pipelineBatches.sum();
+        return batches == 0 ? 0.0 : (double) commandsProcessed.sum() / batches;
+    }
+
+    public long getActiveExpiredKeys() {
+        return activeExpiredKeys.sum();
+    }
+
+    public long getExpireCycleCpuMillis() {
+        return expireCycleNanos.sum() / 1_000_000;
+    }
+
+    public long getExpireCycleTimeCapReached() {
+        return expireCycleTimeCapReached.sum();
+    }
+}
@@ -0,0 +1,98 @@
+package com.java.redis.internal.bench;
+
+import com.java.redis.internal.datastore.ByteString;
+import com.java.redis.internal.datastore.DataStore;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput of INCR on one hot key from many threads at once.
+ *
+ * Compares DataStore.incr against the pre-counter scheme (parse the string, format the
+ * result and replace the map entry, retrying on conflict) and against a LongAdder, which
+ * scales best but cannot tell each caller the value its increment produced.
+ * DataStore.incr combines the increments of a contended key in striped cells (see
+ * StringValue); that only pays off with several cores, so run this on a multi-core
+ * machine: on a single core it falls back to one fetch-and-add per increment.
+ *
+ * Usage: CounterBenchmark [threads=64] [seconds=5]
+ */
+public class CounterBenchmark {
+    private static final byte[] KEY = "hot".getBytes(StandardCharsets.US_ASCII);
+
+    interface Incrementer {
+        long incr();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        System.out.println("INCR on one key, " + threads + " threads, " + seconds + " s per run");
+
+        ConcurrentHashMap<ByteString, byte[]> strings = new ConcurrentHashMap<>();
+        ByteString key = ByteString.wrap(KEY);
+        run("replace entry (old incr)", threads, seconds, () -> {
+            while (true) {
+                byte[] old = strings.get(key);
+                long next = (old == null ? 0 : ByteString.parseLong(old)) + 1;
+                byte[] updated = ByteString.fromLong(next);
+                boolean swapped = old == null
+                        ? strings.putIfAbsent(key, updated) == null
+                        : strings.replace(key, old, updated);
+                if (swapped) {
+                    return next;
+                }
+            }
+        });
+
+        DataStore store = new DataStore();
+        run("DataStore.incr", threads, seconds, () -> store.incr(KEY));
+
+        LongAdder adder = new LongAdder();
+        run("LongAdder (no exact result)", threads, seconds, () -> {
+            adder.increment();
+            return 0;
+        });
+    }
+
+    private static void run(String name, int threads, int seconds, Incrementer incrementer)
+            throws InterruptedException {
+        // Warm up on a single thread so the run measures contention, not compilation
+        for (int i = 0; i < 200_000; i++) {
+            incrementer.incr();
+        }
+        AtomicBoolean stop = new AtomicBoolean();
+        LongAdder ops = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                long n = 0;
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while (!stop.get()) {
+                    incrementer.incr();
+                    n++;
+                }
+                ops.add(n);
+            });
+            workers[t].start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        Thread.sleep(seconds * 1000L);
+        stop.set(true);
+        for (Thread w : workers) {
+            w.join();
+        }
+        double elapsed = (System.nanoTime() - begin) / 1e9;
+        System.out.printf("%-28s %,14.0f ops/s%n", name, ops.sum() / elapsed);
+    }
+}
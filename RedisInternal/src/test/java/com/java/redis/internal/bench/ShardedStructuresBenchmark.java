@@ -0,0 +1,72 @@
+package com.java.redis.internal.bench;
+
+import com.java.redis.internal.datastore.ByteString;
+import com.java.redis.internal.datastore.DataStore;
+import com.java.redis.internal.datastore.value.PartitionedTable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.function.IntConsumer;
+
+/**
+ * What SHARDED mode pays for keeping concurrent structures: single-threaded SET/GET, as
+ * a shard's owning loop runs them, against plain HashMaps that a single owner would
+ * allow.
+ *
+ * The slot tables alone (one PartitionedTable per hash slot, as DataStore keeps them) are
+ * compared with one HashMap per slot, which is what sharding could replace them with;
+ * the whole DataStore path is shown next to a single HashMap of byte arrays, the least
+ * any store can do, to put that difference in proportion.
+ *
+ * Usage: ShardedStructuresBenchmark [keys=1000000] [rounds=5]
+ */
+public class ShardedStructuresBenchmark {
+
+    public static void main(String[] args) {
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        byte[][] names = new byte[keys][];
+        ByteString[] wrapped = new ByteString[keys];
+        int[] slots = new int[keys];
+        for (int i = 0; i < keys; i++) {
+            names[i] = ("key:" + i).getBytes(StandardCharsets.US_ASCII);
+            wrapped[i] = ByteString.wrap(names[i]);
+            slots[i] = DataStore.slotOf(wrapped[i]);
+        }
+        byte[] value = "value".getBytes(StandardCharsets.US_ASCII);
+        System.out.println(keys + " keys, one thread, last of " + rounds + " rounds (the others warm up)");
+
+        for (int r = 0; r < rounds; r++) {
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            PartitionedTable<byte[]>[] tables = new PartitionedTable[DataStore.SLOT_COUNT];
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            HashMap<ByteString, byte[]>[] maps = new HashMap[DataStore.SLOT_COUNT];
+            for (int s = 0; s < DataStore.SLOT_COUNT; s++) {
+                tables[s] = new PartitionedTable<>(0, 14);
+                maps[s] = new HashMap<>();
+            }
+            DataStore store = new DataStore();
+            HashMap<ByteString, byte[]> plain = new HashMap<>();
+            boolean last = r == rounds - 1;
+            time(last, "slot tables put", keys, i -> tables[slots[i]].put(wrapped[i], value));
+            time(last, "slot HashMaps put", keys, i -> maps[slots[i]].put(wrapped[i], value));
+            time(last, "slot tables get", keys, i -> tables[slots[i]].get(wrapped[i]));
+            time(last, "slot HashMaps get", keys, i -> maps[slots[i]].get(wrapped[i]));
+            time(last, "DataStore SET", keys, i -> store.setString(names[i], value, null));
+            time(last, "HashMap SET", keys, i -> plain.put(ByteString.wrap(names[i]), value));
+            time(last, "DataStore GET", keys, i -> store.getString(names[i]));
+            time(last, "HashMap GET", keys, i -> plain.get(ByteString.wrap(names[i])));
+        }
+    }
+
+    private static void time(boolean print, String name, int ops, IntConsumer op) {
+        long start = System.nanoTime();
+        for (int i = 0; i < ops; i++) {
+            op.accept(i);
+        }
+        double nanos = (double) (System.nanoTime() - start) / ops;
+        if (print) {
+            System.out.printf("%-24s %8.1f ns/op%n", name, nanos);
+        }
+    }
+}
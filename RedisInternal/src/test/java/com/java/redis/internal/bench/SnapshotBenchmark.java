@@ -0,0 +1,188 @@
+package com.java.redis.internal.bench;
+
+import com.java.redis.internal.datastore.BloomFilterValue;
+import com.java.redis.internal.datastore.ByteString;
+import com.java.redis.internal.datastore.DataStore;
+import com.java.redis.internal.datastore.KeyspaceSnapshot;
+import com.java.redis.internal.datastore.ValueEntry;
+import com.java.redis.internal.persistence.SnapshotReader;
+import com.java.redis.internal.persistence.SnapshotWriter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Save and load throughput of the binary snapshot format against the Java serialization
+ * it replaced (copy the keyspace into a HashMap, writeObject it, readObject it back and
+ * load the map). The dataset is a mix of strings, integers, hashes, sets, sorted sets
+ * and lists grown until the store accounts for the requested size. The binary file is
+ * loaded both as a stream and memory-mapped with its blocks decoded on several threads.
+ *
+ * Usage: SnapshotBenchmark [megabytes=256] [dir=java.io.tmpdir] [loadThreads=cores]
+ */
+public class SnapshotBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        long megabytes = args.length > 0 ? Long.parseLong(args[0]) : 256;
+        Path dir = Path.of(args.length > 1 ? args[1] : System.getProperty("java.io.tmpdir"));
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        DataStore store = new DataStore();
+        long begin = System.nanoTime();
+        fill(store, megabytes << 20);
+        double usedMb = store.getUsedMemory() / (double) (1 << 20);
+        System.out.printf("%,d keys, %.0f MB used, built in %d ms%n%n",
+                store.size(), usedMb, (System.nanoTime() - begin) / 1_000_000);
+
+        System.out.printf("%-20s %12s %14s %14s %14s%n", "format", "file MB", "save MB/s", "load MB/s", "load keys/s");
+        Path binary = dir.resolve("snapshot-bench.jrdb");
+        Path serialized = dir.resolve("snapshot-bench.ser");
+        try {
+            for (int round = 0; round < 2; round++) { // the first round warms up the JIT
+                long saveNanos = time(() -> saveBinary(store, binary));
+                long[] loaded = new long[1];
+                long loadNanos = time(() -> loaded[0] = loadBinary(binary).size());
+                report(round, "binary", binary, usedMb, saveNanos, loadNanos, loaded[0]);
+                loadNanos = time(() -> loaded[0] = loadMapped(binary, threads).size());
+                report(round, "binary, mapped x" + threads, binary, usedMb, saveNanos, loadNanos, loaded[0]);
+
+                saveNanos = time(() -> saveSerialized(store, serialized));
+                loadNanos = time(() -> loaded[0] = loadSerialized(serialized).size());
+                report(round, "java serialization", serialized, usedMb, saveNanos, loadNanos, loaded[0]);
+            }
+
+            // Bloom filters were not Serializable, so the old format could not save them at all
+            BloomFilterValue bloom = new BloomFilterValue(100_000, 0.01);
+            for (int i = 0; i < 100_000; i += 2) {
+                bloom.add(("item:" + i).getBytes(StandardCharsets.US_ASCII));
+            }
+            store.loadEntry(ByteString.of("bloom"), new ValueEntry(bloom, ValueEntry.NO_EXPIRY));
+            saveBinary(store, binary);
+            DataStore reloaded = loadBinary(binary);
+            System.out.println();
+            byte[] key = "bloom".getBytes(StandardCharsets.US_ASCII);
+            System.out.println("bloom filter round trip: " + (reloaded.getKeyCount(bloom.getType()) == 1
+                    && reloaded.memoryUsage(key) == store.memoryUsage(key) ? "ok" : "FAILED"));
+        } finally {
+            Files.deleteIfExists(binary);
+            Files.deleteIfExists(serialized);
+        }
+    }
+
+    static void fill(DataStore store, long targetBytes) {
+        Random random = new Random(42);
+        byte[] blob = new byte[256];
+        for (int i = 0; store.getUsedMemory() < targetBytes; i++) {
+            byte[] key = ("key:" + i).getBytes(StandardCharsets.US_ASCII);
+            int kind = i % 20;
+            if (kind < 12) {
+                random.nextBytes(blob);
+                store.setString(key, Arrays.copyOf(blob, 16 + random.nextInt(240)), null);
+            } else if (kind < 14) {
+                store.setString(key, ByteString.fromLong(random.nextInt(1_000_000)), null);
+            } else if (kind < 16) {
+                for (int f = 0; f < 20; f++) {
+                    store.hset(key, ("field:" + f).getBytes(StandardCharsets.US_ASCII), bytes(random, 24));
+                }
+            } else if (kind < 17) {
+                for (int m = 0; m < 20; m++) {
+                    store.sadd(key, List.of(bytes(random, 12)));
+                }
+            } else if (kind < 18) {
+                // past the listpack threshold, so the skip list encoding is covered too
+                int members = i % 40 == 17 ? 200 : 20;
+                for (int m = 0; m < members; m++) {
+                    store.zadd(key, random.nextInt(10_000), ("member:" + m).getBytes(StandardCharsets.US_ASCII));
+                }
+            } else {
+                List<byte[]> values = new ArrayList<>();
+                for (int v = 0; v < 20; v++) {
+                    values.add(bytes(random, 16));
+                }
+                store.rpush(key, values);
+            }
+        }
+    }
+
+    private static byte[] bytes(Random random, int length) {
+        byte[] b = new byte[length];
+        for (int i = 0; i < length; i++) {
+            b[i] = (byte) ('a' + random.nextInt(26));
+        }
+        return b;
+    }
+
+    private static void saveBinary(DataStore store, Path file) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file);
+             KeyspaceSnapshot snapshot = store.openSnapshot()) {
+            SnapshotWriter writer = new SnapshotWriter(out);
+            snapshot.writeTo(writer);
+            writer.finish();
+        }
+    }
+
+    private static DataStore loadBinary(Path file) throws IOException {
+        DataStore store = new DataStore();
+        store.beginLoad();
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+            new SnapshotReader(store.getEncodingThresholds()).read(in, store::loadEntry);
+        }
+        return store;
+    }
+
+    private static DataStore loadMapped(Path file, int threads) throws IOException {
+        DataStore store = new DataStore();
+        store.beginLoad();
+        new SnapshotReader(store.getEncodingThresholds()).readMapped(file, threads, store::loadEntry);
+        return store;
+    }
+
+    /** The previous save: copy every key into a HashMap, then serialize the map. */
+    private static void saveSerialized(DataStore store, Path file) throws IOException {
+        Map<ByteString, ValueEntry> copy = new HashMap<>();
+        try (KeyspaceSnapshot snapshot = store.openSnapshot()) {
+            snapshot.writeTo(copy::put);
+        }
+        try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            oos.writeObject(copy);
+        }
+    }
+
+    private static DataStore loadSerialized(Path file) throws IOException, ClassNotFoundException {
+        DataStore store = new DataStore();
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            @SuppressWarnings("unchecked")
+            Map<ByteString, ValueEntry> data = (Map<ByteString, ValueEntry>) ois.readObject();
+            store.loadSnapshot(data);
+        }
+        return store;
+    }
+
+    interface Step {
+        void run() throws Exception;
+    }
+
+    private static long time(Step step) throws Exception {
+        System.gc();
+        long begin = System.nanoTime();
+        step.run();
+        return System.nanoTime() - begin;
+    }
+
+    private static void report(int round, String name, Path file, double usedMb, long saveNanos, long loadNanos,
+                               long keys) throws IOException {
+        if (round == 0) {
+            return;
+        }
+        double fileMb = Files.size(file) / (double) (1 << 20);
+        System.out.printf("%-20s %12.1f %14.1f %14.1f %,14.0f%n", name, fileMb,
+                usedMb / (saveNanos / 1e9), usedMb / (loadNanos / 1e9), keys / (loadNanos / 1e9));
+    }
+}
@@ -0,0 +1,87 @@
+package com.java.redis.internal.bench;
+
+import com.java.redis.internal.datastore.DataStore;
+import com.java.redis.internal.datastore.KeyspaceSnapshot;
+import com.java.redis.internal.persistence.SnapshotReader;
+import com.java.redis.internal.persistence.SnapshotWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Compression ratio against save and load time of the binary snapshot, for a range of
+ * Deflater levels (0 = uncompressed). Blocks are compressed on a pool of the given size
+ * and the file is loaded memory-mapped on as many threads. The dataset is the one of
+ * SnapshotBenchmark; most of its string values are random bytes, which do not compress,
+ * so text-heavy keyspaces shrink more than this.
+ *
+ * Usage: SnapshotCompressionBenchmark [megabytes=256] [dir=java.io.tmpdir] [threads=cores]
+ */
+public class SnapshotCompressionBenchmark {
+    private static final int[] LEVELS = {0, 1, 2, 3, 6, 9};
+
+    public static void main(String[] args) throws Exception {
+        long megabytes = args.length > 0 ? Long.parseLong(args[0]) : 256;
+        Path dir = Path.of(args.length > 1 ? args[1] : System.getProperty("java.io.tmpdir"));
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        DataStore store = new DataStore();
+        SnapshotBenchmark.fill(store, megabytes << 20);
+        System.out.printf("%,d keys, %.0f MB used, %d threads%n%n",
+                store.size(), store.getUsedMemory() / (double) (1 << 20), threads);
+
+        System.out.printf("%-6s %10s %8s %10s %10s%n", "level", "file MB", "ratio", "save ms", "load ms");
+        Path file = dir.resolve("snapshot-compression-bench.jrdb");
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            long uncompressed = 0;
+            for (int round = 0; round < 2; round++) { // the first round warms up the JIT
+                for (int level : LEVELS) {
+                    long saveNanos = time(() -> save(store, file, level, pool, threads));
+                    long loadNanos = time(() -> load(file, threads));
+                    long size = Files.size(file);
+                    if (level == 0) {
+                        uncompressed = size;
+                    }
+                    if (round == 1) {
+                        System.out.printf("%-6d %10.1f %8.2f %10d %10d%n", level, size / (double) (1 << 20),
+                                uncompressed / (double) size, saveNanos / 1_000_000, loadNanos / 1_000_000);
+                    }
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void save(DataStore store, Path file, int level, ExecutorService pool, int threads)
+            throws IOException {
+        try (OutputStream out = Files.newOutputStream(file);
+             KeyspaceSnapshot snapshot = store.openSnapshot()) {
+            SnapshotWriter writer = new SnapshotWriter(out, level, pool, threads);
+            snapshot.writeTo(writer);
+            writer.finish();
+        }
+    }
+
+    private static void load(Path file, int threads) throws IOException {
+        DataStore store = new DataStore();
+        store.beginLoad();
+        new SnapshotReader(store.getEncodingThresholds()).readMapped(file, threads, store::loadEntry);
+    }
+
+    interface Step {
+        void run() throws Exception;
+    }
+
+    private static long time(Step step) throws Exception {
+        System.gc();
+        long begin = System.nanoTime();
+        step.run();
+        return System.nanoTime() - begin;
+    }
+}
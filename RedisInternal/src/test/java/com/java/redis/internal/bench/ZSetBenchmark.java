@@ -0,0 +1,137 @@
+package com.java.redis.internal.bench;
+
+import com.java.redis.internal.datastore.ByteString;
+import com.java.redis.internal.datastore.value.ZSetValue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntSupplier;
+
+/**
+ * Leaderboard queries on a large sorted set: the rank-indexed skip list of ZSetValue
+ * against the previous score-bucket implementation, which flattened the whole set on
+ * every range query and had to scan for a rank.
+ *
+ * Usage: ZSetBenchmark [members=1000000] [seconds=2]
+ */
+public class ZSetBenchmark {
+
+    /** The sorted set as it was before the skip list: hash map plus score → members buckets. */
+    static final class BucketZSet {
+        final ConcurrentHashMap<ByteString, Double> scoreMap = new ConcurrentHashMap<>();
+        final ConcurrentSkipListMap<Double, Set<ByteString>> sorted = new ConcurrentSkipListMap<>();
+
+        void zadd(double score, byte[] memberBytes) {
+            ByteString member = ByteString.wrap(memberBytes);
+            Double oldScore = scoreMap.put(member, score);
+            if (oldScore != null) {
+                sorted.computeIfPresent(oldScore, (s, members) -> {
+                    members.remove(member);
+                    return members.isEmpty() ? null : members;
+                });
+            }
+            sorted.computeIfAbsent(score, s -> ConcurrentHashMap.newKeySet()).add(member);
+        }
+
+        List<byte[]> zrange(int start, int stop) {
+            List<byte[]> all = new ArrayList<>();
+            for (Map.Entry<Double, Set<ByteString>> e : sorted.entrySet()) {
+                for (ByteString m : e.getValue()) {
+                    all.add(m.bytes());
+                }
+            }
+            int size = all.size();
+            if (start < 0) start = size + start;
+            if (stop < 0) stop = size + stop;
+            start = Math.max(0, start);
+            stop = Math.min(size - 1, stop);
+            if (start > stop || start >= size) return Collections.emptyList();
+            return all.subList(start, stop + 1);
+        }
+
+        long zrank(byte[] memberBytes) {
+            Double score = scoreMap.get(ByteString.wrap(memberBytes));
+            if (score == null) {
+                return -1;
+            }
+            long rank = 0;
+            for (Set<ByteString> members : sorted.headMap(score).values()) {
+                rank += members.size();
+            }
+            return rank; // position among equal scores is arbitrary in this structure
+        }
+    }
+
+    public static void main(String[] args) {
+        int members = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        byte[][] names = new byte[members][];
+        for (int i = 0; i < members; i++) {
+            names[i] = ("player:" + i).getBytes(StandardCharsets.US_ASCII);
+        }
+
+        long begin = System.nanoTime();
+        ZSetValue skipList = new ZSetValue();
+        for (int i = 0; i < members; i++) {
+            skipList.zadd(score(i), names[i]);
+        }
+        System.out.printf("%,d members; skip list built in %d ms%n", members, (System.nanoTime() - begin) / 1_000_000);
+        begin = System.nanoTime();
+        BucketZSet buckets = new BucketZSet();
+        for (int i = 0; i < members; i++) {
+            buckets.zadd(score(i), names[i]);
+        }
+        System.out.printf("%,d members; buckets built in %d ms%n%n", members, (System.nanoTime() - begin) / 1_000_000);
+
+        System.out.printf("%-32s %16s %16s%n", "operation", "skip list", "buckets");
+        compare("ZREVRANGE 0 9 (top 10)", seconds,
+                () -> skipList.zrange(0, 9, true, false).size(),
+                () -> buckets.zrange(-10, -1).size());
+        compare("ZRANGE 500000 500009", seconds,
+                () -> skipList.zrange(members / 2, members / 2 + 9, false, false).size(),
+                () -> buckets.zrange(members / 2, members / 2 + 9).size());
+        compare("ZRANK random member", seconds,
+                () -> (int) skipList.zrank(names[ThreadLocalRandom.current().nextInt(members)], false),
+                () -> (int) buckets.zrank(names[ThreadLocalRandom.current().nextInt(members)]));
+        compare("ZADD update random member", seconds,
+                () -> skipList.zadd(ThreadLocalRandom.current().nextInt(1000), names[ThreadLocalRandom.current().nextInt(members)]),
+                () -> {
+                    buckets.zadd(ThreadLocalRandom.current().nextInt(1000), names[ThreadLocalRandom.current().nextInt(members)]);
+                    return 0;
+                });
+    }
+
+    private static double score(int i) {
+        return (i * 7919L) % 1000; // many members share each score
+    }
+
+    private static void compare(String name, int seconds, IntSupplier skipList, IntSupplier buckets) {
+        System.out.printf("%-32s %,12.0f/s %,12.0f/s%n", name, measure(skipList, seconds), measure(buckets, seconds));
+    }
+
+    private static double measure(IntSupplier op, int seconds) {
+        long sink = 0;
+        for (int i = 0; i < 3; i++) {
+            sink += op.getAsInt(); // warm up
+        }
+        long ops = 0;
+        long begin = System.nanoTime();
+        long end = begin + seconds * 1_000_000_000L;
+        long now;
+        do {
+            sink += op.getAsInt();
+            ops++;
+        } while ((now = System.nanoTime()) < end);
+        if (sink == 42) {
+            System.out.print(""); // keep the results alive
+        }
+        return ops / ((now - begin) / 1e9);
+    }
+}
@@ -0,0 +1,115 @@
+package com.java.redis.internal.persistence;
+
+import com.java.redis.internal.datastore.DataStore;
+import com.java.redis.internal.protocol.Command;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Replaying an append-only file whose last command was cut short by a crash: the whole
+ * commands before it are applied, the partial one is dropped, and the file is truncated
+ * so that commands appended afterwards replay too.
+ */
+class AppendOnlyFileReplayTest {
+    private static final String SET_A = "*3\r\n$3\r\nSET\r\n$1\r\na\r\n$1\r\n1\r\n";
+    private static final String RPUSH_L = "*4\r\n$5\r\nRPUSH\r\n$1\r\nl\r\n$1\r\nx\r\n$1\r\ny\r\n";
+    private static final String SET_C = "*3\r\n$3\r\nSET\r\n$1\r\nc\r\n$5\r\nthree\r\n";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void tailCutAnywhereIsDroppedAndTruncated() throws Exception {
+        byte[] complete = ascii(SET_A + RPUSH_L);
+        byte[] last = ascii(SET_C);
+        for (int cut = 1; cut < last.length; cut++) {
+            Path file = dir.resolve("cut" + cut + ".aof");
+            Files.write(file, concat(complete, Arrays.copyOf(last, cut)));
+
+            DataStore store = new DataStore();
+            AppendOnlyFile aof = open(file, store);
+            aof.close();
+
+            assertArrayEquals(ascii("1"), store.getString(ascii("a")), "cut " + cut);
+            assertEquals(List.of("x", "y"), strings(store.lrange(ascii("l"), 0, -1)), "cut " + cut);
+            assertNull(store.getString(ascii("c")), "cut " + cut);
+            assertEquals(complete.length, Files.size(file), "cut " + cut);
+        }
+    }
+
+    @Test
+    void fileEndingOnACommandIsKeptWhole() throws Exception {
+        Path file = dir.resolve("whole.aof");
+        byte[] content = ascii(SET_A + RPUSH_L + SET_C);
+        Files.write(file, content);
+
+        DataStore store = new DataStore();
+        open(file, store).close();
+
+        assertArrayEquals(ascii("three"), store.getString(ascii("c")));
+        assertEquals(content.length, Files.size(file));
+    }
+
+    @Test
+    void commandsAppendedAfterTruncationReplay() throws Exception {
+        Path file = dir.resolve("appendonly.aof");
+        byte[] last = ascii(SET_C);
+        Files.write(file, concat(ascii(SET_A), Arrays.copyOf(last, last.length - 3)));
+
+        AppendOnlyFile aof = open(file, new DataStore());
+        aof.appendCommand(new Command("SET", List.of(ascii("d"), ascii("4"))));
+        aof.close();
+
+        DataStore store = new DataStore();
+        open(file, store).close();
+        assertArrayEquals(ascii("1"), store.getString(ascii("a")));
+        assertNull(store.getString(ascii("c")));
+        assertArrayEquals(ascii("4"), store.getString(ascii("d")));
+    }
+
+    @Test
+    void corruptionBeforeTheEndRefusesToLoad() throws Exception {
+        Path file = dir.resolve("corrupt.aof");
+        byte[] content = ascii(SET_A + "*3\r\n$3\r\nSET\r\nXX" + SET_C);
+        Files.write(file, content);
+
+        assertThrows(IllegalStateException.class, () -> open(file, new DataStore()));
+        assertEquals(content.length, Files.size(file));
+    }
+
+    private static AppendOnlyFile open(Path file, DataStore store) {
+        AppendOnlyFile aof = new AppendOnlyFile(file, FsyncPolicy.NO, 0, Long.MAX_VALUE);
+        aof.load(store);
+        return aof;
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] out = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, out, a.length, b.length);
+        return out;
+    }
+
+    private static List<String> strings(List<byte[]> values) {
+        List<String> out = new ArrayList<>(values.size());
+        for (byte[] v : values) {
+            out.add(new String(v, StandardCharsets.US_ASCII));
+        }
+        return out;
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
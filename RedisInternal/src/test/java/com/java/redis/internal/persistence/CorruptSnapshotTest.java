@@ -0,0 +1,129 @@
+package com.java.redis.internal.persistence;
+
+import com.java.redis.internal.datastore.DataStore;
+import com.java.redis.internal.datastore.value.EncodingThresholds;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A snapshot with a damaged block must never load as if it were whole: the readers
+ * reject it, a startup load refuses to start and leaves the file alone, and a lazy load
+ * (already serving) skips the block but moves the file aside before the next save can
+ * replace it.
+ */
+class CorruptSnapshotTest {
+    private static final int KEYS = 20_000;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void flippedByteFailsTheChecksum() throws Exception {
+        Path file = savedSnapshot();
+        corruptSecondBlock(file);
+        SnapshotReader reader = new SnapshotReader(EncodingThresholds.DEFAULT);
+
+        IOException mapped = assertThrows(IOException.class, () -> reader.readMapped(file, 4, (k, e) -> { }));
+        assertTrue(mapped.getMessage().contains("checksum"), mapped.getMessage());
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            IOException streamed = assertThrows(IOException.class, () -> reader.read(in, (k, e) -> { }));
+            assertTrue(streamed.getMessage().contains("checksum"), streamed.getMessage());
+        }
+    }
+
+    @Test
+    void truncatedFileIsRejected() throws Exception {
+        Path file = savedSnapshot();
+        byte[] whole = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(whole, whole.length / 2));
+        SnapshotReader reader = new SnapshotReader(EncodingThresholds.DEFAULT);
+
+        assertThrows(IOException.class, () -> reader.readMapped(file, 2, (k, e) -> { }));
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            assertThrows(IOException.class, () -> reader.read(in, (k, e) -> { }));
+        }
+    }
+
+    @Test
+    void startupLoadRefusesACorruptSnapshotAndKeepsIt() throws Exception {
+        Path file = savedSnapshot();
+        corruptSecondBlock(file);
+        byte[] corrupt = Files.readAllBytes(file);
+
+        assertThrows(IllegalStateException.class, () -> new RDBPersistenceManager(file, 4).load(new DataStore()));
+        assertArrayEquals(corrupt, Files.readAllBytes(file));
+    }
+
+    @Test
+    void lazyLoadSkipsTheBlockAndMovesTheFileAsideBeforeSaving() throws Exception {
+        Path file = savedSnapshot();
+        corruptSecondBlock(file);
+        byte[] corrupt = Files.readAllBytes(file);
+
+        DataStore store = new DataStore();
+        RDBPersistenceManager manager = new RDBPersistenceManager(file, 1, true, 0, 1, false, 100);
+        manager.load(store);
+        manager.saveSnapshot(store); // waits for the background load first
+
+        int survived = store.exists(keys());
+        assertTrue(survived > 0 && survived < KEYS, survived + " keys loaded");
+        assertArrayEquals(corrupt, Files.readAllBytes(dir.resolve("dump.rdb.corrupt")));
+
+        DataStore reloaded = new DataStore();
+        new RDBPersistenceManager(file, 4).load(reloaded);
+        assertEquals(survived, reloaded.exists(keys()));
+    }
+
+    /** @return a snapshot of KEYS strings, spanning several uncompressed blocks */
+    private Path savedSnapshot() {
+        Path file = dir.resolve("dump.rdb");
+        DataStore store = new DataStore();
+        for (int i = 0; i < KEYS; i++) {
+            store.setString(bytes("key:" + i), bytes("value-" + i + "-".repeat(40)), null);
+        }
+        new RDBPersistenceManager(file, 1).saveSnapshot(store);
+        return file;
+    }
+
+    /** Flip one byte in the middle of the second data block's payload. */
+    private static void corruptSecondBlock(Path file) throws IOException {
+        List<long[]> blocks = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            SnapshotReader.indexBlocks(channel, blocks);
+        }
+        assertTrue(blocks.size() >= 3, blocks.size() + " blocks");
+        long[] block = blocks.get(1);
+        byte[] content = Files.readAllBytes(file);
+        content[(int) (block[0] + block[1] / 2)] ^= 0x5A;
+        Files.write(file, content);
+    }
+
+    private static List<byte[]> keys() {
+        List<byte[]> keys = new ArrayList<>(KEYS);
+        for (int i = 0; i < KEYS; i++) {
+            keys.add(bytes("key:" + i));
+        }
+        return keys;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,153 @@
+package com.java.redis.internal.persistence;
+
+import com.java.redis.internal.datastore.DataStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Delta snapshots: a base plus the deltas saved after it must load as the keyspace of
+ * the last save, with overwrites and deletions applied in order, both before and after
+ * the deltas are merged into a new base.
+ */
+class DeltaSnapshotsTest {
+    private static final long COMPACTION_WAIT_MILLIS = 10_000;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void deltasLoadInOrderOverTheBase() throws Exception {
+        Path base = dir.resolve("dump.rdb");
+        DataStore store = new DataStore();
+        RDBPersistenceManager manager = deltaManager(base, 0);
+        manager.load(store);
+        writeBase(store);
+        manager.saveSnapshot(store);
+        long baseSize = Files.size(base);
+
+        writeFirstChanges(store);
+        manager.saveSnapshot(store);
+        writeSecondChanges(store);
+        manager.saveSnapshot(store);
+
+        assertEquals(baseSize, Files.size(base), "a delta save must not rewrite the base");
+        assertTrue(Files.exists(delta(base, 1)));
+        assertTrue(Files.exists(delta(base, 2)));
+        assertFinalKeyspace(load(base));
+    }
+
+    @Test
+    void saveWithNothingChangedWritesNoDelta() throws Exception {
+        Path base = dir.resolve("dump.rdb");
+        DataStore store = new DataStore();
+        RDBPersistenceManager manager = deltaManager(base, 0);
+        manager.load(store);
+        writeBase(store);
+        manager.saveSnapshot(store);
+        manager.saveSnapshot(store);
+
+        assertFalse(Files.exists(delta(base, 1)));
+    }
+
+    @Test
+    void mergedBaseLoadsTheSameAndIgnoresAStaleDelta() throws Exception {
+        Path base = dir.resolve("dump.rdb");
+        DataStore store = new DataStore();
+        RDBPersistenceManager manager = deltaManager(base, 0);
+        manager.load(store);
+        writeBase(store);
+        manager.saveSnapshot(store);
+        writeFirstChanges(store);
+        manager.saveSnapshot(store);
+        byte[] firstDelta = Files.readAllBytes(delta(base, 1));
+
+        // Restart where any delta is past 1% of the base: the next save starts a merge
+        manager = deltaManager(base, 1);
+        store = new DataStore();
+        manager.load(store);
+        writeSecondChanges(store);
+        manager.saveSnapshot(store);
+        long deadline = System.currentTimeMillis() + COMPACTION_WAIT_MILLIS;
+        while (Files.exists(delta(base, 2)) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertFalse(Files.exists(delta(base, 1)), "delta 1 not merged");
+        assertFalse(Files.exists(delta(base, 2)), "delta 2 not merged");
+        assertFinalKeyspace(load(base));
+
+        // As if a crash came between writing the new base and deleting the deltas in it
+        Files.write(delta(base, 1), firstDelta);
+        assertFinalKeyspace(load(base));
+        assertFalse(Files.exists(delta(base, 1)), "stale delta kept");
+    }
+
+    private static RDBPersistenceManager deltaManager(Path base, int compactPercentage) {
+        return new RDBPersistenceManager(base, 2, false, 0, 1, true, compactPercentage);
+    }
+
+    private static DataStore load(Path base) {
+        DataStore store = new DataStore();
+        deltaManager(base, 0).load(store);
+        return store;
+    }
+
+    private static Path delta(Path base, long seq) {
+        return base.resolveSibling(base.getFileName() + ".delta." + seq);
+    }
+
+    private static void writeBase(DataStore store) {
+        for (int i = 0; i < 1000; i++) {
+            store.setString(bytes("key:" + i), bytes("base-" + i), null);
+        }
+        store.setString(bytes("overwritten"), bytes("base"), null);
+        store.setString(bytes("deleted"), bytes("base"), null);
+        store.hset(bytes("hash"), bytes("f1"), bytes("base"));
+        store.rpush(bytes("list"), List.of(bytes("a")));
+    }
+
+    private static void writeFirstChanges(DataStore store) {
+        store.setString(bytes("overwritten"), bytes("first"), null);
+        store.del(List.of(bytes("deleted")));
+        store.setString(bytes("added"), bytes("first"), null);
+        store.setString(bytes("added-then-deleted"), bytes("first"), null);
+        store.hset(bytes("hash"), bytes("f2"), bytes("first"));
+        store.setString(bytes("expiring"), bytes("first"), 3600L);
+    }
+
+    private static void writeSecondChanges(DataStore store) {
+        store.setString(bytes("overwritten"), bytes("second"), null);
+        store.setString(bytes("deleted"), bytes("second"), null);
+        store.del(List.of(bytes("added-then-deleted")));
+        store.rpush(bytes("list"), List.of(bytes("b")));
+    }
+
+    private static void assertFinalKeyspace(DataStore store) {
+        for (int i = 0; i < 1000; i++) {
+            assertArrayEquals(bytes("base-" + i), store.getString(bytes("key:" + i)), "key:" + i);
+        }
+        assertArrayEquals(bytes("second"), store.getString(bytes("overwritten")));
+        assertArrayEquals(bytes("second"), store.getString(bytes("deleted")));
+        assertArrayEquals(bytes("first"), store.getString(bytes("added")));
+        assertNull(store.getString(bytes("added-then-deleted")));
+        assertArrayEquals(bytes("base"), store.hget(bytes("hash"), bytes("f1")));
+        assertArrayEquals(bytes("first"), store.hget(bytes("hash"), bytes("f2")));
+        assertEquals(2, store.llen(bytes("list")));
+        long ttl = store.ttl(bytes("expiring"));
+        assertTrue(ttl > 3500 && ttl <= 3600, "ttl " + ttl);
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
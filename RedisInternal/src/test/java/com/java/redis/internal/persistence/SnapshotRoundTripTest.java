@@ -0,0 +1,169 @@
+package com.java.redis.internal.persistence;
+
+import com.java.redis.internal.datastore.ByteString;
+import com.java.redis.internal.datastore.DataStore;
+import com.java.redis.internal.datastore.ValueEntry;
+import com.java.redis.internal.datastore.value.EncodingThresholds;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A binary snapshot must load back into the same keyspace it was saved from: every type,
+ * both encodings of each collection, binary keys and values, and expiry times to the
+ * millisecond, uncompressed and compressed.
+ */
+class SnapshotRoundTripTest {
+    // Past EncodingThresholds.DEFAULT, so these collections take the large encoding
+    private static final int LARGE = 500;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void everyTypeLoadsBackUncompressed() {
+        Path file = dir.resolve("dump.rdb");
+        DataStore saved = populated();
+        new RDBPersistenceManager(file, 1).saveSnapshot(saved);
+
+        DataStore loaded = new DataStore();
+        new RDBPersistenceManager(file, 1).load(loaded);
+        assertSameKeyspace(loaded);
+    }
+
+    @Test
+    void compressedMultiBlockSnapshotLoadsBackInParallel() {
+        Path file = dir.resolve("dump.rdb");
+        DataStore saved = populated();
+        // Several blocks' worth of compressible strings, so blocks are deflated and the load
+        // is split across threads
+        for (int i = 0; i < 50_000; i++) {
+            saved.setString(bytes("bulk:" + i), bytes("value-" + i + "-".repeat(40)), null);
+        }
+        new RDBPersistenceManager(file, 4, false, 6, 2, false, 100).saveSnapshot(saved);
+
+        DataStore loaded = new DataStore();
+        new RDBPersistenceManager(file, 4).load(loaded);
+        assertSameKeyspace(loaded);
+        for (int i = 0; i < 50_000; i++) {
+            assertArrayEquals(bytes("value-" + i + "-".repeat(40)), loaded.getString(bytes("bulk:" + i)), "bulk:" + i);
+        }
+    }
+
+    @Test
+    void streamingReadSeesExactExpiryTimes() throws Exception {
+        Path file = dir.resolve("dump.rdb");
+        long at = System.currentTimeMillis() + 3_600_123;
+        DataStore saved = new DataStore();
+        saved.setStringExpiringAt(bytes("session"), bytes("token"), at);
+        saved.setString(bytes("plain"), bytes("v"), null);
+        new RDBPersistenceManager(file, 1).saveSnapshot(saved);
+
+        Map<ByteString, ValueEntry> read = new HashMap<>();
+        long keys;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            keys = new SnapshotReader(EncodingThresholds.DEFAULT).read(in, read::put);
+        }
+        assertEquals(2, keys);
+        assertEquals(at, read.get(ByteString.wrap(bytes("session"))).getExpirationTime());
+        assertFalse(read.get(ByteString.wrap(bytes("plain"))).hasExpiration());
+    }
+
+    private static DataStore populated() {
+        DataStore store = new DataStore();
+        store.setString(bytes("string"), bytes("hello"), null);
+        store.setString(new byte[] {0, (byte) 0xFF, '\r', '\n'}, new byte[] {(byte) 0x80, 0, 1}, null);
+        store.setString(bytes("empty"), new byte[0], null);
+        store.incrBy(bytes("counter"), 1234567890123L);
+        store.setString(bytes("expiring"), bytes("soon"), 3600L);
+
+        store.hset(bytes("hash:small"), bytes("f"), bytes("v"));
+        List<byte[]> fields = new ArrayList<>();
+        List<byte[]> members = new ArrayList<>();
+        double[] scores = new double[LARGE];
+        for (int i = 0; i < LARGE; i++) {
+            fields.add(bytes("field" + i));
+            fields.add(bytes("value" + i));
+            members.add(bytes("member" + i));
+            scores[i] = i * 1.5 - 100;
+        }
+        store.hset(bytes("hash:large"), fields);
+
+        store.rpush(bytes("list"), List.of(bytes("a"), bytes("b"), bytes("c")));
+        store.rpush(bytes("list:large"), members);
+
+        store.sadd(bytes("set:small"), List.of(bytes("x"), bytes("y")));
+        store.sadd(bytes("set:ints"), List.of(bytes("3"), bytes("1"), bytes("2")));
+        store.sadd(bytes("set:large"), members);
+
+        store.zadd(bytes("zset:small"), 2.5, bytes("two"));
+        store.zadd(bytes("zset:small"), Double.NEGATIVE_INFINITY, bytes("low"));
+        store.zadd(bytes("zset:large"), scores, members);
+        return store;
+    }
+
+    private static void assertSameKeyspace(DataStore loaded) {
+        assertArrayEquals(bytes("hello"), loaded.getString(bytes("string")));
+        assertArrayEquals(new byte[] {(byte) 0x80, 0, 1}, loaded.getString(new byte[] {0, (byte) 0xFF, '\r', '\n'}));
+        assertArrayEquals(new byte[0], loaded.getString(bytes("empty")));
+        assertEquals(1234567890124L, loaded.incr(bytes("counter")));
+        assertArrayEquals(bytes("soon"), loaded.getString(bytes("expiring")));
+        long ttl = loaded.ttl(bytes("expiring"));
+        assertTrue(ttl > 3500 && ttl <= 3600, "ttl " + ttl);
+        assertEquals(-1, loaded.ttl(bytes("string")));
+
+        assertArrayEquals(bytes("v"), loaded.hget(bytes("hash:small"), bytes("f")));
+        for (int i = 0; i < LARGE; i++) {
+            assertArrayEquals(bytes("value" + i), loaded.hget(bytes("hash:large"), bytes("field" + i)));
+        }
+
+        assertEquals(List.of("a", "b", "c"), strings(loaded.lrange(bytes("list"), 0, -1)));
+        List<String> large = strings(loaded.lrange(bytes("list:large"), 0, -1));
+        assertEquals(LARGE, large.size());
+        for (int i = 0; i < LARGE; i++) {
+            assertEquals("member" + i, large.get(i));
+        }
+
+        assertEquals(new TreeSet<>(List.of("x", "y")), new TreeSet<>(strings(loaded.smembers(bytes("set:small")))));
+        assertEquals(new TreeSet<>(List.of("1", "2", "3")), new TreeSet<>(strings(loaded.smembers(bytes("set:ints")))));
+        assertEquals(LARGE, loaded.smembers(bytes("set:large")).size());
+
+        assertEquals(List.of("low", "-inf", "two", "2.5"),
+                strings(loaded.zrange(bytes("zset:small"), 0, -1, false, true)));
+        List<String> zset = strings(loaded.zrange(bytes("zset:large"), 0, -1, false, false));
+        assertEquals(LARGE, zset.size());
+        for (int i = 0; i < LARGE; i++) {
+            assertEquals("member" + i, zset.get(i));
+        }
+
+        assertNull(loaded.getString(bytes("missing")));
+    }
+
+    private static List<String> strings(List<byte[]> values) {
+        List<String> out = new ArrayList<>(values.size());
+        for (byte[] v : values) {
+            out.add(new String(v, StandardCharsets.UTF_8));
+        }
+        return out;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,123 @@
+package com.java.redis.internal.protocol;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.CorruptedFrameException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * RespDecoder in a pipeline: commands cut anywhere by TCP must come out whole and once,
+ * and a read carrying several commands must emit all of them in order.
+ */
+class RespDecoderTest {
+    private static final String INFO = "*1\r\n$4\r\nINFO\r\n";
+    private static final String SET = "*3\r\n$3\r\nSET\r\n$3\r\nkey\r\n$5\r\nvalue\r\n";
+    private static final String GET = "*2\r\n$3\r\nGET\r\n$3\r\nkey\r\n";
+
+    @Test
+    void commandSplitAfterEveryByteIsDecodedOnce() {
+        EmbeddedChannel channel = new EmbeddedChannel(new RespDecoder());
+        byte[] bytes = ascii(SET);
+        for (int i = 0; i < bytes.length; i++) {
+            channel.writeInbound(Unpooled.wrappedBuffer(bytes, i, 1));
+            if (i < bytes.length - 1) {
+                assertNull(channel.readInbound(), "command emitted after " + (i + 1) + " of " + bytes.length + " bytes");
+            }
+        }
+        assertCommand(channel.readInbound(), "SET", "key", "value");
+        assertNull(channel.readInbound());
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    void everySplitPointOfTwoCommandsGivesBothInOrder() {
+        byte[] bytes = ascii(SET + GET);
+        for (int split = 1; split < bytes.length; split++) {
+            EmbeddedChannel channel = new EmbeddedChannel(new RespDecoder());
+            channel.writeInbound(Unpooled.wrappedBuffer(bytes, 0, split));
+            channel.writeInbound(Unpooled.wrappedBuffer(bytes, split, bytes.length - split));
+            assertCommand(channel.readInbound(), "SET", "key", "value");
+            assertCommand(channel.readInbound(), "GET", "key");
+            assertNull(channel.readInbound(), "split at " + split);
+            assertFalse(channel.finish());
+        }
+    }
+
+    @Test
+    void oneReadWithSeveralCommandsEmitsAll() {
+        EmbeddedChannel channel = new EmbeddedChannel(new RespDecoder());
+        channel.writeInbound(Unpooled.wrappedBuffer(ascii(INFO + SET + GET + INFO)));
+        assertCommand(channel.readInbound(), "INFO");
+        assertCommand(channel.readInbound(), "SET", "key", "value");
+        assertCommand(channel.readInbound(), "GET", "key");
+        assertCommand(channel.readInbound(), "INFO");
+        assertNull(channel.readInbound());
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    void readEndingInsideACommandKeepsItsStartForTheNextRead() {
+        EmbeddedChannel channel = new EmbeddedChannel(new RespDecoder());
+        String partial = "*3\r\n$3\r\nSET\r\n$3\r\nk";
+        channel.writeInbound(Unpooled.wrappedBuffer(ascii(INFO + partial)));
+        assertCommand(channel.readInbound(), "INFO");
+        assertNull(channel.readInbound());
+        channel.writeInbound(Unpooled.wrappedBuffer(ascii("ey\r\n$1\r\nv\r\n" + GET)));
+        assertCommand(channel.readInbound(), "SET", "key", "v");
+        assertCommand(channel.readInbound(), "GET", "key");
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    void bulkStringsAreBinarySafe() {
+        byte[] value = {'a', '\r', '\n', 0, (byte) 0xFF};
+        EmbeddedChannel channel = new EmbeddedChannel(new RespDecoder());
+        channel.writeInbound(Unpooled.wrappedBuffer(ascii("*3\r\n$3\r\nSET\r\n$1\r\nk\r\n$5\r\n"), value, ascii("\r\n")));
+        Command cmd = channel.readInbound();
+        assertNotNull(cmd);
+        assertArrayEquals(value, cmd.getArgs().get(1));
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    void unknownCommandKeepsItsName() {
+        EmbeddedChannel channel = new EmbeddedChannel(new RespDecoder());
+        channel.writeInbound(Unpooled.wrappedBuffer(ascii("*2\r\n$6\r\nNOSUCH\r\n$1\r\nx\r\n")));
+        Command cmd = channel.readInbound();
+        assertNull(cmd.getSpec());
+        assertCommand(cmd, "NOSUCH", "x");
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    void corruptFrameFailsTheRead() {
+        EmbeddedChannel channel = new EmbeddedChannel(new RespDecoder());
+        assertThrows(CorruptedFrameException.class,
+                () -> channel.writeInbound(Unpooled.wrappedBuffer(ascii("*1\r\n$4\r\nINFOxx"))));
+        channel.finishAndReleaseAll();
+    }
+
+    private static void assertCommand(Command cmd, String name, String... args) {
+        assertNotNull(cmd, "no " + name + " decoded");
+        assertEquals(name, cmd.getName());
+        List<byte[]> got = cmd.getArgs();
+        assertEquals(args.length, got.size(), name + " arguments");
+        for (int i = 0; i < args.length; i++) {
+            assertEquals(args[i], new String(got.get(i), StandardCharsets.US_ASCII));
+        }
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}